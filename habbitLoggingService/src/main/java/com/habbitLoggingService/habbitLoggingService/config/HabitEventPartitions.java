@@ -0,0 +1,259 @@
+package com.habbitLoggingService.habbitLoggingService.config;
+
+import com.habbitLoggingService.habbitLoggingService.listener.HabitEventListener;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventFences;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventRetries;
+import com.habbiteventcontract.HabitEvents;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.CustomExchange;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Habit events partitioned by user over habit-logs.events.partitions queues.
+ *
+ * The habit.events exchange feeds a consistent-hash exchange that hashes the user id header,
+ * so all events of a user land in the same partition queue, in the order they were published.
+ * Each queue has a single active consumer across all nodes, and each node consumes a queue
+ * with exactly one consumer, so a user's events are handled one batch at a time while the
+ * partitions run in parallel.
+ *
+ * The partition queues are laid out on every new broker connection. Adding partitions moves
+ * about one in N users to the new queues; partitions beyond the configured count are unbound at
+ * startup and drained, then deleted once empty. Either way, {@link HabitEventFences} hold the
+ * moved users' new events back until their older ones are handled.
+ */
+@Component
+@Slf4j
+public class HabitEventPartitions implements RabbitListenerConfigurer {
+
+    public static final String PARTITIONED_EXCHANGE = "habit.events.by-user";
+
+    // Points per partition on the hash ring; a single point spreads users very unevenly
+    private static final String WEIGHT = "20";
+
+    private final String queueName;
+    private final int partitions;
+    private final HabitEventListener listener;
+    private final SimpleRabbitListenerContainerFactory containerFactory;
+    private final AmqpAdmin amqpAdmin;
+    private final RabbitListenerEndpointRegistry registry;
+    private final HabitEventFences fences;
+    private final ConnectionFactory connectionFactory;
+
+    public HabitEventPartitions(@Value("${rabbitmq.queue.name}") String queueName,
+                                @Value("${habit-logs.events.partitions:4}") int partitions,
+                                HabitEventListener listener,
+                                @Qualifier(RabbitMqConfig.HABIT_EVENT_CONTAINER_FACTORY) SimpleRabbitListenerContainerFactory containerFactory,
+                                AmqpAdmin amqpAdmin,
+                                RabbitListenerEndpointRegistry registry,
+                                HabitEventFences fences,
+                                ConnectionFactory connectionFactory) {
+        this.queueName = queueName;
+        this.partitions = partitions;
+        this.listener = listener;
+        this.containerFactory = containerFactory;
+        this.amqpAdmin = amqpAdmin;
+        this.registry = registry;
+        this.fences = fences;
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Lay the partitions out whenever a connection is made, before the consumers use it, the
+     * same way RabbitAdmin declares the other queues
+     */
+    @PostConstruct
+    public void layoutOnConnect() {
+        connectionFactory.addConnectionListener(connection -> {
+            try {
+                layout();
+            } catch (AmqpException e) {
+                log.error("Could not lay out the habit event partitions: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Exchanges, partition queues and bindings for the given number of partitions
+     */
+    public static Declarables topology(String queueName, int partitions) {
+        List<Declarable> declarables = new ArrayList<>(exchanges().getDeclarables());
+        for (int partition = 0; partition < partitions; partition++) {
+            Queue queue = partitionQueue(queueName(queueName, partition), queueName);
+            declarables.add(queue);
+            declarables.add(partitionBinding(queue.getName()));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * The habit.events exchange and the consistent-hash exchange behind it; the partition queues
+     * are declared by {@link #layout()}
+     */
+    public static Declarables exchanges() {
+        TopicExchange events = new TopicExchange(HabitEvents.EXCHANGE);
+        CustomExchange byUser = new CustomExchange(PARTITIONED_EXCHANGE, "x-consistent-hash", true, false,
+                Map.of("hash-header", HabitEvents.USER_HEADER));
+        return new Declarables(events, byUser, BindingBuilder.bind(byUser).to(events).with(HabitEvents.ALL));
+    }
+
+    /**
+     * Declare the partition queues and bind them. Queues that did not exist yet take users over
+     * from the others: they get a gate before they are bound, and the others a fence after.
+     *
+     * @return the partition queues added
+     */
+    public List<String> layout() {
+        Declarables exchanges = exchanges();
+        exchanges.getDeclarablesByType(Exchange.class).forEach(amqpAdmin::declareExchange);
+        exchanges.getDeclarablesByType(Binding.class).forEach(amqpAdmin::declareBinding);
+
+        List<String> existing = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            String queue = queueName(queueName, partition);
+            (amqpAdmin.getQueueInfo(queue) != null ? existing : added).add(queue);
+            amqpAdmin.declareQueue(partitionQueue(queue));
+        }
+        String fenceQueue = null;
+        if (!added.isEmpty() && !existing.isEmpty()) {
+            fenceQueue = fences.declareFenceQueue();
+            fences.gate(added, fenceQueue, existing.size());
+        }
+        for (int partition = 0; partition < partitions; partition++) {
+            amqpAdmin.declareBinding(partitionBinding(queueName(queueName, partition)));
+        }
+        if (fenceQueue != null) {
+            fences.fence(existing, fenceQueue);
+            log.info("Added habit event partitions {}; they wait for fence {} in the other {}", added, fenceQueue, existing.size());
+        }
+        return added;
+    }
+
+    public static String queueName(String queueName, int partition) {
+        return queueName + "." + partition;
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (int partition = 0; partition < partitions; partition++) {
+            registrar.registerEndpoint(endpoint(queueName(queueName, partition)), containerFactory);
+        }
+    }
+
+    /**
+     * Retire surplus partitions in the background, so startup does not wait for RabbitMQ
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void retireSurplusOnStartup() {
+        CompletableFuture.runAsync(this::retireSurplus)
+                .exceptionally(e -> {
+                    log.warn("Could not retire surplus habit event partitions: {}", e.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * Unbind the partition queues numbered from the configured count up, so they get no new
+     * events. The remaining queues get a gate first, the retired ones a fence after. Empty ones
+     * without consumers are deleted; the others are drained by this node.
+     *
+     * @return the queues retired
+     */
+    public List<String> retireSurplus() {
+        List<String> retired = new ArrayList<>();
+        for (int partition = partitions; amqpAdmin.getQueueInfo(queueName(queueName, partition)) != null; partition++) {
+            retired.add(queueName(queueName, partition));
+        }
+        if (retired.isEmpty()) {
+            return retired;
+        }
+
+        List<String> remaining = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            remaining.add(queueName(queueName, partition));
+        }
+        String fenceQueue = fences.declareFenceQueue();
+        fences.gate(remaining, fenceQueue, retired.size());
+        for (String queue : retired) {
+            amqpAdmin.removeBinding(partitionBinding(queue));
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            if (info == null || info.getMessageCount() == 0 && info.getConsumerCount() == 0) {
+                amqpAdmin.deleteQueue(queue);
+                fences.pass(fenceQueue);
+                log.info("Deleted retired habit event partition {}", queue);
+            } else {
+                fences.fence(List.of(queue), fenceQueue);
+                registry.registerListenerContainer(endpoint(queue), containerFactory, true);
+                log.info("Draining retired habit event partition {} ({} messages)", queue, info.getMessageCount());
+            }
+        }
+        return retired;
+    }
+
+    /**
+     * Listener endpoint for one partition queue
+     */
+    public SimpleRabbitListenerEndpoint endpoint(String queue) {
+        SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+        endpoint.setId("habit-events-" + queue);
+        endpoint.setQueueNames(queue);
+        endpoint.setMessageListener((ChannelAwareBatchMessageListener) (messages, channel) -> {
+            try {
+                listener.handleHabitEvents(messages, channel);
+            } catch (IOException e) {
+                throw new AmqpIOException(e);
+            }
+        });
+        return endpoint;
+    }
+
+    /**
+     * Rejected messages, the ones that cannot be read, go straight to the parking queue
+     */
+    private Queue partitionQueue(String queue) {
+        return partitionQueue(queue, queueName);
+    }
+
+    private static Queue partitionQueue(String queue, String queueName) {
+        return QueueBuilder.durable(queue)
+                .singleActiveConsumer()
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(HabitEventRetries.parkingQueue(queueName))
+                .build();
+    }
+
+    private static Binding partitionBinding(String queue) {
+        return new Binding(queue, Binding.DestinationType.QUEUE, PARTITIONED_EXCHANGE, WEIGHT, null);
+    }
+}
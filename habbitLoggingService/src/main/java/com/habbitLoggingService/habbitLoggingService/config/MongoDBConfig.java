@@ -1,9 +1,27 @@
 package com.habbitLoggingService.habbitLoggingService.config;
 
+import com.habbitLoggingService.habbitLoggingService.model.ColdCompletionHistory;
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitinfra.mongo.MongoIndexReconciler;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
 
 @Configuration
 @EnableMongoAuditing
 public class MongoDBConfig {
+
+    /**
+     * The cold completion history is written once and rarely read, so its collection is compressed with zstd
+     */
+    @Bean
+    public MongoIndexReconciler mongoIndexReconciler(MongoTemplate mongoTemplate) {
+        return new MongoIndexReconciler(mongoTemplate,
+                List.of(HabitLogs.class, HabitCompletionBucket.class, ColdCompletionHistory.class),
+                List.of(ColdCompletionHistory.class));
+    }
 }
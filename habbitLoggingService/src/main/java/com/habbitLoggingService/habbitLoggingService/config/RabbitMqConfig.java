@@ -1,45 +1,78 @@
 package com.habbitLoggingService.habbitLoggingService.config;
 
-import org.springframework.amqp.core.Binding;
-import org.springframework.amqp.core.BindingBuilder;
-import org.springframework.amqp.core.DirectExchange;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventRetries;
+import com.habbiteventcontract.HabitEventConverter;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class RabbitMqConfig {
 
-    @Value("${rabbitmq.queue.name}")
-    private String queueName;
-
-    @Value("${rabbitmq.exchange.name}")
-    private String exchange;
-
-    @Value("${rabbitmq.routing.key}")
-    private String routingKey;
+    public static final String HABIT_EVENT_CONTAINER_FACTORY = "habitEventContainerFactory";
 
+    /**
+     * The habit.events exchange and the consistent-hash exchange partitioning it by user; the
+     * partition queues are laid out by {@link HabitEventPartitions}
+     */
     @Bean
-    public Queue userQueue() {
-        return new Queue(queueName, true);
+    public Declarables habitEventTopology() {
+        return HabitEventPartitions.exchanges();
     }
 
+    /**
+     * The parking queue for habit events that keep failing
+     */
     @Bean
-    public DirectExchange userExchange() {
-        return new DirectExchange(exchange);
+    public Declarables habitEventRetryTopology(HabitEventRetries retries) {
+        return retries.topology();
     }
 
     @Bean
-    public Binding userBinding(Queue userQueue, DirectExchange userExchange) {
-        return BindingBuilder.bind(userQueue).to(userExchange).with(routingKey);
+    public MessageConverter habitEventConverter() {
+        return new HabitEventConverter();
     }
 
-    @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    /**
+     * Containers for the habit event partitions that hand the listener whole batches of
+     * messages and leave acknowledging them to it
+     */
+    @Bean(HABIT_EVENT_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory habitEventContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${habit-logs.events.batch-size:100}") int batchSize,
+            @Value("${habit-logs.events.receive-timeout-ms:200}") long receiveTimeoutMillis,
+            @Value("${habit-logs.events.prefetch:250}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        configureBatches(factory, batchSize, receiveTimeoutMillis, prefetch);
+        return factory;
+    }
+
+    /**
+     * A batch is handed over once batchSize messages arrived or receiveTimeoutMillis passed
+     * without one. The consumer keeps prefetch messages in flight, at least a full batch, so
+     * the next batch is already on its way while one is being written. Each container has
+     * exactly one consumer, so a partition's messages are handled in order; parallelism comes
+     * from the number of partitions.
+     */
+    public static void configureBatches(SimpleRabbitListenerContainerFactory factory, int batchSize,
+                                        long receiveTimeoutMillis, int prefetch) {
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeoutMillis);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
     }
 
 }
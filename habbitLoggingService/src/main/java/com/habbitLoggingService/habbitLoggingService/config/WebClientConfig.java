@@ -9,12 +9,24 @@ import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class WebClientConfig {
+
+    /**
+     * Shared by both upstream clients. Reactor's default pool allows 2 x cores connections,
+     * which caps the non-blocking endpoints at a few dozen concurrent upstream calls.
+     */
+    private final ConnectionProvider upstreamConnections = ConnectionProvider.builder("upstream")
+            .maxConnections(500)
+            .pendingAcquireMaxCount(5000)
+            .pendingAcquireTimeout(Duration.ofMillis(5000))
+            .maxIdleTime(Duration.ofSeconds(30))
+            .build();
     
     @Bean
     public WebClient.Builder webClientBuilder() {
@@ -40,7 +52,7 @@ public class WebClientConfig {
     }
     
     private HttpClient createHttpClient() {
-        return HttpClient.create()
+        return HttpClient.create(upstreamConnections)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
                 .responseTimeout(Duration.ofMillis(5000))
                 .doOnConnected(conn -> 
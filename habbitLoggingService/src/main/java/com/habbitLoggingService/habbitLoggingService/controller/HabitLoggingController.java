@@ -1,14 +1,35 @@
 package com.habbitLoggingService.habbitLoggingService.controller;
 
+import com.habbitLoggingService.habbitLoggingService.dto.AnalyticsCacheStats;
+import com.habbitLoggingService.habbitLoggingService.dto.CompletionHeatmap;
+import com.habbitLoggingService.habbitLoggingService.dto.DeadLetterStatus;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogBatchResult;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogPage;
 import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
 import com.habbitLoggingService.habbitLoggingService.dto.HabitLogResponse;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitMetadataStats;
+import com.habbitLoggingService.habbitLoggingService.dto.LeaderboardEntry;
+import com.habbitLoggingService.habbitLoggingService.dto.StreakRank;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.service.DuplicateCompletionException;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventRetries;
 import com.habbitLoggingService.habbitLoggingService.service.HabitLoggingService;
+import com.habbitLoggingService.habbitLoggingService.service.HabitMetadataSync;
+import com.habbitLoggingService.habbitLoggingService.service.IdempotencyStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -18,18 +39,37 @@ import java.util.List;
 public class HabitLoggingController {
 
     private final HabitLoggingService habitLoggingService;
+    private final HabitEventRetries habitEventRetries;
+    private final HabitMetadataSync habitMetadataSync;
+
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_BATCH_SIZE = 500;
 
     /**
      * Log a habit completion
      * POST /api/habit-logs/complete
+     *
+     * A retry with the same Idempotency-Key header is not applied again; it returns the
+     * habit's current analytics, or 409 while the first request has not created the habit yet.
      */
     @PostMapping("/complete")
-    public ResponseEntity<HabitLogResponse> logHabitCompletion(@RequestBody HabitLogRequest request) {
+    public ResponseEntity<HabitLogResponse> logHabitCompletion(
+            @RequestBody HabitLogRequest request,
+            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
         log.info("Received habit completion request for user: {}", request.getUserId());
         
         try {
-            HabitLogResponse response = habitLoggingService.logHabitCompletion(request);
+            HabitLogResponse response = habitLoggingService.logHabitCompletion(request,
+                    idempotencyKey != null ? IdempotencyStore.restKey(request.getUserId(), idempotencyKey) : null);
             return ResponseEntity.ok(response);
+        } catch (DuplicateCompletionException e) {
+            log.info("Replayed habit completion request: {}", e.getMessage());
+            try {
+                return ResponseEntity.ok(habitLoggingService.getHabitAnalytics(request.getUserId(), request.getHabitId()));
+            } catch (RuntimeException notCreatedYet) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
         } catch (RuntimeException e) {
             log.error("Error logging habit completion: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
@@ -37,16 +77,57 @@ public class HabitLoggingController {
     }
 
     /**
-     * Get all habit analytics for a user
-     * GET /api/habit-logs/user/{userId}
+     * Log a batch of habit completions, e.g. replayed by an offline client
+     * POST /api/habit-logs/complete/batch
+     *
+     * Returns one result per entry, in request order.
+     */
+    @PostMapping("/complete/batch")
+    public ResponseEntity<List<HabitLogBatchResult>> logHabitCompletions(@RequestBody List<HabitLogRequest> requests) {
+        log.info("Received batch of {} habit completions", requests.size());
+
+        if (requests.isEmpty() || requests.size() > MAX_BATCH_SIZE) {
+            log.error("Batch size {} outside 1..{}", requests.size(), MAX_BATCH_SIZE);
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            return ResponseEntity.ok(habitLoggingService.logHabitCompletions(requests));
+        } catch (RuntimeException e) {
+            log.error("Error logging habit completion batch: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Get habit analytics for a user, one page at a time
+     * GET /api/habit-logs/user/{userId}?fields=summary|full&status=ACTIVE&cursor=...&limit=50
+     *
+     * The summary (default) leaves out completionLog. The cursor for the next page
+     * is returned in the X-Next-Cursor header, which is absent on the last page.
      */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<HabitLogResponse>> getUserHabitAnalytics(@PathVariable String userId) {
+    public ResponseEntity<List<HabitLogResponse>> getUserHabitAnalytics(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "summary") String fields,
+            @RequestParam(required = false) HabitStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
         log.info("Getting habit analytics for user: {}", userId);
+
+        if (!"summary".equalsIgnoreCase(fields) && !"full".equalsIgnoreCase(fields)) {
+            log.error("Unknown fields selection: {}", fields);
+            return ResponseEntity.badRequest().build();
+        }
         
         try {
-            List<HabitLogResponse> analytics = habitLoggingService.getUserHabitAnalytics(userId);
-            return ResponseEntity.ok(analytics);
+            HabitLogPage page = habitLoggingService.getUserHabitAnalytics(
+                    userId, status, cursor, limit, "full".equalsIgnoreCase(fields));
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getItems());
         } catch (RuntimeException e) {
             log.error("Error getting user analytics: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
@@ -72,6 +153,157 @@ public class HabitLoggingController {
         }
     }
 
+    /**
+     * Habits completed per day of a year, for a calendar heatmap
+     * GET /api/habit-logs/user/{userId}/heatmap?year=2025
+     */
+    @GetMapping("/user/{userId}/heatmap")
+    public ResponseEntity<CompletionHeatmap> getCompletionHeatmap(
+            @PathVariable String userId,
+            @RequestParam(required = false) Integer year) {
+        try {
+            CompletionHeatmap heatmap = habitLoggingService.getCompletionHeatmap(userId,
+                    year != null ? year : LocalDate.now().getYear());
+            // Clients revalidate on every use and get a 304 while the counts are unchanged
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .eTag(heatmapETag(heatmap))
+                    .body(heatmap);
+        } catch (RuntimeException e) {
+            log.error("Error getting completion heatmap: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * MD5 of the year, habit count and day counts, so two heatmaps share a tag only when their bodies match
+     */
+    private static String heatmapETag(CompletionHeatmap heatmap) {
+        ByteBuffer content = ByteBuffer.allocate(Integer.BYTES * (2 + heatmap.getCounts().length));
+        content.putInt(heatmap.getYear()).putInt(heatmap.getHabits());
+        content.asIntBuffer().put(heatmap.getCounts());
+        return "\"" + DigestUtils.md5DigestAsHex(content.array()) + "\"";
+    }
+
+    /**
+     * Where a habit's current streak ranks globally and among habits with the same title
+     * GET /api/habit-logs/user/{userId}/habit/{habitId}/rank
+     */
+    @GetMapping("/user/{userId}/habit/{habitId}/rank")
+    public ResponseEntity<StreakRank> getStreakRank(
+            @PathVariable String userId,
+            @PathVariable String habitId) {
+        try {
+            return ResponseEntity.ok(habitLoggingService.getStreakRank(userId, habitId));
+        } catch (RuntimeException e) {
+            log.error("Error getting streak rank: {}", e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Longest current streaks, optionally only among habits with the given title
+     * GET /api/habit-logs/leaderboard?title=...&limit=100
+     */
+    @GetMapping("/leaderboard")
+    public ResponseEntity<List<LeaderboardEntry>> getLeaderboard(
+            @RequestParam(required = false) String title,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(habitLoggingService.getLeaderboard(title, limit));
+    }
+
+    /**
+     * Get the user's habits completed at least once in a time range
+     * GET /api/habit-logs/user/{userId}/completed?from=...&to=...
+     */
+    @GetMapping("/user/{userId}/completed")
+    public ResponseEntity<List<HabitLogResponse>> getHabitsCompletedBetween(
+            @PathVariable String userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        log.info("Getting habits of user: {} completed between {} and {}", userId, from, to);
+
+        try {
+            List<HabitLogResponse> habits = habitLoggingService.getHabitsCompletedBetween(userId, from, to);
+            return ResponseEntity.ok(habits);
+        } catch (RuntimeException e) {
+            log.error("Error getting completed habits: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Live streak deltas for a user's habits over Server-Sent Events
+     * GET /api/habit-logs/user/{userId}/stream
+     */
+    @GetMapping(value = "/user/{userId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamUserHabits(@PathVariable String userId) {
+        log.info("Opening live analytics stream for user: {}", userId);
+
+        try {
+            return ResponseEntity.ok(habitLoggingService.subscribeToUpdates(userId));
+        } catch (IllegalStateException e) {
+            log.warn("Rejecting live analytics stream: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (RuntimeException e) {
+            log.error("Error opening live analytics stream: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Analytics cache hit rate and eviction counters
+     * GET /api/habit-logs/cache/stats
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<AnalyticsCacheStats> getAnalyticsCacheStats() {
+        return ResponseEntity.ok(habitLoggingService.getAnalyticsCacheStats());
+    }
+
+    /**
+     * Size and freshness of the habit metadata replica on this node
+     * GET /api/habit-logs/metadata/stats
+     */
+    @GetMapping("/metadata/stats")
+    public ResponseEntity<HabitMetadataStats> getHabitMetadataStats() {
+        return ResponseEntity.ok(habitMetadataSync.stats());
+    }
+
+    /**
+     * Parked habit events and replay progress
+     * GET /api/habit-logs/events/parked
+     */
+    @GetMapping("/events/parked")
+    public ResponseEntity<DeadLetterStatus> getParkedEvents() {
+        try {
+            return ResponseEntity.ok(habitEventRetries.status());
+        } catch (RuntimeException e) {
+            log.error("Error reading parked habit events: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * Replay parked habit events into their partitions, in rate-limited batches
+     * POST /api/habit-logs/events/parked/replay?limit=1000
+     *
+     * Without a limit, the events parked when the replay starts are replayed. Returns 202 while
+     * the replay runs in the background, or 409 if one is already running.
+     */
+    @PostMapping("/events/parked/replay")
+    public ResponseEntity<DeadLetterStatus> replayParkedEvents(@RequestParam(required = false) Integer limit) {
+        try {
+            int count = limit != null ? limit : (int) habitEventRetries.status().getParked();
+            log.info("Replaying up to {} parked habit events", count);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(habitEventRetries.replay(count));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RuntimeException e) {
+            log.error("Error replaying parked habit events: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
     /**
      * Health check endpoint
      * GET /api/habit-logs/health
@@ -0,0 +1,113 @@
+package com.habbitLoggingService.habbitLoggingService.controller;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogResponse;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.service.DuplicateCompletionException;
+import com.habbitLoggingService.habbitLoggingService.service.IdempotencyStore;
+import com.habbitLoggingService.habbitLoggingService.service.ReactiveHabitLoggingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking versions of the completion and analytics endpoints.
+ *
+ * Handlers return a Mono. This is still the servlet stack: Spring MVC subscribes, starts async
+ * processing and hands the request thread back to the container, while the upstream services and
+ * Mongo respond. The connection stays open as a parked async request until the Mono completes
+ * and the response is written, for at most spring.mvc.async.request-timeout.
+ */
+@RestController
+@RequestMapping("/api/v2/habit-logs")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveHabitLoggingController {
+
+    private final ReactiveHabitLoggingService reactiveHabitLoggingService;
+
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    /**
+     * Log a habit completion
+     * POST /api/v2/habit-logs/complete
+     *
+     * Idempotency-Key is handled as on /api/habit-logs/complete.
+     */
+    @PostMapping("/complete")
+    public Mono<ResponseEntity<HabitLogResponse>> logHabitCompletion(
+            @RequestBody HabitLogRequest request,
+            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        log.info("Received habit completion request for user: {}", request.getUserId());
+
+        return reactiveHabitLoggingService.logHabitCompletion(request,
+                        idempotencyKey != null ? IdempotencyStore.restKey(request.getUserId(), idempotencyKey) : null)
+                .map(ResponseEntity::ok)
+                .onErrorResume(DuplicateCompletionException.class, e -> {
+                    log.info("Replayed habit completion request: {}", e.getMessage());
+                    return reactiveHabitLoggingService.getHabitAnalytics(request.getUserId(), request.getHabitId())
+                            .map(ResponseEntity::ok)
+                            .onErrorReturn(ResponseEntity.status(HttpStatus.CONFLICT).build());
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    log.error("Error logging habit completion: {}", e.getMessage());
+                    return Mono.just(ResponseEntity.badRequest().build());
+                });
+    }
+
+    /**
+     * Get habit analytics for a user, one page at a time
+     * GET /api/v2/habit-logs/user/{userId}?fields=summary|full&status=ACTIVE&cursor=...&limit=50
+     */
+    @GetMapping("/user/{userId}")
+    public Mono<ResponseEntity<List<HabitLogResponse>>> getUserHabitAnalytics(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "summary") String fields,
+            @RequestParam(required = false) HabitStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        log.info("Getting habit analytics for user: {}", userId);
+
+        if (!"summary".equalsIgnoreCase(fields) && !"full".equalsIgnoreCase(fields)) {
+            log.error("Unknown fields selection: {}", fields);
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        return reactiveHabitLoggingService.getUserHabitAnalytics(userId, status, cursor, limit, "full".equalsIgnoreCase(fields))
+                .map(page -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (page.getNextCursor() != null) {
+                        response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+                    }
+                    return response.body(page.getItems());
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    log.error("Error getting user analytics: {}", e.getMessage());
+                    return Mono.just(ResponseEntity.badRequest().build());
+                });
+    }
+
+    /**
+     * Get specific habit analytics
+     * GET /api/v2/habit-logs/user/{userId}/habit/{habitId}
+     */
+    @GetMapping("/user/{userId}/habit/{habitId}")
+    public Mono<ResponseEntity<HabitLogResponse>> getHabitAnalytics(
+            @PathVariable String userId,
+            @PathVariable String habitId) {
+        log.info("Getting analytics for habit: {} of user: {}", habitId, userId);
+
+        return reactiveHabitLoggingService.getHabitAnalytics(userId, habitId)
+                .map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, e -> {
+                    log.error("Error getting habit analytics: {}", e.getMessage());
+                    return Mono.just(ResponseEntity.notFound().build());
+                });
+    }
+}
@@ -0,0 +1,18 @@
+package com.habbitLoggingService.habbitLoggingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AnalyticsCacheStats {
+    private long size;
+    private long requestCount;
+    private long hitCount;
+    private double hitRate;
+    private long loadCount;
+    private double averageLoadMillis;
+    private long evictionCount;
+}
@@ -0,0 +1,18 @@
+package com.habbitLoggingService.habbitLoggingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of a user's habits completed on each day of one year; counts[0] is January 1st
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CompletionHeatmap {
+    private int year;
+    private int habits;
+    private int maxCount;
+    private int[] counts;
+}
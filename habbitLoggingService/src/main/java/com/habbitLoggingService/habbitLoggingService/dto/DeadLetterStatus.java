@@ -0,0 +1,21 @@
+package com.habbitLoggingService.habbitLoggingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Parked habit events and the progress of replaying them
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeadLetterStatus {
+    private long parked; // Messages waiting in the parking queue
+    private boolean replaying;
+    private long replayed; // Messages replayed since startup
+    private long skipped; // Messages replays left parked since startup, having no user to route them by
+    private LocalDateTime lastReplayAt;
+}
@@ -0,0 +1,19 @@
+package com.habbitLoggingService.habbitLoggingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one entry of a batch completion request
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HabitLogBatchResult {
+    private int index; // Position of the entry in the request
+    private String habitId;
+    private String status; // COMPLETED, FAILED, or DUPLICATE for an idempotency key used before
+    private String error;
+    private HabitLogResponse habitLog; // Habit log after the whole batch, without history
+}
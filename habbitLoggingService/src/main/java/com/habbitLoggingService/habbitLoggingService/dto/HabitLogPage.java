@@ -0,0 +1,15 @@
+package com.habbitLoggingService.habbitLoggingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HabitLogPage {
+    private List<HabitLogResponse> items;
+    private String nextCursor; // Habit ID to continue after, null on the last page
+}
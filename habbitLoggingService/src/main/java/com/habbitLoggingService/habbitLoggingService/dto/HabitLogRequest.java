@@ -10,4 +10,5 @@ public class HabitLogRequest {
     private String userId;  // User who owns the habit
     private LocalDateTime completionTime; // When the habit was completed
     private String notes; // Optional notes about completion
+    private String source; // Optional client kind recorded in the activity journal: WEB, MOBILE, API
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.habbitLoggingService.habbitLoggingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Freshness of the habit metadata replica on this node
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HabitMetadataStats {
+    private long habits; // Habits copied, deleted ones included
+    private long misses; // Completions that found no copy since startup
+    private LocalDateTime lastEventAt;
+    private long lastEventLagMillis; // From the change upstream to the copy, for the last event
+    private long maxEventLagMillis;
+    private LocalDateTime lastSyncAt; // Null until the first sync completed
+    private long lastSyncMillis;
+    private long lastSyncHabits;
+    private long lastSyncChanged;
+    private long resyncMinutes; // Changes whose events were lost are copied within this
+}
@@ -0,0 +1,18 @@
+package com.habbitLoggingService.habbitLoggingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Delta pushed to live analytics subscribers after a habit log changes
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HabitStreakUpdate {
+    private String habitId;
+    private int streak;
+    private int longestStreak;
+    private int totalCompletions;
+}
@@ -0,0 +1,19 @@
+package com.habbitLoggingService.habbitLoggingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One habit on a streak leaderboard. Habits with the same streak share a rank.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LeaderboardEntry {
+    private int rank;
+    private String habitId;
+    private String userId;
+    private String title;
+    private int streak;
+}
@@ -0,0 +1,21 @@
+package com.habbitLoggingService.habbitLoggingService.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Position of one habit's current streak among all habits and among habits with the same title
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StreakRank {
+    private String habitId;
+    private String title;
+    private int streak;
+    private int globalRank;
+    private int globalTotal;
+    private int titleRank;
+    private int titleTotal;
+}
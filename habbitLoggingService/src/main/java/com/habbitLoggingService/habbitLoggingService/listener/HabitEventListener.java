@@ -1,13 +1,33 @@
 package com.habbitLoggingService.habbitLoggingService.listener;
 
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogBatchResult;
 import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.model.ActivityType;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventFences;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventRetries;
 import com.habbitLoggingService.habbitLoggingService.service.HabitLoggingService;
+import com.habbitLoggingService.habbitLoggingService.service.HabitMetadataSync;
+import com.habbitLoggingService.habbitLoggingService.service.IdempotencyStore;
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventType;
+import com.rabbitmq.client.Channel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @RequiredArgsConstructor
@@ -15,75 +35,238 @@ import java.time.LocalDateTime;
 public class HabitEventListener {
 
     private final HabitLoggingService habitLoggingService;
+    private final MessageConverter messageConverter;
+    private final HabitEventRetries habitEventRetries;
+    private final HabitMetadataSync habitMetadataSync;
+    private final HabitEventFences habitEventFences;
 
     /**
-     * Listen for habit completion events from other services
+     * Handle a batch of habit events from one partition queue
+     *
+     * Completions are collected and logged with one bulk call, flushed before any other event so
+     * the events of a habit keep their order. An event that fails, including every completion of
+     * a bulk call that threw, e.g. with MongoDB unavailable, is retried here after a backoff; the
+     * user's later events are held back until it succeeds, while other users' events carry on.
+     * The partition waits meanwhile. Events that still fail after the last retry are parked, and
+     * the user's held events go on. Messages that cannot be read are rejected, which parks them.
+     * Fences and gates of a partition-count change are passed once every event before them was
+     * handled. The batch is acked once all of it was handled or parked; if the parked events could
+     * not be published, or the consumer is stopped while waiting, it is requeued. Completions
+     * carrying an AMQP message id are applied once per id, so redeliveries are dropped.
      */
-    @RabbitListener(queues = "${rabbitmq.queue.name}")
-    public void handleHabitEvent(HabitEventMessage message) {
-        log.info("Received habit event: {} for user: {}", message.getEventType(), message.getUserId());
-        
+    public void handleHabitEvents(List<Message> messages, Channel channel) throws IOException {
+        log.debug("Received batch of {} habit events", messages.size());
+
+        long ackTag = -1;
+        List<Delivery> deliveries = new ArrayList<>();
+        try {
+            for (Message message : messages) {
+                long deliveryTag = message.getMessageProperties().getDeliveryTag();
+                if (HabitEventFences.isMarker(message)) {
+                    handleWithRetries(deliveries);
+                    deliveries.clear();
+                    ackTag = deliveryTag;
+                    habitEventFences.reached(message);
+                    continue;
+                }
+                HabitEvent event = convert(message);
+                if (event == null) {
+                    channel.basicReject(deliveryTag, false);
+                    continue;
+                }
+                ackTag = deliveryTag;
+                deliveries.add(new Delivery(deliveries.size(), message, event));
+            }
+            handleWithRetries(deliveries);
+        } catch (AmqpException e) {
+            log.error("Could not park habit events or pass a fence, requeueing the batch: {}", e.getMessage());
+            requeue(channel, ackTag);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Stopped while retrying habit events, requeueing the batch");
+            requeue(channel, ackTag);
+            return;
+        }
+        if (ackTag >= 0) {
+            channel.basicAck(ackTag, true);
+        }
+    }
+
+    /**
+     * Handle the deliveries, retrying failed ones with backoff until they succeed or run out of
+     * retries and are parked
+     */
+    private void handleWithRetries(List<Delivery> deliveries) throws InterruptedException {
+        List<Delivery> waiting = deliveries;
+        while (!waiting.isEmpty()) {
+            Round round = handleOnce(waiting);
+            List<Delivery> exhausted = round.failed().stream()
+                    .filter(delivery -> HabitEventRetries.attempt(delivery.message()) > habitEventRetries.attempts())
+                    .toList();
+            habitEventRetries.park(exhausted.stream().map(Delivery::message).toList());
+            waiting = round.waiting().stream().filter(delivery -> !exhausted.contains(delivery)).toList();
+            OptionalInt nextAttempt = round.failed().stream()
+                    .filter(delivery -> !exhausted.contains(delivery))
+                    .mapToInt(delivery -> HabitEventRetries.attempt(delivery.message()))
+                    .min();
+            if (nextAttempt.isPresent()) {
+                TimeUnit.MILLISECONDS.sleep(habitEventRetries.delayMillis(nextAttempt.getAsInt()));
+            }
+        }
+    }
+
+    /**
+     * One pass over the deliveries. Once an event of a user fails, the user's later events are
+     * held back; completions logged in the same bulk call as a failed one are not, as completions
+     * count the same in any order.
+     *
+     * @return the events that failed, and those plus the held ones in their original order
+     */
+    private Round handleOnce(List<Delivery> deliveries) {
+        Set<String> held = new HashSet<>();
+        List<Delivery> failed = new ArrayList<>();
+        List<Delivery> waiting = new ArrayList<>();
+        List<Delivery> completions = new ArrayList<>();
+        for (Delivery delivery : deliveries) {
+            HabitEvent event = delivery.event();
+            if (held.contains(event.userId())) {
+                waiting.add(delivery);
+                continue;
+            }
+            if (event.type() == HabitEventType.COMPLETED) {
+                completions.add(delivery);
+                continue;
+            }
+            logCompletions(completions, held, failed, waiting);
+            if (held.contains(event.userId())) {
+                waiting.add(delivery);
+                continue;
+            }
+            try {
+                handleHabitEvent(event);
+            } catch (RuntimeException e) {
+                log.warn("Error processing habit event {}, retrying it: {}", event.type(), e.getMessage());
+                fail(delivery, e.getMessage(), held, failed, waiting);
+            }
+        }
+        logCompletions(completions, held, failed, waiting);
+        waiting.sort(Comparator.comparingInt(Delivery::index));
+        return new Round(failed, waiting);
+    }
+
+    private void handleHabitEvent(HabitEvent event) {
+        log.info("Received habit event: {} for user: {}", event.type(), event.userId());
+
+        switch (event.type()) {
+            case CREATED:
+                log.info("Habit created: {} for user: {}", event.habitId(), event.userId());
+                habitMetadataSync.onHabitChanged(event);
+                break;
+            case UPDATED:
+                log.info("Habit updated: {} for user: {}", event.habitId(), event.userId());
+                habitMetadataSync.onHabitChanged(event);
+                habitLoggingService.invalidateAnalytics(event.userId());
+                habitLoggingService.recordHabitChange(event.habitId(), event.userId(),
+                        ActivityType.UPDATED, event.occurredAt());
+                break;
+            case DELETED:
+                log.info("Habit deleted: {} for user: {}", event.habitId(), event.userId());
+                habitMetadataSync.onHabitDeleted(event);
+                habitLoggingService.invalidateAnalytics(event.userId());
+                habitLoggingService.removeFromLeaderboard(event.habitId());
+                habitLoggingService.recordHabitChange(event.habitId(), event.userId(),
+                        ActivityType.DELETED, event.occurredAt());
+                break;
+            default:
+                log.warn("Unexpected event type: {}", event.type());
+        }
+    }
+
+    /**
+     * Log the collected completions with one bulk call and clear them; entries that failed, or
+     * all entries when the call threw, fail
+     */
+    private void logCompletions(List<Delivery> completions, Set<String> held, List<Delivery> failed, List<Delivery> waiting) {
+        if (completions.isEmpty()) {
+            return;
+        }
+        List<HabitLogRequest> requests = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (Delivery delivery : completions) {
+            String messageId = delivery.message().getMessageProperties().getMessageId();
+            requests.add(completionRequest(delivery.event()));
+            keys.add(messageId != null ? IdempotencyStore.eventKey(messageId) : null);
+        }
         try {
-            switch (message.getEventType()) {
-                case "HABIT_COMPLETED":
-                    handleHabitCompletion(message);
-                    break;
-                case "HABIT_CREATED":
-                    log.info("Habit created: {} for user: {}", message.getHabitId(), message.getUserId());
-                    // You can initialize analytics here if needed
-                    break;
-                case "HABIT_UPDATED":
-                    log.info("Habit updated: {} for user: {}", message.getHabitId(), message.getUserId());
-                    // Update analytics if needed
-                    break;
-                case "HABIT_DELETED":
-                    log.info("Habit deleted: {} for user: {}", message.getHabitId(), message.getUserId());
-                    // Archive or delete analytics if needed
-                    break;
-                default:
-                    log.warn("Unknown event type: {}", message.getEventType());
+            int completed = 0;
+            for (HabitLogBatchResult result : habitLoggingService.logHabitCompletions(requests, keys)) {
+                switch (result.getStatus()) {
+                    case "COMPLETED" -> completed++;
+                    case "DUPLICATE" -> log.info("Dropping redelivered habit completion: {}", result.getError());
+                    default -> {
+                        log.warn("Error logging habit completion for habit {}, retrying it: {}",
+                                result.getHabitId(), result.getError());
+                        fail(completions.get(result.getIndex()), result.getError(), held, failed, waiting);
+                    }
+                }
             }
-        } catch (Exception e) {
-            log.error("Error processing habit event: {}", e.getMessage(), e);
+            log.info("Logged {} of {} habit completions from events", completed, completions.size());
+        } catch (RuntimeException e) {
+            log.warn("Error logging {} habit completions, retrying them: {}", completions.size(), e.getMessage());
+            completions.forEach(delivery -> fail(delivery, e.getMessage(), held, failed, waiting));
+        }
+        completions.clear();
+    }
+
+    private static void fail(Delivery delivery, String reason, Set<String> held, List<Delivery> failed, List<Delivery> waiting) {
+        MessageProperties properties = delivery.message().getMessageProperties();
+        properties.setHeader(HabitEventRetries.REASON_HEADER, reason);
+        properties.setHeader(HabitEventRetries.ATTEMPT_HEADER, HabitEventRetries.attempt(delivery.message()) + 1);
+        held.add(delivery.event().userId());
+        failed.add(delivery);
+        waiting.add(delivery);
+    }
+
+    private static void requeue(Channel channel, long ackTag) throws IOException {
+        if (ackTag >= 0) {
+            channel.basicNack(ackTag, true, true);
         }
     }
 
-    private void handleHabitCompletion(HabitEventMessage message) {
+    private HabitLogRequest completionRequest(HabitEvent event) {
         HabitLogRequest request = new HabitLogRequest();
-        request.setHabitId(message.getHabitId());
-        request.setUserId(message.getUserId());
-        request.setCompletionTime(message.getTimestamp() != null ? message.getTimestamp() : LocalDateTime.now());
-        request.setNotes(message.getNotes());
-        
-        habitLoggingService.logHabitCompletion(request);
-        log.info("Successfully logged habit completion for habit: {} user: {}", 
-                message.getHabitId(), message.getUserId());
+        request.setHabitId(event.habitId());
+        request.setUserId(event.userId());
+        request.setCompletionTime(event.occurredAt() != null ? event.occurredAt() : LocalDateTime.now());
+        request.setNotes(event.notes());
+        request.setSource("EVENT");
+        return request;
     }
 
     /**
-     * Message structure for habit events
+     * Read the message as a habit event, in whichever encoding its content type names; null for a
+     * message that cannot be read
      */
-    public static class HabitEventMessage {
-        private String eventType;
-        private String habitId;
-        private String userId;
-        private LocalDateTime timestamp;
-        private String notes;
-
-        // Getters and setters
-        public String getEventType() { return eventType; }
-        public void setEventType(String eventType) { this.eventType = eventType; }
-        
-        public String getHabitId() { return habitId; }
-        public void setHabitId(String habitId) { this.habitId = habitId; }
-        
-        public String getUserId() { return userId; }
-        public void setUserId(String userId) { this.userId = userId; }
-        
-        public LocalDateTime getTimestamp() { return timestamp; }
-        public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
-        
-        public String getNotes() { return notes; }
-        public void setNotes(String notes) { this.notes = notes; }
+    private HabitEvent convert(Message message) {
+        try {
+            HabitEvent event = (HabitEvent) messageConverter.fromMessage(message);
+            if (event.type() != null) {
+                return event;
+            }
+            log.warn("Parking habit event without an event type: {}", message.getMessageProperties().getMessageId());
+        } catch (RuntimeException e) {
+            log.error("Parking unreadable habit event {}: {}", message.getMessageProperties().getMessageId(), e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * A readable event of the batch, at its position among them
+     */
+    private record Delivery(int index, Message message, HabitEvent event) {
+    }
+
+    private record Round(List<Delivery> failed, List<Delivery> waiting) {
     }
-}
\ No newline at end of file
+}
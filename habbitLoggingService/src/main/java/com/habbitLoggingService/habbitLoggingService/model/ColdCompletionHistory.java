@@ -0,0 +1,28 @@
+package com.habbitLoggingService.habbitLoggingService.model;
+
+import org.springframework.data.annotation.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * One month of a habit's completions moved out of habit_completion_buckets into the cold tier.
+ * The collection is created with zstd block compression.
+ */
+@Data
+@Document(collection = "habit_completion_history_cold")
+@CompoundIndex(name = "habitId_month", def = "{'habitId': 1, 'month': 1}")
+@NoArgsConstructor
+@AllArgsConstructor
+public class ColdCompletionHistory {
+
+    @Id
+    private String id; // habitId:yyyy-MM, the ID of the bucket it came from
+    private String habitId;
+    private String userId;
+    private String month; // yyyy-MM
+    private int count;
+    private byte[] completions; // Sorted completion times packed by PackedCompletions
+}
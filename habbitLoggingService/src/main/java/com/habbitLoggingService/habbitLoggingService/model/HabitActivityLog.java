@@ -5,14 +5,16 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
 import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
 
 import java.time.LocalDateTime;
 
 @Data
 @Builder
-@Document(collection = "habit_activity_logs")
+// Native time-series collection; MongoDB buckets the records of one habit by completedAt
+@TimeSeries(collection = "habit_activity_logs", timeField = "completedAt", metaField = "meta", granularity = Granularity.HOURS)
 @NoArgsConstructor
 @AllArgsConstructor
 public class HabitActivityLog {
@@ -20,18 +22,25 @@ public class HabitActivityLog {
     @Id
     private String id;
     
-    private String habitId;        // Reference to habit in activity service
-    private String userId;
+    private Meta meta;                 // Time-series metadata: which habit of which user
     
     @CreatedDate
     private LocalDateTime loggedAt;
     
-    private LocalDateTime completedAt;  // When the habit was actually completed
-    private ActivityType activityType;  // COMPLETED, MISSED, RESET, SKIPPED
+    private LocalDateTime completedAt;  // When the habit was actually completed, or when the change happened
+    private ActivityType activityType;  // COMPLETED, MISSED, SKIPPED, UPDATED, DELETED
     private String notes;              // Optional user notes
-    private String source;             // WEB, MOBILE, API
+    private String source;             // WEB, MOBILE, API, EVENT
     
     // Metadata for analytics
-    private boolean isOnTime;          // Was it completed on the expected day?
+    private Boolean isOnTime;          // Was it completed on the expected day? Null when that is unknown
     private int daysSinceLastCompletion;
-}
\ No newline at end of file
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Meta {
+        private String habitId;        // Reference to habit in activity service
+        private String userId;
+    }
+}
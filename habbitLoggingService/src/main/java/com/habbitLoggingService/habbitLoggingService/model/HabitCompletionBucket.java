@@ -0,0 +1,35 @@
+package com.habbitLoggingService.habbitLoggingService.model;
+
+import org.springframework.data.annotation.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+@Data
+@Document(collection = "habit_completion_buckets")
+@CompoundIndex(name = "habitId_month", def = "{'habitId': 1, 'month': 1}")
+// Finds the buckets that are older than the tiering horizon
+@CompoundIndex(name = "month", def = "{'month': 1}")
+@NoArgsConstructor
+@AllArgsConstructor
+public class HabitCompletionBucket {
+
+    @Id
+    private String id; // habitId:yyyy-MM
+    private String habitId;
+    private String userId;
+    private String month; // yyyy-MM, sorts in calendar order
+    private List<LocalDateTime> completions; // Completions logged in this month
+    private int count;
+    private boolean legacyMigrated; // Holds the month's completions moved from the habit log's embedded completionLog
+
+    public static String idOf(String habitId, YearMonth month) {
+        return habitId + ":" + month;
+    }
+}
@@ -1,9 +1,11 @@
 package com.habbitLoggingService.habbitLoggingService.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -11,6 +13,15 @@ import java.util.List;
 
 @Data
 @Document(collection = "habit_logs")
+// userId_id also serves findByUserId; userId_completionLog serves the legacy completion range query
+@CompoundIndex(name = "userId_id", def = "{'userId': 1, '_id': 1}")
+@CompoundIndex(name = "userId_status_id", def = "{'userId': 1, 'status': 1, '_id': 1}")
+@CompoundIndex(name = "userId_streak", def = "{'userId': 1, 'streak': 1}")
+@CompoundIndex(name = "userId_completionLog", def = "{'userId': 1, 'completionLog': 1}")
+// Only habits still showing a streak, which is all the streak decay sweep looks at
+@CompoundIndex(name = "lastCompletionDay_liveStreak", def = "{'lastCompletionDay': 1}", partialFilter = "{'streak': {'$gt': 0}}")
+// Finds archived habits whose history has not been moved to the cold tier yet
+@CompoundIndex(name = "status_coldBefore", def = "{'status': 1, 'coldBefore': 1}")
 @NoArgsConstructor
 @AllArgsConstructor
 public class HabitLogs {
@@ -26,8 +37,16 @@ public class HabitLogs {
     private LocalDateTime updatedAt;
     private int streak;
     private int longestStreak;
-    private List<LocalDateTime> completionLog; // When habit was completed
+    private Long currentRunStartDay; // Epoch day the current run of consecutive completions started
+    private Long lastCompletionDay; // Epoch day of the latest completion, end of the current run
+    private List<LocalDateTime> completionLog; // Legacy embedded history, moved into habit_completion_buckets
+    private int totalCompletions; // Completions stored in habit_completion_buckets
+    private byte[] completionDays; // One bit per day since completionDaysOrigin, stored as BinData
+    private Long completionDaysOrigin; // Epoch day of bit 0 in completionDays
+    private String coldBefore; // yyyy-MM; completions of earlier months may be in habit_completion_history_cold
     private LocalDateTime lastCompletionDate; // Last time habit was completed
     private int targetCount; // How many times per period (e.g., 3 for "3 times per week")
     private HabitStatus status;
+    @Version
+    private Long version; // Raised by every write; read-modify-write updates are guarded by it
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.habbitLoggingService.habbitLoggingService.model;
+
+import org.springframework.data.annotation.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Local copy of a habit's details as the activity service holds them, kept up to date from habit
+ * events and a periodic sync. A deleted habit stays as a tombstone, so a late update cannot bring
+ * it back.
+ */
+@Data
+@Document(collection = "habit_metadata")
+@NoArgsConstructor
+@AllArgsConstructor
+public class HabitMetadata {
+
+    @Id
+    private String id; // Habit ID in the activity service
+    private String userId;
+    private String title;
+    private String description;
+    private String frequency;
+    private List<String> days;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt; // As set by the activity or editing service; newer copies win
+    private boolean deleted;
+    private LocalDateTime syncedAt; // When this node last wrote the copy
+}
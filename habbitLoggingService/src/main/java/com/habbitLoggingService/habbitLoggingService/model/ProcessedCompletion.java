@@ -0,0 +1,39 @@
+package com.habbitLoggingService.habbitLoggingService.model;
+
+import org.springframework.data.annotation.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Idempotency key of a completion, claimed before the completion is written and marked applied
+ * after it. Removed by a TTL index on createdAt.
+ */
+@Data
+@Document(collection = "processed_completions")
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedCompletion {
+
+    public enum State {
+        CLAIMED, // a request is writing the completion, or died while doing so
+        APPLIED
+    }
+
+    @Id
+    private String id; // rest:<userId>:<Idempotency-Key> or event:<message id>
+    private String habitId;
+    private String userId;
+    private State state;
+    private LocalDateTime createdAt; // when the key was last claimed
+
+    /**
+     * Keys written before claims had a state were only kept for applied completions
+     */
+    public boolean isApplied() {
+        return state != State.CLAIMED;
+    }
+}
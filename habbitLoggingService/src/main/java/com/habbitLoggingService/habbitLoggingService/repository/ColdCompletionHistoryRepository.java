@@ -0,0 +1,19 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.model.ColdCompletionHistory;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ColdCompletionHistoryRepository extends MongoRepository<ColdCompletionHistory, String> {
+
+    // All cold months of a habit in calendar order
+    List<ColdCompletionHistory> findByHabitIdOrderByMonthAsc(String habitId);
+
+    // Cold months of a habit for an inclusive month range
+    @Query(value = "{'habitId': ?0, 'month': {$gte: ?1, $lte: ?2}}", sort = "{'month': 1}")
+    List<ColdCompletionHistory> findByHabitIdAndMonthRange(String habitId, String fromMonth, String toMonth);
+}
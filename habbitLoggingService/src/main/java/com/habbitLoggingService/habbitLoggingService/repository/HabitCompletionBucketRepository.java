@@ -0,0 +1,19 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface HabitCompletionBucketRepository extends MongoRepository<HabitCompletionBucket, String> {
+
+    // All buckets of a habit in calendar order
+    List<HabitCompletionBucket> findByHabitIdOrderByMonthAsc(String habitId);
+
+    // Buckets of a habit for an inclusive month range
+    @Query(value = "{'habitId': ?0, 'month': {$gte: ?1, $lte: ?2}}", sort = "{'month': 1}")
+    List<HabitCompletionBucket> findByHabitIdAndMonthRange(String habitId, String fromMonth, String toMonth);
+}
@@ -0,0 +1,210 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Queries and updates on habit_logs shared by the blocking and the reactive repository
+ */
+final class HabitLogQueries {
+
+    private HabitLogQueries() {
+    }
+
+    /**
+     * Matches the habit log when an in-order completion on the given day can be applied
+     * server-side, and only while its completion bitmap still holds the bytes it was read with
+     */
+    static Query inOrderCompletion(String habitId, String userId, LocalDateTime completionTime, byte[] expectedDays) {
+        return summaryQuery(where("_id").is(habitId)
+                .and("userId").is(userId)
+                .and("completionLog").exists(false)
+                .and("lastCompletionDay").lte(completionTime.toLocalDate().toEpochDay())
+                .and("completionDays").is(expectedDays));
+    }
+
+    /**
+     * Pipeline update applying an in-order completion to the running streak state and storing
+     * the completion bitmap with the day already marked
+     */
+    static AggregationUpdate inOrderCompletionUpdate(LocalDateTime completionTime, LocalDate today,
+                                                     byte[] completionDays, long completionDaysOrigin) {
+        long day = completionTime.toLocalDate().toEpochDay();
+        boolean alive = today.toEpochDay() - day <= 1;
+
+        // Stage 1: move the run boundaries. A gap since the last completion starts a new run.
+        AggregationOperation moveRun = context -> new Document("$set", new Document()
+                .append("currentRunStartDay", new Document("$cond", List.of(
+                        new Document("$gt", List.of(day, new Document("$add", List.of("$lastCompletionDay", 1L)))),
+                        day,
+                        "$currentRunStartDay")))
+                .append("lastCompletionDay", day)
+                .append("completionDays", new Binary(completionDays))
+                .append("completionDaysOrigin", completionDaysOrigin));
+
+        // Stage 2: counters derived from the new run, the server-side form of $inc / $max / $set
+        Document runLength = new Document("$add", List.of(
+                new Document("$subtract", List.of("$lastCompletionDay", "$currentRunStartDay")), 1L));
+        AggregationOperation updateCounters = context -> new Document("$set", new Document()
+                .append("streak", alive ? runLength : 0)
+                .append("longestStreak", new Document("$max", List.of("$longestStreak", runLength)))
+                .append("totalCompletions", new Document("$add", List.of("$totalCompletions", 1)))
+                .append("lastCompletionDate", new Document("$max", List.of("$lastCompletionDate", toDate(completionTime))))
+                .append("updatedAt", toDate(LocalDateTime.now()))
+                // MongoTemplate only raises the version for classic updates
+                .append("version", new Document("$add", List.of(new Document("$ifNull", List.of("$version", 0L)), 1L))));
+
+        return AggregationUpdate.from(List.of(moveRun, updateCounters));
+    }
+
+    static Query byId(String habitId) {
+        return query(where("_id").is(habitId));
+    }
+
+    /**
+     * Upsert that only sets the fields of a new habit log
+     */
+    static Update insertUpdate(MongoConverter converter, HabitLogs habitLog) {
+        Document document = new Document();
+        converter.write(habitLog, document);
+        document.remove("_id");
+        document.remove("_class");
+
+        Update update = new Update();
+        document.forEach(update::setOnInsert);
+        if (!document.containsKey("version")) {
+            // Otherwise MongoTemplate adds $inc version, which would also touch an existing document
+            update.setOnInsert("version", 0L);
+        }
+        return update;
+    }
+
+    /**
+     * Matches the habit log only while no completion was recorded since it was read
+     */
+    static Query completionGuard(HabitLogs habitLog, int expectedTotal, byte[] expectedDays) {
+        return summaryQuery(where("_id").is(habitLog.getId())
+                .and("totalCompletions").is(expectedTotal)
+                .and("completionDays").is(expectedDays)
+                .and("completionLog").exists(false));
+    }
+
+    /**
+     * Matches the habit log of a batch write only while its version is the one it was read with.
+     * Every write raises the version, so at most one write can consume it.
+     */
+    static Query batchCompletionGuard(String habitId, Long expectedVersion) {
+        return query(where("_id").is(habitId)
+                .and("version").is(expectedVersion)
+                .and("completionLog").exists(false));
+    }
+
+    static Update completionUpdate(HabitLogs habitLog) {
+        return new Update()
+                .set("currentRunStartDay", habitLog.getCurrentRunStartDay())
+                .set("lastCompletionDay", habitLog.getLastCompletionDay())
+                .set("streak", habitLog.getStreak())
+                .set("longestStreak", habitLog.getLongestStreak())
+                .set("totalCompletions", habitLog.getTotalCompletions())
+                .set("lastCompletionDate", habitLog.getLastCompletionDate())
+                .set("completionDays", habitLog.getCompletionDays())
+                .set("completionDaysOrigin", habitLog.getCompletionDaysOrigin())
+                .set("updatedAt", habitLog.getUpdatedAt())
+                .inc("version", 1);
+    }
+
+    /**
+     * Matches the habit log only while its version is the one it was read with; a missing version matches null
+     */
+    static Query versionGuard(HabitLogs habitLog) {
+        return summaryQuery(where("_id").is(habitLog.getId())
+                .and("version").is(habitLog.getVersion()));
+    }
+
+    static Update detailsUpdate(HabitLogs habitLog) {
+        return new Update()
+                .set("title", habitLog.getTitle())
+                .set("description", habitLog.getDescription())
+                .set("frequency", habitLog.getFrequency())
+                .set("days", habitLog.getDays())
+                .set("updatedAt", habitLog.getUpdatedAt())
+                .inc("version", 1);
+    }
+
+    static Query completionDays(String habitId) {
+        Query query = byId(habitId);
+        query.fields().include("completionDays", "completionDaysOrigin", "createdAt", "completionLog", "coldBefore");
+        return query;
+    }
+
+    /**
+     * All habit logs of a user with only the completion bitmap, plus the embedded log of legacy documents
+     */
+    static Query completionDaysOfUser(String userId) {
+        Query query = query(where("userId").is(userId));
+        query.fields().include("completionDays", "completionDaysOrigin", "createdAt", "completionLog", "coldBefore");
+        return query;
+    }
+
+    /**
+     * Habit logs still showing a streak although their run ended before cutoffDay
+     */
+    static Query lapsedStreaks(long cutoffDay, int batchSize) {
+        Query query = query(where("streak").gt(0).and("lastCompletionDay").lt(cutoffDay)).cursorBatchSize(batchSize);
+        query.fields().include("userId", "title", "status", "updatedAt", "lastCompletionDay");
+        return query;
+    }
+
+    /**
+     * Matches the given habit logs only while their streak is still lapsed, so a completion
+     * recorded since they were read is never reset
+     */
+    static Query lapsedStreakGuard(Collection<String> habitIds, long cutoffDay) {
+        return query(where("_id").in(habitIds).and("streak").gt(0).and("lastCompletionDay").lt(cutoffDay));
+    }
+
+    static Query page(String userId, HabitStatus status, String afterId, int limit, boolean includeHistory) {
+        Criteria criteria = where("userId").is(userId);
+        if (status != null) {
+            criteria.and("status").is(status);
+        }
+        if (afterId != null) {
+            criteria.and("_id").gt(afterId);
+        }
+
+        Query query = includeHistory ? query(criteria) : summaryQuery(criteria);
+        return query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(limit);
+    }
+
+    /**
+     * Query returning the head document without the legacy embedded completion log
+     */
+    static Query summaryQuery(Criteria criteria) {
+        Query query = query(criteria);
+        query.fields().exclude("completionLog");
+        return query;
+    }
+
+    private static Date toDate(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -10,7 +10,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface HabitLoggingRepository extends MongoRepository<HabitLogs, String> {
+public interface HabitLoggingRepository extends MongoRepository<HabitLogs, String>, HabitLoggingRepositoryCustom {
     
     // Find all habits for a user
     List<HabitLogs> findByUserId(String userId);
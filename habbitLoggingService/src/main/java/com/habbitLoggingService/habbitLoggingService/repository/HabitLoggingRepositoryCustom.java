@@ -0,0 +1,104 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Server-side atomic updates on habit_logs that Spring Data cannot derive
+ */
+public interface HabitLoggingRepositoryCustom {
+
+    /**
+     * Apply an in-order completion (on or after the last completion day) in one findAndModify,
+     * counters and completion bitmap together. Returns the updated summary fields, or empty when
+     * the habit log does not exist, belongs to another user, still embeds its completion log, the
+     * completion is older than the last one, or another completion changed the bitmap first.
+     *
+     * @param expectedDays         completionDays seen when the bitmap was read, null when it had none
+     * @param completionDays       that bitmap with the completion day marked
+     * @param completionDaysOrigin epoch day of bit 0 in completionDays
+     */
+    Optional<HabitLogs> recordCompletion(String habitId, String userId, LocalDateTime completionTime, LocalDate today,
+                                         byte[] expectedDays, byte[] completionDays, long completionDaysOrigin);
+
+    /**
+     * Insert a new habit log unless one with the same id already exists
+     *
+     * @return true when this call created the document
+     */
+    boolean insertIfAbsent(HabitLogs habitLog);
+
+    /**
+     * Write streak state and completion bitmap computed in Java, only if no completion was recorded since they were read
+     *
+     * @param expectedTotal totalCompletions seen when the habit log was read
+     * @param expectedDays  completionDays seen when the habit log was read
+     * @return the updated summary fields, or empty when another completion got there first
+     */
+    Optional<HabitLogs> compareAndSetCompletion(HabitLogs habitLog, int expectedTotal, byte[] expectedDays);
+
+    /**
+     * Write title, description, frequency and days, only if the habit log's version is still the one they were read with
+     *
+     * @return the updated summary fields, or empty when the habit log was written by someone else first
+     */
+    Optional<HabitLogs> compareAndSetDetails(HabitLogs habitLog);
+
+    /**
+     * Read only the completion bitmap and what is needed to place its origin
+     */
+    Optional<HabitLogs> findCompletionDays(String habitId);
+
+    /**
+     * Completion bitmaps of all of a user's habit logs; legacy documents without one also carry their embedded completion log
+     */
+    List<HabitLogs> findCompletionDaysByUserId(String userId);
+
+    /**
+     * One page of a user's habit logs in habit ID order, starting after the given cursor
+     *
+     * @param status         optional status filter, applied in the query
+     * @param afterId        habit ID of the last item of the previous page, null for the first page
+     * @param includeHistory whether to load the legacy embedded completion log at all
+     */
+    List<HabitLogs> findPage(String userId, HabitStatus status, String afterId, int limit, boolean includeHistory);
+
+    /**
+     * Write the habit logs of a completion batch in one unordered bulkWrite
+     *
+     * @param inserts habit logs created by the batch, inserted unless they exist by now
+     * @param updates habit logs changed by the batch, written only while their version is the one they were read with
+     * @return IDs of the habit logs whose write did not land because of a concurrent change, taken from
+     * the result of each guarded write
+     * @throws org.springframework.dao.DataAccessException when any write failed for another reason
+     */
+    Set<String> bulkWriteCompletions(List<HabitLogs> inserts, List<CompletionUpdate> updates);
+
+    /**
+     * Stream the habit logs whose current streak lapsed, i.e. whose last completion day is before
+     * cutoffDay while streak is still above 0. Only summary fields are loaded, batchSize documents
+     * per cursor round trip; the caller must close the stream.
+     */
+    Stream<HabitLogs> streamLapsedStreaks(long cutoffDay, int batchSize);
+
+    /**
+     * Set the streak of the given habit logs to 0 in one update, skipping any completed since they were streamed
+     *
+     * @return number of habit logs reset
+     */
+    long resetLapsedStreaks(Collection<String> habitIds, long cutoffDay);
+
+    /**
+     * Habit log with the state it was read in, for a guarded batch write
+     */
+    record CompletionUpdate(HabitLogs habitLog, Long expectedVersion) {
+    }
+}
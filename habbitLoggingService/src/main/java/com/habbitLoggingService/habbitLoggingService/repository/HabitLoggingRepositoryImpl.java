@@ -0,0 +1,130 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+public class HabitLoggingRepositoryImpl implements HabitLoggingRepositoryCustom {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Optional<HabitLogs> recordCompletion(String habitId, String userId, LocalDateTime completionTime, LocalDate today,
+                                                byte[] expectedDays, byte[] completionDays, long completionDaysOrigin) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                HabitLogQueries.inOrderCompletion(habitId, userId, completionTime, expectedDays),
+                HabitLogQueries.inOrderCompletionUpdate(completionTime, today, completionDays, completionDaysOrigin),
+                FindAndModifyOptions.options().returnNew(true),
+                HabitLogs.class));
+    }
+
+    @Override
+    public boolean insertIfAbsent(HabitLogs habitLog) {
+        return mongoTemplate.upsert(HabitLogQueries.byId(habitLog.getId()),
+                HabitLogQueries.insertUpdate(mongoTemplate.getConverter(), habitLog), HabitLogs.class)
+                .getUpsertedId() != null;
+    }
+
+    @Override
+    public Optional<HabitLogs> compareAndSetCompletion(HabitLogs habitLog, int expectedTotal, byte[] expectedDays) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                HabitLogQueries.completionGuard(habitLog, expectedTotal, expectedDays),
+                HabitLogQueries.completionUpdate(habitLog),
+                FindAndModifyOptions.options().returnNew(true), HabitLogs.class));
+    }
+
+    @Override
+    public Optional<HabitLogs> compareAndSetDetails(HabitLogs habitLog) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                HabitLogQueries.versionGuard(habitLog),
+                HabitLogQueries.detailsUpdate(habitLog),
+                FindAndModifyOptions.options().returnNew(true), HabitLogs.class));
+    }
+
+    @Override
+    public Optional<HabitLogs> findCompletionDays(String habitId) {
+        return Optional.ofNullable(mongoTemplate.findOne(HabitLogQueries.completionDays(habitId), HabitLogs.class));
+    }
+
+    @Override
+    public List<HabitLogs> findCompletionDaysByUserId(String userId) {
+        return mongoTemplate.find(HabitLogQueries.completionDaysOfUser(userId), HabitLogs.class);
+    }
+
+    @Override
+    public List<HabitLogs> findPage(String userId, HabitStatus status, String afterId, int limit, boolean includeHistory) {
+        return mongoTemplate.find(HabitLogQueries.page(userId, status, afterId, limit, includeHistory), HabitLogs.class);
+    }
+
+    @Override
+    public Set<String> bulkWriteCompletions(List<HabitLogs> inserts, List<CompletionUpdate> updates) {
+        if (inserts.isEmpty() && updates.isEmpty()) {
+            return Set.of();
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, HabitLogs.class);
+        inserts.forEach(habitLog -> bulk.upsert(HabitLogQueries.byId(habitLog.getId()),
+                HabitLogQueries.insertUpdate(mongoTemplate.getConverter(), habitLog)));
+        // As upserts, a guard that no longer matches fails with a duplicate key on that op's index
+        updates.forEach(update -> bulk.upsert(
+                HabitLogQueries.batchCompletionGuard(update.habitLog().getId(), update.expectedVersion()),
+                HabitLogQueries.completionUpdate(update.habitLog())));
+
+        Set<String> lost = new HashSet<>();
+        BulkWriteResult result;
+        try {
+            result = bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY || error.getIndex() < inserts.size()) {
+                    // Not a lost guard, so the outcome of the batch is unknown
+                    throw e;
+                }
+                lost.add(updates.get(error.getIndex() - inserts.size()).habitLog().getId());
+            }
+            result = e.getResult();
+        }
+
+        Set<Integer> upserted = result.getUpserts().stream()
+                .map(BulkWriteUpsert::getIndex)
+                .collect(Collectors.toSet());
+        for (int i = 0; i < inserts.size(); i++) {
+            if (!upserted.contains(i)) {
+                lost.add(inserts.get(i).getId());
+            }
+        }
+        return lost;
+    }
+
+    @Override
+    public Stream<HabitLogs> streamLapsedStreaks(long cutoffDay, int batchSize) {
+        return mongoTemplate.stream(HabitLogQueries.lapsedStreaks(cutoffDay, batchSize), HabitLogs.class);
+    }
+
+    @Override
+    public long resetLapsedStreaks(Collection<String> habitIds, long cutoffDay) {
+        return mongoTemplate.updateMulti(HabitLogQueries.lapsedStreakGuard(habitIds, cutoffDay),
+                new Update().set("streak", 0).inc("version", 1), HabitLogs.class).getModifiedCount();
+    }
+}
@@ -0,0 +1,18 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking access to habit_logs for the reactive completion and analytics paths
+ */
+@Repository
+public interface ReactiveHabitLoggingRepository extends ReactiveMongoRepository<HabitLogs, String>, ReactiveHabitLoggingRepositoryCustom {
+
+    // Find a specific habit log by user ID and habit ID
+    Mono<HabitLogs> findByIdAndUserId(String id, String userId);
+
+    Mono<Boolean> existsByIdAndUserId(String id, String userId);
+}
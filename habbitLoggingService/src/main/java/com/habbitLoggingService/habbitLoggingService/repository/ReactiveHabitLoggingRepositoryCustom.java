@@ -0,0 +1,26 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Reactive form of {@link HabitLoggingRepositoryCustom}; empty results have the same meaning
+ */
+public interface ReactiveHabitLoggingRepositoryCustom {
+
+    Mono<HabitLogs> recordCompletion(String habitId, String userId, LocalDateTime completionTime, LocalDate today,
+                                     byte[] expectedDays, byte[] completionDays, long completionDaysOrigin);
+
+    Mono<Boolean> insertIfAbsent(HabitLogs habitLog);
+
+    Mono<HabitLogs> compareAndSetCompletion(HabitLogs habitLog, int expectedTotal, byte[] expectedDays);
+
+    Mono<HabitLogs> findCompletionDays(String habitId);
+
+    Flux<HabitLogs> findPage(String userId, HabitStatus status, String afterId, int limit, boolean includeHistory);
+}
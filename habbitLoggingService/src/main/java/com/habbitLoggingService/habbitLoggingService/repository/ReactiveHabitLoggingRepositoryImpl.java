@@ -0,0 +1,53 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@RequiredArgsConstructor
+public class ReactiveHabitLoggingRepositoryImpl implements ReactiveHabitLoggingRepositoryCustom {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Mono<HabitLogs> recordCompletion(String habitId, String userId, LocalDateTime completionTime, LocalDate today,
+                                            byte[] expectedDays, byte[] completionDays, long completionDaysOrigin) {
+        return reactiveMongoTemplate.findAndModify(
+                HabitLogQueries.inOrderCompletion(habitId, userId, completionTime, expectedDays),
+                HabitLogQueries.inOrderCompletionUpdate(completionTime, today, completionDays, completionDaysOrigin),
+                FindAndModifyOptions.options().returnNew(true),
+                HabitLogs.class);
+    }
+
+    @Override
+    public Mono<Boolean> insertIfAbsent(HabitLogs habitLog) {
+        return reactiveMongoTemplate.upsert(HabitLogQueries.byId(habitLog.getId()),
+                        HabitLogQueries.insertUpdate(reactiveMongoTemplate.getConverter(), habitLog), HabitLogs.class)
+                .map(result -> result.getUpsertedId() != null);
+    }
+
+    @Override
+    public Mono<HabitLogs> compareAndSetCompletion(HabitLogs habitLog, int expectedTotal, byte[] expectedDays) {
+        return reactiveMongoTemplate.findAndModify(
+                HabitLogQueries.completionGuard(habitLog, expectedTotal, expectedDays),
+                HabitLogQueries.completionUpdate(habitLog),
+                FindAndModifyOptions.options().returnNew(true), HabitLogs.class);
+    }
+
+    @Override
+    public Mono<HabitLogs> findCompletionDays(String habitId) {
+        return reactiveMongoTemplate.findOne(HabitLogQueries.completionDays(habitId), HabitLogs.class);
+    }
+
+    @Override
+    public Flux<HabitLogs> findPage(String userId, HabitStatus status, String afterId, int limit, boolean includeHistory) {
+        return reactiveMongoTemplate.find(HabitLogQueries.page(userId, status, afterId, limit, includeHistory), HabitLogs.class);
+    }
+}
@@ -0,0 +1,169 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitActivityLog;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind journal for habit_activity_logs.
+ *
+ * Callers only offer the record to a bounded queue, so journaling never waits on MongoDB.
+ * One writer thread inserts the queued records in batches of habit-logs.activity-journal.batch-size,
+ * or whatever has queued up after habit-logs.activity-journal.flush-millis. When the queue is
+ * full the record is dropped and counted rather than slowing the request down. On shutdown
+ * the queue is drained before the writer stops.
+ */
+@Service
+@Slf4j
+public class ActivityJournal {
+
+    private final MongoTemplate mongoTemplate;
+    private final BlockingQueue<HabitActivityLog> queue;
+    private final int batchSize;
+    private final long flushNanos;
+    private final Duration drainTimeout;
+    private final ExecutorService writer;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running = true;
+    private boolean collectionReady;
+
+    public ActivityJournal(MongoTemplate mongoTemplate,
+                           @Value("${habit-logs.activity-journal.queue-capacity:10000}") int queueCapacity,
+                           @Value("${habit-logs.activity-journal.batch-size:500}") int batchSize,
+                           @Value("${habit-logs.activity-journal.flush-millis:1000}") long flushMillis,
+                           @Value("${habit-logs.activity-journal.drain-seconds:10}") long drainSeconds) {
+        this.mongoTemplate = mongoTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.drainTimeout = Duration.ofSeconds(drainSeconds);
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "activity-journal-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.execute(this::writeLoop);
+    }
+
+    /**
+     * Queue a record for writing; returns immediately
+     *
+     * @return false when the queue was full and the record was dropped
+     */
+    public boolean record(HabitActivityLog activity) {
+        if (running && queue.offer(activity)) {
+            return true;
+        }
+        if (dropped.incrementAndGet() % 1000 == 1) {
+            log.warn("Activity journal is full or stopped, {} records dropped so far", dropped.get());
+        }
+        return false;
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(drainTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Activity journal did not drain within {}, {} records lost", drainTimeout, queue.size());
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<HabitActivityLog> batch = new ArrayList<>(batchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                HabitActivityLog first = queue.poll(flushNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Top the batch up until it is full, the flush interval since its first record ran out, or shutdown began
+     */
+    private void fillBatch(List<HabitActivityLog> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + flushNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            HabitActivityLog next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void write(List<HabitActivityLog> batch) {
+        try {
+            ensureCollection();
+            mongoTemplate.insert(batch, HabitActivityLog.class);
+            written.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            dropped.addAndGet(batch.size());
+            log.warn("Could not write {} activity records: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Create the time-series collection before the first insert, which would otherwise create a plain one
+     */
+    private void ensureCollection() {
+        if (collectionReady) {
+            return;
+        }
+        if (!mongoTemplate.collectionExists(HabitActivityLog.class)) {
+            try {
+                mongoTemplate.createCollection(HabitActivityLog.class);
+                log.info("Created time-series collection {}", mongoTemplate.getCollectionName(HabitActivityLog.class));
+            } catch (DataAccessException e) {
+                // Another node created it first
+                if (!mongoTemplate.collectionExists(HabitActivityLog.class)) {
+                    throw e;
+                }
+            }
+        }
+        collectionReady = true;
+    }
+}
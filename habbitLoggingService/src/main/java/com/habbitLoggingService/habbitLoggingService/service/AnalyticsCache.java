@@ -0,0 +1,104 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.habbitLoggingService.habbitLoggingService.dto.AnalyticsCacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of computed analytics responses, keyed by user and view (a habit or a page).
+ *
+ * Entries are size bounded and expire after a TTL. Concurrent requests for the same key wait
+ * for a single load. Writes invalidate every entry of the user; an invalidation waits for a load
+ * already in flight for that key, so a response read before the write is never kept.
+ */
+@Service
+@Slf4j
+public class AnalyticsCache {
+
+    private final Cache<Key, Object> cache;
+    private final Map<String, Set<Key>> keysByUser = new ConcurrentHashMap<>();
+
+    public AnalyticsCache(@Value("${habit-logs.cache.max-entries:10000}") long maxEntries,
+                          @Value("${habit-logs.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                // Runs atomically with the eviction, so it cannot unindex a key that is being reloaded
+                .evictionListener((Key key, Object value, RemovalCause cause) -> forget(key))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Cached value for the user's view, loading it once if absent
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String userId, String view, Supplier<T> loader) {
+        return (T) cache.get(new Key(userId, view), key -> {
+            keysByUser.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(key);
+            return loader.get();
+        });
+    }
+
+    /**
+     * Non-blocking form of {@link #get} for the reactive endpoints, sharing its entries. A miss
+     * is not held as a single load: concurrent misses each load. A value loaded while the user
+     * was invalidated is not stored, as the blocking form guarantees.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> getReactive(String userId, String view, Supplier<Mono<T>> loader) {
+        return Mono.defer(() -> {
+            Key key = new Key(userId, view);
+            Object cached = cache.getIfPresent(key);
+            if (cached != null) {
+                return Mono.just((T) cached);
+            }
+            // Indexed before the load, so an invalidation in between removes this set and, waiting
+            // for the compute below, whatever it stored
+            Set<Key> keys = keysByUser.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet());
+            keys.add(key);
+            return loader.get().doOnNext(value -> cache.asMap().compute(key,
+                    (ignored, current) -> keysByUser.get(userId) == keys ? value : current));
+        });
+    }
+
+    /**
+     * Drop every cached view of the user
+     */
+    public void invalidateUser(String userId) {
+        Set<Key> keys = keysByUser.remove(userId);
+        if (keys != null) {
+            cache.invalidateAll(keys);
+        }
+    }
+
+    public AnalyticsCacheStats stats() {
+        CacheStats stats = cache.stats();
+        return new AnalyticsCacheStats(cache.estimatedSize(), stats.requestCount(), stats.hitCount(),
+                stats.hitRate(), stats.loadCount(),
+                stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1), stats.evictionCount());
+    }
+
+    private void forget(Key key) {
+        keysByUser.computeIfPresent(key.userId(), (userId, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private record Key(String userId, String view) {
+    }
+}
@@ -0,0 +1,144 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.function.LongPredicate;
+
+/**
+ * Day-indexed completion bitmap kept on {@link HabitLogs}.
+ *
+ * Bit i is set when the habit was completed on epoch day completionDaysOrigin + i. The origin is
+ * the habit's creation day and moves back only if a completion is logged before it. A year of
+ * history takes 46 bytes, and day checks, run scans and counts work on 64-bit words.
+ */
+public final class CompletionBitmap {
+
+    private CompletionBitmap() {
+    }
+
+    public static boolean isPresent(HabitLogs habitLog) {
+        return habitLog.getCompletionDays() != null && habitLog.getCompletionDaysOrigin() != null;
+    }
+
+    public static BitSet bits(HabitLogs habitLog) {
+        return habitLog.getCompletionDays() != null ? BitSet.valueOf(habitLog.getCompletionDays()) : new BitSet();
+    }
+
+    /**
+     * Whether the habit was completed on the given epoch day
+     */
+    public static boolean contains(HabitLogs habitLog, long epochDay) {
+        return history(habitLog).test(epochDay);
+    }
+
+    /**
+     * Day lookup for the streak engine over a snapshot of the bitmap
+     */
+    public static LongPredicate history(HabitLogs habitLog) {
+        if (!isPresent(habitLog)) {
+            return epochDay -> false;
+        }
+        BitSet bits = bits(habitLog);
+        long origin = habitLog.getCompletionDaysOrigin();
+        return epochDay -> epochDay >= origin && epochDay - origin < Integer.MAX_VALUE && bits.get((int) (epochDay - origin));
+    }
+
+    /**
+     * Set the bit of one completion day
+     */
+    public static void mark(HabitLogs habitLog, long epochDay) {
+        BitSet bits = bits(habitLog);
+        long origin = habitLog.getCompletionDaysOrigin() != null ? habitLog.getCompletionDaysOrigin() : originFor(habitLog, epochDay);
+        if (epochDay < origin) {
+            bits = shift(bits, (int) (origin - epochDay));
+            origin = epochDay;
+        }
+        bits.set((int) (epochDay - origin));
+        habitLog.setCompletionDays(bits.toByteArray());
+        habitLog.setCompletionDaysOrigin(origin);
+    }
+
+    /**
+     * Build the bitmap from a full completion history
+     */
+    public static void build(HabitLogs habitLog, Collection<LocalDateTime> completions) {
+        long firstDay = completions.stream()
+                .mapToLong(completion -> completion.toLocalDate().toEpochDay())
+                .min()
+                .orElse(LocalDate.now().toEpochDay());
+        long origin = originFor(habitLog, firstDay);
+
+        BitSet bits = new BitSet();
+        for (LocalDateTime completion : completions) {
+            bits.set((int) (completion.toLocalDate().toEpochDay() - origin));
+        }
+        habitLog.setCompletionDays(bits.toByteArray());
+        habitLog.setCompletionDaysOrigin(origin);
+    }
+
+    /**
+     * Number of days with a completion in [fromDay, toDay]
+     */
+    public static int countBetween(HabitLogs habitLog, long fromDay, long toDay) {
+        if (!isPresent(habitLog)) {
+            return 0;
+        }
+        long origin = habitLog.getCompletionDaysOrigin();
+        BitSet bits = bits(habitLog);
+        long from = Math.max(fromDay - origin, 0);
+        long to = Math.min(toDay - origin, bits.length() - 1L);
+        if (from > to) {
+            return 0;
+        }
+        return bits.get((int) from, (int) to + 1).cardinality();
+    }
+
+    /**
+     * Latest completion day before the given epoch day, or null when there is none
+     */
+    public static Long previousDay(HabitLogs habitLog, long epochDay) {
+        if (!isPresent(habitLog)) {
+            return null;
+        }
+        long origin = habitLog.getCompletionDaysOrigin();
+        long before = Math.min(epochDay - origin - 1, Integer.MAX_VALUE - 1L);
+        if (before < 0) {
+            return null;
+        }
+        int previous = bits(habitLog).previousSetBit((int) before);
+        return previous >= 0 ? origin + previous : null;
+    }
+
+    /**
+     * Add 1 to counts[d - fromDay] for every completion day d in [fromDay, fromDay + counts.length)
+     */
+    public static void addCounts(HabitLogs habitLog, long fromDay, int[] counts) {
+        if (!isPresent(habitLog)) {
+            return;
+        }
+        long origin = habitLog.getCompletionDaysOrigin();
+        BitSet bits = bits(habitLog);
+        long from = Math.min(Math.max(fromDay - origin, 0), bits.length());
+        long to = Math.min(fromDay + counts.length - origin, bits.length());
+        for (int i = bits.nextSetBit((int) from); i >= 0 && i < to; i = bits.nextSetBit(i + 1)) {
+            counts[(int) (origin + i - fromDay)]++;
+        }
+    }
+
+    private static long originFor(HabitLogs habitLog, long fallbackDay) {
+        LocalDateTime createdAt = habitLog.getCreatedAt();
+        return createdAt != null ? Math.min(createdAt.toLocalDate().toEpochDay(), fallbackDay) : fallbackDay;
+    }
+
+    private static BitSet shift(BitSet bits, int distance) {
+        BitSet shifted = new BitSet(bits.length() + distance);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            shifted.set(i + distance);
+        }
+        return shifted;
+    }
+}
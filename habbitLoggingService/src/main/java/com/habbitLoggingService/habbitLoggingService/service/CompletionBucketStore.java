@@ -0,0 +1,292 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.model.ColdCompletionHistory;
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.repository.ColdCompletionHistoryRepository;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitCompletionBucketRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Stores habit completions in per-habit, per-month bucket documents.
+ *
+ * Each completion is a single upsert into its month's bucket, so the write size does not
+ * grow with the habit's history and the habit_logs head document only carries counters.
+ * Habit logs that still embed a completionLog are moved into buckets on their next
+ * completion, or all at once when habit-logs.completions.migrate-on-startup is enabled.
+ *
+ * The buckets are the source of truth for a habit's history. A completion is appended here
+ * before the head's counters, streak and bitmap are written, so the head never counts a
+ * completion the history lacks; those fields can always be rebuilt from the buckets.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CompletionBucketStore {
+
+    private final MongoTemplate mongoTemplate;
+    private final HabitCompletionBucketRepository bucketRepository;
+    private final ColdCompletionHistoryRepository coldRepository;
+
+    private static final int MAX_REMOVE_ATTEMPTS = 5;
+
+    @Value("${habit-logs.completions.migrate-on-startup:false}")
+    private boolean migrateOnStartup;
+
+    /**
+     * Append one completion to its monthly bucket
+     */
+    public void append(String habitId, String userId, LocalDateTime completionTime) {
+        mongoTemplate.upsert(query(where("_id").is(HabitCompletionBucket.idOf(habitId, YearMonth.from(completionTime)))),
+                appendUpdate(habitId, userId, completionTime), HabitCompletionBucket.class);
+    }
+
+    /**
+     * Take one completion out of its monthly bucket again, for a completion whose habit log
+     * write did not happen. Other completions at the same time stay.
+     */
+    public void remove(String habitId, LocalDateTime completionTime) {
+        String bucketId = HabitCompletionBucket.idOf(habitId, YearMonth.from(completionTime));
+        // MongoDB keeps dates to the millisecond
+        LocalDateTime stored = completionTime.truncatedTo(ChronoUnit.MILLIS);
+        for (int attempt = 1; attempt <= MAX_REMOVE_ATTEMPTS; attempt++) {
+            HabitCompletionBucket bucket = mongoTemplate.findById(bucketId, HabitCompletionBucket.class);
+            if (bucket == null) {
+                return;
+            }
+            List<LocalDateTime> completions = new ArrayList<>(bucket.getCompletions());
+            if (!completions.remove(stored)) {
+                return;
+            }
+            // Guarded by the count, which every append raises
+            if (mongoTemplate.updateFirst(query(where("_id").is(bucketId).and("count").is(bucket.getCount())),
+                    new Update().set("completions", completions).inc("count", -1),
+                    HabitCompletionBucket.class).getModifiedCount() > 0) {
+                return;
+            }
+        }
+        log.warn("Could not take completion {} of habit {} out of its bucket", completionTime, habitId);
+    }
+
+    /**
+     * Bucket upsert adding one completion, shared with the reactive path
+     */
+    public static Update appendUpdate(String habitId, String userId, LocalDateTime completionTime) {
+        return new Update()
+                .push("completions", completionTime)
+                .inc("count", 1)
+                .setOnInsert("habitId", habitId)
+                .setOnInsert("userId", userId)
+                .setOnInsert("month", YearMonth.from(completionTime).toString());
+    }
+
+    /**
+     * Append many completions with one unordered bulkWrite, one upsert per habit and month
+     */
+    public void appendAll(List<HabitLogRequest> completions) {
+        Map<String, List<HabitLogRequest>> byBucket = completions.stream()
+                .collect(Collectors.groupingBy(completion -> HabitCompletionBucket.idOf(
+                        completion.getHabitId(), YearMonth.from(completion.getCompletionTime()))));
+        if (byBucket.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, HabitCompletionBucket.class);
+        byBucket.forEach((bucketId, bucketCompletions) -> {
+            HabitLogRequest first = bucketCompletions.get(0);
+            Update update = new Update()
+                    .push("completions").each(bucketCompletions.stream().map(HabitLogRequest::getCompletionTime).toArray())
+                    .inc("count", bucketCompletions.size())
+                    .setOnInsert("habitId", first.getHabitId())
+                    .setOnInsert("userId", first.getUserId())
+                    .setOnInsert("month", YearMonth.from(first.getCompletionTime()).toString());
+            bulk.upsert(query(where("_id").is(bucketId)), update);
+        });
+        bulk.execute();
+    }
+
+    /**
+     * Full completion history of a habit, legacy embedded entries and the cold tier included
+     */
+    public List<LocalDateTime> completions(HabitLogs habitLog) {
+        List<ColdCompletionHistory> cold = habitLog.getColdBefore() != null
+                ? coldRepository.findByHabitIdOrderByMonthAsc(habitLog.getId())
+                : List.of();
+        return merge(habitLog.getCompletionLog(), cold, bucketRepository.findByHabitIdOrderByMonthAsc(habitLog.getId()));
+    }
+
+    /**
+     * Completions of a habit in [start, end], reading only the months in range. The cold tier is
+     * only read when the range starts before the habit log's coldBefore month.
+     */
+    public List<LocalDateTime> completionsBetween(HabitLogs habitLog, LocalDateTime start, LocalDateTime end) {
+        String fromMonth = YearMonth.from(start).toString();
+        String toMonth = YearMonth.from(end).toString();
+        List<ColdCompletionHistory> cold = reachesColdTier(habitLog, fromMonth)
+                ? coldRepository.findByHabitIdAndMonthRange(habitLog.getId(), fromMonth, toMonth)
+                : List.of();
+        return merge(null, cold, bucketRepository.findByHabitIdAndMonthRange(habitLog.getId(), fromMonth, toMonth))
+                .stream()
+                .filter(completion -> !completion.isBefore(start) && !completion.isAfter(end))
+                .toList();
+    }
+
+    /**
+     * Whether history from the given month (yyyy-MM) on may be partly in the cold tier
+     */
+    public static boolean reachesColdTier(HabitLogs habitLog, String fromMonth) {
+        return habitLog.getColdBefore() != null && fromMonth.compareTo(habitLog.getColdBefore()) < 0;
+    }
+
+    /**
+     * Legacy entries first, then month by month. A month present in both tiers, while it is being
+     * moved or after a late completion was logged into it, is merged without repeating a completion.
+     */
+    public static List<LocalDateTime> merge(List<LocalDateTime> legacy, List<ColdCompletionHistory> cold,
+                                            List<HabitCompletionBucket> hot) {
+        List<LocalDateTime> completions = new ArrayList<>();
+        if (legacy != null) {
+            completions.addAll(legacy);
+        }
+        if (cold.isEmpty()) {
+            hot.forEach(bucket -> completions.addAll(bucket.getCompletions()));
+            return completions;
+        }
+
+        Map<String, Collection<LocalDateTime>> byMonth = new TreeMap<>();
+        cold.forEach(history -> byMonth.put(history.getMonth(), new LinkedHashSet<>(PackedCompletions.decode(history.getCompletions()))));
+        hot.forEach(bucket -> byMonth.merge(bucket.getMonth(), bucket.getCompletions(), (coldMonth, hotMonth) -> {
+            coldMonth.addAll(hotMonth);
+            return coldMonth;
+        }));
+        byMonth.values().forEach(completions::addAll);
+        return completions;
+    }
+
+    /**
+     * Whether the habit log was stored by an older version and needs {@link #prepareForCompletion}
+     */
+    public static boolean needsPreparation(HabitLogs habitLog) {
+        return !CompletionBitmap.isPresent(habitLog)
+                || habitLog.getLastCompletionDay() == null
+                || habitLog.getCompletionLog() != null;
+    }
+
+    /**
+     * Bring habit logs stored by older versions up to the current layout
+     */
+    public void prepareForCompletion(HabitLogs habitLog) {
+        // Habit logs stored before the bitmap existed get it built from their history once
+        if (!CompletionBitmap.isPresent(habitLog)) {
+            CompletionBitmap.build(habitLog, completions(habitLog));
+        }
+        // Habit logs written before the running streak state existed are rebuilt once
+        if (habitLog.getLastCompletionDay() == null) {
+            StreakEngine.rebuild(habitLog, LocalDate.now());
+        }
+        // Embedded completion logs move into monthly buckets before the first bucketed write
+        migrate(habitLog);
+    }
+
+    /**
+     * Move an embedded completionLog into monthly buckets and keep only its size on the head document.
+     * Safe to repeat and to run concurrently: a month's completions are pushed in the same update
+     * that sets the bucket's legacyMigrated marker, so each month is moved once, and the head is
+     * only touched while it still holds the embedded log. The buckets then hold exactly the
+     * completions added to totalCompletions.
+     */
+    public void migrate(HabitLogs habitLog) {
+        List<LocalDateTime> legacy = habitLog.getCompletionLog();
+        if (legacy == null) {
+            return;
+        }
+
+        Map<YearMonth, List<LocalDateTime>> byMonth = legacy.stream()
+                .collect(Collectors.groupingBy(YearMonth::from, TreeMap::new, Collectors.toList()));
+        byMonth.forEach((month, completions) -> {
+            String bucketId = HabitCompletionBucket.idOf(habitLog.getId(), month);
+            Update update = new Update()
+                    .push("completions").each(completions.toArray())
+                    .inc("count", completions.size())
+                    .set("legacyMigrated", true)
+                    .setOnInsert("habitId", habitLog.getId())
+                    .setOnInsert("userId", habitLog.getUserId())
+                    .setOnInsert("month", month.toString());
+            try {
+                mongoTemplate.upsert(query(where("_id").is(bucketId).and("legacyMigrated").ne(true)),
+                        update, HabitCompletionBucket.class);
+            } catch (DuplicateKeyException e) {
+                // The bucket already carries the marker: an earlier or concurrent run moved this month
+                log.debug("Completions of habit {} for {} were already moved", habitLog.getId(), month);
+            }
+        });
+
+        mongoTemplate.updateFirst(query(where("_id").is(habitLog.getId())
+                        .and("completionLog").exists(true)),
+                new Update().unset("completionLog").inc("totalCompletions", legacy.size()),
+                HabitLogs.class);
+
+        habitLog.setCompletionLog(null);
+        habitLog.setTotalCompletions(habitLog.getTotalCompletions() + legacy.size());
+        log.info("Moved {} embedded completions of habit {} into {} monthly buckets",
+                legacy.size(), habitLog.getId(), byMonth.size());
+    }
+
+    /**
+     * Migrate every habit log that still embeds its completion log
+     */
+    public int migrateAll() {
+        int migrated = 0;
+        try (Stream<HabitLogs> legacyLogs = mongoTemplate.stream(
+                query(where("completionLog").exists(true)), HabitLogs.class)) {
+            for (HabitLogs habitLog : (Iterable<HabitLogs>) legacyLogs::iterator) {
+                migrate(habitLog);
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (!migrateOnStartup) {
+            return;
+        }
+        Thread migration = new Thread(() -> {
+            try {
+                log.info("Migrating embedded completion logs into monthly buckets");
+                log.info("Migrated {} habit logs into monthly buckets", migrateAll());
+            } catch (Exception e) {
+                log.error("Completion bucket migration failed: {}", e.getMessage(), e);
+            }
+        }, "completion-bucket-migration");
+        migration.setDaemon(true);
+        migration.start();
+    }
+}
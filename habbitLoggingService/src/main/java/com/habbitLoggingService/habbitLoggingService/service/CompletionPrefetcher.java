@@ -0,0 +1,78 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.repository.ReactiveHabitLoggingRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Upstream lookups a completion needs before anything is written, run concurrently.
+ *
+ * The user is validated while the habit log is looked up. When there is no habit log yet, the
+ * habit details are read from the metadata replica right away, still alongside the validation.
+ * An invalid user or the completion deadline cancels whatever is still in flight.
+ */
+@Service
+@Slf4j
+public class CompletionPrefetcher {
+
+    private final UserValidationService userValidationService;
+    private final ReactiveHabitLoggingRepository reactiveRepository;
+    private final HabitMetadataReplica habitMetadataReplica;
+    private final Duration deadline;
+
+    public CompletionPrefetcher(UserValidationService userValidationService,
+                                ReactiveHabitLoggingRepository reactiveRepository,
+                                HabitMetadataReplica habitMetadataReplica,
+                                @Value("${habit-logs.completion.deadline-ms:3000}") long deadlineMillis) {
+        this.userValidationService = userValidationService;
+        this.reactiveRepository = reactiveRepository;
+        this.habitMetadataReplica = habitMetadataReplica;
+        this.deadline = Duration.ofMillis(deadlineMillis);
+    }
+
+    /**
+     * Result of the lookups. habitData is only read, and may still be null, when no habit log was found.
+     */
+    public record Prefetched(boolean habitLogFound, HabitActivityResponse habitData) {
+    }
+
+    /**
+     * Overall time allowed for one completion request
+     */
+    public Duration deadline() {
+        return deadline;
+    }
+
+    /**
+     * Validate the user and prepare the habit details; fails with a RuntimeException for an
+     * invalid user or when the deadline passes
+     */
+    public Mono<Prefetched> prefetch(HabitLogRequest request) {
+        String userId = request.getUserId();
+        Mono<Boolean> validUser = userValidationService.validateUserReactive(userId)
+                .flatMap(valid -> valid ? Mono.just(true) : Mono.<Boolean>error(new RuntimeException("Invalid user: " + userId)));
+        Mono<Prefetched> habit = reactiveRepository.existsByIdAndUserId(request.getHabitId(), userId)
+                .flatMap(found -> found
+                        ? Mono.just(new Prefetched(true, null))
+                        : habitMetadataReplica.findReactive(request.getHabitId())
+                                .map(Optional::of)
+                                .defaultIfEmpty(Optional.empty())
+                                .map(habitData -> new Prefetched(false, habitData.orElse(null))));
+
+        // zip cancels the other lookup as soon as one of them fails
+        return Mono.zip(validUser, habit, (valid, prefetched) -> prefetched)
+                .timeout(deadline)
+                .onErrorMap(TimeoutException.class, e -> {
+                    log.warn("Upstream lookups for habit {} exceeded {} ms", request.getHabitId(), deadline.toMillis());
+                    return new RuntimeException("Completion deadline exceeded for habit: " + request.getHabitId());
+                });
+    }
+}
@@ -0,0 +1,229 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.ColdCompletionHistory;
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.repository.ColdCompletionHistoryRepository;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitCompletionBucketRepository;
+import com.habbitinfra.mongo.MongoIndexReconciler;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Moves old completion history out of habit_completion_buckets into the zstd-compressed
+ * habit_completion_history_cold collection.
+ *
+ * A bucket goes cold once its month is more than habit-logs.tiering.horizon-months behind the
+ * current one, and all buckets of an archived habit go cold at once. Each batch is written to
+ * the cold tier first, then the habit log's coldBefore is raised past the moved months, and only
+ * then are the buckets deleted, each guarded by the count it was read with. A reader therefore
+ * always finds a month in at least one tier, and a completion logged into a month while it was
+ * being moved keeps its bucket hot until the next run. Streaks, counters and the completion
+ * bitmap stay on the habit log, so only reads of the full history touch the cold tier.
+ */
+@Service
+@Slf4j
+public class CompletionTiering {
+
+    private final MongoTemplate mongoTemplate;
+    private final HabitCompletionBucketRepository bucketRepository;
+    private final ColdCompletionHistoryRepository coldRepository;
+    private final CompletionBucketStore completionStore;
+    private final MongoIndexReconciler indexReconciler;
+    private final boolean enabled;
+    private final int horizonMonths;
+    private final long intervalHours;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    public CompletionTiering(MongoTemplate mongoTemplate,
+                             HabitCompletionBucketRepository bucketRepository,
+                             ColdCompletionHistoryRepository coldRepository,
+                             CompletionBucketStore completionStore,
+                             MongoIndexReconciler indexReconciler,
+                             @Value("${habit-logs.tiering.enabled:true}") boolean enabled,
+                             @Value("${habit-logs.tiering.horizon-months:12}") int horizonMonths,
+                             @Value("${habit-logs.tiering.interval-hours:24}") long intervalHours,
+                             @Value("${habit-logs.tiering.batch-size:500}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.bucketRepository = bucketRepository;
+        this.coldRepository = coldRepository;
+        this.completionStore = completionStore;
+        this.indexReconciler = indexReconciler;
+        this.enabled = enabled;
+        this.horizonMonths = horizonMonths;
+        this.intervalHours = intervalHours;
+        this.batchSize = batchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "completion-tiering");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startTiering() {
+        if (!enabled) {
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                run(YearMonth.now());
+            } catch (RuntimeException e) {
+                log.warn("Completion tiering failed: {}", e.getMessage());
+            }
+        }, 0, intervalHours, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Move every bucket past the horizon, and the buckets of archived habits, to the cold tier
+     *
+     * @return number of monthly buckets moved
+     */
+    public long run(YearMonth currentMonth) {
+        indexReconciler.ensureCompressedCollection(ColdCompletionHistory.class);
+        long aged = moveAgedBuckets(currentMonth.minusMonths(horizonMonths));
+        long archived = moveArchivedHabits(currentMonth.plusMonths(1));
+        log.info("Completion tiering for {}: {} buckets past the horizon and {} of archived habits moved to the cold tier",
+                currentMonth, aged, archived);
+        return aged + archived;
+    }
+
+    private long moveAgedBuckets(YearMonth horizon) {
+        Query aged = query(where("month").lt(horizon.toString())).cursorBatchSize(batchSize);
+        long moved = 0;
+        List<HabitCompletionBucket> batch = new ArrayList<>(batchSize);
+        try (Stream<HabitCompletionBucket> buckets = mongoTemplate.stream(aged, HabitCompletionBucket.class)) {
+            Iterator<HabitCompletionBucket> iterator = buckets.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() >= batchSize) {
+                    moved += moveBuckets(batch);
+                    batch.clear();
+                }
+            }
+        }
+        return moved + moveBuckets(batch);
+    }
+
+    /**
+     * Archived habits not fully in the cold tier yet; coldBefore is raised to the month after the
+     * run, so each archived habit is looked at once a month
+     */
+    private long moveArchivedHabits(YearMonth coldBefore) {
+        Query archived = query(where("status").is(HabitStatus.ARCHIVED).orOperator(
+                where("coldBefore").is(null),
+                where("coldBefore").lt(coldBefore.toString())))
+                .cursorBatchSize(batchSize);
+        archived.fields().include("userId", "completionLog", "totalCompletions", "coldBefore");
+
+        long moved = 0;
+        List<String> habitIds = new ArrayList<>();
+        List<HabitCompletionBucket> batch = new ArrayList<>(batchSize);
+        try (Stream<HabitLogs> habitLogs = mongoTemplate.stream(archived, HabitLogs.class)) {
+            Iterator<HabitLogs> iterator = habitLogs.iterator();
+            while (iterator.hasNext()) {
+                HabitLogs habitLog = iterator.next();
+                // Embedded history has to reach the buckets before it can go cold
+                completionStore.migrate(habitLog);
+                habitIds.add(habitLog.getId());
+                batch.addAll(bucketRepository.findByHabitIdOrderByMonthAsc(habitLog.getId()));
+                if (batch.size() >= batchSize) {
+                    moved += moveBuckets(batch);
+                    markCold(habitIds, coldBefore);
+                    batch.clear();
+                    habitIds.clear();
+                }
+            }
+        }
+        moved += moveBuckets(batch);
+        markCold(habitIds, coldBefore);
+        return moved;
+    }
+
+    /**
+     * Copy the buckets to the cold tier, point their habit logs at it, then delete the buckets
+     * that did not change in the meantime
+     *
+     * @return number of buckets deleted from the hot collection
+     */
+    long moveBuckets(List<HabitCompletionBucket> buckets) {
+        if (buckets.isEmpty()) {
+            return 0;
+        }
+
+        // A month moved before, and written to again since, is merged with what is already cold
+        Map<String, ColdCompletionHistory> existing = coldRepository.findAllById(
+                        buckets.stream().map(HabitCompletionBucket::getId).toList()).stream()
+                .collect(Collectors.toMap(ColdCompletionHistory::getId, Function.identity()));
+        BulkOperations cold = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ColdCompletionHistory.class);
+        for (HabitCompletionBucket bucket : buckets) {
+            Set<LocalDateTime> completions = new TreeSet<>(bucket.getCompletions());
+            ColdCompletionHistory previous = existing.get(bucket.getId());
+            if (previous != null) {
+                completions.addAll(PackedCompletions.decode(previous.getCompletions()));
+            }
+            cold.upsert(query(where("_id").is(bucket.getId())), new Update()
+                    .set("habitId", bucket.getHabitId())
+                    .set("userId", bucket.getUserId())
+                    .set("month", bucket.getMonth())
+                    .set("count", completions.size())
+                    .set("completions", PackedCompletions.encode(completions)));
+        }
+        cold.execute();
+
+        Map<String, String> coldBefore = new HashMap<>();
+        buckets.forEach(bucket -> coldBefore.merge(bucket.getHabitId(),
+                YearMonth.parse(bucket.getMonth()).plusMonths(1).toString(),
+                (a, b) -> a.compareTo(b) >= 0 ? a : b));
+        BulkOperations heads = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, HabitLogs.class);
+        coldBefore.forEach((habitId, month) -> heads.updateOne(query(where("_id").is(habitId)),
+                new Update().max("coldBefore", month)));
+        heads.execute();
+
+        BulkOperations hot = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, HabitCompletionBucket.class);
+        buckets.forEach(bucket -> hot.remove(query(where("_id").is(bucket.getId()).and("count").is(bucket.getCount()))));
+        return hot.execute().getDeletedCount();
+    }
+
+    private void markCold(List<String> habitIds, YearMonth coldBefore) {
+        if (habitIds.isEmpty()) {
+            return;
+        }
+        mongoTemplate.updateMulti(query(where("_id").in(habitIds)),
+                new Update().max("coldBefore", coldBefore.toString()), HabitLogs.class);
+    }
+}
@@ -0,0 +1,11 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+/**
+ * The completion's idempotency key was already used, so it was not applied again
+ */
+public class DuplicateCompletionException extends RuntimeException {
+
+    public DuplicateCompletionException(String idempotencyKey) {
+        super("Completion already processed: " + idempotencyKey);
+    }
+}
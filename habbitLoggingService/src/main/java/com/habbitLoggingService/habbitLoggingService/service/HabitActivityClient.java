@@ -0,0 +1,51 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Reads habits from the activity service to keep the habit metadata replica up to date
+ */
+@Service
+@RequiredArgsConstructor
+public class HabitActivityClient {
+
+    private final WebClient activityServiceWebClient;
+
+    /**
+     * Habit details, or empty when the activity service has no such habit; any other failure
+     * is passed on, so a habit that is gone can be told apart from an unavailable service
+     */
+    public Mono<HabitActivityResponse> fetchCurrentHabit(String habitId) {
+        return activityServiceWebClient
+                .get()
+                .uri("/{id}", habitId)
+                .retrieve()
+                .bodyToMono(HabitActivityResponse.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, error -> Mono.empty());
+    }
+
+    /**
+     * One page of all habits in ID order, starting after afterId, or from the first when null
+     */
+    public Mono<List<HabitActivityResponse>> fetchHabitsAfter(String afterId, int limit) {
+        return activityServiceWebClient
+                .get()
+                .uri(uri -> {
+                    uri.queryParam("limit", limit);
+                    if (afterId != null) {
+                        uri.queryParam("after", afterId);
+                    }
+                    return uri.build();
+                })
+                .retrieve()
+                .bodyToFlux(HabitActivityResponse.class)
+                .collectList();
+    }
+}
@@ -0,0 +1,148 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fences and gates that keep a user's events in order while the partition count changes.
+ *
+ * A changed count moves some users to another partition queue, while their older events still
+ * wait in the queue they left. Before the move, a gate is put into each queue the users move to;
+ * after it, a fence is put into each queue they leave. A consumer reaching a fence has handled
+ * every event before it and passes the fence on to a queue shared by the change. A consumer
+ * reaching a gate waits until all fences of the change are there, or until
+ * habit-logs.events.rebalance.timeout-ms passed, and only then handles the moved users' new events.
+ */
+@Service
+@Slf4j
+public class HabitEventFences {
+
+    public static final String FENCE_HEADER = "habit-fence";
+    public static final String GATE_HEADER = "habit-gate";
+    public static final String GATE_FENCES_HEADER = "habit-gate-fences";
+
+    private static final long POLL_MILLIS = 100;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+    private final String queueName;
+    private final long timeoutMillis;
+    private final long confirmTimeoutMillis;
+
+    public HabitEventFences(RabbitTemplate rabbitTemplate,
+                            AmqpAdmin amqpAdmin,
+                            @Value("${rabbitmq.queue.name}") String queueName,
+                            @Value("${habit-logs.events.rebalance.timeout-ms:300000}") long timeoutMillis,
+                            @Value("${habit-logs.events.retry.confirm-timeout-ms:5000}") long confirmTimeoutMillis) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpAdmin = amqpAdmin;
+        this.queueName = queueName;
+        this.timeoutMillis = timeoutMillis;
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+    }
+
+    /**
+     * Declare the queue collecting the fences of one change; the broker removes it a day after its last use
+     */
+    public String declareFenceQueue() {
+        String fenceQueue = queueName + ".fences." + UUID.randomUUID();
+        amqpAdmin.declareQueue(QueueBuilder.durable(fenceQueue).expires((int) TimeUnit.DAYS.toMillis(1)).build());
+        return fenceQueue;
+    }
+
+    /**
+     * Put a gate waiting for the given number of fences into each queue
+     */
+    public void gate(List<String> queues, String fenceQueue, int fences) {
+        send(queues, MessageBuilder.withBody(new byte[0])
+                .setHeader(GATE_HEADER, fenceQueue)
+                .setHeader(GATE_FENCES_HEADER, fences)
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .build());
+    }
+
+    /**
+     * Put a fence into each queue
+     */
+    public void fence(List<String> queues, String fenceQueue) {
+        send(queues, fence(fenceQueue));
+    }
+
+    /**
+     * Count a fence as passed straight away, for a queue that holds no events
+     */
+    public void pass(String fenceQueue) {
+        send(List.of(fenceQueue), fence(fenceQueue));
+    }
+
+    public static boolean isMarker(Message message) {
+        return message.getMessageProperties().getHeader(FENCE_HEADER) != null
+                || message.getMessageProperties().getHeader(GATE_HEADER) != null;
+    }
+
+    /**
+     * Called by a partition consumer once it has handled every event before the marker: a fence
+     * is passed on, a gate is waited at
+     */
+    public void reached(Message message) throws InterruptedException {
+        String fenceQueue = message.getMessageProperties().getHeader(FENCE_HEADER);
+        if (fenceQueue != null) {
+            pass(fenceQueue);
+            return;
+        }
+        fenceQueue = message.getMessageProperties().getHeader(GATE_HEADER);
+        Object fences = message.getMessageProperties().getHeader(GATE_FENCES_HEADER);
+        await(fenceQueue, fences instanceof Number number ? number.intValue() : 0);
+    }
+
+    private void await(String fenceQueue, int fences) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            QueueInformation passed = amqpAdmin.getQueueInfo(fenceQueue);
+            if (passed == null) {
+                log.warn("Fence queue {} is gone, opening its gate", fenceQueue);
+                return;
+            }
+            if (passed.getMessageCount() >= fences) {
+                log.info("All {} fences of {} passed, opening its gate", fences, fenceQueue);
+                return;
+            }
+            if (System.nanoTime() > deadline) {
+                log.warn("Only {} of {} fences of {} passed after {} ms, opening its gate; moved users' events may be handled out of order",
+                        passed.getMessageCount(), fences, fenceQueue, timeoutMillis);
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(POLL_MILLIS);
+        }
+    }
+
+    private static Message fence(String fenceQueue) {
+        return MessageBuilder.withBody(new byte[0])
+                .setHeader(FENCE_HEADER, fenceQueue)
+                .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                .build();
+    }
+
+    private void send(List<String> queues, Message marker) {
+        if (queues.isEmpty()) {
+            return;
+        }
+        rabbitTemplate.invoke(operations -> {
+            queues.forEach(queue -> operations.send("", queue, marker));
+            operations.waitForConfirmsOrDie(confirmTimeoutMillis);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,250 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.config.HabitEventPartitions;
+import com.habbitLoggingService.habbitLoggingService.dto.DeadLetterStatus;
+import com.habbiteventcontract.HabitEvents;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backoff for retrying habit events that could not be handled, and the parking queue for the
+ * ones that keep failing.
+ *
+ * A failed event is retried in place by the consumer of its partition, which holds the user's
+ * later events back until it succeeds, so a user's events are always handled in order. The
+ * retries wait habit-logs.events.retry.initial-delay-ms, then habit-logs.events.retry.multiplier
+ * times longer per attempt. After habit-logs.events.retry.attempts retries events are parked in
+ * a queue nothing consumes, until they are replayed.
+ */
+@Service
+@Slf4j
+public class HabitEventRetries {
+
+    public static final String ATTEMPT_HEADER = "habit-retry-attempt";
+    public static final String REASON_HEADER = "habit-failure-reason";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+    private final String queueName;
+    private final List<Long> delaysMillis;
+    private final long confirmTimeoutMillis;
+    private final int replayBatchSize;
+    private final long replayIntervalMillis;
+    private final ExecutorService replayer;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private volatile LocalDateTime lastReplayAt;
+
+    public HabitEventRetries(RabbitTemplate rabbitTemplate,
+                             AmqpAdmin amqpAdmin,
+                             @Value("${rabbitmq.queue.name}") String queueName,
+                             @Value("${habit-logs.events.retry.attempts:5}") int attempts,
+                             @Value("${habit-logs.events.retry.initial-delay-ms:500}") long initialDelayMillis,
+                             @Value("${habit-logs.events.retry.multiplier:3}") int multiplier,
+                             @Value("${habit-logs.events.retry.confirm-timeout-ms:5000}") long confirmTimeoutMillis,
+                             @Value("${habit-logs.events.replay.batch-size:100}") int replayBatchSize,
+                             @Value("${habit-logs.events.replay.interval-ms:1000}") long replayIntervalMillis) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpAdmin = amqpAdmin;
+        this.queueName = queueName;
+        this.delaysMillis = delays(attempts, initialDelayMillis, multiplier);
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.replayBatchSize = replayBatchSize;
+        this.replayIntervalMillis = replayIntervalMillis;
+        this.replayer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "habit-event-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        replayer.shutdownNow();
+    }
+
+    /**
+     * Delay before each retry: initialDelayMillis, then multiplied by multiplier per attempt
+     */
+    public static List<Long> delays(int attempts, long initialDelayMillis, int multiplier) {
+        List<Long> delays = new ArrayList<>(attempts);
+        long delay = initialDelayMillis;
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            delays.add(delay);
+            delay *= multiplier;
+        }
+        return delays;
+    }
+
+    public static String parkingQueue(String queueName) {
+        return queueName + ".parked";
+    }
+
+    /**
+     * The parking queue
+     */
+    public Declarables topology() {
+        return new Declarables(QueueBuilder.durable(parkingQueue(queueName)).build());
+    }
+
+    /**
+     * Retries an event gets before it is parked
+     */
+    public int attempts() {
+        return delaysMillis.size();
+    }
+
+    /**
+     * Delay before the retry that follows the given number of failed attempts, counting from 1
+     */
+    public long delayMillis(int failedAttempts) {
+        return delaysMillis.get(Math.min(failedAttempts, delaysMillis.size()) - 1);
+    }
+
+    /**
+     * Publish the messages to the parking queue and wait for the broker to confirm them all.
+     * Each message is expected to carry its failure in the reason header.
+     */
+    public void park(List<Message> failed) {
+        if (failed.isEmpty()) {
+            return;
+        }
+        rabbitTemplate.invoke(operations -> {
+            for (Message message : failed) {
+                MessageProperties properties = message.getMessageProperties();
+                properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+                log.error("Parking habit event {} after {} retries: {}", properties.getMessageId(),
+                        attempt(message) - 1, properties.getHeader(REASON_HEADER));
+                operations.send("", parkingQueue(queueName), message);
+            }
+            operations.waitForConfirmsOrDie(confirmTimeoutMillis);
+            return null;
+        });
+    }
+
+    /**
+     * Failed attempts to handle the message so far
+     */
+    public static int attempt(Message message) {
+        Object attempt = message.getMessageProperties().getHeader(ATTEMPT_HEADER);
+        return attempt instanceof Number number ? number.intValue() : 0;
+    }
+
+    /**
+     * Start moving up to limit parked messages back to their partitions in the background,
+     * habit-logs.events.replay.batch-size at a time with habit-logs.events.replay.interval-ms
+     * between batches; every replayed message gets the full set of retries again. Messages
+     * without the user header were rejected as unreadable or of no known type; replaying them
+     * would only park them again, so they are moved to the back of the parking queue and
+     * counted as skipped.
+     */
+    public DeadLetterStatus replay(int limit) {
+        if (!replaying.compareAndSet(false, true)) {
+            throw new IllegalStateException("A replay of parked habit events is already running");
+        }
+        replayer.execute(() -> {
+            try {
+                Replay result = replayParked(limit);
+                log.info("Replayed {} parked habit events, skipped {} without a user", result.replayed(), result.skipped());
+            } catch (RuntimeException e) {
+                log.warn("Replay of parked habit events stopped: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                replaying.set(false);
+            }
+        });
+        return status();
+    }
+
+    public DeadLetterStatus status() {
+        QueueInformation parked = amqpAdmin.getQueueInfo(parkingQueue(queueName));
+        return new DeadLetterStatus(parked != null ? parked.getMessageCount() : 0, replaying.get(), replayed.get(),
+                skipped.get(), lastReplayAt);
+    }
+
+    /**
+     * Take up to limit messages off the parking queue, skipped ones included, so that a replay
+     * ends even when the queue holds nothing but messages it has to skip
+     */
+    Replay replayParked(int limit) throws InterruptedException {
+        Replay total = new Replay(0, 0);
+        while (total.taken() < limit) {
+            int wanted = (int) Math.min(replayBatchSize, limit - total.taken());
+            Replay batch = rabbitTemplate.execute(channel -> {
+                long lastTag = -1;
+                int moved = 0;
+                int left = 0;
+                for (int n = 0; n < wanted; n++) {
+                    GetResponse response = channel.basicGet(parkingQueue(queueName), false);
+                    if (response == null) {
+                        break;
+                    }
+                    if (response.getProps().getHeaders() != null
+                            && response.getProps().getHeaders().get(HabitEvents.USER_HEADER) != null) {
+                        channel.basicPublish(HabitEventPartitions.PARTITIONED_EXCHANGE, "",
+                                replayProperties(response.getProps()), response.getBody());
+                        moved++;
+                    } else {
+                        // No partition can take it; keep it parked, unchanged, behind the messages still to replay
+                        channel.basicPublish("", parkingQueue(queueName), response.getProps(), response.getBody());
+                        left++;
+                    }
+                    lastTag = response.getEnvelope().getDeliveryTag();
+                }
+                if (lastTag >= 0) {
+                    // Only taken off the parking queue once the broker has the copies
+                    channel.waitForConfirmsOrDie(confirmTimeoutMillis);
+                    channel.basicAck(lastTag, true);
+                }
+                return new Replay(moved, left);
+            });
+            total = new Replay(total.replayed() + batch.replayed(), total.skipped() + batch.skipped());
+            replayed.addAndGet(batch.replayed());
+            skipped.addAndGet(batch.skipped());
+            lastReplayAt = LocalDateTime.now();
+            if (batch.taken() < wanted) {
+                break;
+            }
+            TimeUnit.MILLISECONDS.sleep(replayIntervalMillis);
+        }
+        return total;
+    }
+
+    record Replay(long replayed, long skipped) {
+        long taken() {
+            return replayed + skipped;
+        }
+    }
+
+    private static AMQP.BasicProperties replayProperties(AMQP.BasicProperties properties) {
+        Map<String, Object> headers = properties.getHeaders() != null ? new HashMap<>(properties.getHeaders()) : new HashMap<>();
+        headers.remove(ATTEMPT_HEADER);
+        headers.remove("x-death");
+        return properties.builder().headers(headers).deliveryMode(2).build();
+    }
+}
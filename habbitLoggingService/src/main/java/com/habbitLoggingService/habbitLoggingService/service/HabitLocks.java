@@ -0,0 +1,91 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped per-habit locks, so writes to the same habit on this node take turns instead of
+ * racing each other into version conflicts and retries.
+ *
+ * A habit ID always maps to the same of habit-logs.locks.stripes locks, so memory stays fixed
+ * however many habits there are, and two habits only wait on each other when they share a
+ * stripe. Writes from other nodes are not covered; the versioned updates catch those. Neither
+ * is the reactive path, which must not park its event loop on a lock: its completions rely on
+ * the same guarded writes alone and retry when they lose.
+ */
+@Component
+public class HabitLocks {
+
+    private final ReentrantLock[] stripes;
+
+    public HabitLocks(@Value("${habit-logs.locks.stripes:1024}") int stripes) {
+        // A power of two, so the stripe is a mask of the spread hash
+        int size = Integer.highestOneBit(Math.max(stripes - 1, 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Run the action holding the habit's lock
+     *
+     * @param deadlineNanos System.nanoTime() after which waiting for the lock fails
+     */
+    public <T> T withLock(String habitId, long deadlineNanos, Supplier<T> action) {
+        ReentrantLock lock = stripes[stripeOf(habitId)];
+        acquire(lock, deadlineNanos, "habit: " + habitId);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Run the action holding the locks of all the habits, e.g. for one bulk write. Stripes are
+     * taken in ascending order, so two callers sharing stripes cannot deadlock.
+     *
+     * @param deadlineNanos System.nanoTime() after which waiting for a lock fails
+     */
+    public <T> T withLocks(Collection<String> habitIds, long deadlineNanos, Supplier<T> action) {
+        int[] order = habitIds.stream().mapToInt(this::stripeOf).distinct().sorted().toArray();
+        Deque<ReentrantLock> held = new ArrayDeque<>(order.length);
+        try {
+            for (int stripe : order) {
+                acquire(stripes[stripe], deadlineNanos, "habits: " + habitIds);
+                held.push(stripes[stripe]);
+            }
+            return action.get();
+        } finally {
+            held.forEach(ReentrantLock::unlock);
+        }
+    }
+
+    private static void acquire(ReentrantLock lock, long deadlineNanos, String habits) {
+        try {
+            if (!lock.tryLock(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw new RuntimeException("Timed out waiting for other writes to " + habits);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for other writes to " + habits);
+        }
+    }
+
+    int stripeCount() {
+        return stripes.length;
+    }
+
+    int stripeOf(String habitId) {
+        int hash = habitId.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,254 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogResponse;
+import com.habbitLoggingService.habbitLoggingService.model.ActivityType;
+import com.habbitLoggingService.habbitLoggingService.model.HabitActivityLog;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Habit log construction and response mapping shared by the blocking and the reactive service.
+ * Nothing here does I/O.
+ */
+@Slf4j
+public final class HabitLogMapper {
+
+    // Floor for completions of habit logs that do not know when their habit was created
+    private static final int MIN_COMPLETION_YEAR = 2000;
+
+    private HabitLogMapper() {
+    }
+
+    /**
+     * Reject a completion after tomorrow or before the day its habit was created. Besides
+     * catching bogus input this bounds the completion bitmap, which holds one bit per day from
+     * the creation day on.
+     *
+     * @param createdAt when the habit was created, null when unknown
+     */
+    public static void checkCompletionTime(LocalDateTime completionTime, LocalDateTime createdAt) {
+        LocalDate day = completionTime.toLocalDate();
+        if (day.isAfter(LocalDate.now().plusDays(1))) {
+            throw new RuntimeException("Invalid completion time, after tomorrow: " + completionTime);
+        }
+        if (createdAt != null ? day.isBefore(createdAt.toLocalDate()) : day.getYear() < MIN_COMPLETION_YEAR) {
+            throw new RuntimeException("Invalid completion time, before the habit was created: " + completionTime);
+        }
+    }
+
+    /**
+     * Whether the habit log already shows these habit details
+     */
+    public static boolean hasDetails(HabitLogs habitLog, HabitActivityResponse habitData) {
+        return Objects.equals(habitLog.getTitle(), habitData.getTitle())
+                && Objects.equals(habitLog.getDescription(), habitData.getDescription())
+                && Objects.equals(habitLog.getFrequency(), habitData.getFrequency())
+                && Objects.equals(habitLog.getDays(), habitData.getDays());
+    }
+
+    /**
+     * New habit log for the first completion of a habit
+     *
+     * @param habitData habit details from the metadata replica, null when it has no copy yet
+     */
+    public static HabitLogs newHabitLog(HabitLogRequest request, HabitActivityResponse habitData) {
+        log.info("Creating new habit log for habitId: {}, userId: {}", request.getHabitId(), request.getUserId());
+        checkCompletionTime(request.getCompletionTime(), habitData != null ? habitData.getCreatedAt() : null);
+        
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId(request.getHabitId()); // Set the habit ID
+        habitLog.setUserId(request.getUserId()); // Set the user ID
+        
+        if (habitData != null) {
+            log.info("Successfully fetched habit data for habitId: {}, setting details", request.getHabitId());
+            habitLog.setTitle(habitData.getTitle() != null ? habitData.getTitle() : "Habit " + request.getHabitId());
+            habitLog.setDescription(habitData.getDescription());
+            habitLog.setFrequency(habitData.getFrequency());
+            habitLog.setDays(habitData.getDays());
+            habitLog.setCreatedAt(habitData.getCreatedAt() != null ? habitData.getCreatedAt() : createdAtFallback(request));
+            habitLog.setUpdatedAt(LocalDateTime.now());
+            
+            // Copy existing streak data if available
+            habitLog.setStreak(habitData.getStreak() > 0 ? habitData.getStreak() : 1);
+            habitLog.setLongestStreak(habitData.getLongestStreak() > 0 ? habitData.getLongestStreak() : 1);
+        } else {
+            log.warn("Could not fetch habit details for habitId: {}, using defaults", request.getHabitId());
+            habitLog.setTitle("Habit " + request.getHabitId());
+            habitLog.setDescription("Default description");
+            habitLog.setFrequency("daily");
+            habitLog.setCreatedAt(createdAtFallback(request));
+            habitLog.setUpdatedAt(LocalDateTime.now());
+            habitLog.setStreak(1);
+            habitLog.setLongestStreak(1);
+        }
+        
+        habitLog.setStatus(HabitStatus.ACTIVE);
+        
+        habitLog.setTotalCompletions(1);
+        habitLog.setLastCompletionDate(request.getCompletionTime());
+        StreakEngine.apply(habitLog, request.getCompletionTime().toLocalDate(), day -> false, LocalDate.now());
+        CompletionBitmap.mark(habitLog, request.getCompletionTime().toLocalDate().toEpochDay());
+        
+        log.info("Created habit log with title: {}, description: {}, frequency: {}", 
+                habitLog.getTitle(), habitLog.getDescription(), habitLog.getFrequency());
+        
+        return habitLog;
+    }
+
+    /**
+     * Creation time of a habit whose details are unknown: now, or the first completion if that
+     * is earlier, since the habit existed by then
+     */
+    private static LocalDateTime createdAtFallback(HabitLogRequest request) {
+        LocalDateTime now = LocalDateTime.now();
+        return request.getCompletionTime().isBefore(now) ? request.getCompletionTime() : now;
+    }
+
+    /**
+     * Apply one more completion to the habit log and calculate streaks
+     */
+    public static void applyCompletion(HabitLogs habitLog, LocalDateTime completionTime) {
+        checkCompletionTime(completionTime, habitLog.getCreatedAt());
+        StreakEngine.apply(habitLog, completionTime.toLocalDate(), CompletionBitmap.history(habitLog), LocalDate.now());
+        CompletionBitmap.mark(habitLog, completionTime.toLocalDate().toEpochDay());
+
+        habitLog.setTotalCompletions(habitLog.getTotalCompletions() + 1);
+        if (habitLog.getLastCompletionDate() == null || completionTime.isAfter(habitLog.getLastCompletionDate())) {
+            habitLog.setLastCompletionDate(completionTime);
+        }
+        habitLog.setUpdatedAt(LocalDateTime.now());
+    }
+
+    /**
+     * Journal record of a completion applied to the habit log
+     *
+     * @param habitLog habit log as saved, its bitmap may or may not include the completion day yet
+     */
+    public static HabitActivityLog completionActivity(HabitLogs habitLog, HabitLogRequest request) {
+        LocalDate day = request.getCompletionTime().toLocalDate();
+        HabitSchedule schedule = HabitSchedule.of(habitLog.getFrequency(), habitLog.getDays(), habitLog.getTargetCount());
+        Long previousDay = CompletionBitmap.previousDay(habitLog, day.toEpochDay());
+        return HabitActivityLog.builder()
+                .meta(new HabitActivityLog.Meta(habitLog.getId(), habitLog.getUserId()))
+                .completedAt(request.getCompletionTime())
+                .activityType(ActivityType.COMPLETED)
+                .notes(request.getNotes())
+                .source(request.getSource() != null ? request.getSource() : "API")
+                .isOnTime(isOnTime(habitLog, schedule, day))
+                .daysSinceLastCompletion(previousDay != null ? (int) (day.toEpochDay() - previousDay) : 0)
+                .build();
+    }
+
+    /**
+     * Whether the habit was due on the completion day. A weekly or monthly target is no longer
+     * due once the days completed earlier in the period meet it; null when the bitmap holding
+     * those days is missing.
+     */
+    private static Boolean isOnTime(HabitLogs habitLog, HabitSchedule schedule, LocalDate day) {
+        if (schedule.hasPeriodTarget() && !CompletionBitmap.isPresent(habitLog)) {
+            return null;
+        }
+        // Days before the completion day only, since the bitmap may already include it
+        return schedule.nextExpected(day, false,
+                (from, to) -> CompletionBitmap.countBetween(habitLog, from.toEpochDay(), day.toEpochDay() - 1)).equals(day);
+    }
+
+    /**
+     * Journal record of a habit changed or deleted in another service
+     */
+    public static HabitActivityLog changeActivity(String habitId, String userId, ActivityType activityType,
+                                                  LocalDateTime changedAt, String source) {
+        return HabitActivityLog.builder()
+                .meta(new HabitActivityLog.Meta(habitId, userId))
+                .completedAt(changedAt != null ? changedAt : LocalDateTime.now())
+                .activityType(activityType)
+                .source(source)
+                .build();
+    }
+
+    /**
+     * Map entity to response DTO without the completion history
+     */
+    public static HabitLogResponse toResponse(HabitLogs habitLog) {
+        log.debug("Mapping HabitLogs to response - ID: {}, Title: {}, Description: {}, Frequency: {}", 
+                habitLog.getId(), habitLog.getTitle(), habitLog.getDescription(), habitLog.getFrequency());
+        
+        HabitLogResponse response = new HabitLogResponse();
+        response.setId(habitLog.getId());
+        response.setUserId(habitLog.getUserId());
+        response.setTitle(habitLog.getTitle());
+        response.setDescription(habitLog.getDescription());
+        response.setFrequency(habitLog.getFrequency());
+        response.setDays(habitLog.getDays());
+        response.setStreak(habitLog.getStreak());
+        response.setLongestStreak(habitLog.getLongestStreak());
+        response.setCreatedAt(habitLog.getCreatedAt());
+        response.setUpdatedAt(habitLog.getUpdatedAt());
+        response.setLastCompletionDate(habitLog.getLastCompletionDate());
+        response.setTargetCount(habitLog.getTargetCount());
+        response.setStatus(habitLog.getStatus());
+        
+        // Calculate additional metrics
+        LocalDate today = LocalDate.now();
+        HabitSchedule schedule = HabitSchedule.of(habitLog.getFrequency(), habitLog.getDays(), habitLog.getTargetCount());
+        int totalCompletions = totalCompletions(habitLog);
+        response.setTotalCompletions(totalCompletions);
+        response.setSuccessRate(calculateSuccessRate(habitLog, schedule, totalCompletions, today));
+        response.setNextExpectedCompletion(nextExpectedCompletion(habitLog, schedule, today));
+        
+        log.debug("Mapped response - Title: {}, Description: {}, Status: {}", 
+                response.getTitle(), response.getDescription(), response.getStatus());
+        
+        return response;
+    }
+
+    /**
+     * Bucketed completions plus any legacy embedded ones not migrated yet
+     */
+    private static int totalCompletions(HabitLogs habitLog) {
+        int legacy = habitLog.getCompletionLog() != null ? habitLog.getCompletionLog().size() : 0;
+        return habitLog.getTotalCompletions() + legacy;
+    }
+
+    /**
+     * Calculate success rate based on expected vs actual completions since the habit was created
+     */
+    private static double calculateSuccessRate(HabitLogs habitLog, HabitSchedule schedule, int totalCompletions, LocalDate today) {
+        if (totalCompletions == 0) {
+            return 0.0;
+        }
+        
+        LocalDate created = habitLog.getCreatedAt() != null ? habitLog.getCreatedAt().toLocalDate() : today;
+        double expectedCompletions = schedule.expectedBetween(created, today);
+        // Days with a completion, counted with popcount on the bitmap; older logs fall back to the counter
+        double actualCompletions = CompletionBitmap.isPresent(habitLog)
+                ? CompletionBitmap.countBetween(habitLog, created.toEpochDay(), today.toEpochDay())
+                : totalCompletions;
+        if (expectedCompletions <= 0) {
+            return actualCompletions > 0 ? 100.0 : 0.0;
+        }
+        
+        return Math.min(100.0, (actualCompletions / expectedCompletions) * 100.0);
+    }
+
+    /**
+     * Start of the next day the habit is due, null unless the habit is active
+     */
+    private static LocalDateTime nextExpectedCompletion(HabitLogs habitLog, HabitSchedule schedule, LocalDate today) {
+        if (habitLog.getStatus() != null && habitLog.getStatus() != HabitStatus.ACTIVE) {
+            return null;
+        }
+        Long lastDay = habitLog.getLastCompletionDay();
+        boolean completedToday = lastDay != null ? lastDay >= today.toEpochDay()
+                : habitLog.getLastCompletionDate() != null && !habitLog.getLastCompletionDate().toLocalDate().isBefore(today);
+        return schedule.nextExpected(today, completedToday,
+                (from, to) -> CompletionBitmap.countBetween(habitLog, from.toEpochDay(), to.toEpochDay())).atStartOfDay();
+    }
+}
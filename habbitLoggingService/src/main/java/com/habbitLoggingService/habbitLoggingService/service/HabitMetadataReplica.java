@@ -0,0 +1,191 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import com.habbitLoggingService.habbitLoggingService.model.HabitMetadata;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Habit details for completions, read from the local habit_metadata collection instead of the
+ * activity service.
+ *
+ * Every write is guarded by the habit's updatedAt: it only replaces an older copy, so events
+ * handled out of order and a sync page read before a change cannot overwrite newer details.
+ * A write that loses finds no older copy, falls back to inserting, and is rejected by the
+ * unique _id; no document is read first.
+ */
+@Service
+@Slf4j
+public class HabitMetadataReplica {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final AtomicLong misses = new AtomicLong();
+
+    public HabitMetadataReplica(MongoTemplate mongoTemplate, ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    /**
+     * The habit's details, or empty when there is no copy yet or the habit was deleted
+     */
+    public Optional<HabitActivityResponse> find(String habitId) {
+        HabitMetadata metadata = mongoTemplate.findById(habitId, HabitMetadata.class);
+        return Optional.ofNullable(toDetails(habitId, metadata));
+    }
+
+    /**
+     * Non-blocking find; empty when there is no copy yet or the habit was deleted
+     */
+    public Mono<HabitActivityResponse> findReactive(String habitId) {
+        return reactiveMongoTemplate.findById(habitId, HabitMetadata.class)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .mapNotNull(metadata -> toDetails(habitId, metadata.orElse(null)));
+    }
+
+    /**
+     * Write the habit's details unless the copy is already as new
+     *
+     * @return whether the copy changed
+     */
+    public boolean apply(HabitActivityResponse habit) {
+        try {
+            mongoTemplate.upsert(newerThanCopy(habit.getId(), version(habit)), details(habit), HabitMetadata.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write a page of habits with one unordered bulk write, each guarded like apply
+     *
+     * @return the habits whose copy changed
+     */
+    public List<HabitActivityResponse> applyAll(List<HabitActivityResponse> habits) {
+        if (habits.isEmpty()) {
+            return List.of();
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, HabitMetadata.class);
+        habits.forEach(habit -> bulk.upsert(newerThanCopy(habit.getId(), version(habit)), details(habit)));
+        Set<Integer> unchanged = new HashSet<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                unchanged.add(error.getIndex());
+            }
+        }
+        List<HabitActivityResponse> changed = new ArrayList<>();
+        for (int i = 0; i < habits.size(); i++) {
+            if (!unchanged.contains(i)) {
+                changed.add(habits.get(i));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Leave a tombstone for a deleted habit, unless the copy is newer than the deletion
+     */
+    public void markDeleted(String habitId, String userId, LocalDateTime deletedAt) {
+        Update update = new Update()
+                .set("userId", userId)
+                .set("deleted", true)
+                .set("updatedAt", deletedAt)
+                .set("syncedAt", LocalDateTime.now());
+        try {
+            mongoTemplate.upsert(newerThanCopy(habitId, deletedAt), update, HabitMetadata.class);
+        } catch (DuplicateKeyException e) {
+            log.debug("Habit {} already has a newer copy than its deletion", habitId);
+        }
+    }
+
+    /**
+     * Number of habits copied, deleted ones included
+     */
+    public long size() {
+        return mongoTemplate.estimatedCount(HabitMetadata.class);
+    }
+
+    /**
+     * Completions that found no copy and used default details
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    private HabitActivityResponse toDetails(String habitId, HabitMetadata metadata) {
+        if (metadata == null || metadata.isDeleted()) {
+            misses.incrementAndGet();
+            log.warn("No habit details copied for habitId: {}", habitId);
+            return null;
+        }
+        return HabitActivityResponse.builder()
+                .id(metadata.getId())
+                .userId(metadata.getUserId())
+                .title(metadata.getTitle())
+                .description(metadata.getDescription())
+                .frequency(metadata.getFrequency())
+                .days(metadata.getDays())
+                .createdAt(metadata.getCreatedAt())
+                .updatedAt(metadata.getUpdatedAt())
+                .build();
+    }
+
+    /**
+     * Matches the copy only while it is older than version; without a version, any copy
+     */
+    private static Query newerThanCopy(String habitId, LocalDateTime version) {
+        Criteria criteria = where("_id").is(habitId);
+        if (version != null) {
+            criteria = criteria.orOperator(where("updatedAt").lt(version), where("updatedAt").exists(false));
+        }
+        return query(criteria);
+    }
+
+    private static LocalDateTime version(HabitActivityResponse habit) {
+        return habit.getUpdatedAt() != null ? habit.getUpdatedAt() : habit.getCreatedAt();
+    }
+
+    private static Update details(HabitActivityResponse habit) {
+        return new Update()
+                .set("userId", habit.getUserId())
+                .set("title", habit.getTitle())
+                .set("description", habit.getDescription())
+                .set("frequency", habit.getFrequency())
+                .set("days", habit.getDays())
+                .set("createdAt", habit.getCreatedAt())
+                .set("updatedAt", version(habit))
+                .set("deleted", false)
+                .set("syncedAt", LocalDateTime.now());
+    }
+}
@@ -0,0 +1,155 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitMetadataStats;
+import com.habbiteventcontract.HabitEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the habit metadata replica up to date.
+ *
+ * Habit events only carry IDs, so a CREATED or UPDATED event re-reads that one habit from the
+ * activity service, and a DELETED event leaves a tombstone. Events are the only place the
+ * activity service is called from while the service runs, besides the sync: at startup and
+ * every habit-logs.metadata.resync-minutes, all habits are copied in pages of
+ * habit-logs.metadata.sync-page-size. The sync bounds staleness for changes whose events were
+ * parked or lost. Changed details are also written to the habit's log, if it has one.
+ */
+@Service
+@Slf4j
+public class HabitMetadataSync {
+
+    private final HabitMetadataReplica replica;
+    private final HabitActivityClient habitActivityClient;
+    private final HabitLoggingService habitLoggingService;
+    private final int pageSize;
+    private final long resyncMinutes;
+    private final Duration fetchTimeout;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong lastEventLagMillis = new AtomicLong();
+    private final AtomicLong maxEventLagMillis = new AtomicLong();
+    private volatile LocalDateTime lastEventAt;
+    private volatile LocalDateTime lastSyncAt;
+    private volatile long lastSyncMillis;
+    private volatile long lastSyncHabits;
+    private volatile long lastSyncChanged;
+
+    public HabitMetadataSync(HabitMetadataReplica replica,
+                             HabitActivityClient habitActivityClient,
+                             HabitLoggingService habitLoggingService,
+                             @Value("${habit-logs.metadata.sync-page-size:500}") int pageSize,
+                             @Value("${habit-logs.metadata.resync-minutes:60}") long resyncMinutes,
+                             @Value("${habit-logs.metadata.fetch-timeout-ms:2000}") long fetchTimeoutMillis) {
+        this.replica = replica;
+        this.habitActivityClient = habitActivityClient;
+        this.habitLoggingService = habitLoggingService;
+        this.pageSize = pageSize;
+        this.resyncMinutes = resyncMinutes;
+        this.fetchTimeout = Duration.ofMillis(fetchTimeoutMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "habit-metadata-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSyncing() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (RuntimeException e) {
+                log.warn("Habit metadata sync failed, retrying in {} minutes: {}", resyncMinutes, e.getMessage());
+            }
+        }, 0, resyncMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Copy every habit from the activity service
+     *
+     * @return number of habits whose copy changed
+     */
+    public long sync() {
+        long started = System.nanoTime();
+        long habits = 0;
+        long changed = 0;
+        String after = null;
+        while (true) {
+            List<HabitActivityResponse> page = habitActivityClient.fetchHabitsAfter(after, pageSize).block(fetchTimeout);
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            List<HabitActivityResponse> newer = replica.applyAll(page);
+            newer.forEach(habitLoggingService::applyHabitDetails);
+            habits += page.size();
+            changed += newer.size();
+            if (page.size() < pageSize) {
+                break;
+            }
+            after = page.get(page.size() - 1).getId();
+        }
+        lastSyncMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        lastSyncHabits = habits;
+        lastSyncChanged = changed;
+        lastSyncAt = LocalDateTime.now();
+        log.info("Synced {} habits from the activity service in {} ms, {} changed", habits, lastSyncMillis, changed);
+        return changed;
+    }
+
+    /**
+     * Re-read a created or updated habit; fails, so the event is retried, while the activity
+     * service cannot be reached
+     */
+    public void onHabitChanged(HabitEvent event) {
+        HabitActivityResponse habit = habitActivityClient.fetchCurrentHabit(event.habitId()).block(fetchTimeout);
+        if (habit == null) {
+            log.info("Habit {} is gone from the activity service, marking it deleted", event.habitId());
+            replica.markDeleted(event.habitId(), event.userId(), event.occurredAt() != null ? event.occurredAt() : LocalDateTime.now());
+        } else if (replica.apply(habit)) {
+            habitLoggingService.applyHabitDetails(habit);
+        }
+        recordLag(event);
+    }
+
+    public void onHabitDeleted(HabitEvent event) {
+        replica.markDeleted(event.habitId(), event.userId(), event.occurredAt() != null ? event.occurredAt() : LocalDateTime.now());
+        recordLag(event);
+    }
+
+    public HabitMetadataStats stats() {
+        return new HabitMetadataStats(replica.size(), replica.misses(), lastEventAt, lastEventLagMillis.get(),
+                maxEventLagMillis.get(), lastSyncAt, lastSyncMillis, lastSyncHabits, lastSyncChanged, resyncMinutes);
+    }
+
+    /**
+     * Time from the change in the activity or editing service to the replica having it
+     */
+    private void recordLag(HabitEvent event) {
+        lastEventAt = LocalDateTime.now();
+        if (event.occurredAt() == null) {
+            return;
+        }
+        long lag = Math.max(0, Duration.between(event.occurredAt(), lastEventAt).toMillis());
+        lastEventLagMillis.set(lag);
+        maxEventLagMillis.accumulateAndGet(lag, Math::max);
+    }
+}
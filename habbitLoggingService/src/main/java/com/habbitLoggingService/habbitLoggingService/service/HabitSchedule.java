@@ -0,0 +1,183 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToIntBiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled form of a habit's frequency, days and targetCount.
+ *
+ * Parsing happens once per distinct combination; the compiled schedule is immutable and shared.
+ * Expected occurrences over a window are computed arithmetically (whole weeks times the
+ * scheduled weekdays plus a masked remainder), so the cost does not depend on the window length.
+ */
+public final class HabitSchedule {
+
+    private static final Pattern TIMES_PER_PERIOD =
+            Pattern.compile("(\\d+)\\s*(?:x|times?)?\\s*(?:per|a|an|/|every)\\s*(day|week|month)");
+    private static final int ALL_DAYS = 0x7F;
+    private static final int WEEKDAYS = 0x1F;
+    private static final int WEEKENDS = 0x60;
+    private static final double DAYS_PER_MONTH = 365.2425 / 12;
+
+    private static final Cache<Key, HabitSchedule> COMPILED = Caffeine.newBuilder()
+            .maximumSize(1024)
+            .build();
+
+    private enum Kind { DAYS_OF_WEEK, PER_WEEK, PER_MONTH }
+
+    private final Kind kind;
+    private final int dayMask; // Bit n set when DayOfWeek.of(n + 1) is scheduled, for DAYS_OF_WEEK
+    private final int target; // Completions per period, for PER_WEEK and PER_MONTH
+
+    private HabitSchedule(Kind kind, int dayMask, int target) {
+        this.kind = kind;
+        this.dayMask = dayMask;
+        this.target = target;
+    }
+
+    /**
+     * Compiled schedule for the habit's settings. Unknown frequencies fall back to the
+     * scheduled days, or to daily when no days are set.
+     */
+    public static HabitSchedule of(String frequency, List<String> days, int targetCount) {
+        Key key = new Key(frequency == null ? "" : frequency.trim().toLowerCase(Locale.ROOT),
+                days == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(days)), targetCount);
+        return COMPILED.get(key, HabitSchedule::compile);
+    }
+
+    private static HabitSchedule compile(Key key) {
+        int mask = parseDays(key.days());
+        String frequency = key.frequency();
+
+        Matcher timesPerPeriod = TIMES_PER_PERIOD.matcher(frequency);
+        if (timesPerPeriod.find()) {
+            int times = Integer.parseInt(timesPerPeriod.group(1));
+            switch (timesPerPeriod.group(2)) {
+                case "week":
+                    return new HabitSchedule(Kind.PER_WEEK, 0, Math.max(1, Math.min(times, 7)));
+                case "month":
+                    return new HabitSchedule(Kind.PER_MONTH, 0, Math.max(1, times));
+                default:
+                    return daysOfWeek(mask != 0 ? mask : ALL_DAYS);
+            }
+        }
+        if (frequency.equals("weekdays")) {
+            return daysOfWeek(WEEKDAYS);
+        }
+        if (frequency.equals("weekends")) {
+            return daysOfWeek(WEEKENDS);
+        }
+        if (frequency.startsWith("week")) {
+            // "weekly": the scheduled days when given, otherwise targetCount times a week
+            return mask != 0 ? daysOfWeek(mask)
+                    : new HabitSchedule(Kind.PER_WEEK, 0, Math.max(1, Math.min(key.targetCount(), 7)));
+        }
+        if (frequency.startsWith("month")) {
+            return new HabitSchedule(Kind.PER_MONTH, 0, Math.max(1, key.targetCount()));
+        }
+        return daysOfWeek(mask != 0 ? mask : ALL_DAYS);
+    }
+
+    private static HabitSchedule daysOfWeek(int mask) {
+        return new HabitSchedule(Kind.DAYS_OF_WEEK, mask, 0);
+    }
+
+    private static int parseDays(List<String> days) {
+        int mask = 0;
+        for (String day : days) {
+            if (day == null || day.isBlank()) {
+                continue;
+            }
+            String name = day.trim().toUpperCase(Locale.ROOT);
+            for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+                // Accepts MONDAY, Monday and Mon
+                if (name.length() >= 3 && dayOfWeek.name().startsWith(name)) {
+                    mask |= 1 << (dayOfWeek.getValue() - 1);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Expected completions in [from, to], both inclusive. Per-week and per-month targets are
+     * prorated by the window length.
+     */
+    public double expectedBetween(LocalDate from, LocalDate to) {
+        long length = ChronoUnit.DAYS.between(from, to) + 1;
+        if (length <= 0) {
+            return 0;
+        }
+        switch (kind) {
+            case PER_WEEK:
+                return length * target / 7.0;
+            case PER_MONTH:
+                return length * target / DAYS_PER_MONTH;
+            default:
+                long weeks = length / 7;
+                int remainder = (int) (length % 7);
+                int fromWeek = rotate(dayMask, from.getDayOfWeek());
+                return weeks * Integer.bitCount(dayMask) + Integer.bitCount(fromWeek & ((1 << remainder) - 1));
+        }
+    }
+
+    /**
+     * Whether the habit is due a number of times per week or month rather than on given days
+     */
+    public boolean hasPeriodTarget() {
+        return kind != Kind.DAYS_OF_WEEK;
+    }
+
+    /**
+     * Next day the habit is due, on or after today.
+     *
+     * @param completedToday whether today already has a completion
+     * @param completedDays  completed days in an inclusive date range, used for per-period targets
+     */
+    public LocalDate nextExpected(LocalDate today, boolean completedToday,
+                                  ToIntBiFunction<LocalDate, LocalDate> completedDays) {
+        LocalDate from = completedToday ? today.plusDays(1) : today;
+        switch (kind) {
+            case PER_WEEK: {
+                LocalDate weekStart = today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                if (completedDays.applyAsInt(weekStart, today) >= target) {
+                    return weekStart.plusWeeks(1);
+                }
+                return from;
+            }
+            case PER_MONTH: {
+                LocalDate monthStart = today.withDayOfMonth(1);
+                if (completedDays.applyAsInt(monthStart, today) >= target) {
+                    return monthStart.plusMonths(1);
+                }
+                return from;
+            }
+            default:
+                int ahead = Integer.numberOfTrailingZeros(rotate(dayMask, from.getDayOfWeek()));
+                return from.plusDays(ahead);
+        }
+    }
+
+    /**
+     * Day mask re-based so that bit 0 is the given day of the week
+     */
+    private static int rotate(int mask, DayOfWeek start) {
+        int shift = start.getValue() - 1;
+        return ((mask >>> shift) | (mask << (7 - shift))) & ALL_DAYS;
+    }
+
+    private record Key(String frequency, List<String> days, int targetCount) {
+    }
+}
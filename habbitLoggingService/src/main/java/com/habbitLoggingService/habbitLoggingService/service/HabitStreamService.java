@@ -0,0 +1,301 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitStreakUpdate;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes habit streak deltas to Server-Sent Events subscribers.
+ *
+ * Idle connections hold no thread: the servlet container parks them as async requests and a
+ * small sender pool writes to them only when there is something to send. Each connection keeps
+ * at most one pending delta per habit, so a slow client receives the latest state instead of
+ * growing a queue. Subscribers are capped per user and per node.
+ *
+ * A servlet write blocks until the client reads, and the emitter cannot be completed while it
+ * does. A subscriber whose write has not returned after habit-logs.stream.write-timeout-ms is
+ * dropped: its slot is freed, its sender is interrupted and, until the write gives up, the pool
+ * gets a stand-in thread, so other streams and their heartbeats keep going.
+ */
+@Service
+@Slf4j
+public class HabitStreamService {
+
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final int maxSubscribers;
+    private final int maxSubscribersPerUser;
+    private static final int MAX_EVENTS_PER_TURN = 16;
+
+    private final long timeoutMillis;
+    private final long writeTimeoutNanos;
+    private final int senderThreads;
+    private final ThreadPoolExecutor sender;
+    private final ScheduledExecutorService heartbeat;
+    private int stuckSenders; // guarded by sender
+
+    public HabitStreamService(@Value("${habit-logs.stream.max-subscribers:20000}") int maxSubscribers,
+                              @Value("${habit-logs.stream.max-subscribers-per-user:5}") int maxSubscribersPerUser,
+                              @Value("${habit-logs.stream.timeout-minutes:30}") long timeoutMinutes,
+                              @Value("${habit-logs.stream.heartbeat-seconds:20}") long heartbeatSeconds,
+                              @Value("${habit-logs.stream.sender-threads:4}") int senderThreads,
+                              @Value("${habit-logs.stream.write-timeout-ms:10000}") long writeTimeoutMillis) {
+        this.maxSubscribers = maxSubscribers;
+        this.maxSubscribersPerUser = maxSubscribersPerUser;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        this.senderThreads = senderThreads;
+        this.sender = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemon("habit-stream-sender"));
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(daemon("habit-stream-heartbeat"));
+        this.heartbeat.scheduleAtFixedRate(this::sendHeartbeats, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        long checkMillis = Math.max(writeTimeoutMillis / 2, 1);
+        this.heartbeat.scheduleAtFixedRate(this::dropSlowSubscribers, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open a stream of streak deltas for a user
+     *
+     * @throws IllegalStateException when this node or this user has no subscriber slot left
+     */
+    public SseEmitter subscribe(String userId) {
+        return register(userId, new SseEmitter(timeoutMillis));
+    }
+
+    SseEmitter register(String userId, SseEmitter emitter) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new IllegalStateException("Too many live analytics subscribers");
+        }
+
+        Subscriber subscriber = new Subscriber(userId, emitter);
+        boolean[] added = {false};
+        subscribers.compute(userId, (key, userSubscribers) -> {
+            Set<Subscriber> current = userSubscribers != null ? userSubscribers : ConcurrentHashMap.newKeySet();
+            if (current.size() < maxSubscribersPerUser) {
+                added[0] = current.add(subscriber);
+            }
+            return current.isEmpty() ? null : current;
+        });
+        if (!added[0]) {
+            subscriberCount.decrementAndGet();
+            throw new IllegalStateException("Too many live analytics subscribers for user: " + userId);
+        }
+
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        log.debug("Live analytics subscriber added for user: {} ({} on this node)", userId, subscriberCount.get());
+        return emitter;
+    }
+
+    /**
+     * Queue a delta for every stream of the user. Never blocks the caller.
+     */
+    public void publish(String userId, HabitStreakUpdate update) {
+        Set<Subscriber> userSubscribers = subscribers.get(userId);
+        if (userSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : userSubscribers) {
+            subscriber.offer(update);
+        }
+    }
+
+    public int subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    private void sendHeartbeats() {
+        subscribers.values().forEach(userSubscribers -> userSubscribers.forEach(Subscriber::heartbeat));
+    }
+
+    private void dropSlowSubscribers() {
+        long now = System.nanoTime();
+        subscribers.values().forEach(userSubscribers -> userSubscribers.forEach(subscriber -> subscriber.dropIfStuck(now)));
+    }
+
+    /**
+     * Add a stand-in sender while a dropped subscriber's write still holds a thread, at most
+     * doubling the pool; remove it once the write returned
+     */
+    private void resizeSender(int stuckDelta) {
+        synchronized (sender) {
+            stuckSenders += stuckDelta;
+            int size = senderThreads + Math.min(stuckSenders, senderThreads);
+            if (size > sender.getMaximumPoolSize()) {
+                sender.setMaximumPoolSize(size);
+                sender.setCorePoolSize(size);
+            } else {
+                sender.setCorePoolSize(size);
+                sender.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.userId, (key, userSubscribers) -> {
+            if (userSubscribers.remove(subscriber)) {
+                subscriberCount.decrementAndGet();
+            }
+            return userSubscribers.isEmpty() ? null : userSubscribers;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        sender.shutdownNow();
+        subscribers.values().forEach(userSubscribers -> userSubscribers.forEach(subscriber -> subscriber.emitter.complete()));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * One open stream. Pending deltas are coalesced by habit and drained by at most one sender at a time.
+     */
+    private final class Subscriber {
+        private final String userId;
+        private final SseEmitter emitter;
+        private final Map<String, HabitStreakUpdate> pending = new LinkedHashMap<>(); // guarded by this
+        private boolean heartbeatDue; // guarded by this
+        private boolean draining; // guarded by this
+        private boolean dropped; // guarded by this
+        private Thread writer; // guarded by this, the sender inside emitter.send
+        private long writeStarted; // guarded by this
+
+        private Subscriber(String userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        private void offer(HabitStreakUpdate update) {
+            synchronized (this) {
+                pending.remove(update.getHabitId());
+                pending.put(update.getHabitId(), update);
+                scheduleDrain();
+            }
+        }
+
+        private void heartbeat() {
+            synchronized (this) {
+                heartbeatDue = true;
+                scheduleDrain();
+            }
+        }
+
+        private void scheduleDrain() {
+            if (!draining && !dropped) {
+                draining = true;
+                sender.execute(this::drain);
+            }
+        }
+
+        /**
+         * Drop the subscriber when its current write has been blocked too long. Never waits for
+         * the write: the emitter is completed by its sender once the write returns.
+         */
+        private void dropIfStuck(long now) {
+            synchronized (this) {
+                if (dropped || writer == null || now - writeStarted < writeTimeoutNanos) {
+                    return;
+                }
+                dropped = true;
+                pending.clear();
+                writer.interrupt();
+            }
+            log.info("Dropping live analytics subscriber for user {}: a write blocked for over {} ms",
+                    userId, TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos));
+            remove(this);
+            resizeSender(1);
+        }
+
+        /**
+         * Send at most MAX_EVENTS_PER_TURN events, then give the thread to other streams
+         */
+        private void drain() {
+            for (int sent = 0; ; sent++) {
+                HabitStreakUpdate update = null;
+                boolean sendHeartbeat;
+                synchronized (this) {
+                    if (sent == MAX_EVENTS_PER_TURN && !pending.isEmpty()) {
+                        sender.execute(this::drain);
+                        return;
+                    }
+                    Iterator<HabitStreakUpdate> next = pending.values().iterator();
+                    if (next.hasNext()) {
+                        update = next.next();
+                        next.remove();
+                    }
+                    sendHeartbeat = update == null && heartbeatDue;
+                    heartbeatDue = false;
+                    if (dropped || update == null && !sendHeartbeat) {
+                        draining = false;
+                        return;
+                    }
+                    writer = Thread.currentThread();
+                    writeStarted = System.nanoTime();
+                }
+
+                Exception failure = null;
+                try {
+                    if (update != null) {
+                        emitter.send(SseEmitter.event().name("habit").data(update));
+                    } else {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    failure = e;
+                }
+
+                boolean wasDropped;
+                synchronized (this) {
+                    writer = null;
+                    // An interrupt meant for this write must not hit the next one
+                    Thread.interrupted();
+                    wasDropped = dropped;
+                    if (wasDropped || failure != null) {
+                        dropped = true;
+                        pending.clear();
+                        draining = false;
+                    }
+                }
+                if (wasDropped) {
+                    resizeSender(-1);
+                    emitter.completeWithError(failure != null ? failure : new IOException("Write timed out"));
+                    return;
+                }
+                if (failure != null) {
+                    log.debug("Live analytics subscriber for user {} went away: {}", userId, failure.getMessage());
+                    remove(this);
+                    emitter.completeWithError(failure);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.model.ProcessedCompletion;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Remembers the idempotency keys of completions, so a client retry or a RabbitMQ redelivery is
+ * not counted twice.
+ *
+ * A key is claimed with a single insert into processed_completions, whose unique _id rejects a
+ * key used before on any node, and marked applied once the completion is written. A claim that
+ * was never marked applied, because its node died in between, is taken over by a retry once it
+ * is older than habit-logs.idempotency.claim-timeout-ms. Applied keys are also held in a bounded
+ * in-memory set, so most duplicates are rejected without a round trip. Keys expire after
+ * habit-logs.idempotency.ttl-hours.
+ */
+@Service
+@Slf4j
+public class IdempotencyStore {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final Duration ttl;
+    private final Duration claimTimeout;
+    private final Cache<String, Boolean> recentKeys;
+
+    public IdempotencyStore(MongoTemplate mongoTemplate,
+                            ReactiveMongoTemplate reactiveMongoTemplate,
+                            @Value("${habit-logs.idempotency.recent-keys:100000}") long maxRecentKeys,
+                            @Value("${habit-logs.idempotency.ttl-hours:24}") long ttlHours,
+                            @Value("${habit-logs.idempotency.claim-timeout-ms:60000}") long claimTimeoutMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.claimTimeout = Duration.ofMillis(claimTimeoutMillis);
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(maxRecentKeys)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Key scoped to the user, so clients generating keys independently cannot collide
+     */
+    public static String restKey(String userId, String idempotencyKey) {
+        return "rest:" + userId + ":" + idempotencyKey;
+    }
+
+    public static String eventKey(String messageId) {
+        return "event:" + messageId;
+    }
+
+    /**
+     * Claim the key for one completion; false when it was applied before or another request is
+     * still applying it. Call {@link #markApplied} once the completion is written.
+     */
+    public boolean claim(String key, HabitLogRequest request) {
+        if (recentKeys.getIfPresent(key) != null) {
+            return false;
+        }
+        try {
+            mongoTemplate.insert(record(key, request));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return takeOver(mongoTemplate.findById(key, ProcessedCompletion.class));
+        }
+    }
+
+    public Mono<Boolean> claimReactive(String key, HabitLogRequest request) {
+        if (recentKeys.getIfPresent(key) != null) {
+            return Mono.just(false);
+        }
+        return reactiveMongoTemplate.insert(record(key, request))
+                .thenReturn(true)
+                .onErrorResume(DuplicateKeyException.class, e -> reactiveMongoTemplate.findById(key, ProcessedCompletion.class)
+                        .flatMap(existing -> {
+                            if (existing.isApplied() || !isAbandoned(existing)) {
+                                return Mono.just(takeOver(existing));
+                            }
+                            return reactiveMongoTemplate.updateFirst(abandoned(existing), reclaim(), ProcessedCompletion.class)
+                                    .map(result -> result.getModifiedCount() > 0);
+                        })
+                        .defaultIfEmpty(false));
+    }
+
+    /**
+     * Claim the keys of a batch with one unordered bulk insert
+     *
+     * @param requests completion per key
+     * @return the keys claimed by this call; the others were used before
+     */
+    public Set<String> claimAll(Map<String, HabitLogRequest> requests) {
+        List<String> keys = requests.keySet().stream()
+                .filter(key -> recentKeys.getIfPresent(key) == null)
+                .toList();
+        if (keys.isEmpty()) {
+            return Set.of();
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProcessedCompletion.class);
+        keys.forEach(key -> bulk.insert(record(key, requests.get(key))));
+        Set<String> claimed = new HashSet<>(keys);
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            List<String> used = e.getErrors().stream().map(error -> keys.get(error.getIndex())).toList();
+            claimed.removeAll(used);
+            if (e.getErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) {
+                // Give back what did land, so the retry of the whole batch is not dropped as a duplicate
+                releaseAll(claimed);
+                throw e;
+            }
+            mongoTemplate.find(query(where("_id").in(used)), ProcessedCompletion.class).stream()
+                    .filter(this::takeOver)
+                    .forEach(existing -> claimed.add(existing.getId()));
+        }
+        return claimed;
+    }
+
+    /**
+     * Mark a claimed key applied once its completion is written, so it is never taken over
+     */
+    public void markApplied(String key) {
+        markAllApplied(List.of(key));
+    }
+
+    public void markAllApplied(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        mongoTemplate.updateMulti(query(where("_id").in(keys)), applied(), ProcessedCompletion.class);
+        keys.forEach(key -> recentKeys.put(key, Boolean.TRUE));
+    }
+
+    public Mono<Void> markAppliedReactive(String key) {
+        return reactiveMongoTemplate.updateFirst(query(where("_id").is(key)), applied(), ProcessedCompletion.class)
+                .doOnSuccess(result -> recentKeys.put(key, Boolean.TRUE))
+                .then();
+    }
+
+    /**
+     * Give up a claimed key after the completion failed, so a retry is processed
+     */
+    public void release(String key) {
+        mongoTemplate.remove(query(where("_id").is(key)), ProcessedCompletion.class);
+        recentKeys.invalidate(key);
+    }
+
+    /**
+     * Give up the claimed keys of a batch, so a redelivery is processed
+     */
+    public void releaseAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        mongoTemplate.remove(query(where("_id").in(keys)), ProcessedCompletion.class);
+        recentKeys.invalidateAll(keys);
+    }
+
+    public Mono<Void> releaseReactive(String key) {
+        return reactiveMongoTemplate.remove(query(where("_id").is(key)), ProcessedCompletion.class)
+                .doOnSuccess(result -> recentKeys.invalidate(key))
+                .then();
+    }
+
+    /**
+     * Create the TTL index in the background, so startup does not wait for MongoDB
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        CompletableFuture.runAsync(() -> mongoTemplate.indexOps(ProcessedCompletion.class)
+                        .createIndex(new Index().on("createdAt", Sort.Direction.ASC).expire(ttl)))
+                .exceptionally(e -> {
+                    log.warn("Could not create the processed_completions TTL index: {}", e.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * Claim a key whose insert hit an existing document, when that is a claim abandoned by a
+     * request that died before marking it applied
+     */
+    private boolean takeOver(ProcessedCompletion existing) {
+        if (existing == null) {
+            // Released between the insert and the read; the retry that released it gets the next claim
+            return false;
+        }
+        if (existing.isApplied()) {
+            recentKeys.put(existing.getId(), Boolean.TRUE);
+            return false;
+        }
+        if (!isAbandoned(existing)) {
+            return false;
+        }
+        boolean claimed = mongoTemplate.updateFirst(abandoned(existing), reclaim(), ProcessedCompletion.class)
+                .getModifiedCount() > 0;
+        if (claimed) {
+            log.warn("Taking over idempotency key {} claimed at {} and never applied", existing.getId(), existing.getCreatedAt());
+        }
+        return claimed;
+    }
+
+    private boolean isAbandoned(ProcessedCompletion existing) {
+        return existing.getCreatedAt() == null || existing.getCreatedAt().isBefore(LocalDateTime.now().minus(claimTimeout));
+    }
+
+    /**
+     * Matches the abandoned claim only as it was read, so of two retries taking it over one wins
+     */
+    private static Query abandoned(ProcessedCompletion existing) {
+        return query(where("_id").is(existing.getId())
+                .and("state").is(ProcessedCompletion.State.CLAIMED)
+                .and("createdAt").is(existing.getCreatedAt()));
+    }
+
+    private static Update reclaim() {
+        return new Update().set("createdAt", LocalDateTime.now());
+    }
+
+    private static Update applied() {
+        return new Update().set("state", ProcessedCompletion.State.APPLIED);
+    }
+
+    private static ProcessedCompletion record(String key, HabitLogRequest request) {
+        return new ProcessedCompletion(key, request.getHabitId(), request.getUserId(),
+                ProcessedCompletion.State.CLAIMED, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,68 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compact binary form of a list of completion times for the cold tier.
+ *
+ * Times are sorted, reduced to epoch milliseconds and stored as variable-length deltas, so a
+ * daily completion takes 4 bytes instead of the 8 bytes plus array key of a BSON date.
+ * Precision is the millisecond MongoDB keeps anyway.
+ */
+public final class PackedCompletions {
+
+    private PackedCompletions() {
+    }
+
+    public static byte[] encode(Collection<LocalDateTime> completions) {
+        long[] millis = completions.stream()
+                .mapToLong(completion -> completion.toInstant(ZoneOffset.UTC).toEpochMilli())
+                .sorted()
+                .toArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(millis.length * 4 + 8);
+        long previous = 0;
+        for (long value : millis) {
+            long delta = value - previous;
+            // Zigzag, so that a first value before 1970 stays short too
+            writeVarLong(out, (delta << 1) ^ (delta >> 63));
+            previous = value;
+        }
+        return out.toByteArray();
+    }
+
+    public static List<LocalDateTime> decode(byte[] packed) {
+        List<LocalDateTime> completions = new ArrayList<>();
+        if (packed == null) {
+            return completions;
+        }
+        long previous = 0;
+        int position = 0;
+        while (position < packed.length) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = packed[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            completions.add(LocalDateTime.ofInstant(Instant.ofEpochMilli(previous), ZoneOffset.UTC));
+        }
+        return completions;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
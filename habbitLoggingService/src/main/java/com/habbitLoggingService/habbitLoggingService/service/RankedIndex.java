@@ -0,0 +1,139 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Sorted set answering "how many elements come before x" and "first n elements" in O(log n)
+ * expected time: a treap whose nodes carry their subtree size.
+ *
+ * Not thread-safe; elements must be unique under the comparator.
+ */
+final class RankedIndex<T> {
+
+    private final Comparator<? super T> order;
+    private final SplittableRandom random = new SplittableRandom();
+    private Node<T> root;
+
+    RankedIndex(Comparator<? super T> order) {
+        this.order = order;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    void add(T value) {
+        Split<T> split = split(root, value, false);
+        Node<T> node = new Node<>(value, random.nextInt());
+        root = merge(merge(split.left(), node), split.right());
+    }
+
+    boolean remove(T value) {
+        Split<T> lower = split(root, value, false);
+        Split<T> match = split(lower.right(), value, true);
+        root = merge(lower.left(), match.right());
+        return match.left() != null;
+    }
+
+    /**
+     * Number of elements ordered strictly before value, whether or not value is in the set
+     */
+    int countBefore(T value) {
+        int count = 0;
+        Node<T> node = root;
+        while (node != null) {
+            if (order.compare(value, node.value) <= 0) {
+                node = node.left;
+            } else {
+                count += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The first n elements in order
+     */
+    List<T> head(int n) {
+        List<T> head = new ArrayList<>(Math.min(n, size()));
+        Deque<Node<T>> path = new ArrayDeque<>();
+        Node<T> node = root;
+        while (head.size() < n && (node != null || !path.isEmpty())) {
+            while (node != null) {
+                path.push(node);
+                node = node.left;
+            }
+            node = path.pop();
+            head.add(node.value);
+            node = node.right;
+        }
+        return head;
+    }
+
+    /**
+     * Elements before value (or up to and including it when inclusive) go left, the rest right
+     */
+    private Split<T> split(Node<T> node, T value, boolean inclusive) {
+        if (node == null) {
+            return new Split<>(null, null);
+        }
+        int cmp = order.compare(node.value, value);
+        if (cmp < 0 || (inclusive && cmp == 0)) {
+            Split<T> rest = split(node.right, value, inclusive);
+            node.right = rest.left();
+            return new Split<>(update(node), rest.right());
+        }
+        Split<T> rest = split(node.left, value, inclusive);
+        node.left = rest.right();
+        return new Split<>(rest.left(), update(node));
+    }
+
+    /**
+     * Join two treaps where every element of left comes before every element of right
+     */
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private static <T> Node<T> update(Node<T> node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<T> {
+        private final T value;
+        private final int priority;
+        private int size = 1;
+        private Node<T> left;
+        private Node<T> right;
+
+        private Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    private record Split<T>(Node<T> left, Node<T> right) {
+    }
+}
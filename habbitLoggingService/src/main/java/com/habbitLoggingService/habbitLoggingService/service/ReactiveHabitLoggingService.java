@@ -0,0 +1,286 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogPage;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogResponse;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitStreakUpdate;
+import com.habbitLoggingService.habbitLoggingService.model.ColdCompletionHistory;
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.repository.ReactiveHabitLoggingRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Non-blocking variant of {@link HabitLoggingService} for the completion and analytics paths.
+ *
+ * Upstream calls and Mongo access return without holding a thread while waiting. The one exception
+ * is the one-time upgrade of a habit log stored by an older version (embedded completion log),
+ * which reuses the blocking migration on the bounded elastic scheduler. Reads go through the same
+ * {@link AnalyticsCache} entries as the blocking endpoints.
+ *
+ * Completions here do not take {@link HabitLocks}, whose waits would park an event loop thread.
+ * They race the blocking path on the same guarded writes and retry up to MAX_COMPLETION_ATTEMPTS
+ * times when they lose.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ReactiveHabitLoggingService {
+
+    private final ReactiveHabitLoggingRepository repository;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final UserValidationService userValidationService;
+    private final HabitMetadataReplica habitMetadataReplica;
+    private final CompletionBucketStore completionStore;
+    private final AnalyticsCache analyticsCache;
+    private final HabitStreamService streamService;
+    private final CompletionPrefetcher completionPrefetcher;
+    private final IdempotencyStore idempotencyStore;
+    private final StreakLeaderboard leaderboard;
+    private final ActivityJournal activityJournal;
+
+    private static final int MAX_COMPLETION_ATTEMPTS = 5;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * Log a habit completion at most once per idempotency key; fails with
+     * {@link DuplicateCompletionException} when the key was used before
+     *
+     * @param idempotencyKey scoped key from {@link IdempotencyStore}, or null to always apply
+     */
+    public Mono<HabitLogResponse> logHabitCompletion(HabitLogRequest request, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return logHabitCompletion(request);
+        }
+        return idempotencyStore.claimReactive(idempotencyKey, request)
+                .flatMap(claimed -> {
+                    if (!claimed) {
+                        log.info("Dropping duplicate completion {} for habit: {}", idempotencyKey, request.getHabitId());
+                        return Mono.error(new DuplicateCompletionException(idempotencyKey));
+                    }
+                    return logHabitCompletion(request)
+                            .onErrorResume(e -> idempotencyStore.releaseReactive(idempotencyKey).then(Mono.error(e)))
+                            .flatMap(response -> idempotencyStore.markAppliedReactive(idempotencyKey).thenReturn(response));
+                });
+    }
+
+    /**
+     * Log a habit completion
+     */
+    public Mono<HabitLogResponse> logHabitCompletion(HabitLogRequest request) {
+        log.info("Logging habit completion for user: {}, habit: {}", request.getUserId(), request.getHabitId());
+        if (request.getCompletionTime() == null) {
+            request.setCompletionTime(LocalDateTime.now());
+        }
+
+        // Validate user and look up the habit concurrently; the deadline cancels whatever is still running
+        return Mono.fromRunnable(() -> HabitLogMapper.checkCompletionTime(request.getCompletionTime(), null))
+                .then(Mono.defer(() -> completionPrefetcher.prefetch(request)))
+                // Into the bucket first, as in the blocking path: the history is the source of truth
+                .flatMap(prefetched -> append(request)
+                        .then(recordCompletion(request, prefetched, 1))
+                        .onErrorResume(e -> !(e instanceof DataAccessException), e -> remove(request).then(Mono.error(e))))
+                .timeout(completionPrefetcher.deadline())
+                .onErrorMap(TimeoutException.class, e -> new RuntimeException("Completion deadline exceeded for habit: " + request.getHabitId()))
+                .map(savedLog -> {
+                    analyticsCache.invalidateUser(savedLog.getUserId());
+                    leaderboard.update(savedLog);
+                    activityJournal.record(HabitLogMapper.completionActivity(savedLog, request));
+                    HabitLogResponse response = HabitLogMapper.toResponse(savedLog);
+                    streamService.publish(savedLog.getUserId(), new HabitStreakUpdate(response.getId(),
+                            response.getStreak(), response.getLongestStreak(), response.getTotalCompletions()));
+                    return response;
+                });
+    }
+
+    /**
+     * Get one page of habit analytics for a user
+     */
+    public Mono<HabitLogPage> getUserHabitAnalytics(String userId, HabitStatus status, String cursor, int limit, boolean includeHistory) {
+        log.info("Getting habit analytics for user: {}, status: {}, cursor: {}", userId, status, cursor);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        String view = "page:" + status + ":" + cursor + ":" + pageSize + ":" + includeHistory;
+        return validateUser(userId)
+                .then(analyticsCache.getReactive(userId, view, () -> loadPage(userId, status, cursor, pageSize, includeHistory)));
+    }
+
+    private Mono<HabitLogPage> loadPage(String userId, HabitStatus status, String cursor, int pageSize, boolean includeHistory) {
+        // One extra habit tells whether another page follows
+        return repository.findPage(userId, status, cursor, pageSize + 1, includeHistory).collectList()
+                .flatMap(userHabits -> {
+                    boolean hasMore = userHabits.size() > pageSize;
+                    List<HabitLogs> page = hasMore ? userHabits.subList(0, pageSize) : userHabits;
+                    String nextCursor = hasMore ? page.get(page.size() - 1).getId() : null;
+                    return Flux.fromIterable(page)
+                            .flatMapSequential(habitLog -> toResponse(habitLog, includeHistory))
+                            .collectList()
+                            .map(items -> new HabitLogPage(items, nextCursor));
+                });
+    }
+
+    /**
+     * Get specific habit analytics
+     */
+    public Mono<HabitLogResponse> getHabitAnalytics(String userId, String habitId) {
+        log.info("Getting analytics for habit: {} of user: {}", habitId, userId);
+
+        return analyticsCache.getReactive(userId, "habit:" + habitId, () -> repository.findByIdAndUserId(habitId, userId)
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("Habit not found: " + habitId)))
+                .flatMap(habitLog -> toResponse(habitLog, true)));
+    }
+
+    private Mono<Void> validateUser(String userId) {
+        return userValidationService.validateUserReactive(userId)
+                .flatMap(valid -> valid ? Mono.<Void>empty() : Mono.error(new RuntimeException("Invalid user: " + userId)));
+    }
+
+    /**
+     * Same steps as the blocking path: a bitmap read and one atomic findAndModify in the common
+     * case, creating the habit log or a guarded write for late completions otherwise, retried on
+     * conflict
+     */
+    private Mono<HabitLogs> recordCompletion(HabitLogRequest request, CompletionPrefetcher.Prefetched prefetched, int attempt) {
+        String habitId = request.getHabitId();
+        String userId = request.getUserId();
+        LocalDateTime completionTime = request.getCompletionTime();
+        if (attempt > MAX_COMPLETION_ATTEMPTS) {
+            return Mono.error(new RuntimeException("Could not record completion for habit: " + habitId));
+        }
+
+        return recordInOrder(request)
+                .switchIfEmpty(Mono.defer(() -> repository.findByIdAndUserId(habitId, userId)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(existingLog -> existingLog.isPresent()
+                                ? recordOutOfOrder(existingLog.get(), completionTime)
+                                : createHabitLog(request, prefetched))))
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.debug("Concurrent completion on habit {}, retrying (attempt {})", habitId, attempt);
+                    return recordCompletion(request, prefetched, attempt + 1);
+                }));
+    }
+
+    /**
+     * Create the habit log from the replicated habit details; empty when it was created concurrently
+     */
+    private Mono<HabitLogs> createHabitLog(HabitLogRequest request, CompletionPrefetcher.Prefetched prefetched) {
+        Mono<Optional<HabitActivityResponse>> habitDetails = !prefetched.habitLogFound()
+                ? Mono.just(Optional.ofNullable(prefetched.habitData()))
+                : habitMetadataReplica.findReactive(request.getHabitId()).map(Optional::of).defaultIfEmpty(Optional.empty());
+        return habitDetails
+                .map(habitData -> HabitLogMapper.newHabitLog(request, habitData.orElse(null)))
+                .flatMap(newLog -> repository.insertIfAbsent(newLog)
+                        .filter(Boolean::booleanValue)
+                        .map(created -> newLog));
+    }
+
+    /**
+     * Late completion or legacy document; empty when another completion changed the habit log first
+     */
+    private Mono<HabitLogs> recordOutOfOrder(HabitLogs habitLog, LocalDateTime completionTime) {
+        byte[] expectedDays = habitLog.getCompletionDays();
+        Mono<HabitLogs> prepared = CompletionBucketStore.needsPreparation(habitLog)
+                ? Mono.fromCallable(() -> {
+                    completionStore.prepareForCompletion(habitLog);
+                    return habitLog;
+                }).subscribeOn(Schedulers.boundedElastic())
+                : Mono.just(habitLog);
+
+        return prepared.flatMap(current -> {
+            int expectedTotal = current.getTotalCompletions();
+            HabitLogMapper.applyCompletion(current, completionTime);
+            return repository.compareAndSetCompletion(current, expectedTotal, expectedDays);
+        });
+    }
+
+    /**
+     * Same as the blocking path: read the completion bitmap, then update the counters and store it
+     * with the day marked in one findAndModify; empty when the completion needs the slower path or
+     * another completion changed the bitmap in between
+     */
+    private Mono<HabitLogs> recordInOrder(HabitLogRequest request) {
+        LocalDateTime completionTime = request.getCompletionTime();
+        return repository.findCompletionDays(request.getHabitId())
+                .filter(current -> current.getCompletionLog() == null)
+                .flatMap(current -> {
+                    HabitLogMapper.checkCompletionTime(completionTime, current.getCreatedAt());
+                    byte[] expectedDays = current.getCompletionDays();
+                    // Habit logs stored before the bitmap existed get it built from their history once
+                    Mono<HabitLogs> withBitmap = CompletionBitmap.isPresent(current)
+                            ? Mono.just(current)
+                            : completions(current).map(completions -> {
+                                CompletionBitmap.build(current, completions);
+                                return current;
+                            });
+                    return withBitmap.flatMap(bitmap -> {
+                        CompletionBitmap.mark(bitmap, completionTime.toLocalDate().toEpochDay());
+                        return repository.recordCompletion(request.getHabitId(), request.getUserId(), completionTime,
+                                LocalDate.now(), expectedDays, bitmap.getCompletionDays(), bitmap.getCompletionDaysOrigin());
+                    });
+                });
+    }
+
+    private Mono<Void> append(HabitLogRequest request) {
+        LocalDateTime completionTime = request.getCompletionTime();
+        return reactiveMongoTemplate.upsert(
+                        query(where("_id").is(HabitCompletionBucket.idOf(request.getHabitId(), YearMonth.from(completionTime)))),
+                        CompletionBucketStore.appendUpdate(request.getHabitId(), request.getUserId(), completionTime),
+                        HabitCompletionBucket.class)
+                .then();
+    }
+
+    /**
+     * Take the completion out of its bucket when the habit log write certainly did not happen.
+     * After a database error or the deadline it may have, so the completion then stays. This rare
+     * path reuses the blocking store on the bounded elastic scheduler.
+     */
+    private Mono<Void> remove(HabitLogRequest request) {
+        return Mono.<Void>fromRunnable(() -> completionStore.remove(request.getHabitId(), request.getCompletionTime()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Full completion history of a habit, legacy embedded entries included
+     */
+    private Mono<List<LocalDateTime>> completions(HabitLogs habitLog) {
+        Query byHabit = query(where("habitId").is(habitLog.getId())).with(Sort.by("month"));
+        Mono<List<ColdCompletionHistory>> cold = habitLog.getColdBefore() != null
+                ? reactiveMongoTemplate.find(byHabit, ColdCompletionHistory.class).collectList()
+                : Mono.just(List.of());
+        return Mono.zip(cold, reactiveMongoTemplate.find(byHabit, HabitCompletionBucket.class).collectList())
+                .map(tiers -> CompletionBucketStore.merge(habitLog.getCompletionLog(), tiers.getT1(), tiers.getT2()));
+    }
+
+    private Mono<HabitLogResponse> toResponse(HabitLogs habitLog, boolean includeHistory) {
+        HabitLogResponse response = HabitLogMapper.toResponse(habitLog);
+        if (!includeHistory) {
+            return Mono.just(response);
+        }
+        return completions(habitLog).map(completions -> {
+            response.setCompletionLog(completions);
+            return response;
+        });
+    }
+}
@@ -0,0 +1,143 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitLoggingRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Resets the stored streak of habits that were not completed yesterday or today.
+ *
+ * Streaks are only recalculated when a completion is written, so an abandoned habit would keep
+ * its last streak. Shortly after each midnight, and once at startup to catch up, the lapsed habit
+ * logs are streamed through the lastCompletionDay_liveStreak partial index in cursor batches and
+ * reset with one guarded update per batch. Only one batch is held in memory, and a sweep stops
+ * after habit-logs.streak-decay.max-minutes; the rest is picked up by the next sweep.
+ */
+@Service
+@Slf4j
+public class StreakDecaySweeper {
+
+    // Leaves room for clock skew between nodes around midnight
+    private static final Duration AFTER_MIDNIGHT = Duration.ofMinutes(1);
+
+    private final HabitLoggingRepository repository;
+    private final StreakLeaderboard leaderboard;
+    private final AnalyticsCache analyticsCache;
+    private final int batchSize;
+    private final Duration maxDuration;
+    private final ScheduledExecutorService scheduler;
+
+    public StreakDecaySweeper(HabitLoggingRepository repository,
+                              StreakLeaderboard leaderboard,
+                              AnalyticsCache analyticsCache,
+                              @Value("${habit-logs.streak-decay.batch-size:1000}") int batchSize,
+                              @Value("${habit-logs.streak-decay.max-minutes:30}") long maxMinutes) {
+        this.repository = repository;
+        this.leaderboard = leaderboard;
+        this.analyticsCache = analyticsCache;
+        this.batchSize = batchSize;
+        this.maxDuration = Duration.ofMinutes(maxMinutes);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "streak-decay-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSweeping() {
+        scheduler.execute(this::sweepAndReschedule);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Reset every streak that lapsed as of the given day
+     *
+     * @return number of habit logs reset
+     */
+    public long sweep(LocalDate today) {
+        // A run ending yesterday is still alive today
+        long cutoffDay = today.minusDays(1).toEpochDay();
+        long deadline = System.nanoTime() + maxDuration.toNanos();
+        long reset = 0;
+        long seen = 0;
+
+        List<HabitLogs> batch = new ArrayList<>(batchSize);
+        try (Stream<HabitLogs> lapsed = repository.streamLapsedStreaks(cutoffDay, batchSize)) {
+            Iterator<HabitLogs> iterator = lapsed.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() < batchSize) {
+                    continue;
+                }
+                seen += batch.size();
+                reset += reset(batch, cutoffDay);
+                batch.clear();
+                if (System.nanoTime() > deadline) {
+                    log.warn("Streak decay sweep stopped after {} with {} streaks reset; the rest waits for the next sweep",
+                            maxDuration, reset);
+                    return reset;
+                }
+            }
+            seen += batch.size();
+            reset += reset(batch, cutoffDay);
+        }
+
+        log.info("Streak decay sweep for {}: {} lapsed streaks found, {} reset", today, seen, reset);
+        return reset;
+    }
+
+    private long reset(List<HabitLogs> batch, long cutoffDay) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        long reset = repository.resetLapsedStreaks(batch.stream().map(HabitLogs::getId).toList(), cutoffDay);
+
+        Set<String> users = new HashSet<>();
+        for (HabitLogs habitLog : batch) {
+            // Keeps the updatedAt it was read with, so a completion the update skipped still wins on the leaderboard
+            habitLog.setStreak(0);
+            leaderboard.update(habitLog);
+            users.add(habitLog.getUserId());
+        }
+        users.forEach(analyticsCache::invalidateUser);
+        return reset;
+    }
+
+    private void sweepAndReschedule() {
+        try {
+            sweep(LocalDate.now());
+        } catch (RuntimeException e) {
+            log.warn("Streak decay sweep failed: {}", e.getMessage());
+        }
+        if (scheduler.isShutdown()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().plusDays(1).atStartOfDay().plus(AFTER_MIDNIGHT);
+        scheduler.schedule(this::sweepAndReschedule, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
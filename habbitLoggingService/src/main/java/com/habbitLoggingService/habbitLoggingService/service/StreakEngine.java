@@ -0,0 +1,121 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.function.LongPredicate;
+
+/**
+ * Incremental streak calculation.
+ *
+ * The running state (current run start, last completion day, longest run) lives on
+ * {@link HabitLogs}, so an in-order completion is applied in constant time. Out-of-order
+ * completions only look at the days next to them through the supplied history lookup,
+ * never at the whole completion log.
+ */
+public final class StreakEngine {
+
+    private StreakEngine() {
+    }
+
+    /**
+     * Apply one completion day to the running streak state.
+     *
+     * @param habitLog habit log holding the running state
+     * @param day      day the habit was completed
+     * @param history  tells whether a day already had a completion; only consulted for out-of-order days
+     * @param today    reference day used to decide whether the current run is still alive
+     */
+    public static void apply(HabitLogs habitLog, LocalDate day, LongPredicate history, LocalDate today) {
+        long epochDay = day.toEpochDay();
+        Long runStart = habitLog.getCurrentRunStartDay();
+        Long last = habitLog.getLastCompletionDay();
+
+        if (runStart == null || last == null) {
+            runStart = epochDay;
+            last = epochDay;
+        } else if (epochDay > last + 1) {
+            // Gap since the last completion, a new run starts
+            runStart = epochDay;
+            last = epochDay;
+        } else if (epochDay == last + 1) {
+            last = epochDay;
+        } else if (epochDay == runStart - 1) {
+            // Late completion right before the current run, which may now join an older run
+            runStart = epochDay;
+            while (history.test(runStart - 1)) {
+                runStart--;
+            }
+        } else if (epochDay < runStart - 1) {
+            // Late completion in the past only affects the run it belongs to
+            long left = epochDay;
+            while (history.test(left - 1)) {
+                left--;
+            }
+            long right = epochDay;
+            while (history.test(right + 1)) {
+                right++;
+            }
+            habitLog.setLongestStreak((int) Math.max(habitLog.getLongestStreak(), right - left + 1));
+        }
+        // Days inside the current run are already counted
+
+        habitLog.setCurrentRunStartDay(runStart);
+        habitLog.setLastCompletionDay(last);
+        updateStreaks(habitLog, today);
+    }
+
+    /**
+     * Rebuild the running state with one scan over the runs of the completion bitmap.
+     * Used once for habit logs stored before the running state existed.
+     */
+    public static void rebuild(HabitLogs habitLog, LocalDate today) {
+        habitLog.setCurrentRunStartDay(null);
+        habitLog.setLastCompletionDay(null);
+        BitSet bits = CompletionBitmap.bits(habitLog);
+        if (!CompletionBitmap.isPresent(habitLog) || bits.isEmpty()) {
+            habitLog.setStreak(0);
+            return;
+        }
+
+        int runStart = bits.nextSetBit(0);
+        int runEnd = bits.nextClearBit(runStart);
+        int longestStreak = runEnd - runStart;
+        int next = bits.nextSetBit(runEnd);
+        while (next >= 0) {
+            runStart = next;
+            runEnd = bits.nextClearBit(runStart);
+            longestStreak = Math.max(longestStreak, runEnd - runStart);
+            next = bits.nextSetBit(runEnd);
+        }
+
+        long origin = habitLog.getCompletionDaysOrigin();
+        habitLog.setCurrentRunStartDay(origin + runStart);
+        habitLog.setLastCompletionDay(origin + runEnd - 1);
+        habitLog.setLongestStreak(Math.max(habitLog.getLongestStreak(), longestStreak));
+        updateStreaks(habitLog, today);
+    }
+
+    /**
+     * Current streak as seen on the given day: the length of the latest run,
+     * or 0 once more than a day has passed since its last completion.
+     */
+    public static int currentStreak(HabitLogs habitLog, LocalDate today) {
+        Long runStart = habitLog.getCurrentRunStartDay();
+        Long last = habitLog.getLastCompletionDay();
+        if (runStart == null || last == null) {
+            return 0;
+        }
+        if (today.toEpochDay() - last > 1) {
+            return 0;
+        }
+        return (int) (last - runStart + 1);
+    }
+
+    private static void updateStreaks(HabitLogs habitLog, LocalDate today) {
+        int runLength = (int) (habitLog.getLastCompletionDay() - habitLog.getCurrentRunStartDay() + 1);
+        habitLog.setLongestStreak(Math.max(habitLog.getLongestStreak(), runLength));
+        habitLog.setStreak(currentStreak(habitLog, today));
+    }
+}
@@ -0,0 +1,251 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.LeaderboardEntry;
+import com.habbitLoggingService.habbitLoggingService.dto.StreakRank;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Current streaks of all habits, ranked globally and per habit title, held in memory.
+ *
+ * Rank lookups and top-N reads are O(log n) (plus N) and never touch MongoDB. The index is
+ * loaded from habit_logs in the background at startup, kept current from the completion path
+ * and re-read every habit-logs.leaderboard.refresh-minutes to pick up writes from other nodes.
+ * A snapshot older than the entry already held is ignored, so a refresh never undoes a newer
+ * completion. Archived habits are not ranked.
+ */
+@Service
+@Slf4j
+public class StreakLeaderboard {
+
+    // Longest streak first; the habit ID makes entries with the same streak distinct
+    private static final Comparator<Ranked> ORDER = Comparator.comparingInt(Ranked::streak).reversed()
+            .thenComparing(Ranked::habitId);
+
+    private final MongoTemplate mongoTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Ranked> byHabit = new HashMap<>();
+    private final RankedIndex<Ranked> global = new RankedIndex<>(ORDER);
+    private final Map<String, RankedIndex<Ranked>> byTitle = new HashMap<>();
+    private final ScheduledExecutorService refresher;
+    private final long refreshMinutes;
+
+    public StreakLeaderboard(MongoTemplate mongoTemplate,
+                             @Value("${habit-logs.leaderboard.refresh-minutes:10}") long refreshMinutes) {
+        this.mongoTemplate = mongoTemplate;
+        this.refreshMinutes = refreshMinutes;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "streak-leaderboard-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private record Ranked(String habitId, String userId, String title, int streak, LocalDateTime updatedAt) {
+    }
+
+    /**
+     * Apply the state of a habit log that was just written or read
+     */
+    public void update(HabitLogs habitLog) {
+        if (habitLog.getId() == null) {
+            return;
+        }
+        if (habitLog.getStatus() == HabitStatus.ARCHIVED) {
+            remove(habitLog.getId());
+            return;
+        }
+
+        Ranked entry = new Ranked(habitLog.getId(), habitLog.getUserId(), habitLog.getTitle(),
+                habitLog.getStreak(), habitLog.getUpdatedAt());
+        lock.writeLock().lock();
+        try {
+            Ranked current = byHabit.get(entry.habitId());
+            if (current != null) {
+                if (entry.updatedAt() != null && current.updatedAt() != null && entry.updatedAt().isBefore(current.updatedAt())) {
+                    return;
+                }
+                unindex(current);
+            }
+            index(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String habitId) {
+        lock.writeLock().lock();
+        try {
+            Ranked current = byHabit.get(habitId);
+            if (current != null) {
+                unindex(current);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Longest current streaks, globally or among habits with the given title (case-insensitive)
+     */
+    public List<LeaderboardEntry> top(String title, int limit) {
+        List<Ranked> head;
+        lock.readLock().lock();
+        try {
+            RankedIndex<Ranked> index = title == null ? global : byTitle.get(titleKey(title));
+            head = index == null ? List.of() : index.head(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<LeaderboardEntry> entries = new ArrayList<>(head.size());
+        for (int i = 0; i < head.size(); i++) {
+            Ranked entry = head.get(i);
+            int rank = i > 0 && head.get(i - 1).streak() == entry.streak() ? entries.get(i - 1).getRank() : i + 1;
+            entries.add(new LeaderboardEntry(rank, entry.habitId(), entry.userId(), entry.title(), entry.streak()));
+        }
+        return entries;
+    }
+
+    /**
+     * Rank of a habit's current streak, globally and within its title; 1 plus the number of longer streaks
+     */
+    public Optional<StreakRank> rank(String habitId) {
+        lock.readLock().lock();
+        try {
+            Ranked entry = byHabit.get(habitId);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            // Sorts before every habit with the same streak, so only longer streaks are counted
+            Ranked probe = new Ranked("", null, null, entry.streak(), null);
+            RankedIndex<Ranked> titleIndex = entry.title() != null ? byTitle.get(titleKey(entry.title())) : null;
+            return Optional.of(new StreakRank(entry.habitId(), entry.title(), entry.streak(),
+                    global.countBefore(probe) + 1, global.size(),
+                    titleIndex != null ? titleIndex.countBefore(probe) + 1 : 0,
+                    titleIndex != null ? titleIndex.size() : 0));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<String> ownerOf(String habitId) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(byHabit.get(habitId)).map(Ranked::userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byHabit.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Re-read every ranked habit from MongoDB and drop habits that no longer exist
+     */
+    public void refresh() {
+        LocalDateTime started = LocalDateTime.now();
+        Set<String> seen = new HashSet<>();
+        Query query = query(where("status").ne(HabitStatus.ARCHIVED));
+        query.fields().include("userId", "title", "streak", "status", "updatedAt");
+        try (Stream<HabitLogs> habitLogs = mongoTemplate.stream(query, HabitLogs.class)) {
+            habitLogs.forEach(habitLog -> {
+                seen.add(habitLog.getId());
+                update(habitLog);
+            });
+        }
+
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (Ranked entry : new ArrayList<>(byHabit.values())) {
+                // Entries written since the scan started may be missing from it legitimately
+                if (!seen.contains(entry.habitId()) && (entry.updatedAt() == null || entry.updatedAt().isBefore(started))) {
+                    unindex(entry);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Streak leaderboard refreshed: {} habits ranked, {} removed", seen.size(), removed);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRefreshing() {
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                log.warn("Could not refresh the streak leaderboard: {}", e.getMessage());
+            }
+        }, 0, refreshMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private void index(Ranked entry) {
+        byHabit.put(entry.habitId(), entry);
+        global.add(entry);
+        if (entry.title() != null) {
+            byTitle.computeIfAbsent(titleKey(entry.title()), key -> new RankedIndex<>(ORDER)).add(entry);
+        }
+    }
+
+    private void unindex(Ranked entry) {
+        byHabit.remove(entry.habitId());
+        global.remove(entry);
+        if (entry.title() != null) {
+            String key = titleKey(entry.title());
+            RankedIndex<Ranked> titleIndex = byTitle.get(key);
+            if (titleIndex != null) {
+                titleIndex.remove(entry);
+                if (titleIndex.size() == 0) {
+                    byTitle.remove(key);
+                }
+            }
+        }
+    }
+
+    private static String titleKey(String title) {
+        return title.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
 @Service
 @RequiredArgsConstructor
@@ -14,36 +15,43 @@ public class UserValidationService {
     private final WebClient userServiceWebClient;
 
     public boolean validateUser(String userId) {
+        return Boolean.TRUE.equals(validateUserReactive(userId).block());
+    }
+
+    /**
+     * Non-blocking user validation; completes with false on any error
+     */
+    public Mono<Boolean> validateUserReactive(String userId) {
         log.info("Validating userId: {}", userId);
         if (userId == null || userId.isEmpty()) {
             log.warn("Invalid userId: null or empty");
-            return false;
+            return Mono.just(false);
         }
 
-        try {
-            Boolean result = userServiceWebClient.get()
-                    .uri("/{userId}/validate", userId)
-                    .retrieve()
-                    .bodyToMono(Boolean.class)
-                    .block();
-            log.info("User validation result for userId {}: {}", userId, result);
-            return result != null && result;
-
-        } catch (WebClientResponseException e) {
-            log.error("WebClient error validating userId: {}, Status: {}, Response: {}", 
-                     userId, e.getStatusCode(), e.getResponseBodyAsString());
-            if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
-                log.warn("User not found: {}", userId);
-                return false;
-            } else if (e.getStatusCode() == HttpStatus.BAD_REQUEST) {
-                log.warn("Invalid userId format: {}", userId);
-                return false;
-            }
-            log.warn("Other HTTP error during validation: {}", e.getStatusCode());
-            return false;
-        } catch (Exception e) {
-            log.error("Unexpected error validating userId: " + userId, e);
-            return false;
-        }
+        return userServiceWebClient.get()
+                .uri("/{userId}/validate", userId)
+                .retrieve()
+                .bodyToMono(Boolean.class)
+                .map(result -> {
+                    log.info("User validation result for userId {}: {}", userId, result);
+                    return result;
+                })
+                .defaultIfEmpty(false)
+                .onErrorResume(WebClientResponseException.class, e -> {
+                    log.error("WebClient error validating userId: {}, Status: {}, Response: {}", 
+                             userId, e.getStatusCode(), e.getResponseBodyAsString());
+                    if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+                        log.warn("User not found: {}", userId);
+                    } else if (e.getStatusCode() == HttpStatus.BAD_REQUEST) {
+                        log.warn("Invalid userId format: {}", userId);
+                    } else {
+                        log.warn("Other HTTP error during validation: {}", e.getStatusCode());
+                    }
+                    return Mono.just(false);
+                })
+                .onErrorResume(e -> {
+                    log.error("Unexpected error validating userId: " + userId, e);
+                    return Mono.just(false);
+                });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package com.habbitLoggingService.habbitLoggingService.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.habbitLoggingService.habbitLoggingService.config.WebClientConfig;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.repository.ReactiveHabitLoggingRepository;
+import com.habbitLoggingService.habbitLoggingService.service.CompletionPrefetcher;
+import com.habbitLoggingService.habbitLoggingService.service.HabitMetadataReplica;
+import com.habbitLoggingService.habbitLoggingService.service.UserValidationService;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * First-time completion lookups (user validation, habit log lookup, habit details) one after
+ * another versus through {@link CompletionPrefetcher}, against a stand-in user service whose latency
+ * varies uniformly between half and one and a half times the given mean, and stand-in MongoDB reads
+ * of the habit log and of the habit metadata replica.
+ *
+ * Run with (classpath built as described in {@link CompletionHistoryBenchmark}):
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *     com.habbitLoggingService.habbitLoggingService.benchmark.CompletionFanOutComparison [userMillis] [replicaMillis]
+ */
+public class CompletionFanOutComparison {
+
+    private static final int REQUESTS = 1000;
+    private static final int REQUEST_THREADS = 100;
+
+    public static void main(String[] args) throws Exception {
+        long userMillis = args.length > 0 ? Long.parseLong(args[0]) : 150;
+        long replicaMillis = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        DisposableServer userService = slowServer("/api/users/{userId}/validate", "true", userMillis);
+        WebClientConfig config = new WebClientConfig();
+        UserValidationService userValidation = new UserValidationService(config.userServiceWebClient().mutate()
+                .baseUrl("http://localhost:" + userService.port() + "/api/users").build());
+        // Mongo stand-in: a first-time completion finds no habit log after about a millisecond
+        ReactiveHabitLoggingRepository repository = mock(ReactiveHabitLoggingRepository.class);
+        when(repository.existsByIdAndUserId(anyString(), anyString()))
+                .thenAnswer(invocation -> Mono.just(false).delayElement(Duration.ofMillis(1)));
+        // Replica stand-in: habit details are read from habit_metadata after replicaMillis
+        HabitActivityResponse details = HabitActivityResponse.builder().id("habit").title("Read").build();
+        HabitMetadataReplica replica = mock(HabitMetadataReplica.class);
+        when(replica.findReactive(anyString()))
+                .thenAnswer(invocation -> Mono.just(details).delayElement(Duration.ofMillis(replicaMillis)));
+        CompletionPrefetcher prefetcher = new CompletionPrefetcher(userValidation, repository, replica, 3000);
+
+        try {
+            Lookup sequential = request -> {
+                if (!userValidation.validateUser(request.getUserId())) {
+                    throw new IllegalStateException("invalid user");
+                }
+                if (!repository.existsByIdAndUserId(request.getHabitId(), request.getUserId()).block()) {
+                    replica.findReactive(request.getHabitId()).block();
+                }
+            };
+            Lookup concurrent = request -> prefetcher.prefetch(request).block();
+
+            run(sequential, 200);
+            run(concurrent, 200);
+            report("sequential", run(sequential, REQUESTS));
+            report("concurrent", run(concurrent, REQUESTS));
+        } finally {
+            userService.disposeNow();
+        }
+    }
+
+    private static DisposableServer slowServer(String path, String body, long meanMillis) {
+        return HttpServer.create()
+                .port(0)
+                .route(routes -> routes.get(path, (request, response) -> {
+                    long delay = ThreadLocalRandom.current().nextLong(meanMillis / 2, meanMillis * 3 / 2 + 1);
+                    return response.header("Content-Type", "application/json")
+                            .sendString(Mono.just(body).delayElement(Duration.ofMillis(delay)));
+                }))
+                .bindNow();
+    }
+
+    private static long[] run(Lookup lookup, int requests) throws Exception {
+        ExecutorService requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+        try {
+            List<Future<Long>> latencies = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                HabitLogRequest request = new HabitLogRequest();
+                request.setUserId("user-" + i);
+                request.setHabitId("habit-" + i);
+                latencies.add(requestThreads.submit(() -> {
+                    long start = System.nanoTime();
+                    lookup.run(request);
+                    return System.nanoTime() - start;
+                }));
+            }
+            long[] result = new long[requests];
+            for (int i = 0; i < requests; i++) {
+                result[i] = latencies.get(i).get();
+            }
+            return result;
+        } finally {
+            requestThreads.shutdown();
+        }
+    }
+
+    private static void report(String name, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.printf("%-10s %d first-time completions  p50 %4d ms  p99 %4d ms%n", name, latencies.length,
+                percentile(latencies, 50), percentile(latencies, 99));
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1_000_000;
+    }
+
+    private interface Lookup {
+        void run(HabitLogRequest request) throws Exception;
+    }
+}
@@ -0,0 +1,143 @@
+package com.habbitLoggingService.habbitLoggingService.benchmark;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.service.CompletionBitmap;
+import com.habbitLoggingService.habbitLoggingService.service.StreakEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completion history questions answered from the LocalDateTime list versus the day bitmap.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/test-classpath.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *     com.habbitLoggingService.habbitLoggingService.benchmark.CompletionHistoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompletionHistoryBenchmark {
+
+    @Param({"1", "5", "10"})
+    private int years;
+
+    private final LocalDate today = LocalDate.of(2025, 6, 30);
+    private List<LocalDateTime> completionLog;
+    private HabitLogs habitLog;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(1);
+        LocalDate start = today.minusYears(years);
+        completionLog = new ArrayList<>();
+        habitLog = new HabitLogs();
+        habitLog.setCreatedAt(start.atStartOfDay());
+        for (LocalDate day = start; !day.isAfter(today); day = day.plusDays(1)) {
+            // Completed on about four days out of five
+            if (random.nextInt(5) != 0) {
+                completionLog.add(day.atTime(7 + random.nextInt(12), random.nextInt(60)));
+            }
+        }
+        CompletionBitmap.build(habitLog, completionLog);
+    }
+
+    @Benchmark
+    public int streakFromList() {
+        List<LocalDateTime> completions = new ArrayList<>(completionLog);
+        completions.sort(LocalDateTime::compareTo);
+        int longestStreak = 1;
+        int tempStreak = 1;
+        for (int i = 1; i < completions.size(); i++) {
+            long daysBetween = ChronoUnit.DAYS.between(completions.get(i - 1).toLocalDate(), completions.get(i).toLocalDate());
+            if (daysBetween == 1) {
+                tempStreak++;
+            } else {
+                longestStreak = Math.max(longestStreak, tempStreak);
+                tempStreak = 1;
+            }
+        }
+        return Math.max(longestStreak, tempStreak);
+    }
+
+    @Benchmark
+    public int streakFromBitmap() {
+        StreakEngine.rebuild(habitLog, today);
+        return habitLog.getLongestStreak();
+    }
+
+    @Benchmark
+    public long completedDaysFromList() {
+        LocalDate created = habitLog.getCreatedAt().toLocalDate();
+        return completionLog.stream()
+                .map(LocalDateTime::toLocalDate)
+                .filter(day -> !day.isBefore(created) && !day.isAfter(today))
+                .distinct()
+                .count();
+    }
+
+    @Benchmark
+    public int completedDaysFromBitmap() {
+        return CompletionBitmap.countBetween(habitLog, habitLog.getCreatedAt().toLocalDate().toEpochDay(), today.toEpochDay());
+    }
+
+    @Benchmark
+    public long lastQuarterFromList() {
+        LocalDateTime from = today.minusDays(90).atStartOfDay();
+        return completionLog.stream().filter(completion -> !completion.isBefore(from)).count();
+    }
+
+    @Benchmark
+    public int lastQuarterFromBitmap() {
+        return CompletionBitmap.countBetween(habitLog, today.minusDays(90).toEpochDay(), today.toEpochDay());
+    }
+
+    @Benchmark
+    public int[] yearHeatmapFromList() {
+        int[] counts = new int[today.lengthOfYear()];
+        LocalDate firstDay = today.withDayOfYear(1);
+        completionLog.stream()
+                .map(LocalDateTime::toLocalDate)
+                .filter(day -> day.getYear() == today.getYear())
+                .distinct()
+                .forEach(day -> counts[(int) ChronoUnit.DAYS.between(firstDay, day)]++);
+        return counts;
+    }
+
+    @Benchmark
+    public int[] yearHeatmapFromBitmap() {
+        int[] counts = new int[today.lengthOfYear()];
+        CompletionBitmap.addCounts(habitLog, today.withDayOfYear(1).toEpochDay(), counts);
+        return counts;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CompletionHistoryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,163 @@
+package com.habbitLoggingService.habbitLoggingService.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.habbitLoggingService.habbitLoggingService.config.HabitEventPartitions;
+import com.habbitLoggingService.habbitLoggingService.config.RabbitMqConfig;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogBatchResult;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.listener.HabitEventListener;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventFences;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventRetries;
+import com.habbitLoggingService.habbitLoggingService.service.HabitLoggingService;
+import com.habbitLoggingService.habbitLoggingService.service.HabitMetadataSync;
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventConverter;
+import com.habbiteventcontract.HabitEventType;
+import com.habbiteventcontract.HabitEvents;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * HABIT_COMPLETED events consumed one message at a time versus in batches, at several partition
+ * counts, against a local RabbitMQ broker with the consistent-hash exchange plugin. The write behind the listener is a stand-in that
+ * takes writeMillis per bulk call, like one round trip to MongoDB, plus a little per completion.
+ *
+ * Run with (classpath built as described in {@link CompletionHistoryBenchmark}):
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *     com.habbitLoggingService.habbitLoggingService.benchmark.EventConsumptionComparison [host] [port] [messages] [writeMillis]
+ */
+public class EventConsumptionComparison {
+
+    private static final int[] PARTITIONS = {1, 2, 4, 8};
+    private static final String QUEUE = "habit_log_queue_benchmark";
+    private static final int BATCH_SIZE = 100;
+    private static final int PREFETCH = 250;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5672;
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        long writeMillis = args.length > 3 ? Long.parseLong(args[3]) : 2;
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(host, port);
+        RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        template.setMessageConverter(new HabitEventConverter());
+
+        AtomicInteger consumed = new AtomicInteger();
+        HabitEventListener listener = new HabitEventListener(slowService(writeMillis, consumed), new HabitEventConverter(),
+                mock(HabitEventRetries.class), mock(HabitMetadataSync.class), mock(HabitEventFences.class));
+        try {
+            for (int partitions : PARTITIONS) {
+                Declarables topology = HabitEventPartitions.topology(QUEUE, partitions);
+                topology.getDeclarablesByType(Exchange.class).forEach(admin::declareExchange);
+                topology.getDeclarablesByType(Queue.class).forEach(admin::declareQueue);
+                topology.getDeclarablesByType(Binding.class).forEach(admin::declareBinding);
+                try {
+                    double single = run(connectionFactory, admin, template, partitions, listener, consumed, messages, 1);
+                    double batched = run(connectionFactory, admin, template, partitions, listener, consumed, messages, BATCH_SIZE);
+                    System.out.printf("%d partitions: %8.0f msgs/s one at a time, %8.0f msgs/s in batches of %d%n",
+                            partitions, single, batched, BATCH_SIZE);
+                } finally {
+                    topology.getDeclarablesByType(Queue.class).forEach(queue -> admin.deleteQueue(queue.getName()));
+                }
+            }
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    /**
+     * Publish the messages, then time one consumer per partition draining the queues
+     */
+    private static double run(CachingConnectionFactory connectionFactory, RabbitAdmin admin, RabbitTemplate template,
+                              int partitions, HabitEventListener listener, AtomicInteger consumed,
+                              int messages, int batchSize) throws InterruptedException {
+        for (int i = 0; i < messages; i++) {
+            template.convertAndSend(HabitEvents.EXCHANGE, HabitEvents.routingKey(HabitEventType.COMPLETED), event(i), message -> {
+                message.getMessageProperties().setMessageId(UUID.randomUUID().toString());
+                return message;
+            });
+        }
+
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        RabbitMqConfig.configureBatches(factory, batchSize, 200, PREFETCH);
+        CountDownLatch drained = new CountDownLatch(1);
+        consumed.set(0);
+        List<SimpleMessageListenerContainer> containers = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            SimpleMessageListenerContainer container = factory.createListenerContainer();
+            container.setQueueNames(HabitEventPartitions.queueName(QUEUE, partition));
+            container.setMessageListener((ChannelAwareBatchMessageListener) (batch, channel) -> {
+                try {
+                    listener.handleHabitEvents(batch, channel);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (consumed.get() >= messages) {
+                    drained.countDown();
+                }
+            });
+            containers.add(container);
+        }
+
+        long started = System.nanoTime();
+        containers.forEach(SimpleMessageListenerContainer::start);
+        try {
+            if (!drained.await(10, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Only " + consumed.get() + " of " + messages + " messages consumed");
+            }
+            return messages / ((System.nanoTime() - started) / 1e9);
+        } finally {
+            containers.forEach(SimpleMessageListenerContainer::stop);
+        }
+    }
+
+    private static HabitEvent event(int i) {
+        return HabitEvent.completed("habit-" + (i % 500), "user-" + (i % 100), LocalDateTime.now(), null);
+    }
+
+    /**
+     * Logging stand-in: writeMillis per bulk call plus 20 microseconds per completion
+     */
+    private static HabitLoggingService slowService(long writeMillis, AtomicInteger consumed) {
+        HabitLoggingService service = mock(HabitLoggingService.class);
+        when(service.logHabitCompletions(anyList(), anyList())).thenAnswer(invocation -> {
+            List<HabitLogRequest> requests = invocation.getArgument(0);
+            TimeUnit.MICROSECONDS.sleep(writeMillis * 1000 + requests.size() * 20L);
+            List<HabitLogBatchResult> results = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                results.add(new HabitLogBatchResult(i, requests.get(i).getHabitId(), "COMPLETED", null, null));
+            }
+            consumed.addAndGet(requests.size());
+            return results;
+        });
+        return service;
+    }
+}
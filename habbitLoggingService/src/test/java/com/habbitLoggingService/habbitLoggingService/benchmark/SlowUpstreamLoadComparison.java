@@ -0,0 +1,115 @@
+package com.habbitLoggingService.habbitLoggingService.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.habbitLoggingService.habbitLoggingService.config.WebClientConfig;
+import com.habbitLoggingService.habbitLoggingService.service.UserValidationService;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * User validation against a slow user service, called the blocking way from a request-sized
+ * thread pool versus the non-blocking way.
+ *
+ * Run with (classpath built as described in {@link CompletionHistoryBenchmark}):
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *     com.habbitLoggingService.habbitLoggingService.benchmark.SlowUpstreamLoadComparison [requests] [delayMillis]
+ */
+public class SlowUpstreamLoadComparison {
+
+    private static final int REQUEST_THREADS = 200; // Tomcat's default max threads
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long delayMillis = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        DisposableServer userService = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.get("/api/users/{userId}/validate", (request, response) ->
+                        response.header("Content-Type", "application/json")
+                                .sendString(Mono.just("true").delayElement(Duration.ofMillis(delayMillis)))))
+                .bindNow();
+        UserValidationService validation = new UserValidationService(new WebClientConfig().userServiceWebClient()
+                .mutate()
+                .baseUrl("http://localhost:" + userService.port() + "/api/users")
+                .build());
+
+        try {
+            // Warm up connections and JIT on both paths
+            blocking(validation, 200);
+            reactive(validation, 200);
+
+            report("blocking", requests, () -> blocking(validation, requests));
+            report("reactive", requests, () -> reactive(validation, requests));
+        } finally {
+            userService.disposeNow();
+        }
+    }
+
+    private static long[] blocking(UserValidationService validation, int requests) throws Exception {
+        ExecutorService requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+        try {
+            List<Future<Long>> latencies = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                String userId = "user-" + i;
+                long queued = System.nanoTime();
+                latencies.add(requestThreads.submit(() -> {
+                    validation.validateUser(userId);
+                    return System.nanoTime() - queued;
+                }));
+            }
+            long[] result = new long[requests];
+            for (int i = 0; i < requests; i++) {
+                result[i] = latencies.get(i).get();
+            }
+            return result;
+        } finally {
+            requestThreads.shutdown();
+        }
+    }
+
+    private static long[] reactive(UserValidationService validation, int requests) {
+        List<Long> latencies = Flux.range(0, requests)
+                .flatMap(i -> {
+                    long queued = System.nanoTime();
+                    return validation.validateUserReactive("user-" + i).map(valid -> System.nanoTime() - queued);
+                }, requests)
+                .collectList()
+                .block();
+        return latencies.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static void report(String name, int requests, Run run) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+        long[] latencies = run.run();
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+
+        System.out.printf("%-8s %5d requests in %5d ms  p50 %5d ms  p99 %5d ms  peak threads %d%n", name, requests,
+                elapsed / 1_000_000, percentile(latencies, 50), percentile(latencies, 99), threads.getPeakThreadCount());
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1_000_000;
+    }
+
+    private interface Run {
+        long[] run() throws Exception;
+    }
+}
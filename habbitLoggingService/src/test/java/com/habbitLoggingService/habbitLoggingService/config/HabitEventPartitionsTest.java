@@ -0,0 +1,381 @@
+package com.habbitLoggingService.habbitLoggingService.config;
+
+import com.habbitLoggingService.habbitLoggingService.listener.HabitEventListener;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventFences;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventRetries;
+import com.habbitLoggingService.habbitLoggingService.service.HabitLoggingService;
+import com.habbitLoggingService.habbitLoggingService.service.HabitMetadataSync;
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventConverter;
+import com.habbiteventcontract.HabitEventType;
+import com.habbiteventcontract.HabitEvents;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The partitioned topology against a broker with the consistent-hash exchange plugin: per-user
+ * order, rebalancing when a partition is added, retiring partitions when the count shrinks, a
+ * user's order held across a retry and across a partition being added, and parked events
+ * going back to their partition
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class HabitEventPartitionsTest {
+
+    @Container
+    static RabbitMQContainer rabbit = new RabbitMQContainer("rabbitmq:3.13-management");
+
+    private static final int USERS = 1000;
+
+    private static CachingConnectionFactory connectionFactory;
+    private static RabbitAdmin admin;
+    private static RabbitTemplate template;
+    // All partition queues hang off the one habit.events.by-user exchange, so each test removes its own
+    private final List<String> declared = new ArrayList<>();
+
+    @BeforeAll
+    static void connect() throws Exception {
+        rabbit.execInContainer("rabbitmq-plugins", "enable", "rabbitmq_consistent_hash_exchange");
+        connectionFactory = new CachingConnectionFactory(rabbit.getHost(), rabbit.getAmqpPort());
+        connectionFactory.setUsername(rabbit.getAdminUsername());
+        connectionFactory.setPassword(rabbit.getAdminPassword());
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.SIMPLE);
+        admin = new RabbitAdmin(connectionFactory);
+        template = new RabbitTemplate(connectionFactory);
+        template.setMessageConverter(new HabitEventConverter());
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @AfterEach
+    void deleteQueues() {
+        declared.forEach(admin::deleteQueue);
+    }
+
+    @Test
+    void eachUserStaysInOneQueueInPublishOrder() {
+        String queue = "order_test";
+        declare(queue, 4);
+        for (int seq = 0; seq < 20; seq++) {
+            for (int user = 0; user < 50; user++) {
+                publish("user-" + user, seq);
+            }
+        }
+
+        Map<String, Integer> partitionOf = new HashMap<>();
+        for (int partition = 0; partition < 4; partition++) {
+            Map<String, Integer> lastSeq = new HashMap<>();
+            HabitEvent event;
+            while ((event = (HabitEvent) template.receiveAndConvert(HabitEventPartitions.queueName(queue, partition))) != null) {
+                int seq = Integer.parseInt(event.notes());
+                Integer previous = lastSeq.put(event.userId(), seq);
+                assertEquals(previous == null ? 0 : previous + 1, seq, "out of order for " + event.userId());
+                Integer other = partitionOf.put(event.userId(), partition);
+                assertTrue(other == null || other == partition, event.userId() + " in two partitions");
+            }
+        }
+        assertEquals(50, partitionOf.size());
+        assertTrue(partitionOf.values().stream().distinct().count() > 1, "all users hashed to one partition");
+    }
+
+    @Test
+    void addingAPartitionOnlyMovesUsersToTheNewQueue() {
+        String queue = "rebalance_test";
+        declare(queue, 4);
+        Map<String, Integer> before = placeUsers(queue, 4);
+
+        declare(queue, 5);
+        Map<String, Integer> after = placeUsers(queue, 5);
+
+        int moved = 0;
+        for (Map.Entry<String, Integer> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                assertEquals(4, entry.getValue(), entry.getKey() + " moved between old partitions");
+                moved++;
+            }
+        }
+        double share = (double) moved / USERS;
+        System.out.printf("4 -> 5 partitions moved %.1f%% of users%n", share * 100);
+        assertTrue(share > 0.05 && share < 0.4, "moved " + share + " of users");
+    }
+
+    @Test
+    void shrinkingDeletesEmptySurplusQueuesAndDrainsTheRest() throws Exception {
+        String queue = "shrink_test";
+        declare(queue, 5);
+        // Enough users that both surplus partitions get events
+        for (int user = 0; user < 200; user++) {
+            publish("user-" + user, 0);
+        }
+        admin.purgeQueue(HabitEventPartitions.queueName(queue, 3), false);
+        int waiting = admin.getQueueInfo(HabitEventPartitions.queueName(queue, 4)).getMessageCount();
+        assertTrue(waiting > 0);
+
+        CountDownLatch drained = new CountDownLatch(waiting);
+        HabitEventListener listener = mock(HabitEventListener.class);
+        doAnswer(invocation -> {
+            List<Message> batch = invocation.getArgument(0);
+            invocation.<Channel>getArgument(1).basicAck(batch.get(batch.size() - 1).getMessageProperties().getDeliveryTag(), true);
+            batch.forEach(message -> drained.countDown());
+            return null;
+        }).when(listener).handleHabitEvents(anyList(), any());
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        RabbitMqConfig.configureBatches(factory, 100, 200, 250);
+        RabbitListenerEndpointRegistry registry = new RabbitListenerEndpointRegistry();
+        HabitEventPartitions partitions = new HabitEventPartitions(queue, 3, listener, factory, admin, registry,
+                fences(queue), connectionFactory);
+
+        try {
+            assertEquals(List.of(HabitEventPartitions.queueName(queue, 3), HabitEventPartitions.queueName(queue, 4)),
+                    partitions.retireSurplus());
+            assertNull(admin.getQueueInfo(HabitEventPartitions.queueName(queue, 3)));
+            assertTrue(drained.await(30, TimeUnit.SECONDS));
+            // Nothing consumes the remaining partitions here, so take their gates and first events out
+            for (int partition = 0; partition < 3; partition++) {
+                admin.purgeQueue(HabitEventPartitions.queueName(queue, partition), false);
+            }
+
+            // Unbound, so new events only reach the remaining partitions
+            for (int user = 0; user < 200; user++) {
+                publish("user-" + user, 1);
+            }
+            assertNotNull(admin.getQueueInfo(HabitEventPartitions.queueName(queue, 4)));
+            assertEquals(USERS, placeUsers(queue, 3).size());
+        } finally {
+            registry.stop();
+            registry.destroy();
+        }
+    }
+
+    @Test
+    void aUsersEventsStayInOrderAcrossARetry() throws Exception {
+        String queue = "retry_order_test";
+        AtomicBoolean failedOnce = new AtomicBoolean();
+        Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+        HabitEventPartitions partitions = partitions(queue, 1, handled, event ->
+                event.userId().equals("user-1") && event.habitId().equals("habit-3") && failedOnce.compareAndSet(false, true));
+        declared.addAll(partitions.layout());
+        for (int seq = 0; seq < 10; seq++) {
+            publishUpdate("user-1", seq);
+            publishUpdate("user-2", seq);
+        }
+
+        RabbitListenerEndpointRegistry registry = consume(partitions, List.of(HabitEventPartitions.queueName(queue, 0)));
+        try {
+            awaitHandled(handled, 20);
+        } finally {
+            registry.stop();
+            registry.destroy();
+        }
+
+        assertTrue(failedOnce.get());
+        assertEquals(IntStream.range(0, 10).boxed().toList(), handled.get("user-1"));
+        assertEquals(IntStream.range(0, 10).boxed().toList(), handled.get("user-2"));
+        assertEquals(0, admin.getQueueInfo(HabitEventRetries.parkingQueue(queue)).getMessageCount());
+    }
+
+    @Test
+    void aUsersEventsStayInOrderWhenAPartitionIsAdded() throws Exception {
+        String queue = "grow_order_test";
+        int users = 200;
+        Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+        HabitEventPartitions two = partitions(queue, 2, handled, event -> false);
+        declared.addAll(two.layout());
+        for (int seq = 0; seq < 3; seq++) {
+            for (int user = 0; user < users; user++) {
+                publishUpdate("user-" + user, seq);
+            }
+        }
+
+        HabitEventPartitions three = partitions(queue, 3, handled, event -> false);
+        String added = HabitEventPartitions.queueName(queue, 2);
+        assertEquals(List.of(added), three.layout());
+        declared.add(added);
+        for (int seq = 3; seq < 6; seq++) {
+            for (int user = 0; user < users; user++) {
+                publishUpdate("user-" + user, seq);
+            }
+        }
+        // The gate and the moved users' new events
+        assertTrue(admin.getQueueInfo(added).getMessageCount() > 1);
+
+        // The new partition is consumed first, and waits at its gate until the old ones passed their fences
+        RabbitListenerEndpointRegistry registry = consume(three, List.of(added));
+        try {
+            TimeUnit.SECONDS.sleep(1);
+            assertTrue(handled.isEmpty(), "events handled before the old partitions were consumed");
+            consume(three, registry, List.of(HabitEventPartitions.queueName(queue, 0), HabitEventPartitions.queueName(queue, 1)));
+            awaitHandled(handled, users * 6);
+        } finally {
+            registry.stop();
+            registry.destroy();
+        }
+
+        for (int user = 0; user < users; user++) {
+            assertEquals(IntStream.range(0, 6).boxed().toList(), handled.get("user-" + user), "out of order for user-" + user);
+        }
+    }
+
+    @Test
+    void parkedEventsGoBackToTheirPartitionWhenReplayed() throws Exception {
+        String queue = "replay_test";
+        String partition = HabitEventPartitions.queueName(queue, 0);
+        declare(queue, 1);
+        HabitEventRetries retries = retries(queue);
+        declare(retries.topology());
+        publish("user-1", 0);
+
+        Message message = template.receive(partition, 5000);
+        message.getMessageProperties().setHeader(HabitEventRetries.REASON_HEADER, "MongoDB unavailable");
+        message.getMessageProperties().setHeader(HabitEventRetries.ATTEMPT_HEADER, 3);
+        retries.park(List.of(message));
+        assertEquals(1, retries.status().getParked());
+
+        retries.replay(10);
+        Message replayed = template.receive(partition, 5000);
+        assertNotNull(replayed);
+        assertEquals(0, HabitEventRetries.attempt(replayed));
+        assertEquals("MongoDB unavailable", replayed.getMessageProperties().getHeader(HabitEventRetries.REASON_HEADER));
+        // Taken off the parking queue right after the broker confirmed the copy
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (retries.status().getParked() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        assertEquals(0, retries.status().getParked());
+    }
+
+    /**
+     * Partitions handled by the real listener. The habit updates it handles are recorded per
+     * user, by the sequence number in their habit id, and those matching failing throw.
+     */
+    private HabitEventPartitions partitions(String queue, int count, Map<String, List<Integer>> handled,
+                                            Predicate<HabitEvent> failing) {
+        HabitEventRetries retries = retries(queue);
+        declare(retries.topology());
+        HabitMetadataSync metadataSync = mock(HabitMetadataSync.class);
+        doAnswer(invocation -> {
+            HabitEvent event = invocation.getArgument(0);
+            if (failing.test(event)) {
+                throw new IllegalStateException("Activity service unavailable");
+            }
+            handled.computeIfAbsent(event.userId(), userId -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(Integer.parseInt(event.habitId().substring("habit-".length())));
+            return null;
+        }).when(metadataSync).onHabitChanged(any());
+        HabitEventListener listener = new HabitEventListener(mock(HabitLoggingService.class), new HabitEventConverter(),
+                retries, metadataSync, fences(queue));
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        // Small batches, so a user's events are spread over several of them
+        RabbitMqConfig.configureBatches(factory, 5, 200, 10);
+        return new HabitEventPartitions(queue, count, listener, factory, admin, new RabbitListenerEndpointRegistry(),
+                fences(queue), connectionFactory);
+    }
+
+    private RabbitListenerEndpointRegistry consume(HabitEventPartitions partitions, List<String> queues) {
+        return consume(partitions, new RabbitListenerEndpointRegistry(), queues);
+    }
+
+    private RabbitListenerEndpointRegistry consume(HabitEventPartitions partitions, RabbitListenerEndpointRegistry registry,
+                                                   List<String> queues) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        RabbitMqConfig.configureBatches(factory, 5, 200, 10);
+        queues.forEach(queue -> registry.registerListenerContainer(partitions.endpoint(queue), factory, true));
+        return registry;
+    }
+
+    private static void awaitHandled(Map<String, List<Integer>> handled, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (handled.values().stream().mapToInt(List::size).sum() < expected && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        assertEquals(expected, handled.values().stream().mapToInt(List::size).sum());
+    }
+
+    private static HabitEventRetries retries(String queue) {
+        return new HabitEventRetries(template, admin, queue, 2, 200, 2, 5000, 10, 50);
+    }
+
+    private static HabitEventFences fences(String queue) {
+        return new HabitEventFences(template, admin, queue, 30_000, 5000);
+    }
+
+    private void declare(String queue, int partitions) {
+        declare(HabitEventPartitions.topology(queue, partitions));
+    }
+
+    private void declare(Declarables topology) {
+        topology.getDeclarablesByType(Exchange.class).forEach(admin::declareExchange);
+        topology.getDeclarablesByType(Queue.class).forEach(declarable -> declared.add(admin.declareQueue(declarable)));
+        topology.getDeclarablesByType(Binding.class).forEach(admin::declareBinding);
+    }
+
+    private void publishUpdate(String userId, int seq) {
+        template.convertAndSend(HabitEvents.EXCHANGE, HabitEvents.routingKey(HabitEventType.UPDATED),
+                HabitEvent.of(HabitEventType.UPDATED, "habit-" + seq, userId, LocalDateTime.now()));
+    }
+
+    private void publish(String userId, int seq) {
+        template.convertAndSend(HabitEvents.EXCHANGE, HabitEvents.routingKey(HabitEventType.COMPLETED),
+                HabitEvent.completed("habit-" + userId, userId, LocalDateTime.now(), String.valueOf(seq)));
+    }
+
+    /**
+     * Publish one event per user and read back which partition each landed in
+     */
+    private Map<String, Integer> placeUsers(String queue, int partitions) {
+        for (int user = 0; user < USERS; user++) {
+            publish("user-" + user, 0);
+        }
+        Map<String, Integer> partitionOf = new HashMap<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            HabitEvent event;
+            while ((event = (HabitEvent) template.receiveAndConvert(HabitEventPartitions.queueName(queue, partition))) != null) {
+                partitionOf.put(event.userId(), partition);
+            }
+        }
+        return partitionOf;
+    }
+}
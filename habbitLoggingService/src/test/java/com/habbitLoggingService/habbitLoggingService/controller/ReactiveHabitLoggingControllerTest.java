@@ -0,0 +1,137 @@
+package com.habbitLoggingService.habbitLoggingService.controller;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogPage;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogResponse;
+import com.habbitLoggingService.habbitLoggingService.service.DuplicateCompletionException;
+import com.habbitLoggingService.habbitLoggingService.service.ReactiveHabitLoggingService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The /api/v2 endpoints as Spring MVC serves them: async requests that are answered once the
+ * Mono completes, with the same status codes as the blocking endpoints
+ */
+class ReactiveHabitLoggingControllerTest {
+
+    private static final String COMPLETION = "{\"habitId\":\"habit-1\",\"userId\":\"user-1\"}";
+
+    private final ReactiveHabitLoggingService service = mock(ReactiveHabitLoggingService.class);
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new ReactiveHabitLoggingController(service)).build();
+
+    @Test
+    void completionIsAnsweredAsyncOnceTheServiceCompletes() throws Exception {
+        // Completes on a timer thread, after the handler has returned
+        when(service.logHabitCompletion(any(), isNull())).thenReturn(Mono.just(response(3)).delayElement(Duration.ofMillis(100)));
+
+        MvcResult result = mockMvc.perform(post("/api/v2/habit-logs/complete")
+                        .contentType(MediaType.APPLICATION_JSON).content(COMPLETION))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.streak").value(3));
+    }
+
+    @Test
+    void replayedKeyAnswersTheCurrentAnalytics() throws Exception {
+        when(service.logHabitCompletion(any(), eq("rest:user-1:retry-1")))
+                .thenReturn(Mono.error(new DuplicateCompletionException("rest:user-1:retry-1")));
+        when(service.getHabitAnalytics("user-1", "habit-1")).thenReturn(Mono.just(response(4)));
+
+        MvcResult result = mockMvc.perform(post("/api/v2/habit-logs/complete")
+                        .contentType(MediaType.APPLICATION_JSON).content(COMPLETION)
+                        .header("Idempotency-Key", "retry-1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.streak").value(4));
+    }
+
+    @Test
+    void replayedKeyBeforeTheHabitLogExistsIsAConflict() throws Exception {
+        when(service.logHabitCompletion(any(), any()))
+                .thenReturn(Mono.error(new DuplicateCompletionException("rest:user-1:retry-1")));
+        when(service.getHabitAnalytics("user-1", "habit-1")).thenReturn(Mono.error(new RuntimeException("Habit not found: habit-1")));
+
+        MvcResult result = mockMvc.perform(post("/api/v2/habit-logs/complete")
+                        .contentType(MediaType.APPLICATION_JSON).content(COMPLETION)
+                        .header("Idempotency-Key", "retry-1"))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isConflict());
+    }
+
+    @Test
+    void missedDeadlineIsABadRequest() throws Exception {
+        when(service.logHabitCompletion(any(), any()))
+                .thenReturn(Mono.error(new RuntimeException("Completion deadline exceeded for habit: habit-1")));
+
+        MvcResult result = mockMvc.perform(post("/api/v2/habit-logs/complete")
+                        .contentType(MediaType.APPLICATION_JSON).content(COMPLETION))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void analyticsErrorsMapLikeTheBlockingEndpoints() throws Exception {
+        when(service.getHabitAnalytics("user-1", "habit-9")).thenReturn(Mono.error(new RuntimeException("Habit not found: habit-9")));
+        when(service.getUserHabitAnalytics(eq("user-2"), any(), any(), anyInt(), anyBoolean()))
+                .thenReturn(Mono.error(new RuntimeException("Invalid user: user-2")));
+
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/api/v2/habit-logs/user/user-1/habit/habit-9")).andReturn()))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/api/v2/habit-logs/user/user-2")).andReturn()))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(asyncDispatch(mockMvc.perform(get("/api/v2/habit-logs/user/user-1").param("fields", "everything")).andReturn()))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void pageCarriesTheNextCursor() throws Exception {
+        when(service.getUserHabitAnalytics(eq("user-1"), any(), any(), anyInt(), anyBoolean()))
+                .thenReturn(Mono.just(new HabitLogPage(List.of(response(1)), "habit-1")));
+
+        MvcResult result = mockMvc.perform(get("/api/v2/habit-logs/user/user-1").param("limit", "1")).andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "habit-1"))
+                .andExpect(jsonPath("$[0].streak").value(1));
+        verify(service).getUserHabitAnalytics("user-1", null, null, 1, false);
+    }
+
+    private static HabitLogResponse response(int streak) {
+        HabitLogResponse response = new HabitLogResponse();
+        response.setId("habit-1");
+        response.setUserId("user-1");
+        response.setStreak(streak);
+        return response;
+    }
+}
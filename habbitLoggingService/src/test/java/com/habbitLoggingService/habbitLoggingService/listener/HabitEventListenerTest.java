@@ -0,0 +1,220 @@
+package com.habbitLoggingService.habbitLoggingService.listener;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogBatchResult;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.model.ActivityType;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventFences;
+import com.habbitLoggingService.habbitLoggingService.service.HabitEventRetries;
+import com.habbitLoggingService.habbitLoggingService.service.HabitLoggingService;
+import com.habbitLoggingService.habbitLoggingService.service.HabitMetadataSync;
+import com.habbitLoggingService.habbitLoggingService.service.IdempotencyStore;
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventConverter;
+import com.habbiteventcontract.HabitEventType;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HabitEventListenerTest {
+
+    private final HabitEventConverter converter = new HabitEventConverter();
+    private final HabitLoggingService service = mock(HabitLoggingService.class);
+    private final Channel channel = mock(Channel.class);
+    private final HabitEventRetries retries = mock(HabitEventRetries.class);
+    private final HabitEventFences fences = mock(HabitEventFences.class);
+    private final HabitEventListener listener = new HabitEventListener(service, converter, retries,
+            mock(HabitMetadataSync.class), fences);
+    private final List<List<HabitLogRequest>> loggedBatches = new ArrayList<>();
+    private final List<List<String>> loggedKeys = new ArrayList<>();
+
+    @Test
+    void completionsAreLoggedInBulkAroundOtherEventsAndTheBatchIsAcked() throws Exception {
+        completeAll();
+
+        listener.handleHabitEvents(List.of(
+                event(1, HabitEventType.COMPLETED, "habit-1"),
+                event(2, HabitEventType.COMPLETED, "habit-2"),
+                event(3, HabitEventType.UPDATED, "habit-1"),
+                event(4, HabitEventType.COMPLETED, "habit-1")), channel);
+
+        InOrder order = inOrder(service, channel);
+        order.verify(service).logHabitCompletions(anyList(), anyList());
+        order.verify(service).recordHabitChange(eq("habit-1"), eq("user-1"), eq(ActivityType.UPDATED), any());
+        order.verify(service).logHabitCompletions(anyList(), anyList());
+        order.verify(channel).basicAck(4, true);
+        assertEquals(List.of("habit-1", "habit-2"), loggedBatches.get(0).stream().map(HabitLogRequest::getHabitId).toList());
+        assertEquals(List.of(IdempotencyStore.eventKey("message-1"), IdempotencyStore.eventKey("message-2")), loggedKeys.get(0));
+        assertEquals("EVENT", loggedBatches.get(1).get(0).getSource());
+    }
+
+    @Test
+    void completionsOfAFailedBulkWriteAreRetriedInPlaceAndTheBatchIsAcked() throws Exception {
+        when(retries.attempts()).thenReturn(2);
+        when(service.logHabitCompletions(anyList(), anyList()))
+                .thenThrow(new RuntimeException("MongoDB unavailable"))
+                .thenAnswer(invocation -> completed(invocation.getArgument(0)));
+        List<Message> batch = List.of(
+                event(7, HabitEventType.COMPLETED, "habit-1"),
+                event(8, HabitEventType.COMPLETED, "habit-2"));
+
+        listener.handleHabitEvents(batch, channel);
+
+        verify(service, times(2)).logHabitCompletions(anyList(), anyList());
+        verify(retries).delayMillis(1);
+        assertEquals("MongoDB unavailable", batch.get(0).getMessageProperties().getHeader(HabitEventRetries.REASON_HEADER));
+        assertEquals(1, HabitEventRetries.attempt(batch.get(1)));
+        verify(retries, never()).park(argThat(parked -> !parked.isEmpty()));
+        verify(channel).basicAck(8, true);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void laterEventsOfAUserWaitForItsFailedEventWhileOtherUsersGoOn() throws Exception {
+        when(retries.attempts()).thenReturn(2);
+        doThrow(new RuntimeException("Journal unavailable")).doNothing().when(service)
+                .recordHabitChange(eq("habit-1"), any(), any(), any());
+
+        listener.handleHabitEvents(List.of(
+                event(1, HabitEventType.UPDATED, "habit-1", "user-1"),
+                event(2, HabitEventType.UPDATED, "habit-2", "user-1"),
+                event(3, HabitEventType.UPDATED, "habit-3", "user-2")), channel);
+
+        InOrder order = inOrder(service, channel);
+        order.verify(service).recordHabitChange(eq("habit-1"), eq("user-1"), eq(ActivityType.UPDATED), any());
+        order.verify(service).recordHabitChange(eq("habit-3"), eq("user-2"), eq(ActivityType.UPDATED), any());
+        order.verify(service).recordHabitChange(eq("habit-1"), eq("user-1"), eq(ActivityType.UPDATED), any());
+        order.verify(service).recordHabitChange(eq("habit-2"), eq("user-1"), eq(ActivityType.UPDATED), any());
+        order.verify(channel).basicAck(3, true);
+        verify(service).recordHabitChange(eq("habit-2"), any(), any(), any());
+    }
+
+    @Test
+    void eventsThatKeepFailingAreParkedAndTheUsersLaterEventsGoOn() throws Exception {
+        when(retries.attempts()).thenReturn(1);
+        when(service.logHabitCompletions(anyList(), anyList())).thenReturn(List.of(
+                new HabitLogBatchResult(0, "habit-1", "FAILED", "Habit not found: habit-1", null)));
+        Message failing = event(1, HabitEventType.COMPLETED, "habit-1");
+
+        listener.handleHabitEvents(List.of(failing, event(2, HabitEventType.UPDATED, "habit-2")), channel);
+
+        verify(service, times(2)).logHabitCompletions(anyList(), anyList());
+        InOrder order = inOrder(retries, service, channel);
+        order.verify(retries).park(List.of(failing));
+        order.verify(service).recordHabitChange(eq("habit-2"), eq("user-1"), eq(ActivityType.UPDATED), any());
+        order.verify(channel).basicAck(2, true);
+        assertEquals(2, HabitEventRetries.attempt(failing));
+    }
+
+    @Test
+    void batchIsRequeuedWhenFailedEventsCannotBeParked() throws Exception {
+        when(service.logHabitCompletions(anyList(), anyList())).thenThrow(new RuntimeException("MongoDB unavailable"));
+        doThrow(new AmqpException("Broker unavailable")).when(retries).park(argThat(parked -> !parked.isEmpty()));
+
+        listener.handleHabitEvents(List.of(
+                event(7, HabitEventType.COMPLETED, "habit-1"),
+                event(8, HabitEventType.COMPLETED, "habit-2")), channel);
+
+        verify(channel).basicNack(8, true, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void fencesArePassedOnceTheEventsBeforeThemAreHandled() throws Exception {
+        completeAll();
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(2);
+        properties.setHeader(HabitEventFences.FENCE_HEADER, "habit_log_queue.fences.1");
+        Message fence = new Message(new byte[0], properties);
+
+        listener.handleHabitEvents(List.of(event(1, HabitEventType.COMPLETED, "habit-1"), fence,
+                event(3, HabitEventType.UPDATED, "habit-1")), channel);
+
+        InOrder order = inOrder(service, fences, channel);
+        order.verify(service).logHabitCompletions(anyList(), anyList());
+        order.verify(fences).reached(fence);
+        order.verify(service).recordHabitChange(eq("habit-1"), eq("user-1"), eq(ActivityType.UPDATED), any());
+        order.verify(channel).basicAck(3, true);
+    }
+
+    @Test
+    void batchIsRequeuedWhenStoppedAtAGate() throws Exception {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(1);
+        properties.setHeader(HabitEventFences.GATE_HEADER, "habit_log_queue.fences.1");
+        doThrow(new InterruptedException()).when(fences).reached(any());
+
+        listener.handleHabitEvents(List.of(new Message(new byte[0], properties),
+                event(2, HabitEventType.UPDATED, "habit-1")), channel);
+
+        assertTrue(Thread.interrupted());
+        verify(channel).basicNack(1, true, true);
+        verify(service, never()).recordHabitChange(any(), any(), any(), any());
+    }
+
+    @Test
+    void unreadableMessagesAreRejectedToTheParkingQueue() throws Exception {
+        completeAll();
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(2);
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        Message garbage = new Message("{not json".getBytes(StandardCharsets.UTF_8), properties);
+
+        listener.handleHabitEvents(List.of(event(1, HabitEventType.COMPLETED, "habit-1"), garbage), channel);
+
+        assertEquals(1, loggedBatches.get(0).size());
+        verify(channel).basicReject(2, false);
+        verify(channel).basicAck(1, true);
+    }
+
+    private void completeAll() {
+        when(service.logHabitCompletions(anyList(), anyList())).thenAnswer(invocation -> {
+            List<HabitLogRequest> requests = new ArrayList<>(invocation.getArgument(0));
+            loggedBatches.add(requests);
+            loggedKeys.add(new ArrayList<>(invocation.<List<String>>getArgument(1)));
+            return completed(requests);
+        });
+    }
+
+    private static List<HabitLogBatchResult> completed(List<HabitLogRequest> requests) {
+        List<HabitLogBatchResult> results = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            results.add(new HabitLogBatchResult(i, requests.get(i).getHabitId(), "COMPLETED", null, null));
+        }
+        return results;
+    }
+
+    private Message event(long deliveryTag, HabitEventType type, String habitId) {
+        return event(deliveryTag, type, habitId, "user-1");
+    }
+
+    private Message event(long deliveryTag, HabitEventType type, String habitId, String userId) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+        properties.setMessageId("message-" + deliveryTag);
+        return converter.toMessage(HabitEvent.of(type, habitId, userId, LocalDateTime.of(2025, 6, 1, 8, 0)), properties);
+    }
+}
@@ -0,0 +1,258 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.service.CompletionBitmap;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the atomic completion updates against a real MongoDB
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class HabitLoggingRepositoryImplTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+    private HabitLoggingRepositoryImpl repository;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(mongo.getReplicaSetUrl());
+        mongoTemplate = new MongoTemplate(client, "habit-logs-test");
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(HabitLogs.class);
+        repository = new HabitLoggingRepositoryImpl(mongoTemplate);
+    }
+
+    @Test
+    void consecutiveDaysExtendTheRun() {
+        LocalDate today = LocalDate.now();
+        assertTrue(repository.insertIfAbsent(habitLog("habit-1", today.minusDays(2))));
+
+        record("habit-1", "user-1", today.minusDays(1).atTime(8, 0), today);
+        HabitLogs updated = record("habit-1", "user-1", today.atTime(8, 0), today).orElseThrow();
+
+        assertEquals(3, updated.getStreak());
+        assertEquals(3, updated.getLongestStreak());
+        assertEquals(3, updated.getTotalCompletions());
+        assertEquals(today.atTime(8, 0), updated.getLastCompletionDate());
+    }
+
+    @Test
+    void gapStartsANewRun() {
+        LocalDate today = LocalDate.now();
+        repository.insertIfAbsent(habitLog("habit-1", today.minusDays(5)));
+
+        HabitLogs updated = record("habit-1", "user-1", today.atTime(8, 0), today).orElseThrow();
+
+        assertEquals(1, updated.getStreak());
+        assertEquals(1, updated.getLongestStreak());
+        assertEquals(today.toEpochDay(), updated.getCurrentRunStartDay());
+    }
+
+    @Test
+    void lateCompletionIsLeftToTheCaller() {
+        LocalDate today = LocalDate.now();
+        repository.insertIfAbsent(habitLog("habit-1", today));
+
+        assertTrue(record("habit-1", "user-1", today.minusDays(3).atTime(8, 0), today).isEmpty());
+        assertTrue(record("habit-1", "other-user", today.atTime(9, 0), today).isEmpty());
+        assertFalse(repository.insertIfAbsent(habitLog("habit-1", today)));
+    }
+
+    @Test
+    void completionDayIsMarkedInTheSameWriteUnlessTheBitmapChanged() {
+        LocalDate today = LocalDate.now();
+        repository.insertIfAbsent(habitLog("habit-1", today.minusDays(1)));
+        HabitLogs stale = repository.findCompletionDays("habit-1").orElseThrow();
+
+        HabitLogs updated = record("habit-1", "user-1", today.atTime(8, 0), today).orElseThrow();
+        assertTrue(CompletionBitmap.contains(updated, today.toEpochDay()));
+        assertTrue(CompletionBitmap.contains(updated, today.minusDays(1).toEpochDay()));
+
+        // Written from the bitmap as it was before that completion
+        byte[] expectedDays = stale.getCompletionDays();
+        CompletionBitmap.mark(stale, today.toEpochDay());
+        assertTrue(repository.recordCompletion("habit-1", "user-1", today.atTime(9, 0), today,
+                expectedDays, stale.getCompletionDays(), stale.getCompletionDaysOrigin()).isEmpty());
+        assertEquals(2, mongoTemplate.findById("habit-1", HabitLogs.class).getTotalCompletions());
+    }
+
+    @Test
+    void parallelCompletionsAreNotLost() throws Exception {
+        LocalDate today = LocalDate.now();
+        repository.insertIfAbsent(habitLog("habit-1", today));
+
+        int threads = 16;
+        int completionsPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < completionsPerThread; i++) {
+                    // A completion that lost the bitmap to another one reads it again, as the service does
+                    while (record("habit-1", "user-1", today.atTime(12, 0).plusSeconds(i), today).isEmpty()) {
+                        Thread.onSpinWait();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        HabitLogs stored = mongoTemplate.findById("habit-1", HabitLogs.class);
+        assertEquals(1 + threads * completionsPerThread, stored.getTotalCompletions());
+        assertEquals(1, stored.getStreak());
+    }
+
+    @Test
+    void bulkWriteReportsOnlyTheHabitsChangedConcurrently() {
+        LocalDate today = LocalDate.now();
+        repository.insertIfAbsent(habitLog("habit-1", today.minusDays(1)));
+        repository.insertIfAbsent(habitLog("habit-2", today.minusDays(1)));
+        repository.insertIfAbsent(habitLog("habit-4", today.minusDays(1)));
+
+        HabitLogs first = mongoTemplate.findById("habit-1", HabitLogs.class);
+        HabitLogs second = mongoTemplate.findById("habit-2", HabitLogs.class);
+        HabitLogs fourth = mongoTemplate.findById("habit-4", HabitLogs.class);
+        // habit-2 gets a completion after it was read, leaving the counters the batch is about to write
+        record("habit-2", "user-1", today.atTime(9, 0), today);
+        // habit-4 only gets its details refreshed, which still raises its version
+        HabitLogs refreshed = mongoTemplate.findById("habit-4", HabitLogs.class);
+        refreshed.setTitle("Read more");
+        repository.compareAndSetDetails(refreshed);
+        for (HabitLogs habitLog : List.of(first, second, fourth)) {
+            habitLog.setTotalCompletions(2);
+            habitLog.setUpdatedAt(LocalDateTime.now());
+        }
+
+        Set<String> conflicts = repository.bulkWriteCompletions(
+                List.of(habitLog("habit-3", today), habitLog("habit-1", today)),
+                List.of(new HabitLoggingRepositoryCustom.CompletionUpdate(first, first.getVersion()),
+                        new HabitLoggingRepositoryCustom.CompletionUpdate(second, second.getVersion()),
+                        new HabitLoggingRepositoryCustom.CompletionUpdate(fourth, fourth.getVersion())));
+
+        assertEquals(Set.of("habit-1", "habit-2", "habit-4"), conflicts);
+        // habit-1 was only reported for its insert; its update landed once
+        HabitLogs stored = mongoTemplate.findById("habit-1", HabitLogs.class);
+        assertEquals(2, stored.getTotalCompletions());
+        assertEquals(first.getVersion() + 1, stored.getVersion());
+        assertEquals(2, mongoTemplate.findById("habit-2", HabitLogs.class).getTotalCompletions());
+        assertEquals(1, mongoTemplate.findById("habit-4", HabitLogs.class).getTotalCompletions());
+        assertEquals(1, mongoTemplate.findById("habit-3", HabitLogs.class).getTotalCompletions());
+    }
+
+    @Test
+    void pagesFollowTheCursorAndLeaveOutTheCompletionLog() {
+        LocalDate today = LocalDate.now();
+        for (int i = 1; i <= 5; i++) {
+            HabitLogs habitLog = habitLog("habit-" + i, today);
+            habitLog.setCompletionLog(List.of(today.atTime(7, 0)));
+            habitLog.setStatus(i == 3 ? HabitStatus.PAUSED : HabitStatus.ACTIVE);
+            mongoTemplate.save(habitLog);
+        }
+
+        List<HabitLogs> first = repository.findPage("user-1", HabitStatus.ACTIVE, null, 2, false);
+        List<HabitLogs> second = repository.findPage("user-1", HabitStatus.ACTIVE, first.get(1).getId(), 2, false);
+
+        assertEquals(List.of("habit-1", "habit-2"), first.stream().map(HabitLogs::getId).toList());
+        assertEquals(List.of("habit-4", "habit-5"), second.stream().map(HabitLogs::getId).toList());
+        assertTrue(first.stream().allMatch(habitLog -> habitLog.getCompletionLog() == null));
+        assertEquals(1, repository.findPage("user-1", null, null, 1, true).get(0).getCompletionLog().size());
+    }
+
+    @Test
+    void onlyLapsedStreaksAreStreamedAndReset() {
+        LocalDate today = LocalDate.now();
+        long cutoffDay = today.minusDays(1).toEpochDay();
+        mongoTemplate.save(habitLog("lapsed", today.minusDays(3)));
+        mongoTemplate.save(habitLog("alive", today.minusDays(1)));
+        mongoTemplate.save(habitLog("completed-since", today.minusDays(3)));
+
+        List<HabitLogs> lapsed;
+        try (Stream<HabitLogs> stream = repository.streamLapsedStreaks(cutoffDay, 1)) {
+            lapsed = stream.toList();
+        }
+        record("completed-since", "user-1", today.atTime(8, 0), today);
+        long reset = repository.resetLapsedStreaks(lapsed.stream().map(HabitLogs::getId).toList(), cutoffDay);
+
+        assertEquals(Set.of("lapsed", "completed-since"), lapsed.stream().map(HabitLogs::getId).collect(Collectors.toSet()));
+        assertEquals(1, reset);
+        assertEquals(0, mongoTemplate.findById("lapsed", HabitLogs.class).getStreak());
+        assertEquals(1, mongoTemplate.findById("alive", HabitLogs.class).getStreak());
+        assertEquals(1, mongoTemplate.findById("completed-since", HabitLogs.class).getStreak());
+    }
+
+    /**
+     * In-order completion written with the stored bitmap and the completion day marked in it
+     */
+    private Optional<HabitLogs> record(String habitId, String userId, LocalDateTime completionTime, LocalDate today) {
+        HabitLogs bitmap = repository.findCompletionDays(habitId).orElseThrow();
+        byte[] expectedDays = bitmap.getCompletionDays();
+        CompletionBitmap.mark(bitmap, completionTime.toLocalDate().toEpochDay());
+        return repository.recordCompletion(habitId, userId, completionTime, today,
+                expectedDays, bitmap.getCompletionDays(), bitmap.getCompletionDaysOrigin());
+    }
+
+    private static HabitLogs habitLog(String habitId, LocalDate firstCompletion) {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId(habitId);
+        habitLog.setUserId("user-1");
+        habitLog.setTitle("Read");
+        habitLog.setFrequency("daily");
+        habitLog.setStatus(HabitStatus.ACTIVE);
+        habitLog.setCreatedAt(firstCompletion.atStartOfDay());
+        habitLog.setUpdatedAt(LocalDateTime.now());
+        habitLog.setCurrentRunStartDay(firstCompletion.toEpochDay());
+        habitLog.setLastCompletionDay(firstCompletion.toEpochDay());
+        habitLog.setLastCompletionDate(firstCompletion.atTime(7, 0));
+        habitLog.setStreak(1);
+        habitLog.setLongestStreak(1);
+        habitLog.setTotalCompletions(1);
+        CompletionBitmap.build(habitLog, List.of(firstCompletion.atTime(7, 0)));
+        return habitLog;
+    }
+}
@@ -0,0 +1,268 @@
+package com.habbitLoggingService.habbitLoggingService.repository;
+
+import com.habbitLoggingService.habbitLoggingService.config.MongoDBConfig;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.service.CompletionBitmap;
+import com.habbitLoggingService.habbitLoggingService.service.CompletionBucketStore;
+import com.habbitLoggingService.habbitLoggingService.service.CompletionTiering;
+import com.habbitinfra.mongo.MongoIndexReconciler;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs every repository query against a seeded database with the declared indexes, explains
+ * each command the driver sent and fails when any of them plans a collection scan
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RepositoryQueryPlanTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static final Set<String> QUERY_COMMANDS = Set.of("find", "findAndModify", "update", "delete", "count", "aggregate", "distinct");
+    private static final Set<String> SESSION_FIELDS = Set.of("$db", "lsid", "$clusterTime", "txnNumber", "$readPreference",
+            "apiVersion", "readConcern", "writeConcern");
+    private static final int USERS = 20;
+    private static final int HABITS_PER_USER = 25;
+
+    private static final List<BsonDocument> commands = new CopyOnWriteArrayList<>();
+    private static MongoClient client;
+    private static com.mongodb.reactivestreams.client.MongoClient reactiveClient;
+    private static MongoTemplate mongoTemplate;
+    private static HabitLoggingRepository repository;
+    private static ReactiveHabitLoggingRepository reactiveRepository;
+    private static HabitCompletionBucketRepository bucketRepository;
+    private static ColdCompletionHistoryRepository coldRepository;
+    private static CompletionBucketStore completionStore;
+    private static CompletionTiering tiering;
+
+    @BeforeAll
+    static void connect() {
+        CommandListener capture = new CommandListener() {
+            @Override
+            public void commandStarted(CommandStartedEvent event) {
+                if (QUERY_COMMANDS.contains(event.getCommandName())) {
+                    commands.add(event.getCommand().clone());
+                }
+            }
+        };
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(mongo.getReplicaSetUrl()))
+                .addCommandListener(capture)
+                .build();
+        client = MongoClients.create(settings);
+        reactiveClient = com.mongodb.reactivestreams.client.MongoClients.create(settings);
+        mongoTemplate = new MongoTemplate(client, "habit-logs-plans");
+        ReactiveMongoTemplate reactiveMongoTemplate = new ReactiveMongoTemplate(reactiveClient, "habit-logs-plans");
+
+        repository = new MongoRepositoryFactory(mongoTemplate).getRepository(HabitLoggingRepository.class,
+                RepositoryFragments.just(new HabitLoggingRepositoryImpl(mongoTemplate)));
+        bucketRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(HabitCompletionBucketRepository.class);
+        reactiveRepository = new ReactiveMongoRepositoryFactory(reactiveMongoTemplate).getRepository(ReactiveHabitLoggingRepository.class,
+                RepositoryFragments.just(new ReactiveHabitLoggingRepositoryImpl(reactiveMongoTemplate)));
+        coldRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(ColdCompletionHistoryRepository.class);
+        completionStore = new CompletionBucketStore(mongoTemplate, bucketRepository, coldRepository);
+
+        MongoIndexReconciler indexReconciler = new MongoDBConfig().mongoIndexReconciler(mongoTemplate);
+        tiering = new CompletionTiering(mongoTemplate, bucketRepository, coldRepository, completionStore, indexReconciler,
+                true, 12, 24, 100);
+        indexReconciler.reconcile();
+        seed();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+        reactiveClient.close();
+    }
+
+    @Test
+    void noRepositoryQueryScansTheCollection() {
+        commands.clear();
+        LocalDate today = LocalDate.now();
+        LocalDateTime now = today.atTime(12, 0);
+
+        repository.findByUserId("user-3");
+        repository.findById("habit-3-4");
+        repository.findByIdAndUserId("habit-3-4", "user-3");
+        repository.findByUserIdAndStatus("user-3", HabitStatus.PAUSED);
+        repository.findByUserIdAndCompletionLogBetween("user-3", now.minusDays(10), now);
+        repository.findByUserIdAndStreakGreaterThan("user-3", 3);
+        repository.findAllById(List.of("habit-3-1", "habit-3-2"));
+        repository.findPage("user-3", null, null, 10, false);
+        repository.findPage("user-3", HabitStatus.ACTIVE, "habit-3-1", 10, true);
+        repository.findCompletionDaysByUserId("user-3");
+        HabitLogs bitmap = repository.findCompletionDays("habit-3-5").orElseThrow();
+        byte[] expectedDays = bitmap.getCompletionDays();
+        CompletionBitmap.mark(bitmap, today.toEpochDay());
+        repository.recordCompletion("habit-3-5", "user-3", now, today,
+                expectedDays, bitmap.getCompletionDays(), bitmap.getCompletionDaysOrigin());
+        HabitLogs habitLog = repository.findById("habit-3-6").orElseThrow();
+        CompletionBitmap.mark(habitLog, today.toEpochDay());
+        habitLog.setTotalCompletions(habitLog.getTotalCompletions() + 1);
+        repository.compareAndSetCompletion(habitLog, habitLog.getTotalCompletions() - 1, habitLog.getCompletionDays());
+        repository.compareAndSetDetails(repository.findById("habit-3-7").orElseThrow());
+        repository.insertIfAbsent(habitLog("habit-new", "user-3", HabitStatus.ACTIVE, 1));
+        try (Stream<HabitLogs> lapsed = repository.streamLapsedStreaks(today.minusDays(1).toEpochDay(), 100)) {
+            lapsed.toList();
+        }
+        repository.resetLapsedStreaks(List.of("habit-3-8", "habit-3-9"), today.minusDays(1).toEpochDay());
+        repository.bulkWriteCompletions(List.of(habitLog("habit-new-2", "user-3", HabitStatus.ACTIVE, 1)),
+                List.of(new HabitLoggingRepositoryCustom.CompletionUpdate(habitLog, habitLog.getVersion())));
+
+        bucketRepository.findByHabitIdOrderByMonthAsc("habit-3-4");
+        bucketRepository.findByHabitIdAndMonthRange("habit-3-4", "2024-01", "2024-06");
+        completionStore.append("habit-3-4", "user-3", now);
+        HabitLogs tiered = repository.findById("habit-3-4").orElseThrow();
+        tiered.setColdBefore(YearMonth.from(now).toString());
+        completionStore.completionsBetween(tiered, now.minusDays(40), now);
+        completionStore.completions(tiered);
+        completionStore.appendAll(List.of(request("habit-3-4", "user-3", now), request("habit-3-7", "user-3", now)));
+
+        // Nothing seeded is past the horizon, but archived habits are moved
+        tiering.run(YearMonth.from(now));
+
+        reactiveRepository.findByIdAndUserId("habit-3-4", "user-3").block();
+        reactiveRepository.existsByIdAndUserId("habit-3-4", "user-3").block();
+        reactiveRepository.findPage("user-3", HabitStatus.ACTIVE, null, 10, false).collectList().block();
+        reactiveRepository.findCompletionDays("habit-3-4").block();
+
+        assertFalse(commands.isEmpty());
+        List<String> scans = new ArrayList<>();
+        for (BsonDocument command : commands) {
+            for (BsonDocument statement : singleStatements(command)) {
+                BsonDocument plan = mongoTemplate.getDb().runCommand(new BsonDocument("explain", statement)
+                        .append("verbosity", new BsonString("queryPlanner")), BsonDocument.class);
+                if (containsCollectionScan(plan.getDocument("queryPlanner").get("winningPlan"))) {
+                    scans.add(statement.toJson());
+                }
+            }
+        }
+        assertTrue(scans.isEmpty(), "Collection scans:\n" + String.join("\n", scans));
+    }
+
+    /**
+     * The command without session fields; update and delete commands split into one command per
+     * statement, since explain takes a single statement
+     */
+    private static List<BsonDocument> singleStatements(BsonDocument command) {
+        BsonDocument base = new BsonDocument();
+        command.forEach((field, value) -> {
+            if (!SESSION_FIELDS.contains(field)) {
+                base.put(field, value);
+            }
+        });
+        String statementsField = base.containsKey("updates") ? "updates" : base.containsKey("deletes") ? "deletes" : null;
+        if (statementsField == null) {
+            return List.of(base);
+        }
+
+        List<BsonDocument> statements = new ArrayList<>();
+        for (BsonValue statement : base.getArray(statementsField)) {
+            BsonDocument single = base.clone();
+            single.put(statementsField, new BsonArray(List.of(statement)));
+            statements.add(single);
+        }
+        return statements;
+    }
+
+    private static boolean containsCollectionScan(BsonValue plan) {
+        if (plan.isDocument()) {
+            BsonDocument stage = plan.asDocument();
+            if (stage.containsKey("stage") && stage.getString("stage").getValue().equals("COLLSCAN")) {
+                return true;
+            }
+            return stage.values().stream().anyMatch(RepositoryQueryPlanTest::containsCollectionScan);
+        }
+        if (plan.isArray()) {
+            return plan.asArray().stream().anyMatch(RepositoryQueryPlanTest::containsCollectionScan);
+        }
+        return false;
+    }
+
+    private static void seed() {
+        LocalDate today = LocalDate.now();
+        List<HabitLogs> habitLogs = new ArrayList<>();
+        List<HabitLogRequest> completions = new ArrayList<>();
+        for (int u = 1; u <= USERS; u++) {
+            for (int h = 1; h <= HABITS_PER_USER; h++) {
+                String habitId = "habit-" + u + "-" + h;
+                HabitLogs habitLog = habitLog(habitId, "user-" + u, HabitStatus.values()[h % HabitStatus.values().length], h % 10);
+                List<LocalDateTime> history = new ArrayList<>();
+                for (int d = 0; d < 30; d += 1 + h % 3) {
+                    history.add(today.minusDays(d).atTime(8, 0));
+                }
+                if (h % 5 == 0) {
+                    // Legacy documents still embed their history
+                    habitLog.setCompletionLog(history);
+                } else {
+                    history.forEach(completion -> completions.add(request(habitId, habitLog.getUserId(), completion)));
+                }
+                CompletionBitmap.build(habitLog, history);
+                habitLogs.add(habitLog);
+            }
+        }
+        mongoTemplate.insertAll(habitLogs);
+        completionStore.appendAll(completions);
+    }
+
+    private static HabitLogs habitLog(String habitId, String userId, HabitStatus status, int streak) {
+        LocalDate today = LocalDate.now();
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId(habitId);
+        habitLog.setUserId(userId);
+        habitLog.setTitle("Read");
+        habitLog.setFrequency("daily");
+        habitLog.setStatus(status);
+        habitLog.setCreatedAt(today.minusDays(30).atStartOfDay());
+        habitLog.setUpdatedAt(LocalDateTime.now());
+        habitLog.setCurrentRunStartDay(today.minusDays(Math.max(streak - 1, 0)).toEpochDay());
+        habitLog.setLastCompletionDay(today.toEpochDay());
+        habitLog.setLastCompletionDate(today.atTime(8, 0));
+        habitLog.setStreak(streak);
+        habitLog.setLongestStreak(streak);
+        habitLog.setTotalCompletions(streak);
+        return habitLog;
+    }
+
+    private static HabitLogRequest request(String habitId, String userId, LocalDateTime completionTime) {
+        HabitLogRequest request = new HabitLogRequest();
+        request.setHabitId(habitId);
+        request.setUserId(userId);
+        request.setCompletionTime(completionTime);
+        return request;
+    }
+}
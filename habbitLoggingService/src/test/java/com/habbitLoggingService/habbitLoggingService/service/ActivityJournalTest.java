@@ -0,0 +1,114 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.ActivityType;
+import com.habbitLoggingService.habbitLoggingService.model.HabitActivityLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActivityJournalTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final List<Integer> batches = new CopyOnWriteArrayList<>();
+    private ActivityJournal journal;
+
+    ActivityJournalTest() {
+        when(mongoTemplate.collectionExists(HabitActivityLog.class)).thenReturn(false, true);
+        doAnswer(invocation -> {
+            batches.add(invocation.<Collection<?>>getArgument(0).size());
+            return null;
+        }).when(mongoTemplate).insert(anyCollection(), eq(HabitActivityLog.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.shutdown();
+    }
+
+    @Test
+    void fullBatchesAreWrittenWithoutWaitingForTheInterval() throws InterruptedException {
+        journal = new ActivityJournal(mongoTemplate, 1000, 10, 60_000, 5);
+
+        for (int i = 0; i < 30; i++) {
+            assertTrue(journal.record(activity(i)));
+        }
+
+        awaitWritten(30);
+        assertEquals(List.of(10, 10, 10), batches);
+        verify(mongoTemplate, times(1)).createCollection(HabitActivityLog.class);
+    }
+
+    @Test
+    void partialBatchIsWrittenAfterTheInterval() throws InterruptedException {
+        journal = new ActivityJournal(mongoTemplate, 1000, 100, 50, 5);
+
+        journal.record(activity(1));
+        journal.record(activity(2));
+
+        awaitWritten(2);
+        assertEquals(List.of(2), batches);
+    }
+
+    @Test
+    void shutdownDrainsTheQueue() {
+        journal = new ActivityJournal(mongoTemplate, 1000, 100, 60_000, 5);
+        for (int i = 0; i < 250; i++) {
+            journal.record(activity(i));
+        }
+
+        journal.shutdown();
+
+        assertEquals(250, journal.written());
+        assertFalse(journal.record(activity(0)));
+    }
+
+    @Test
+    void recordsAreDroppedInsteadOfBlockingWhenTheQueueIsFull() throws InterruptedException {
+        CountDownLatch slowInsert = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            slowInsert.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(mongoTemplate).insert(anyCollection(), eq(HabitActivityLog.class));
+        journal = new ActivityJournal(mongoTemplate, 5, 1, 60_000, 5);
+
+        List<Boolean> accepted = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            accepted.add(journal.record(activity(i)));
+        }
+        slowInsert.countDown();
+
+        assertTrue(accepted.contains(false));
+        assertTrue(journal.dropped() > 0);
+    }
+
+    private void awaitWritten(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (journal.written() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, journal.written());
+    }
+
+    private static HabitActivityLog activity(int i) {
+        return HabitLogMapper.changeActivity("habit-" + i, "user-1", ActivityType.UPDATED, LocalDateTime.now(), "EVENT");
+    }
+}
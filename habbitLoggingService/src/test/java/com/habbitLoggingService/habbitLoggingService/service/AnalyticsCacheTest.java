@@ -0,0 +1,69 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AnalyticsCacheTest {
+
+    private final AnalyticsCache cache = new AnalyticsCache(100, 60);
+
+    @Test
+    void burstForTheSameUserLoadsOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get("user-1", "habit:habit-1", () -> {
+                        loads.incrementAndGet();
+                        sleep();
+                        return "analytics";
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertEquals("analytics", result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(7, cache.stats().getHitCount());
+    }
+
+    @Test
+    void invalidationDropsOnlyThatUsersViews() {
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("user-1", "habit:habit-1", loads::incrementAndGet);
+        cache.get("user-1", "page:null:null:50:false", loads::incrementAndGet);
+        cache.get("user-2", "habit:habit-2", loads::incrementAndGet);
+
+        cache.invalidateUser("user-1");
+        cache.get("user-1", "habit:habit-1", loads::incrementAndGet);
+        cache.get("user-2", "habit:habit-2", loads::incrementAndGet);
+
+        assertEquals(4, loads.get());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class CompletionBitmapTest {
+
+    private final LocalDate firstDay = LocalDate.of(2024, 1, 1);
+
+    @Test
+    void countsOnlyDaysInsideTheWindow() {
+        HabitLogs habitLog = habitLog(LocalDate.of(2023, 12, 30));
+        List.of(LocalDate.of(2023, 12, 31), LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 3), LocalDate.of(2024, 1, 6))
+                .forEach(day -> CompletionBitmap.mark(habitLog, day.toEpochDay()));
+
+        int[] counts = new int[5];
+        CompletionBitmap.addCounts(habitLog, firstDay.toEpochDay(), counts);
+
+        assertArrayEquals(new int[]{1, 0, 1, 0, 0}, counts);
+    }
+
+    @Test
+    void habitsAddUpPerDay() {
+        HabitLogs first = habitLog(firstDay);
+        HabitLogs second = habitLog(firstDay.plusDays(2));
+        CompletionBitmap.mark(first, firstDay.plusDays(2).toEpochDay());
+        CompletionBitmap.mark(second, firstDay.plusDays(2).toEpochDay());
+        CompletionBitmap.mark(second, firstDay.plusDays(3).toEpochDay());
+        HabitLogs withoutBitmap = new HabitLogs();
+
+        int[] counts = new int[4];
+        CompletionBitmap.addCounts(first, firstDay.toEpochDay(), counts);
+        CompletionBitmap.addCounts(second, firstDay.toEpochDay(), counts);
+        CompletionBitmap.addCounts(withoutBitmap, firstDay.toEpochDay(), counts);
+
+        assertArrayEquals(new int[]{0, 0, 2, 1}, counts);
+    }
+
+    private static HabitLogs habitLog(LocalDate createdOn) {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setCreatedAt(createdOn.atStartOfDay());
+        return habitLog;
+    }
+}
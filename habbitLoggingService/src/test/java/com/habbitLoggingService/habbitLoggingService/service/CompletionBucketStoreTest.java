@@ -0,0 +1,225 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.model.ColdCompletionHistory;
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.repository.ColdCompletionHistoryRepository;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitCompletionBucketRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Appends, removals, month boundaries, the one-time move of embedded completion logs and reads across
+ * both tiers, against a real MongoDB
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class CompletionBucketStoreTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static final LocalDateTime END_OF_JUNE = LocalDateTime.of(2025, 6, 30, 23, 59, 59);
+    private static final LocalDateTime START_OF_JULY = LocalDateTime.of(2025, 7, 1, 0, 0);
+
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+    private static HabitCompletionBucketRepository bucketRepository;
+    private static ColdCompletionHistoryRepository coldRepository;
+    private CompletionBucketStore completionStore;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(mongo.getReplicaSetUrl());
+        mongoTemplate = new MongoTemplate(client, "habit-logs-buckets");
+        bucketRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(HabitCompletionBucketRepository.class);
+        coldRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(ColdCompletionHistoryRepository.class);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(HabitLogs.class);
+        mongoTemplate.dropCollection(HabitCompletionBucket.class);
+        mongoTemplate.dropCollection(ColdCompletionHistory.class);
+        completionStore = new CompletionBucketStore(mongoTemplate, bucketRepository, coldRepository);
+    }
+
+    @Test
+    void appendsFillOneBucketPerMonth() {
+        completionStore.append("habit-1", "user-1", END_OF_JUNE.minusDays(1));
+        completionStore.append("habit-1", "user-1", END_OF_JUNE);
+        completionStore.append("habit-1", "user-1", START_OF_JULY);
+
+        HabitCompletionBucket june = bucket("habit-1", YearMonth.of(2025, 6));
+        HabitCompletionBucket july = bucket("habit-1", YearMonth.of(2025, 7));
+        assertEquals(List.of(END_OF_JUNE.minusDays(1), END_OF_JUNE), june.getCompletions());
+        assertEquals(2, june.getCount());
+        assertEquals("2025-06", june.getMonth());
+        assertEquals("user-1", june.getUserId());
+        assertEquals(List.of(START_OF_JULY), july.getCompletions());
+        assertEquals(1, july.getCount());
+        assertEquals(List.of(END_OF_JUNE.minusDays(1), END_OF_JUNE, START_OF_JULY),
+                completionStore.completions(habitLog("habit-1", null)));
+    }
+
+    @Test
+    void appendAllWritesEveryHabitAndMonthOfABatch() {
+        completionStore.append("habit-1", "user-1", END_OF_JUNE.minusDays(2));
+        completionStore.appendAll(List.of(
+                request("habit-1", END_OF_JUNE),
+                request("habit-2", END_OF_JUNE),
+                request("habit-1", START_OF_JULY),
+                // The same time twice is two completions
+                request("habit-1", START_OF_JULY)));
+
+        assertEquals(2, bucket("habit-1", YearMonth.of(2025, 6)).getCount());
+        assertEquals(List.of(START_OF_JULY, START_OF_JULY), bucket("habit-1", YearMonth.of(2025, 7)).getCompletions());
+        assertEquals(2, bucket("habit-1", YearMonth.of(2025, 7)).getCount());
+        assertEquals(List.of(END_OF_JUNE), bucket("habit-2", YearMonth.of(2025, 6)).getCompletions());
+        assertEquals(List.of(END_OF_JUNE, START_OF_JULY, START_OF_JULY),
+                completionStore.completionsBetween(habitLog("habit-1", null), END_OF_JUNE.minusDays(1), START_OF_JULY));
+    }
+
+    @Test
+    void removeTakesOutOneCompletionAndIgnoresOnesThatAreNotThere() {
+        completionStore.append("habit-1", "user-1", END_OF_JUNE.minusDays(1));
+        completionStore.append("habit-1", "user-1", END_OF_JUNE);
+        completionStore.append("habit-1", "user-1", END_OF_JUNE);
+
+        completionStore.remove("habit-1", END_OF_JUNE);
+        completionStore.remove("habit-1", END_OF_JUNE.minusDays(2));
+        completionStore.remove("habit-1", START_OF_JULY);
+
+        HabitCompletionBucket june = bucket("habit-1", YearMonth.of(2025, 6));
+        assertEquals(List.of(END_OF_JUNE.minusDays(1), END_OF_JUNE), june.getCompletions());
+        assertEquals(2, june.getCount());
+        assertNull(bucket("habit-1", YearMonth.of(2025, 7)));
+    }
+
+    @Test
+    void migrationMovesEveryEmbeddedCompletionOnceEvenWhenRepeated() {
+        List<LocalDateTime> legacy = List.of(END_OF_JUNE.minusDays(3), END_OF_JUNE, END_OF_JUNE, START_OF_JULY);
+        HabitLogs stored = habitLog("habit-1", legacy);
+        mongoTemplate.save(stored);
+
+        // Two copies read before either run, as by two nodes racing on the habit
+        HabitLogs first = mongoTemplate.findById("habit-1", HabitLogs.class);
+        HabitLogs second = mongoTemplate.findById("habit-1", HabitLogs.class);
+        completionStore.migrate(first);
+        completionStore.migrate(second);
+
+        assertEquals(List.of(END_OF_JUNE.minusDays(3), END_OF_JUNE, END_OF_JUNE), bucket("habit-1", YearMonth.of(2025, 6)).getCompletions());
+        assertEquals(3, bucket("habit-1", YearMonth.of(2025, 6)).getCount());
+        assertEquals(1, bucket("habit-1", YearMonth.of(2025, 7)).getCount());
+        HabitLogs migrated = mongoTemplate.findById("habit-1", HabitLogs.class);
+        assertNull(migrated.getCompletionLog());
+        assertEquals(legacy.size(), migrated.getTotalCompletions());
+        assertEquals(legacy, completionStore.completions(migrated));
+        assertEquals(legacy.size(), first.getTotalCompletions());
+    }
+
+    @Test
+    void migrationResumedAfterACrashDoesNotRepeatMovedMonths() {
+        List<LocalDateTime> legacy = List.of(END_OF_JUNE, START_OF_JULY, START_OF_JULY.plusDays(1));
+        mongoTemplate.save(habitLog("habit-1", legacy));
+        completionStore.migrate(mongoTemplate.findById("habit-1", HabitLogs.class));
+        // As if the first run stopped after June: July and the head are back to before it
+        mongoTemplate.remove(query(where("_id").is(HabitCompletionBucket.idOf("habit-1", YearMonth.of(2025, 7)))),
+                HabitCompletionBucket.class);
+        mongoTemplate.updateFirst(query(where("_id").is("habit-1")),
+                new Update().set("completionLog", legacy).set("totalCompletions", 0), HabitLogs.class);
+
+        completionStore.migrate(mongoTemplate.findById("habit-1", HabitLogs.class));
+
+        assertEquals(List.of(END_OF_JUNE), bucket("habit-1", YearMonth.of(2025, 6)).getCompletions());
+        assertEquals(2, bucket("habit-1", YearMonth.of(2025, 7)).getCount());
+        assertEquals(3, mongoTemplate.findById("habit-1", HabitLogs.class).getTotalCompletions());
+    }
+
+    @Test
+    void migrateAllOnlyTouchesHabitLogsThatStillEmbedTheirLog() {
+        mongoTemplate.save(habitLog("habit-1", List.of(END_OF_JUNE, START_OF_JULY)));
+        mongoTemplate.save(habitLog("habit-2", List.of(END_OF_JUNE)));
+        mongoTemplate.save(habitLog("habit-3", null));
+
+        assertEquals(2, completionStore.migrateAll());
+        assertEquals(0, completionStore.migrateAll());
+
+        assertEquals(2, mongoTemplate.findById("habit-1", HabitLogs.class).getTotalCompletions());
+        assertEquals(1, mongoTemplate.findById("habit-2", HabitLogs.class).getTotalCompletions());
+        assertEquals(0, mongoTemplate.findById("habit-3", HabitLogs.class).getTotalCompletions());
+        assertEquals(1, bucket("habit-1", YearMonth.of(2025, 6)).getCount());
+        assertEquals(1, bucket("habit-2", YearMonth.of(2025, 6)).getCount());
+    }
+
+    @Test
+    void historyIsMergedFromTheColdAndHotTiers() {
+        LocalDateTime may = END_OF_JUNE.minusMonths(1);
+        mongoTemplate.insert(cold("habit-1", YearMonth.of(2025, 5), List.of(may)));
+        mongoTemplate.insert(cold("habit-1", YearMonth.of(2025, 6), List.of(END_OF_JUNE.minusDays(5))));
+        // A late completion logged into a month that is already cold, and the current month
+        completionStore.append("habit-1", "user-1", END_OF_JUNE);
+        completionStore.append("habit-1", "user-1", START_OF_JULY);
+        HabitLogs habitLog = habitLog("habit-1", null);
+
+        assertEquals(List.of(END_OF_JUNE, START_OF_JULY), completionStore.completions(habitLog));
+        habitLog.setColdBefore("2025-07");
+        assertEquals(List.of(may, END_OF_JUNE.minusDays(5), END_OF_JUNE, START_OF_JULY), completionStore.completions(habitLog));
+        assertEquals(List.of(END_OF_JUNE.minusDays(5), END_OF_JUNE, START_OF_JULY),
+                completionStore.completionsBetween(habitLog, END_OF_JUNE.minusDays(10), START_OF_JULY));
+        assertEquals(List.of(START_OF_JULY), completionStore.completionsBetween(habitLog, START_OF_JULY, START_OF_JULY));
+    }
+
+    private static HabitCompletionBucket bucket(String habitId, YearMonth month) {
+        return mongoTemplate.findById(HabitCompletionBucket.idOf(habitId, month), HabitCompletionBucket.class);
+    }
+
+    private static ColdCompletionHistory cold(String habitId, YearMonth month, List<LocalDateTime> completions) {
+        return new ColdCompletionHistory(HabitCompletionBucket.idOf(habitId, month), habitId, "user-1", month.toString(),
+                completions.size(), PackedCompletions.encode(completions));
+    }
+
+    private static HabitLogRequest request(String habitId, LocalDateTime completionTime) {
+        HabitLogRequest request = new HabitLogRequest();
+        request.setHabitId(habitId);
+        request.setUserId("user-1");
+        request.setCompletionTime(completionTime);
+        return request;
+    }
+
+    private static HabitLogs habitLog(String habitId, List<LocalDateTime> completionLog) {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId(habitId);
+        habitLog.setUserId("user-1");
+        habitLog.setTitle("Read");
+        habitLog.setStatus(HabitStatus.ACTIVE);
+        habitLog.setCreatedAt(LocalDateTime.of(2025, 1, 1, 0, 0));
+        habitLog.setCompletionLog(completionLog);
+        return habitLog;
+    }
+}
@@ -0,0 +1,91 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.repository.ReactiveHabitLoggingRepository;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CompletionPrefetcherTest {
+
+    private final UserValidationService userValidation = mock(UserValidationService.class);
+    private final ReactiveHabitLoggingRepository repository = mock(ReactiveHabitLoggingRepository.class);
+    private final HabitMetadataReplica replica = mock(HabitMetadataReplica.class);
+    private final HabitLogRequest request = new HabitLogRequest();
+
+    CompletionPrefetcherTest() {
+        request.setUserId("user-1");
+        request.setHabitId("habit-1");
+    }
+
+    @Test
+    void newHabitFetchesDetailsWhileTheUserIsValidated() {
+        HabitActivityResponse habitData = new HabitActivityResponse();
+        habitData.setTitle("Read");
+        when(userValidation.validateUserReactive("user-1")).thenReturn(Mono.just(true).delayElement(Duration.ofMillis(300)));
+        when(repository.existsByIdAndUserId("habit-1", "user-1")).thenReturn(Mono.just(false));
+        when(replica.findReactive("habit-1")).thenReturn(Mono.just(habitData).delayElement(Duration.ofMillis(300)));
+
+        long start = System.nanoTime();
+        CompletionPrefetcher.Prefetched prefetched = prefetcher(2000).prefetch(request).block();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertFalse(prefetched.habitLogFound());
+        assertEquals("Read", prefetched.habitData().getTitle());
+        assertTrue(elapsedMillis < 550, "lookups ran one after another: " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void existingHabitSkipsTheDetailLookup() {
+        when(userValidation.validateUserReactive("user-1")).thenReturn(Mono.just(true));
+        when(repository.existsByIdAndUserId("habit-1", "user-1")).thenReturn(Mono.just(true));
+
+        CompletionPrefetcher.Prefetched prefetched = prefetcher(2000).prefetch(request).block();
+
+        assertTrue(prefetched.habitLogFound());
+        verify(replica, never()).findReactive("habit-1");
+    }
+
+    @Test
+    void invalidUserCancelsTheDetailFetch() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        when(userValidation.validateUserReactive("user-1")).thenReturn(Mono.just(false));
+        when(repository.existsByIdAndUserId("habit-1", "user-1")).thenReturn(Mono.just(false));
+        when(replica.findReactive("habit-1")).thenReturn(Mono.<HabitActivityResponse>never()
+                .doOnCancel(() -> cancelled.set(true)));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> prefetcher(2000).prefetch(request).block());
+
+        assertEquals("Invalid user: user-1", error.getMessage());
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void deadlineFailsTheRequestAndCancelsLookups() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        when(userValidation.validateUserReactive("user-1")).thenReturn(Mono.<Boolean>never()
+                .doOnCancel(() -> cancelled.set(true)));
+        when(repository.existsByIdAndUserId("habit-1", "user-1")).thenReturn(Mono.just(true));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> prefetcher(100).prefetch(request).block());
+
+        assertEquals("Completion deadline exceeded for habit: habit-1", error.getMessage());
+        assertTrue(cancelled.get());
+    }
+
+    private CompletionPrefetcher prefetcher(long deadlineMillis) {
+        return new CompletionPrefetcher(userValidation, repository, replica, deadlineMillis);
+    }
+}
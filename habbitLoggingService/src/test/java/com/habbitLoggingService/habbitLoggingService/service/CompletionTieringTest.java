@@ -0,0 +1,140 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.config.MongoDBConfig;
+import com.habbitLoggingService.habbitLoggingService.model.ColdCompletionHistory;
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.repository.ColdCompletionHistoryRepository;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitCompletionBucketRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Moves buckets between the tiers of a real MongoDB and checks reads see the same history
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class CompletionTieringTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static final YearMonth NOW = YearMonth.of(2025, 6);
+
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+    private static HabitCompletionBucketRepository bucketRepository;
+    private static ColdCompletionHistoryRepository coldRepository;
+    private CompletionBucketStore completionStore;
+    private CompletionTiering tiering;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(mongo.getReplicaSetUrl());
+        mongoTemplate = new MongoTemplate(client, "habit-logs-tiering");
+        bucketRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(HabitCompletionBucketRepository.class);
+        coldRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(ColdCompletionHistoryRepository.class);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(HabitLogs.class);
+        mongoTemplate.dropCollection(HabitCompletionBucket.class);
+        mongoTemplate.dropCollection(ColdCompletionHistory.class);
+        completionStore = new CompletionBucketStore(mongoTemplate, bucketRepository, coldRepository);
+        tiering = new CompletionTiering(mongoTemplate, bucketRepository, coldRepository, completionStore,
+                new MongoDBConfig().mongoIndexReconciler(mongoTemplate), true, 12, 24, 2);
+    }
+
+    @Test
+    void bucketsPastTheHorizonGoColdAndReadTheSame() {
+        HabitLogs habitLog = habitLog("habit-1", HabitStatus.ACTIVE);
+        List<LocalDateTime> history = List.of(
+                NOW.minusMonths(20).atDay(3).atTime(8, 0),
+                NOW.minusMonths(14).atDay(3).atTime(8, 0),
+                NOW.minusMonths(13).atDay(3).atTime(8, 0),
+                NOW.minusMonths(2).atDay(3).atTime(8, 0));
+        history.forEach(completion -> completionStore.append("habit-1", "user-1", completion));
+
+        assertEquals(3, tiering.run(NOW));
+
+        habitLog = mongoTemplate.findById("habit-1", HabitLogs.class);
+        assertEquals(NOW.minusMonths(12).toString(), habitLog.getColdBefore());
+        assertEquals(1, bucketRepository.count());
+        assertEquals(3, coldRepository.count());
+        assertEquals(history, completionStore.completions(habitLog));
+        assertEquals(history.subList(1, 4), completionStore.completionsBetween(habitLog,
+                NOW.minusMonths(15).atDay(1).atStartOfDay(), NOW.atEndOfMonth().atTime(23, 59)));
+
+        Document options = mongoTemplate.getDb().listCollections()
+                .filter(new Document("name", "habit_completion_history_cold")).first();
+        assertTrue(options.toJson().contains("block_compressor=zstd"));
+    }
+
+    @Test
+    void archivedHabitsGoColdEntirely() {
+        habitLog("habit-1", HabitStatus.ARCHIVED);
+        habitLog("habit-2", HabitStatus.ACTIVE);
+        completionStore.append("habit-1", "user-1", NOW.atDay(2).atTime(8, 0));
+        completionStore.append("habit-1", "user-1", NOW.minusMonths(1).atDay(2).atTime(8, 0));
+        completionStore.append("habit-2", "user-1", NOW.atDay(2).atTime(8, 0));
+
+        assertEquals(2, tiering.run(NOW));
+        assertEquals(0, tiering.run(NOW));
+
+        assertEquals(NOW.plusMonths(1).toString(), mongoTemplate.findById("habit-1", HabitLogs.class).getColdBefore());
+        assertEquals(List.of("habit-2:" + NOW), bucketRepository.findAll().stream().map(HabitCompletionBucket::getId).toList());
+    }
+
+    @Test
+    void aBucketWrittenWhileMovingStaysHotUntilTheNextRun() {
+        HabitLogs habitLog = habitLog("habit-1", HabitStatus.ACTIVE);
+        LocalDateTime old = NOW.minusMonths(14).atDay(3).atTime(8, 0);
+        LocalDateTime late = old.plusDays(1);
+        completionStore.append("habit-1", "user-1", old);
+        HabitCompletionBucket read = bucketRepository.findAll().get(0);
+        completionStore.append("habit-1", "user-1", late);
+
+        assertEquals(0, tiering.moveBuckets(List.of(read)));
+        habitLog = mongoTemplate.findById("habit-1", HabitLogs.class);
+        assertEquals(List.of(old, late), completionStore.completions(habitLog));
+
+        assertEquals(1, tiering.run(NOW));
+        assertEquals(0, bucketRepository.count());
+        assertEquals(2, mongoTemplate.findOne(query(where("_id").is(read.getId())), ColdCompletionHistory.class).getCount());
+        assertEquals(List.of(old, late), completionStore.completions(habitLog));
+    }
+
+    private static HabitLogs habitLog(String habitId, HabitStatus status) {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId(habitId);
+        habitLog.setUserId("user-1");
+        habitLog.setStatus(status);
+        mongoTemplate.insert(habitLog);
+        return habitLog;
+    }
+}
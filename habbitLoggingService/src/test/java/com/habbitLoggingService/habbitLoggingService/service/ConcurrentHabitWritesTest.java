@@ -0,0 +1,158 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.repository.ColdCompletionHistoryRepository;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitCompletionBucketRepository;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitLoggingRepository;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitLoggingRepositoryImpl;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stress test: REST-style completions, event-style completions and detail refreshes hammer the
+ * same habit log from many threads; every completion has to be counted and the last refresh kept
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class ConcurrentHabitWritesTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static final int WRITERS = 12;
+    private static final int COMPLETIONS_EACH = 50;
+    private static final int REFRESHES = 40;
+
+    private static MongoClient client;
+    private static MongoTemplate mongoTemplate;
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(mongo.getReplicaSetUrl());
+        mongoTemplate = new MongoTemplate(client, "habit-logs-contention");
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+    }
+
+    @Test
+    void contendedWritersLoseNoUpdates() throws Exception {
+        mongoTemplate.dropCollection(HabitLogs.class);
+        mongoTemplate.dropCollection(HabitCompletionBucket.class);
+        HabitActivityResponse details = new HabitActivityResponse();
+        HabitLoggingService service = service(details);
+        seedHabitLog();
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < COMPLETIONS_EACH; i++) {
+                    HabitLogRequest request = new HabitLogRequest();
+                    request.setHabitId("habit-1");
+                    request.setUserId("user-1");
+                    // Mostly late completions, which take the read-modify-write path
+                    request.setCompletionTime(LocalDate.now().minusDays(ThreadLocalRandom.current().nextInt(60))
+                            .atTime(8, ThreadLocalRandom.current().nextInt(60)));
+                    service.logHabitCompletion(request);
+                }
+                return null;
+            }));
+        }
+        futures.add(pool.submit(() -> {
+            start.await();
+            for (int i = 1; i <= REFRESHES; i++) {
+                // Only this thread changes the details, so the last value written is known
+                details.setTitle("Read " + i);
+                service.refreshHabitData("user-1", "habit-1");
+            }
+            return null;
+        }));
+
+        long started = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        pool.shutdown();
+
+        HabitLogs habitLog = mongoTemplate.findById("habit-1", HabitLogs.class);
+        int completions = WRITERS * COMPLETIONS_EACH;
+        assertEquals(completions, habitLog.getTotalCompletions());
+        assertEquals(completions, mongoTemplate.findAll(HabitCompletionBucket.class).stream()
+                .mapToInt(HabitCompletionBucket::getCount).sum());
+        assertEquals("Read " + REFRESHES, habitLog.getTitle());
+        System.out.printf("%d completions and %d refreshes on one habit from %d threads: %.0f writes/s, version %d%n",
+                completions, REFRESHES, WRITERS + 1, (completions + REFRESHES) / seconds, habitLog.getVersion());
+    }
+
+    private static void seedHabitLog() {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId("habit-1");
+        habitLog.setUserId("user-1");
+        habitLog.setTitle("Read");
+        habitLog.setFrequency("daily");
+        habitLog.setStatus(HabitStatus.ACTIVE);
+        habitLog.setCreatedAt(LocalDateTime.now().minusDays(90));
+        habitLog.setUpdatedAt(LocalDateTime.now().minusDays(90));
+        habitLog.setLastCompletionDay(LocalDate.now().minusDays(90).toEpochDay());
+        habitLog.setCurrentRunStartDay(LocalDate.now().minusDays(90).toEpochDay());
+        CompletionBitmap.build(habitLog, List.of());
+        mongoTemplate.insert(habitLog);
+    }
+
+    private static HabitLoggingService service(HabitActivityResponse details) {
+        HabitLoggingRepository repository = new MongoRepositoryFactory(mongoTemplate).getRepository(HabitLoggingRepository.class,
+                RepositoryFragments.just(new HabitLoggingRepositoryImpl(mongoTemplate)));
+        CompletionBucketStore completionStore = new CompletionBucketStore(mongoTemplate,
+                new MongoRepositoryFactory(mongoTemplate).getRepository(HabitCompletionBucketRepository.class),
+                new MongoRepositoryFactory(mongoTemplate).getRepository(ColdCompletionHistoryRepository.class));
+
+        HabitMetadataReplica replica = mock(HabitMetadataReplica.class);
+        when(replica.find(anyString())).thenAnswer(invocation -> Optional.of(details));
+        CompletionPrefetcher prefetcher = mock(CompletionPrefetcher.class);
+        when(prefetcher.deadline()).thenReturn(Duration.ofSeconds(30));
+        when(prefetcher.prefetch(any())).thenReturn(Mono.just(new CompletionPrefetcher.Prefetched(true, null)));
+
+        return new HabitLoggingService(repository, mock(UserValidationService.class), mock(WebClient.class), replica,
+                completionStore, mock(HabitStreamService.class), mock(AnalyticsCache.class), prefetcher,
+                mock(IdempotencyStore.class), mock(StreakLeaderboard.class), mock(ActivityJournal.class), new HabitLocks(1024));
+    }
+}
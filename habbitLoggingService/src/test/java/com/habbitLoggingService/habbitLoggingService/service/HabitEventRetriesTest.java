@@ -0,0 +1,109 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.config.HabitEventPartitions;
+import com.habbiteventcontract.HabitEvents;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HabitEventRetriesTest {
+
+    private final RabbitTemplate template = mock(RabbitTemplate.class);
+    private final HabitEventRetries retries = new HabitEventRetries(template, mock(AmqpAdmin.class), "habit_log_queue",
+            3, 1000, 4, 5000, 100, 1000);
+
+    @Test
+    void delaysGrowByTheMultiplier() {
+        assertEquals(List.of(1000L, 4000L, 16000L), HabitEventRetries.delays(3, 1000, 4));
+    }
+
+    @Test
+    void eachRetryWaitsLongerThanTheOneBefore() {
+        assertEquals(3, retries.attempts());
+        assertEquals(1000, retries.delayMillis(1));
+        assertEquals(16000, retries.delayMillis(3));
+        assertEquals(16000, retries.delayMillis(4));
+    }
+
+    @Test
+    void failedEventsAreParkedOnceTheBrokerConfirmedThem() {
+        when(template.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(template));
+        Message first = message(3);
+        Message second = message(4);
+
+        retries.park(List.of(first, second));
+
+        verify(template).send("", "habit_log_queue.parked", first);
+        verify(template).send("", "habit_log_queue.parked", second);
+        verify(template).waitForConfirmsOrDie(5000);
+        assertEquals(MessageDeliveryMode.PERSISTENT, first.getMessageProperties().getDeliveryMode());
+    }
+
+    @Test
+    void parkedEventsWithoutTheUserHeaderStayParked() throws Exception {
+        Channel channel = mock(Channel.class);
+        when(template.execute(any())).thenAnswer(invocation ->
+                invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+        byte[] event = {1};
+        byte[] unreadable = {2};
+        when(channel.basicGet("habit_log_queue.parked", false)).thenReturn(
+                parked(1, Map.of(HabitEvents.USER_HEADER, "user-1"), event),
+                parked(2, Map.of(HabitEventRetries.REASON_HEADER, "Could not read habit event"), unreadable),
+                null);
+
+        assertEquals(new HabitEventRetries.Replay(1, 1), retries.replayParked(10));
+
+        verify(channel).basicPublish(eq(HabitEventPartitions.PARTITIONED_EXCHANGE), eq(""), any(), same(event));
+        verify(channel).basicPublish(eq(""), eq("habit_log_queue.parked"), any(), same(unreadable));
+        verify(channel, never()).basicPublish(eq(""), eq("habit_log_queue.0"), any(), any());
+        verify(channel).basicAck(2, true);
+    }
+
+    @Test
+    void replayOfOnlySkippedEventsEndsAtTheLimit() throws Exception {
+        Channel channel = mock(Channel.class);
+        when(template.execute(any())).thenAnswer(invocation ->
+                invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+        // Every skipped message goes back to the parking queue, which never runs empty
+        when(channel.basicGet("habit_log_queue.parked", false)).thenAnswer(invocation ->
+                parked(1, Map.of(HabitEventRetries.REASON_HEADER, "Habit event without a type"), new byte[]{3}));
+
+        assertEquals(new HabitEventRetries.Replay(0, 3), retries.replayParked(3));
+        assertEquals(3, retries.status().getSkipped());
+    }
+
+    private static GetResponse parked(long deliveryTag, Map<String, Object> headers, byte[] body) {
+        return new GetResponse(new Envelope(deliveryTag, false, "", "habit_log_queue.parked"),
+                new AMQP.BasicProperties.Builder().headers(headers).build(), body, 0);
+    }
+
+    private static Message message(Integer attempt) {
+        MessageProperties properties = new MessageProperties();
+        if (attempt != null) {
+            properties.setHeader(HabitEventRetries.ATTEMPT_HEADER, attempt);
+        }
+        return new Message(new byte[0], properties);
+    }
+}
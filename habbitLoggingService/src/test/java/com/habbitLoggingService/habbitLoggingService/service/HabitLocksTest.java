@@ -0,0 +1,157 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HabitLocksTest {
+
+    private static final long DEADLINE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    void contendedReadModifyWritesOnOneHabitLoseNothing() throws Exception {
+        HabitLocks locks = new HabitLocks(1024);
+        int writers = 16;
+        int writesEach = 20_000;
+        long[] counter = new long[1];
+
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < writesEach; i++) {
+                    locks.withLock("habit-1", System.nanoTime() + DEADLINE_NANOS, () -> {
+                        // Deliberately not atomic: read, yield, write back
+                        long read = counter[0];
+                        Thread.onSpinWait();
+                        counter[0] = read + 1;
+                        return null;
+                    });
+                }
+                return null;
+            }));
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        pool.shutdown();
+
+        assertEquals((long) writers * writesEach, counter[0]);
+        System.out.printf("%d writers on one habit: %.0f writes/s%n", writers, writers * writesEach / seconds);
+    }
+
+    @Test
+    void habitsOnOtherStripesDoNotWait() throws Exception {
+        HabitLocks locks = new HabitLocks(1024);
+        String other = "habit-2";
+        assertNotEquals(locks.stripeOf("habit-1"), locks.stripeOf(other));
+
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> locks.withLock("habit-1", System.nanoTime() + DEADLINE_NANOS, () -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        holder.start();
+        held.await();
+
+        assertTrue(locks.withLock(other, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100), () -> true));
+        assertThrows(RuntimeException.class,
+                () -> locks.withLock("habit-1", System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100), () -> true));
+
+        release.countDown();
+        holder.join();
+    }
+
+    @Test
+    void batchesOverlappingInOppositeOrderDoNotDeadlockAndExcludeSingleWrites() throws Exception {
+        HabitLocks locks = new HabitLocks(1024);
+        List<String> habits = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            habits.add("habit-" + i);
+        }
+        List<String> reversed = new ArrayList<>(habits);
+        Collections.reverse(reversed);
+        long[] counter = new long[1];
+
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        List<Future<?>> futures = new ArrayList<>();
+        for (List<String> order : List.of(habits, reversed)) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    locks.withLocks(order, System.nanoTime() + DEADLINE_NANOS, () -> counter[0]++);
+                }
+                return null;
+            }));
+        }
+        futures.add(pool.submit(() -> {
+            for (int i = 0; i < 2_000; i++) {
+                locks.withLock("habit-7", System.nanoTime() + DEADLINE_NANOS, () -> counter[0]++);
+            }
+            return null;
+        }));
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(6_000, counter[0]);
+    }
+
+    @Test
+    void batchThatTimesOutGivesBackTheLocksItTook() throws Exception {
+        HabitLocks locks = new HabitLocks(1024);
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> locks.withLock("habit-2", System.nanoTime() + DEADLINE_NANOS, () -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        holder.start();
+        held.await();
+
+        assertThrows(RuntimeException.class, () -> locks.withLocks(List.of("habit-1", "habit-2"),
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100), () -> true));
+        // Another thread, so a lock the batch kept would not be re-entered
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        assertTrue(other.submit(() -> locks.withLock("habit-1", System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100), () -> true)).get());
+        other.shutdown();
+
+        release.countDown();
+        holder.join();
+    }
+
+    @Test
+    void stripeCountIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1024, new HabitLocks(1000).stripeCount());
+        assertEquals(1024, new HabitLocks(1024).stripeCount());
+        assertEquals(2, new HabitLocks(1).stripeCount());
+    }
+}
@@ -0,0 +1,66 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class HabitLogMapperTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2025, 6, 23);
+
+    @Test
+    void completionOfAWeeklyTargetAlreadyMetIsNotOnTime() {
+        // Done Monday and Tuesday, the bitmap already holds Wednesday's completion
+        HabitLogs habitLog = habitLog("2 times per week", MONDAY, MONDAY.plusDays(1), MONDAY.plusDays(2));
+
+        assertEquals(false, HabitLogMapper.completionActivity(habitLog, request(MONDAY.plusDays(2))).getIsOnTime());
+    }
+
+    @Test
+    void completionOfAWeeklyTargetNotMetYetIsOnTime() {
+        // Last week's completions do not count towards this week's target
+        HabitLogs habitLog = habitLog("2 times per week", MONDAY.minusDays(2), MONDAY.minusDays(1), MONDAY.plusDays(1));
+
+        assertEquals(true, HabitLogMapper.completionActivity(habitLog, request(MONDAY.plusDays(1))).getIsOnTime());
+    }
+
+    @Test
+    void periodTargetWithoutABitmapIsNotJudged() {
+        HabitLogs habitLog = habitLog("3 times per month");
+
+        assertNull(HabitLogMapper.completionActivity(habitLog, request(MONDAY)).getIsOnTime());
+    }
+
+    @Test
+    void scheduledDaysDoNotDependOnEarlierCompletions() {
+        HabitLogs habitLog = habitLog("weekdays", MONDAY, MONDAY.plusDays(1));
+
+        assertEquals(true, HabitLogMapper.completionActivity(habitLog, request(MONDAY.plusDays(1))).getIsOnTime());
+        assertEquals(false, HabitLogMapper.completionActivity(habitLog, request(MONDAY.plusDays(5))).getIsOnTime());
+    }
+
+    private static HabitLogs habitLog(String frequency, LocalDate... completedDays) {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId("habit-1");
+        habitLog.setUserId("user-1");
+        habitLog.setFrequency(frequency);
+        if (completedDays.length > 0) {
+            CompletionBitmap.build(habitLog, List.of(completedDays).stream().map(day -> day.atTime(8, 0)).toList());
+        }
+        return habitLog;
+    }
+
+    private static HabitLogRequest request(LocalDate day) {
+        HabitLogRequest request = new HabitLogRequest();
+        request.setHabitId("habit-1");
+        request.setUserId("user-1");
+        request.setCompletionTime(day.atTime(8, 0));
+        return request;
+    }
+}
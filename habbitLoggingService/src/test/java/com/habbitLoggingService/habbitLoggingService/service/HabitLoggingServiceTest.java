@@ -0,0 +1,261 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogBatchResult;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogResponse;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitLoggingRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HabitLoggingServiceTest {
+
+    private static final LocalDateTime COMPLETED_AT = LocalDateTime.now().withNano(0);
+
+    private final HabitLoggingRepository repository = mock(HabitLoggingRepository.class);
+    private final UserValidationService userValidation = mock(UserValidationService.class);
+    private final CompletionBucketStore completionStore = mock(CompletionBucketStore.class);
+    private final HabitStreamService streamService = mock(HabitStreamService.class);
+    private final StreakLeaderboard leaderboard = mock(StreakLeaderboard.class);
+    private final ActivityJournal activityJournal = mock(ActivityJournal.class);
+    private final IdempotencyStore idempotencyStore = mock(IdempotencyStore.class);
+    private final HabitLoggingService service = service();
+
+    @Test
+    void completionMarksItsDayInTheSameWriteAsTheCounters() {
+        when(repository.findCompletionDays("habit-1")).thenReturn(Optional.of(habitLog()));
+        HabitLogs written = habitLog();
+        written.setTotalCompletions(2);
+        when(repository.recordCompletion(eq("habit-1"), eq("user-1"), eq(COMPLETED_AT), any(), any(), any(), anyLong()))
+                .thenReturn(Optional.of(written));
+
+        HabitLogResponse response = service.logHabitCompletion(request());
+
+        ArgumentCaptor<byte[]> expectedDays = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<byte[]> completionDays = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<Long> origin = ArgumentCaptor.forClass(Long.class);
+        verify(repository).recordCompletion(anyString(), anyString(), any(), any(),
+                expectedDays.capture(), completionDays.capture(), origin.capture());
+        assertArrayEquals(habitLog().getCompletionDays(), expectedDays.getValue());
+        HabitLogs marked = new HabitLogs();
+        marked.setCompletionDays(completionDays.getValue());
+        marked.setCompletionDaysOrigin(origin.getValue());
+        assertTrue(CompletionBitmap.contains(marked, COMPLETED_AT.toLocalDate().toEpochDay()));
+        assertTrue(CompletionBitmap.contains(marked, COMPLETED_AT.minusDays(3).toLocalDate().toEpochDay()));
+        assertEquals(2, response.getTotalCompletions());
+        verify(completionStore).append("habit-1", "user-1", COMPLETED_AT);
+    }
+
+    @Test
+    void completionThatLostTheBitmapToAnotherOneIsRetriedNotCleared() {
+        when(repository.findCompletionDays("habit-1")).thenAnswer(invocation -> Optional.of(habitLog()));
+        // Another completion changed the bitmap between the read and the write
+        when(repository.recordCompletion(anyString(), anyString(), any(), any(), any(), any(), anyLong()))
+                .thenReturn(Optional.empty());
+        when(repository.findByIdAndUserId("habit-1", "user-1")).thenReturn(Optional.of(habitLog()));
+        when(repository.compareAndSetCompletion(any(), eq(1), any())).thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+        when(idempotencyStore.claim(anyString(), any())).thenReturn(true);
+
+        HabitLogResponse response = service.logHabitCompletion(request(), "completion-1");
+
+        ArgumentCaptor<HabitLogs> written = ArgumentCaptor.forClass(HabitLogs.class);
+        verify(repository).compareAndSetCompletion(written.capture(), eq(1), any());
+        assertTrue(CompletionBitmap.contains(written.getValue(), COMPLETED_AT.toLocalDate().toEpochDay()));
+        assertEquals(2, response.getTotalCompletions());
+        verify(completionStore).append("habit-1", "user-1", COMPLETED_AT);
+        verify(idempotencyStore, never()).release(anyString());
+        verify(idempotencyStore).markApplied("completion-1");
+    }
+
+    @Test
+    void keyOfACompletionThatWasNotWrittenIsReleasedAndNeverMarkedApplied() {
+        when(repository.findCompletionDays("habit-1")).thenReturn(Optional.of(habitLog()));
+        when(repository.recordCompletion(anyString(), anyString(), any(), any(), any(), any(), anyLong()))
+                .thenThrow(new DataAccessResourceFailureException("connection reset"));
+        when(idempotencyStore.claim(anyString(), any())).thenReturn(true);
+
+        assertThrows(DataAccessResourceFailureException.class, () -> service.logHabitCompletion(request(), "completion-1"));
+        verify(idempotencyStore).release("completion-1");
+        verify(idempotencyStore, never()).markApplied(anyString());
+    }
+
+    @Test
+    void batchMarksOnlyTheKeysOfWrittenCompletionsApplied() {
+        when(userValidation.validateUser("user-1")).thenReturn(true);
+        when(repository.findAllById(any())).thenReturn(List.of(habitLog()));
+        when(repository.bulkWriteCompletions(any(), any())).thenReturn(Set.of());
+        when(idempotencyStore.claimAll(any())).thenReturn(Set.of("event-1", "event-2"));
+        HabitLogRequest tooEarly = request();
+        tooEarly.setCompletionTime(COMPLETED_AT.minusDays(31));
+
+        List<HabitLogBatchResult> results = service.logHabitCompletions(List.of(request(), tooEarly, request()),
+                Arrays.asList("event-1", "event-2", "event-3"));
+
+        assertEquals(List.of("COMPLETED", "FAILED", "DUPLICATE"), results.stream().map(HabitLogBatchResult::getStatus).toList());
+        verify(idempotencyStore).releaseAll(List.of("event-2"));
+        verify(idempotencyStore).markAllApplied(Set.of("event-1"));
+    }
+
+    @Test
+    void completionIsInItsBucketBeforeTheHabitLogCountsIt() {
+        when(repository.findCompletionDays("habit-1")).thenReturn(Optional.of(habitLog()));
+        when(repository.recordCompletion(anyString(), anyString(), any(), any(), any(), any(), anyLong()))
+                .thenReturn(Optional.of(habitLog()));
+
+        service.logHabitCompletion(request());
+
+        InOrder order = inOrder(completionStore, repository);
+        order.verify(completionStore).append("habit-1", "user-1", COMPLETED_AT);
+        order.verify(repository).recordCompletion(anyString(), anyString(), any(), any(), any(), any(), anyLong());
+        verify(completionStore, never()).remove(anyString(), any());
+    }
+
+    @Test
+    void completionWhoseHabitLogWasNotWrittenIsTakenOutOfItsBucket() {
+        when(repository.findCompletionDays("habit-1")).thenAnswer(invocation -> Optional.of(habitLog()));
+        when(repository.recordCompletion(anyString(), anyString(), any(), any(), any(), any(), anyLong()))
+                .thenReturn(Optional.empty());
+        when(repository.findByIdAndUserId("habit-1", "user-1")).thenAnswer(invocation -> Optional.of(habitLog()));
+        // Every guarded write loses to another completion
+        when(repository.compareAndSetCompletion(any(), any(Integer.class), any())).thenReturn(Optional.empty());
+
+        assertThrows(RuntimeException.class, () -> service.logHabitCompletion(request()));
+        verify(completionStore).remove("habit-1", COMPLETED_AT);
+    }
+
+    @Test
+    void completionStaysInItsBucketWhenTheHabitLogWriteFailedInTheDatabase() {
+        when(repository.findCompletionDays("habit-1")).thenReturn(Optional.of(habitLog()));
+        // The write may have been applied before the connection dropped
+        when(repository.recordCompletion(anyString(), anyString(), any(), any(), any(), any(), anyLong()))
+                .thenThrow(new DataAccessResourceFailureException("connection reset"));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> service.logHabitCompletion(request()));
+        verify(completionStore).append("habit-1", "user-1", COMPLETED_AT);
+        verify(completionStore, never()).remove(anyString(), any());
+    }
+
+    @Test
+    void completionAfterTomorrowOrBeforeTheHabitWasCreatedIsRejected() {
+        when(repository.findCompletionDays("habit-1")).thenAnswer(invocation -> Optional.of(habitLog()));
+        when(repository.findByIdAndUserId("habit-1", "user-1")).thenAnswer(invocation -> Optional.of(habitLog()));
+
+        HabitLogRequest future = request();
+        future.setCompletionTime(LocalDate.now().plusDays(2).atTime(8, 0));
+        HabitLogRequest beforeCreation = request();
+        beforeCreation.setCompletionTime(COMPLETED_AT.minusDays(31));
+
+        assertThrows(RuntimeException.class, () -> service.logHabitCompletion(future));
+        assertThrows(RuntimeException.class, () -> service.logHabitCompletion(beforeCreation));
+        when(userValidation.validateUser("user-1")).thenReturn(true);
+        when(repository.findAllById(any())).thenReturn(List.of(habitLog()));
+        List<HabitLogBatchResult> results = service.logHabitCompletions(List.of(future, beforeCreation));
+
+        assertEquals(List.of("FAILED", "FAILED"), results.stream().map(HabitLogBatchResult::getStatus).toList());
+        verify(repository, never()).recordCompletion(anyString(), anyString(), any(), any(), any(), any(), anyLong());
+        verify(repository, never()).compareAndSetCompletion(any(), any(Integer.class), any());
+        // Only the creation day needs the habit log; that completion is taken out of its bucket again
+        verify(completionStore, never()).append("habit-1", "user-1", future.getCompletionTime());
+        verify(completionStore).remove("habit-1", beforeCreation.getCompletionTime());
+    }
+
+    @Test
+    void testCompletionInsertsTheHabitLogAndThenUpdatesItByVersion() {
+        when(repository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        service.testCreateHabitLog(request());
+
+        HabitLogs existing = habitLog();
+        existing.setVersion(4L);
+        when(repository.findByIdAndUserId("habit-1", "user-1")).thenReturn(Optional.of(existing));
+        service.testCreateHabitLog(request());
+
+        ArgumentCaptor<HabitLogs> saved = ArgumentCaptor.forClass(HabitLogs.class);
+        verify(repository, times(2)).save(saved.capture());
+        // The first save inserts a new habit log; the second updates the stored one under its version
+        assertNull(saved.getAllValues().get(0).getVersion());
+        assertEquals(1, saved.getAllValues().get(0).getTotalCompletions());
+        assertSame(existing, saved.getAllValues().get(1));
+        assertEquals(4L, existing.getVersion());
+        assertEquals(2, existing.getTotalCompletions());
+    }
+
+    @Test
+    void batchCompletionsOfAHabitWhoseFallbacksAllFailAreNotPublished() {
+        when(userValidation.validateUser("user-1")).thenReturn(true);
+        when(repository.findAllById(any())).thenReturn(List.of(habitLog()));
+        // The bulk write lost to a concurrent change, and the one-by-one fallback cannot reach MongoDB
+        when(repository.bulkWriteCompletions(any(), any())).thenReturn(Set.of("habit-1"));
+        when(repository.findCompletionDays("habit-1")).thenThrow(new RuntimeException("MongoDB unavailable"));
+
+        List<HabitLogBatchResult> results = service.logHabitCompletions(List.of(request(), request()));
+
+        assertEquals(List.of("FAILED", "FAILED"), results.stream().map(HabitLogBatchResult::getStatus).toList());
+        verify(leaderboard, never()).update(any());
+        verify(streamService, never()).publish(anyString(), any());
+        verify(activityJournal, never()).record(any());
+    }
+
+    private HabitLoggingService service() {
+        CompletionPrefetcher prefetcher = mock(CompletionPrefetcher.class);
+        when(prefetcher.deadline()).thenReturn(Duration.ofSeconds(30));
+        when(prefetcher.prefetch(any())).thenReturn(Mono.just(new CompletionPrefetcher.Prefetched(true, null)));
+        return new HabitLoggingService(repository, userValidation, mock(WebClient.class),
+                mock(HabitMetadataReplica.class), completionStore, streamService, mock(AnalyticsCache.class), prefetcher,
+                idempotencyStore, leaderboard, activityJournal, new HabitLocks(1024));
+    }
+
+    private static HabitLogRequest request() {
+        HabitLogRequest request = new HabitLogRequest();
+        request.setHabitId("habit-1");
+        request.setUserId("user-1");
+        request.setCompletionTime(COMPLETED_AT);
+        return request;
+    }
+
+    /**
+     * Habit log completed three days ago, as the atomic update or a bitmap read returns it
+     */
+    private static HabitLogs habitLog() {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId("habit-1");
+        habitLog.setUserId("user-1");
+        habitLog.setTitle("Read");
+        habitLog.setStatus(HabitStatus.ACTIVE);
+        habitLog.setTotalCompletions(1);
+        habitLog.setCreatedAt(COMPLETED_AT.minusDays(30));
+        habitLog.setLastCompletionDay(LocalDate.now().minusDays(3).toEpochDay());
+        CompletionBitmap.build(habitLog, List.of(COMPLETED_AT.minusDays(3)));
+        return habitLog;
+    }
+}
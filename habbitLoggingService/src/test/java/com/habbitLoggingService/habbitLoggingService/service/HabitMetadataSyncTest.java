@@ -0,0 +1,97 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitActivityResponse;
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventType;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HabitMetadataSyncTest {
+
+    private static final LocalDateTime CHANGED_AT = LocalDateTime.of(2025, 6, 1, 8, 0);
+
+    private final HabitMetadataReplica replica = mock(HabitMetadataReplica.class);
+    private final HabitActivityClient activityClient = mock(HabitActivityClient.class);
+    private final HabitLoggingService habitLoggingService = mock(HabitLoggingService.class);
+    private final HabitMetadataSync sync = new HabitMetadataSync(replica, activityClient, habitLoggingService, 2, 60, 1000);
+
+    @Test
+    void changedHabitIsCopiedAndWrittenToItsLog() {
+        HabitActivityResponse habit = habit("habit-1");
+        when(activityClient.fetchCurrentHabit("habit-1")).thenReturn(Mono.just(habit));
+        when(replica.apply(habit)).thenReturn(true);
+
+        sync.onHabitChanged(HabitEvent.of(HabitEventType.UPDATED, "habit-1", "user-1", CHANGED_AT));
+
+        verify(habitLoggingService).applyHabitDetails(habit);
+    }
+
+    @Test
+    void olderCopyThanTheReplicaIsNotWrittenToTheLog() {
+        HabitActivityResponse habit = habit("habit-1");
+        when(activityClient.fetchCurrentHabit("habit-1")).thenReturn(Mono.just(habit));
+        when(replica.apply(habit)).thenReturn(false);
+
+        sync.onHabitChanged(HabitEvent.of(HabitEventType.UPDATED, "habit-1", "user-1", CHANGED_AT));
+
+        verify(habitLoggingService, never()).applyHabitDetails(any());
+    }
+
+    @Test
+    void habitGoneFromTheActivityServiceIsMarkedDeleted() {
+        when(activityClient.fetchCurrentHabit("habit-1")).thenReturn(Mono.empty());
+
+        sync.onHabitChanged(HabitEvent.of(HabitEventType.UPDATED, "habit-1", "user-1", CHANGED_AT));
+
+        verify(replica).markDeleted("habit-1", "user-1", CHANGED_AT);
+        verify(replica, never()).apply(any());
+    }
+
+    @Test
+    void unreachableActivityServiceFailsTheEventSoItIsRetried() {
+        when(activityClient.fetchCurrentHabit("habit-1")).thenReturn(Mono.error(
+                WebClientResponseException.create(503, "Service Unavailable", null, null, null)));
+
+        assertThrows(WebClientResponseException.class,
+                () -> sync.onHabitChanged(HabitEvent.of(HabitEventType.CREATED, "habit-1", "user-1", CHANGED_AT)));
+        verify(replica, never()).markDeleted(any(), any(), any());
+    }
+
+    @Test
+    void syncPagesThroughAllHabitsAndWritesOnlyChangedOnes() {
+        HabitActivityResponse first = habit("habit-1");
+        HabitActivityResponse second = habit("habit-2");
+        HabitActivityResponse third = habit("habit-3");
+        when(activityClient.fetchHabitsAfter(null, 2)).thenReturn(Mono.just(List.of(first, second)));
+        when(activityClient.fetchHabitsAfter("habit-2", 2)).thenReturn(Mono.just(List.of(third)));
+        when(replica.applyAll(List.of(first, second))).thenReturn(List.of(second));
+        when(replica.applyAll(List.of(third))).thenReturn(List.of());
+
+        assertEquals(1, sync.sync());
+
+        verify(habitLoggingService).applyHabitDetails(second);
+        verify(habitLoggingService, never()).applyHabitDetails(first);
+        assertEquals(3, sync.stats().getLastSyncHabits());
+    }
+
+    private static HabitActivityResponse habit(String id) {
+        return HabitActivityResponse.builder()
+                .id(id)
+                .userId("user-1")
+                .title("Read")
+                .updatedAt(CHANGED_AT)
+                .build();
+    }
+}
@@ -0,0 +1,71 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks the arithmetic schedule against counting the days one by one.
+ */
+class HabitScheduleTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 25); // Wednesday
+
+    @Test
+    void weekdayCountsMatchDayByDayCount() {
+        HabitSchedule schedule = HabitSchedule.of("weekly", List.of("MONDAY", "Wednesday", "Fri"), 0);
+        Set<DayOfWeek> scheduled = Set.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.FRIDAY);
+
+        for (int start = 0; start < 14; start++) {
+            for (int length = 1; length < 60; length++) {
+                LocalDate from = TODAY.plusDays(start);
+                LocalDate to = from.plusDays(length - 1);
+                long expected = from.datesUntil(to.plusDays(1))
+                        .filter(day -> scheduled.contains(day.getDayOfWeek()))
+                        .count();
+                assertEquals(expected, schedule.expectedBetween(from, to), from + " to " + to);
+            }
+        }
+    }
+
+    @Test
+    void frequenciesAreParsed() {
+        LocalDate monday = LocalDate.of(2025, 6, 23);
+        LocalDate sunday = LocalDate.of(2025, 6, 29);
+
+        assertEquals(7, HabitSchedule.of("daily", null, 0).expectedBetween(monday, sunday));
+        assertEquals(7, HabitSchedule.of(null, List.of(), 0).expectedBetween(monday, sunday));
+        assertEquals(5, HabitSchedule.of("weekdays", null, 0).expectedBetween(monday, sunday));
+        assertEquals(3, HabitSchedule.of("3 times per week", null, 0).expectedBetween(monday, sunday));
+        assertEquals(2, HabitSchedule.of("WEEKLY", null, 2).expectedBetween(monday, sunday));
+        assertEquals(8, HabitSchedule.of("2x a week", null, 0).expectedBetween(monday, monday.plusWeeks(4).minusDays(1)));
+    }
+
+    @Test
+    void compiledSchedulesAreShared() {
+        assertSame(HabitSchedule.of("Daily ", null, 0), HabitSchedule.of("daily", null, 0));
+    }
+
+    @Test
+    void nextExpectedFollowsTheSchedule() {
+        HabitSchedule daily = HabitSchedule.of("daily", null, 0);
+        assertEquals(TODAY, daily.nextExpected(TODAY, false, (from, to) -> 0));
+        assertEquals(TODAY.plusDays(1), daily.nextExpected(TODAY, true, (from, to) -> 1));
+
+        HabitSchedule mondays = HabitSchedule.of("weekly", List.of("MONDAY"), 0);
+        assertEquals(LocalDate.of(2025, 6, 30), mondays.nextExpected(TODAY, false, (from, to) -> 0));
+
+        HabitSchedule twiceAWeek = HabitSchedule.of("2 times per week", null, 0);
+        assertEquals(TODAY, twiceAWeek.nextExpected(TODAY, false, (from, to) -> 1));
+        assertEquals(LocalDate.of(2025, 6, 30), twiceAWeek.nextExpected(TODAY, true, (from, to) -> 2));
+
+        HabitSchedule monthly = HabitSchedule.of("monthly", null, 1);
+        assertEquals(LocalDate.of(2025, 7, 1), monthly.nextExpected(TODAY, false, (from, to) -> 1));
+    }
+}
@@ -0,0 +1,174 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitStreakUpdate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HabitStreamServiceTest {
+
+    private final HabitStreamService streamService = new HabitStreamService(3, 2, 30, 3600, 1, 200);
+
+    @AfterEach
+    void tearDown() {
+        streamService.shutdown();
+    }
+
+    @Test
+    void deltasReachOnlyTheUsersStreams() throws Exception {
+        RecordingEmitter first = new RecordingEmitter(1);
+        RecordingEmitter other = new RecordingEmitter(1);
+        streamService.register("user-1", first);
+        streamService.register("user-2", other);
+
+        streamService.publish("user-1", new HabitStreakUpdate("habit-1", 3, 5, 10));
+
+        assertTrue(first.await());
+        assertEquals(1, first.sent.size());
+        assertTrue(other.sent.isEmpty());
+    }
+
+    @Test
+    void subscribersAreCappedPerUserAndPerNode() {
+        streamService.register("user-1", new RecordingEmitter(0));
+        streamService.register("user-1", new RecordingEmitter(0));
+        assertThrows(IllegalStateException.class, () -> streamService.register("user-1", new RecordingEmitter(0)));
+
+        streamService.register("user-2", new RecordingEmitter(0));
+        assertThrows(IllegalStateException.class, () -> streamService.register("user-3", new RecordingEmitter(0)));
+        assertEquals(3, streamService.subscriberCount());
+    }
+
+    @Test
+    void brokenStreamIsDropped() throws Exception {
+        RecordingEmitter broken = new RecordingEmitter(1);
+        broken.fail = true;
+        streamService.register("user-1", broken);
+
+        streamService.publish("user-1", new HabitStreakUpdate("habit-1", 1, 1, 1));
+
+        assertTrue(broken.await());
+        for (int i = 0; i < 50 && streamService.subscriberCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, streamService.subscriberCount());
+    }
+
+    @Test
+    void subscriberWhoseWriteBlocksIsDroppedAndOthersKeepReceiving() throws Exception {
+        // One sender thread, so the blocked write holds the whole pool until the subscriber is dropped
+        BlockingEmitter slow = new BlockingEmitter();
+        RecordingEmitter healthy = new RecordingEmitter(1);
+        streamService.register("user-1", slow);
+        streamService.register("user-2", healthy);
+
+        streamService.publish("user-1", new HabitStreakUpdate("habit-1", 1, 1, 1));
+        assertTrue(slow.writing.await(5, TimeUnit.SECONDS));
+        streamService.publish("user-2", new HabitStreakUpdate("habit-2", 2, 2, 2));
+
+        assertTrue(healthy.await());
+        assertEquals(1, streamService.subscriberCount());
+        // Further deltas for the dropped stream are not queued behind the blocked write
+        streamService.publish("user-1", new HabitStreakUpdate("habit-1", 2, 2, 2));
+
+        slow.release.countDown();
+        assertTrue(slow.failed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, slow.sends.get());
+    }
+
+    @Test
+    void heartbeatsReachHealthyStreamsWhileAnotherWriteBlocks() throws Exception {
+        HabitStreamService service = new HabitStreamService(3, 2, 30, 1, 1, 200);
+        try {
+            BlockingEmitter slow = new BlockingEmitter();
+            RecordingEmitter healthy = new RecordingEmitter(2);
+            service.register("user-1", slow);
+            service.register("user-2", healthy);
+
+            // The slow stream holds the only sender; heartbeats for the healthy one still go out
+            service.publish("user-1", new HabitStreakUpdate("habit-1", 1, 1, 1));
+            assertTrue(slow.writing.await(5, TimeUnit.SECONDS));
+
+            assertTrue(healthy.await());
+            assertEquals(1, service.subscriberCount());
+            slow.release.countDown();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * Emitter whose first write blocks, ignoring interrupts, until released, like a client that
+     * stopped reading
+     */
+    private static class BlockingEmitter extends SseEmitter {
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch failed = new CountDownLatch(1);
+        private final AtomicInteger sends = new AtomicInteger();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            sends.incrementAndGet();
+            writing.countDown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            failed.countDown();
+        }
+    }
+
+    /**
+     * Emitter recording the events it was asked to send
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<Set<DataWithMediaType>> sent = new CopyOnWriteArrayList<>();
+        private final CountDownLatch latch;
+        private volatile boolean fail;
+
+        private RecordingEmitter(int expectedSends) {
+            this.latch = new CountDownLatch(expectedSends);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                if (fail) {
+                    throw new IOException("Broken pipe");
+                }
+                sent.add(builder.build());
+            } finally {
+                latch.countDown();
+            }
+        }
+
+        private boolean await() throws InterruptedException {
+            return latch.await(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.model.ProcessedCompletion;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the idempotency key claims against a real MongoDB
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class IdempotencyStoreTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    private static MongoClient client;
+    private static com.mongodb.reactivestreams.client.MongoClient reactiveClient;
+    private static MongoTemplate mongoTemplate;
+    private static ReactiveMongoTemplate reactiveMongoTemplate;
+    private final HabitLogRequest request = new HabitLogRequest();
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(mongo.getReplicaSetUrl());
+        reactiveClient = com.mongodb.reactivestreams.client.MongoClients.create(mongo.getReplicaSetUrl());
+        mongoTemplate = new MongoTemplate(client, "habit-logs-test");
+        reactiveMongoTemplate = new ReactiveMongoTemplate(reactiveClient, "habit-logs-test");
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+        reactiveClient.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(ProcessedCompletion.class);
+        request.setUserId("user-1");
+        request.setHabitId("habit-1");
+    }
+
+    @Test
+    void secondClaimOfAKeyIsRejected() {
+        IdempotencyStore store = store();
+        String key = IdempotencyStore.restKey("user-1", "retry-1");
+
+        assertTrue(store.claim(key, request));
+        assertFalse(store.claim(key, request));
+        assertFalse(store.claimReactive(key, request).block());
+    }
+
+    @Test
+    void keyClaimedOnAnotherNodeIsRejected() {
+        String key = IdempotencyStore.eventKey("message-1");
+
+        assertTrue(store().claim(key, request));
+        // A fresh store has nothing in memory and relies on the unique _id
+        assertFalse(store().claim(key, request));
+        assertFalse(store().claimReactive(key, request).block());
+        assertEquals(1, mongoTemplate.count(new Query(), ProcessedCompletion.class));
+    }
+
+    @Test
+    void releasedKeyCanBeClaimedAgain() {
+        IdempotencyStore store = store();
+        String key = IdempotencyStore.restKey("user-1", "retry-2");
+
+        assertTrue(store.claimReactive(key, request).block());
+        store.releaseReactive(key).block();
+
+        assertTrue(store.claim(key, request));
+    }
+
+    @Test
+    void bulkClaimSkipsKeysUsedBefore() {
+        String used = IdempotencyStore.eventKey("message-2");
+        String fresh = IdempotencyStore.eventKey("message-3");
+        assertTrue(store().claim(used, request));
+
+        IdempotencyStore store = store();
+        Map<String, HabitLogRequest> batch = new LinkedHashMap<>();
+        batch.put(used, request);
+        batch.put(fresh, request);
+        assertEquals(Set.of(fresh), store.claimAll(batch));
+        assertEquals(Set.of(), store.claimAll(batch));
+
+        store.releaseAll(List.of(fresh));
+        assertEquals(Set.of(fresh), store().claimAll(batch));
+    }
+
+    @Test
+    void keyClaimedButNotAppliedIsRejectedWhileItsRequestMayStillRun() {
+        String key = IdempotencyStore.restKey("user-1", "retry-3");
+        assertTrue(store().claim(key, request));
+
+        assertFalse(store().claim(key, request));
+        assertFalse(store().claimReactive(key, request).block());
+    }
+
+    @Test
+    void abandonedClaimIsTakenOverByOneRetry() throws InterruptedException {
+        String key = IdempotencyStore.eventKey("message-4");
+        assertTrue(store().claim(key, request));
+        // The claiming node died before the completion was written
+        Thread.sleep(20);
+
+        IdempotencyStore retry = store(10);
+        assertTrue(retry.claim(key, request));
+        assertFalse(store().claimReactive(key, request).block());
+
+        retry.markApplied(key);
+        Thread.sleep(20);
+        assertFalse(store(10).claim(key, request));
+        assertFalse(store(10).claimReactive(key, request).block());
+        assertEquals(Set.of(), store(10).claimAll(Map.of(key, request)));
+        assertEquals(ProcessedCompletion.State.APPLIED, mongoTemplate.findById(key, ProcessedCompletion.class).getState());
+    }
+
+    @Test
+    void abandonedClaimIsTakenOverReactivelyAndInABatch() throws InterruptedException {
+        String single = IdempotencyStore.restKey("user-1", "retry-4");
+        String batched = IdempotencyStore.eventKey("message-5");
+        assertTrue(store().claim(single, request));
+        assertTrue(store().claim(batched, request));
+        Thread.sleep(20);
+
+        assertTrue(store(10).claimReactive(single, request).block());
+        assertEquals(Set.of(batched), store(10).claimAll(Map.of(batched, request)));
+    }
+
+    @Test
+    void keyStoredWithoutAStateCountsAsApplied() {
+        String key = IdempotencyStore.eventKey("message-6");
+        mongoTemplate.insert(new ProcessedCompletion(key, "habit-1", "user-1", null, LocalDateTime.now().minusHours(1)));
+
+        assertFalse(store(10).claim(key, request));
+    }
+
+    private static IdempotencyStore store() {
+        return store(60_000);
+    }
+
+    private static IdempotencyStore store(long claimTimeoutMillis) {
+        return new IdempotencyStore(mongoTemplate, reactiveMongoTemplate, 1000, 24, claimTimeoutMillis);
+    }
+}
@@ -0,0 +1,73 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.ColdCompletionHistory;
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedCompletionsTest {
+
+    @Test
+    void decodesToTheSortedCompletions() {
+        List<LocalDateTime> completions = List.of(
+                LocalDateTime.of(2024, 3, 2, 7, 30, 15, 123_000_000),
+                LocalDateTime.of(1969, 12, 31, 23, 59),
+                LocalDateTime.of(2024, 3, 1, 21, 0),
+                LocalDateTime.of(2024, 3, 1, 21, 0));
+
+        assertEquals(completions.stream().sorted().toList(), PackedCompletions.decode(PackedCompletions.encode(completions)));
+        assertTrue(PackedCompletions.decode(PackedCompletions.encode(List.of())).isEmpty());
+    }
+
+    @Test
+    void dailyCompletionsTakeAboutFourBytes() {
+        List<LocalDateTime> completions = new ArrayList<>();
+        LocalDateTime first = LocalDate.of(2024, 1, 1).atTime(7, 0);
+        for (int day = 0; day < 366; day++) {
+            completions.add(first.plusDays(day).plusMinutes(day % 90));
+        }
+
+        // The first value is a full timestamp
+        assertTrue(PackedCompletions.encode(completions).length <= 8 + 365 * 4);
+    }
+
+    @Test
+    void monthsInBothTiersAreMergedWithoutRepeats() {
+        LocalDateTime january = LocalDateTime.of(2024, 1, 5, 8, 0);
+        LocalDateTime february = LocalDateTime.of(2024, 2, 5, 8, 0);
+        LocalDateTime lateFebruary = LocalDateTime.of(2024, 2, 20, 8, 0);
+        List<ColdCompletionHistory> cold = List.of(
+                cold("2024-01", List.of(january)),
+                cold("2024-02", List.of(february)));
+        List<HabitCompletionBucket> hot = List.of(
+                new HabitCompletionBucket("habit-1:2024-02", "habit-1", "user-1", "2024-02", List.of(february, lateFebruary), 2, false),
+                new HabitCompletionBucket("habit-1:2024-03", "habit-1", "user-1", "2024-03", List.of(february.plusMonths(1)), 1, false));
+
+        assertEquals(List.of(january, february, lateFebruary, february.plusMonths(1)),
+                CompletionBucketStore.merge(null, cold, hot));
+    }
+
+    @Test
+    void coldTierIsOnlyReadForMonthsBeforeColdBefore() {
+        HabitLogs habitLog = new HabitLogs();
+        assertFalse(CompletionBucketStore.reachesColdTier(habitLog, "2020-01"));
+
+        habitLog.setColdBefore("2024-02");
+        assertTrue(CompletionBucketStore.reachesColdTier(habitLog, "2024-01"));
+        assertFalse(CompletionBucketStore.reachesColdTier(habitLog, "2024-02"));
+    }
+
+    private static ColdCompletionHistory cold(String month, List<LocalDateTime> completions) {
+        return new ColdCompletionHistory("habit-1:" + month, "habit-1", "user-1", month, completions.size(),
+                PackedCompletions.encode(completions));
+    }
+}
@@ -0,0 +1,50 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RankedIndexTest {
+
+    @Test
+    void matchesASortedSetUnderRandomChanges() {
+        Random random = new Random(42);
+        RankedIndex<Integer> index = new RankedIndex<>(Comparator.reverseOrder());
+        TreeSet<Integer> reference = new TreeSet<>(Comparator.reverseOrder());
+
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(value), index.remove(value));
+            } else if (reference.add(value)) {
+                index.add(value);
+            }
+
+            int probe = random.nextInt(2_000);
+            assertEquals(reference.headSet(probe).size(), index.countBefore(probe));
+        }
+
+        assertEquals(reference.size(), index.size());
+        assertEquals(new ArrayList<>(reference).subList(0, 100), index.head(100));
+    }
+
+    @Test
+    void headIsShortWhenTheIndexIsSmall() {
+        RankedIndex<Integer> index = new RankedIndex<>(Comparator.naturalOrder());
+        index.add(3);
+        index.add(1);
+
+        assertEquals(List.of(1, 3), index.head(10));
+        assertFalse(index.remove(2));
+        assertTrue(index.remove(1));
+        assertEquals(List.of(3), index.head(10));
+    }
+}
@@ -0,0 +1,177 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogRequest;
+import com.habbitLoggingService.habbitLoggingService.dto.HabitLogResponse;
+import com.habbitLoggingService.habbitLoggingService.model.HabitCompletionBucket;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.repository.ReactiveHabitLoggingRepository;
+import com.mongodb.client.result.UpdateResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The non-blocking completion and analytics paths: idempotency keys, the completion deadline,
+ * the legacy migration off the event loop and reads through the analytics cache
+ */
+class ReactiveHabitLoggingServiceTest {
+
+    private static final LocalDateTime COMPLETED_AT = LocalDate.now().atTime(8, 0);
+
+    private final ReactiveHabitLoggingRepository repository = mock(ReactiveHabitLoggingRepository.class);
+    private final ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+    private final CompletionBucketStore completionStore = mock(CompletionBucketStore.class);
+    private final CompletionPrefetcher prefetcher = mock(CompletionPrefetcher.class);
+    private final IdempotencyStore idempotencyStore = mock(IdempotencyStore.class);
+    private final AnalyticsCache analyticsCache = new AnalyticsCache(100, 60);
+    private final ReactiveHabitLoggingService service = new ReactiveHabitLoggingService(repository, reactiveMongoTemplate,
+            mock(UserValidationService.class), mock(HabitMetadataReplica.class), completionStore, analyticsCache,
+            mock(HabitStreamService.class), prefetcher, idempotencyStore, mock(StreakLeaderboard.class), mock(ActivityJournal.class));
+
+    @BeforeEach
+    void setUp() {
+        when(prefetcher.deadline()).thenReturn(Duration.ofSeconds(5));
+        when(prefetcher.prefetch(any())).thenReturn(Mono.just(new CompletionPrefetcher.Prefetched(true, null)));
+        when(reactiveMongoTemplate.upsert(any(Query.class), any(UpdateDefinition.class), eq(HabitCompletionBucket.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        when(reactiveMongoTemplate.find(any(Query.class), eq(HabitCompletionBucket.class))).thenReturn(Flux.empty());
+        when(idempotencyStore.releaseReactive(anyString())).thenReturn(Mono.empty());
+        when(idempotencyStore.markAppliedReactive(anyString())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void usedKeyFailsAsADuplicateWithoutWriting() {
+        when(idempotencyStore.claimReactive(eq("rest:user-1:retry-1"), any())).thenReturn(Mono.just(false));
+
+        assertThrows(DuplicateCompletionException.class,
+                () -> service.logHabitCompletion(request(), "rest:user-1:retry-1").block());
+        verify(prefetcher, never()).prefetch(any());
+        verify(reactiveMongoTemplate, never()).upsert(any(Query.class), any(UpdateDefinition.class), eq(HabitCompletionBucket.class));
+    }
+
+    @Test
+    void claimedKeyIsMarkedAppliedAfterTheWriteAndReleasedWhenItFails() {
+        when(idempotencyStore.claimReactive(anyString(), any())).thenReturn(Mono.just(true));
+        when(repository.findCompletionDays("habit-1")).thenReturn(Mono.just(habitLog()));
+        when(repository.recordCompletion(anyString(), anyString(), any(), any(), any(), any(), any(Long.class)))
+                .thenReturn(Mono.just(habitLog()));
+
+        service.logHabitCompletion(request(), "rest:user-1:retry-1").block();
+        verify(idempotencyStore).markAppliedReactive("rest:user-1:retry-1");
+
+        when(prefetcher.prefetch(any())).thenReturn(Mono.error(new RuntimeException("Invalid user: user-1")));
+        assertThrows(RuntimeException.class, () -> service.logHabitCompletion(request(), "rest:user-1:retry-2").block());
+        verify(idempotencyStore).releaseReactive("rest:user-1:retry-2");
+        verify(idempotencyStore, never()).markAppliedReactive("rest:user-1:retry-2");
+    }
+
+    @Test
+    void missedDeadlineFailsTheCompletionAndKeepsItInItsBucket() {
+        when(prefetcher.deadline()).thenReturn(Duration.ofMillis(200));
+        // The habit log read never answers; the write may still land, so the bucket entry stays
+        when(repository.findCompletionDays("habit-1")).thenReturn(Mono.never());
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> service.logHabitCompletion(request()).block());
+
+        assertEquals("Completion deadline exceeded for habit: habit-1", error.getMessage());
+        verify(completionStore, never()).remove(anyString(), any());
+    }
+
+    @Test
+    void legacyHabitLogIsMigratedOnTheBoundedElasticScheduler() {
+        HabitLogs legacy = habitLog();
+        legacy.setCompletionLog(new ArrayList<>(List.of(COMPLETED_AT.minusDays(3))));
+        legacy.setCompletionDays(null);
+        when(repository.findCompletionDays("habit-1")).thenReturn(Mono.just(legacy));
+        when(repository.findByIdAndUserId("habit-1", "user-1")).thenReturn(Mono.just(legacy));
+        AtomicReference<String> migratedOn = new AtomicReference<>();
+        doAnswer(invocation -> {
+            migratedOn.set(Thread.currentThread().getName());
+            HabitLogs habitLog = invocation.getArgument(0);
+            CompletionBitmap.build(habitLog, habitLog.getCompletionLog());
+            habitLog.setCompletionLog(null);
+            return null;
+        }).when(completionStore).prepareForCompletion(any());
+        when(repository.compareAndSetCompletion(any(), anyInt(), any()))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        HabitLogResponse response = service.logHabitCompletion(request()).block();
+
+        assertTrue(migratedOn.get().startsWith("boundedElastic"), "migrated on " + migratedOn.get());
+        assertEquals(2, response.getTotalCompletions());
+    }
+
+    @Test
+    void habitAnalyticsAreReadThroughTheCache() {
+        when(repository.findByIdAndUserId("habit-1", "user-1")).thenAnswer(invocation -> Mono.just(habitLog()));
+
+        service.getHabitAnalytics("user-1", "habit-1").block();
+        service.getHabitAnalytics("user-1", "habit-1").block();
+        verify(repository, times(1)).findByIdAndUserId("habit-1", "user-1");
+
+        analyticsCache.invalidateUser("user-1");
+        service.getHabitAnalytics("user-1", "habit-1").block();
+        verify(repository, times(2)).findByIdAndUserId("habit-1", "user-1");
+    }
+
+    @Test
+    void analyticsLoadedWhileTheUserWasInvalidatedAreNotCached() {
+        // A completion lands between the read and the cache fill
+        when(repository.findByIdAndUserId("habit-1", "user-1")).thenAnswer(invocation -> Mono.fromCallable(() -> {
+            analyticsCache.invalidateUser("user-1");
+            return habitLog();
+        }));
+
+        service.getHabitAnalytics("user-1", "habit-1").block();
+        service.getHabitAnalytics("user-1", "habit-1").block();
+
+        verify(repository, times(2)).findByIdAndUserId("habit-1", "user-1");
+    }
+
+    private static HabitLogRequest request() {
+        HabitLogRequest request = new HabitLogRequest();
+        request.setHabitId("habit-1");
+        request.setUserId("user-1");
+        request.setCompletionTime(COMPLETED_AT);
+        return request;
+    }
+
+    private static HabitLogs habitLog() {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId("habit-1");
+        habitLog.setUserId("user-1");
+        habitLog.setTitle("Read");
+        habitLog.setStatus(HabitStatus.ACTIVE);
+        habitLog.setTotalCompletions(1);
+        habitLog.setCreatedAt(COMPLETED_AT.minusDays(30));
+        habitLog.setLastCompletionDay(LocalDate.now().minusDays(3).toEpochDay());
+        CompletionBitmap.build(habitLog, List.of(COMPLETED_AT.minusDays(3)));
+        return habitLog;
+    }
+}
@@ -0,0 +1,81 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import com.habbitLoggingService.habbitLoggingService.repository.HabitLoggingRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StreakDecaySweeperTest {
+
+    private final HabitLoggingRepository repository = mock(HabitLoggingRepository.class);
+    private final StreakLeaderboard leaderboard = new StreakLeaderboard(mock(MongoTemplate.class), 10);
+    private final AnalyticsCache analyticsCache = mock(AnalyticsCache.class);
+    private final LocalDate today = LocalDate.of(2024, 3, 10);
+    private final long cutoffDay = today.minusDays(1).toEpochDay();
+
+    @Test
+    void lapsedStreaksAreResetInBoundedBatches() {
+        AtomicInteger streamed = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        Stream<HabitLogs> lapsed = IntStream.range(0, 25)
+                .mapToObj(i -> habitLog("habit-" + i, "user-" + i % 3))
+                .peek(habitLog -> streamed.incrementAndGet());
+        when(repository.streamLapsedStreaks(cutoffDay, 10)).thenReturn(lapsed);
+        when(repository.resetLapsedStreaks(anyCollection(), eq(cutoffDay)))
+                .thenAnswer(invocation -> {
+                    int size = invocation.<List<String>>getArgument(0).size();
+                    // Nothing beyond the current batch has been read from the cursor yet
+                    assertEquals(written.addAndGet(size), streamed.get());
+                    return (long) size;
+                });
+
+        long reset = new StreakDecaySweeper(repository, leaderboard, analyticsCache, 10, 30).sweep(today);
+
+        assertEquals(25, reset);
+        verify(repository, times(3)).resetLapsedStreaks(anyCollection(), eq(cutoffDay));
+        verify(analyticsCache, times(3)).invalidateUser("user-0");
+    }
+
+    @Test
+    void resetStreaksDropOffTheLeaderboardTop() {
+        leaderboard.update(habitLog("habit-1", "user-1"));
+        HabitLogs alive = habitLog("habit-2", "user-2");
+        alive.setStreak(2);
+        leaderboard.update(alive);
+        when(repository.streamLapsedStreaks(cutoffDay, 10)).thenReturn(Stream.of(habitLog("habit-1", "user-1")));
+        when(repository.resetLapsedStreaks(List.of("habit-1"), cutoffDay)).thenReturn(1L);
+
+        new StreakDecaySweeper(repository, leaderboard, analyticsCache, 10, 30).sweep(today);
+
+        assertEquals(0, leaderboard.rank("habit-1").orElseThrow().getStreak());
+        assertEquals("habit-2", leaderboard.top(null, 1).get(0).getHabitId());
+    }
+
+    private HabitLogs habitLog(String habitId, String userId) {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId(habitId);
+        habitLog.setUserId(userId);
+        habitLog.setTitle("Read");
+        habitLog.setStatus(HabitStatus.ACTIVE);
+        habitLog.setStreak(7);
+        habitLog.setLastCompletionDay(today.minusDays(3).toEpochDay());
+        habitLog.setUpdatedAt(LocalDateTime.of(2024, 3, 7, 8, 0));
+        return habitLog;
+    }
+}
@@ -0,0 +1,190 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the incremental streak engine against a full rescan of the completion days.
+ */
+class StreakEngineTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 30);
+
+    @Test
+    void inOrderCompletionsExtendTheCurrentRun() {
+        HabitLogs habitLog = new HabitLogs();
+        Set<Long> seen = new HashSet<>();
+        for (int i = 4; i >= 0; i--) {
+            complete(habitLog, seen, TODAY.minusDays(i));
+        }
+
+        assertEquals(5, habitLog.getStreak());
+        assertEquals(5, habitLog.getLongestStreak());
+    }
+
+    @Test
+    void gapStartsANewRunButKeepsTheLongest() {
+        HabitLogs habitLog = new HabitLogs();
+        Set<Long> seen = new HashSet<>();
+        complete(habitLog, seen, TODAY.minusDays(10));
+        complete(habitLog, seen, TODAY.minusDays(9));
+        complete(habitLog, seen, TODAY.minusDays(8));
+        complete(habitLog, seen, TODAY);
+
+        assertEquals(1, habitLog.getStreak());
+        assertEquals(3, habitLog.getLongestStreak());
+    }
+
+    @Test
+    void lateCompletionBridgesTwoRuns() {
+        HabitLogs habitLog = new HabitLogs();
+        Set<Long> seen = new HashSet<>();
+        complete(habitLog, seen, TODAY.minusDays(4));
+        complete(habitLog, seen, TODAY.minusDays(3));
+        complete(habitLog, seen, TODAY.minusDays(1));
+        complete(habitLog, seen, TODAY);
+        assertEquals(2, habitLog.getStreak());
+
+        complete(habitLog, seen, TODAY.minusDays(2));
+
+        assertEquals(5, habitLog.getStreak());
+        assertEquals(5, habitLog.getLongestStreak());
+    }
+
+    @Test
+    void lapsedRunReportsNoCurrentStreak() {
+        HabitLogs habitLog = new HabitLogs();
+        Set<Long> seen = new HashSet<>();
+        complete(habitLog, seen, TODAY.minusDays(6));
+        complete(habitLog, seen, TODAY.minusDays(5));
+
+        assertEquals(0, habitLog.getStreak());
+        assertEquals(2, habitLog.getLongestStreak());
+        assertEquals(2, StreakEngine.currentStreak(habitLog, TODAY.minusDays(4)));
+    }
+
+    @Test
+    void duplicateDaysCountOnce() {
+        HabitLogs habitLog = new HabitLogs();
+        Set<Long> seen = new HashSet<>();
+        complete(habitLog, seen, TODAY.minusDays(1));
+        complete(habitLog, seen, TODAY.minusDays(1));
+        complete(habitLog, seen, TODAY);
+
+        assertEquals(2, habitLog.getStreak());
+        assertEquals(2, habitLog.getLongestStreak());
+    }
+
+    @Test
+    void incrementalMatchesReferenceForRandomHistories() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            int span = 5 + random.nextInt(120);
+            List<LocalDate> days = new ArrayList<>();
+            for (int i = 0; i < span; i++) {
+                if (random.nextInt(10) < 7) {
+                    days.add(TODAY.minusDays(i));
+                }
+                if (random.nextInt(20) == 0) {
+                    days.add(TODAY.minusDays(i));
+                }
+            }
+            // Mostly in order with a share of late arrivals
+            Collections.reverse(days);
+            for (int i = 0; i < days.size() / 5; i++) {
+                Collections.swap(days, random.nextInt(days.size()), random.nextInt(days.size()));
+            }
+
+            HabitLogs habitLog = new HabitLogs();
+            Set<Long> seen = new HashSet<>();
+            for (LocalDate day : days) {
+                complete(habitLog, seen, day);
+                int[] expected = reference(seen);
+                assertEquals(expected[0], habitLog.getStreak(), "current streak, round " + round);
+                assertEquals(expected[1], habitLog.getLongestStreak(), "longest streak, round " + round);
+            }
+        }
+    }
+
+    @Test
+    void bitmapHistoryMatchesReference() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            HabitLogs habitLog = new HabitLogs();
+            habitLog.setCreatedAt(TODAY.minusDays(60).atStartOfDay());
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i < 80; i++) {
+                // Some completions land before the creation day and move the bitmap origin
+                LocalDate day = TODAY.minusDays(random.nextInt(70));
+                StreakEngine.apply(habitLog, day, CompletionBitmap.history(habitLog), TODAY);
+                CompletionBitmap.mark(habitLog, day.toEpochDay());
+                seen.add(day.toEpochDay());
+
+                int[] expected = reference(seen);
+                assertEquals(expected[0], habitLog.getStreak());
+                assertEquals(expected[1], habitLog.getLongestStreak());
+            }
+            assertEquals(seen.size(), CompletionBitmap.countBetween(habitLog, TODAY.minusDays(70).toEpochDay(), TODAY.toEpochDay()));
+        }
+    }
+
+    @Test
+    void rebuildMatchesReference() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            HabitLogs habitLog = new HabitLogs();
+            habitLog.setCompletionLog(new ArrayList<>());
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i < 90; i++) {
+                if (random.nextBoolean()) {
+                    LocalDate day = TODAY.minusDays(random.nextInt(90));
+                    habitLog.getCompletionLog().add(day.atTime(random.nextInt(24), 0));
+                    seen.add(day.toEpochDay());
+                }
+            }
+            if (seen.isEmpty()) {
+                continue;
+            }
+
+            CompletionBitmap.build(habitLog, habitLog.getCompletionLog());
+            StreakEngine.rebuild(habitLog, TODAY);
+
+            int[] expected = reference(seen);
+            assertEquals(expected[0], habitLog.getStreak());
+            assertEquals(expected[1], habitLog.getLongestStreak());
+        }
+    }
+
+    private static void complete(HabitLogs habitLog, Set<Long> seen, LocalDate day) {
+        StreakEngine.apply(habitLog, day, seen::contains, TODAY);
+        seen.add(day.toEpochDay());
+    }
+
+    /**
+     * Full rescan over the distinct completion days: {current streak, longest streak}
+     */
+    private static int[] reference(Set<Long> completionDays) {
+        TreeSet<Long> days = new TreeSet<>(completionDays);
+        int longest = 0;
+        int run = 0;
+        Long previous = null;
+        for (long day : days) {
+            run = previous != null && day == previous + 1 ? run + 1 : 1;
+            longest = Math.max(longest, run);
+            previous = day;
+        }
+        int current = TODAY.toEpochDay() - days.last() <= 1 ? run : 0;
+        return new int[]{current, longest};
+    }
+}
@@ -0,0 +1,99 @@
+package com.habbitLoggingService.habbitLoggingService.service;
+
+import com.habbitLoggingService.habbitLoggingService.dto.LeaderboardEntry;
+import com.habbitLoggingService.habbitLoggingService.dto.StreakRank;
+import com.habbitLoggingService.habbitLoggingService.model.HabitLogs;
+import com.habbitLoggingService.habbitLoggingService.model.HabitStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StreakLeaderboardTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final StreakLeaderboard leaderboard = new StreakLeaderboard(mongoTemplate, 10);
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @Test
+    void equalStreaksShareARank() {
+        leaderboard.update(habitLog("a", "Read", 5, now));
+        leaderboard.update(habitLog("b", "Run", 9, now));
+        leaderboard.update(habitLog("c", "Read", 5, now));
+        leaderboard.update(habitLog("d", "Read", 2, now));
+
+        List<LeaderboardEntry> top = leaderboard.top(null, 10);
+
+        assertEquals(List.of("b", "a", "c", "d"), top.stream().map(LeaderboardEntry::getHabitId).toList());
+        assertEquals(List.of(1, 2, 2, 4), top.stream().map(LeaderboardEntry::getRank).toList());
+        assertEquals(4, leaderboard.rank("d").orElseThrow().getGlobalRank());
+    }
+
+    @Test
+    void titlesAreRankedSeparately() {
+        leaderboard.update(habitLog("a", "Read", 5, now));
+        leaderboard.update(habitLog("b", "Run", 9, now));
+        leaderboard.update(habitLog("c", " read ", 7, now));
+
+        StreakRank rank = leaderboard.rank("a").orElseThrow();
+
+        assertEquals(3, rank.getGlobalRank());
+        assertEquals(3, rank.getGlobalTotal());
+        assertEquals(2, rank.getTitleRank());
+        assertEquals(2, rank.getTitleTotal());
+        assertEquals(List.of("c", "a"), leaderboard.top("READ", 10).stream().map(LeaderboardEntry::getHabitId).toList());
+    }
+
+    @Test
+    void olderSnapshotDoesNotUndoACompletion() {
+        leaderboard.update(habitLog("a", "Read", 6, now));
+        leaderboard.update(habitLog("a", "Read", 5, now.minusMinutes(1)));
+
+        assertEquals(6, leaderboard.rank("a").orElseThrow().getStreak());
+        assertEquals(1, leaderboard.size());
+    }
+
+    @Test
+    void archivedHabitsAreNotRanked() {
+        leaderboard.update(habitLog("a", "Read", 6, now));
+        HabitLogs archived = habitLog("a", "Read", 6, now.plusMinutes(1));
+        archived.setStatus(HabitStatus.ARCHIVED);
+
+        leaderboard.update(archived);
+
+        assertTrue(leaderboard.rank("a").isEmpty());
+        assertTrue(leaderboard.top("Read", 10).isEmpty());
+    }
+
+    @Test
+    void refreshDropsHabitsThatNoLongerExist() {
+        leaderboard.update(habitLog("gone", "Read", 3, now.minusHours(1)));
+        when(mongoTemplate.stream(any(Query.class), eq(HabitLogs.class)))
+                .thenReturn(Stream.of(habitLog("a", "Read", 4, now.minusHours(2))));
+
+        leaderboard.refresh();
+
+        assertEquals(List.of("a"), leaderboard.top(null, 10).stream().map(LeaderboardEntry::getHabitId).toList());
+    }
+
+    private static HabitLogs habitLog(String habitId, String title, int streak, LocalDateTime updatedAt) {
+        HabitLogs habitLog = new HabitLogs();
+        habitLog.setId(habitId);
+        habitLog.setUserId("user-" + habitId);
+        habitLog.setTitle(title);
+        habitLog.setStatus(HabitStatus.ACTIVE);
+        habitLog.setStreak(streak);
+        habitLog.setUpdatedAt(updatedAt);
+        return habitLog;
+    }
+}
@@ -1,44 +1,26 @@
 package com.habbitactivityservice.config;
 
-import org.springframework.amqp.core.Binding;
-import org.springframework.amqp.core.BindingBuilder;
-import org.springframework.amqp.core.DirectExchange;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import com.habbiteventcontract.HabitEventConverter;
+import com.habbiteventcontract.HabitEvents;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+/**
+ * The activity service only publishes habit events; the queues belong to their consumers
+ */
 @Configuration
 public class RabbitMqConfig {
 
-    @Value("${rabbitmq.queue.name}")
-    private String queueName;
-
-    @Value("${rabbitmq.exchange.name}")
-    private String exchange;
-
-    @Value("${rabbitmq.routing.key}")
-    private String routingKey;
-
-    @Bean
-    public Queue activityQueue() {
-        return new Queue(queueName, true);
-    }
-
-    @Bean
-    public DirectExchange activityExchange() {
-        return new DirectExchange(exchange);
-    }
-
     @Bean
-    public Binding activityBinding(Queue activityQueue, DirectExchange activityExchange) {
-        return BindingBuilder.bind(activityQueue).to(activityExchange).with(routingKey);
+    public TopicExchange habitEventExchange() {
+        return new TopicExchange(HabitEvents.EXCHANGE);
     }
 
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter habitEventConverter(@Value("${habit-events.content-type:application/cbor}") String contentType) {
+        return new HabitEventConverter(contentType);
     }
 }
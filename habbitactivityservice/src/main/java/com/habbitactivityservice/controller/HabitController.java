@@ -26,6 +26,17 @@ public class HabitController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * All habits in ID order, one page at a time
+     * GET /api/habits?after={lastIdOfPreviousPage}&limit=500
+     */
+    @GetMapping
+    public ResponseEntity<List<HabitResponse>> getHabits(@RequestParam(required = false) String after,
+                                                         @RequestParam(defaultValue = "500") int limit) {
+        log.info("Received getHabits request after ID: {}", after);
+        return ResponseEntity.ok(habitService.getHabitsAfter(after, limit));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<HabitResponse> getHabitById(@PathVariable String id) {
         log.info("Received getHabitById request for ID: {}", id);
@@ -1,10 +1,12 @@
 package com.habbitactivityservice.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -13,6 +15,8 @@ import java.util.List;
 @Data
 @Builder
 @Document(collection = "habits")
+// Serves findByUserId and findByUserIdAndTitle; declared identically in the activity and editing services
+@CompoundIndex(name = "userId_title", def = "{'userId': 1, 'title': 1}")
 @AllArgsConstructor
 @NoArgsConstructor
 public class Habit {
@@ -29,4 +33,6 @@ public class Habit {
 
     private int streak;
     private int longestStreak;
+    @Version
+    private Long version; // Declared identically in the activity and editing services; guards concurrent edits
 }
\ No newline at end of file
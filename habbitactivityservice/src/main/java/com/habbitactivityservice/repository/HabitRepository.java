@@ -1,6 +1,7 @@
 package com.habbitactivityservice.repository;
 
 import com.habbitactivityservice.model.Habit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
@@ -9,4 +10,7 @@ import java.util.List;
 @Repository
 public interface HabitRepository extends MongoRepository<Habit, String> {
     List<Habit> findByUserId(String userId);
+
+    // Keyset page over _id, for consumers copying every habit
+    List<Habit> findByIdGreaterThanOrderByIdAsc(String id, Pageable pageable);
 }
\ No newline at end of file
@@ -4,11 +4,13 @@ import com.habbitactivityservice.dto.HabitRequest;
 import com.habbitactivityservice.dto.HabitResponse;
 import com.habbitactivityservice.model.Habit;
 import com.habbitactivityservice.repository.HabitRepository;
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventType;
+import com.habbitinfra.outbox.HabitEventOutbox;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.beans.factory.annotation.Value;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -21,13 +23,11 @@ public class HabitService {
 
     private final HabitRepository habitRepository;
     private final UserValidationService userValidationService;
-    private final RabbitTemplate rabbitTemplate;
+    private final HabitEventOutbox habitEventOutbox;
 
-    @Value("${rabbitmq.exchange.name}")
-    private String exchange;
-
-    @Value("${rabbitmq.routing.key}")
-    private String routing;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Lowest ObjectId, so the first page starts at the beginning
+    private static final String FIRST_ID = "000000000000000000000000";
 
     /**
      * Create a new habit for a registered user
@@ -53,19 +53,12 @@ public class HabitService {
         habit.setCreatedAt(LocalDateTime.now());
         habit.setUpdatedAt(LocalDateTime.now());
 
-        // 3. Save Habit
-        Habit savedHabit = habitRepository.save(habit);
+        // 3. Save Habit, with its RabbitMQ message queued in the outbox in the same transaction
+        Habit savedHabit = habitEventOutbox.writeAndPublish(() -> habitRepository.save(habit),
+                saved -> HabitEvent.of(HabitEventType.CREATED, saved.getId(), saved.getUserId(), saved.getCreatedAt()));
         log.info("Habit saved with ID: {}", savedHabit.getId());
 
-        // 4. Send message to RabbitMQ
-        try {
-            rabbitTemplate.convertAndSend(exchange, routing, savedHabit);
-            log.info("Habit sent to RabbitMQ");
-        } catch (Exception e) {
-            log.error("Error sending habit to RabbitMQ: {}", e.getMessage(), e);
-        }
-
-        // 5. Return mapped response
+        // 4. Return mapped response
         return mapResponse(savedHabit);
     }
 
@@ -82,6 +75,16 @@ public class HabitService {
         return habits.stream().map(this::mapResponse).collect(Collectors.toList());
     }
 
+    /**
+     * One page of all habits in ID order, starting after the given ID; for services that keep
+     * a copy of the habits
+     */
+    public List<HabitResponse> getHabitsAfter(String afterId, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return habitRepository.findByIdGreaterThanOrderByIdAsc(afterId != null ? afterId : FIRST_ID, PageRequest.of(0, pageSize))
+                .stream().map(this::mapResponse).collect(Collectors.toList());
+    }
+
     /**
      * Get a specific habit by ID
      */
@@ -1,44 +1,43 @@
 package com.userservicehabbit.habbitappuserservice.config;
 
+import com.habbiteventcontract.HabitEventConverter;
+import com.habbiteventcontract.HabitEventType;
+import com.habbiteventcontract.HabitEvents;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
-import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+/**
+ * The user service takes the habit.created events from the shared habit.events exchange
+ */
 @Configuration
 public class RabbitMqConfig {
 
     @Value("${rabbitmq.queue.name}")
     private String queueName;
 
-    @Value("${rabbitmq.exchange.name}")
-    private String exchange;
-
-    @Value("${rabbitmq.routing.key}")
-    private String routingKey;
-
     @Bean
     public Queue userQueue() {
         return new Queue(queueName, true);
     }
 
     @Bean
-    public DirectExchange userExchange() {
-        return new DirectExchange(exchange);
+    public TopicExchange habitEventExchange() {
+        return new TopicExchange(HabitEvents.EXCHANGE);
     }
 
     @Bean
-    public Binding userBinding(Queue userQueue, DirectExchange userExchange) {
-        return BindingBuilder.bind(userQueue).to(userExchange).with(routingKey);
+    public Binding userBinding(Queue userQueue, TopicExchange habitEventExchange) {
+        return BindingBuilder.bind(userQueue).to(habitEventExchange).with(HabitEvents.routingKey(HabitEventType.CREATED));
     }
 
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter habitEventConverter() {
+        return new HabitEventConverter();
     }
-}
\ No newline at end of file
+}
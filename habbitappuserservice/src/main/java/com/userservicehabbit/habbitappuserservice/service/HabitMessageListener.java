@@ -1,6 +1,6 @@
 package com.userservicehabbit.habbitappuserservice.service;
 
-import com.userservicehabbit.habbitappuserservice.dto.HabitDTO;
+import com.habbiteventcontract.HabitEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Service;
@@ -10,8 +10,8 @@ import org.springframework.stereotype.Service;
 public class HabitMessageListener {
 
     @RabbitListener(queues = "${rabbitmq.queue.name}")
-    public void handleHabitMessage(HabitDTO habit) {
-        log.info("Received habit message: {}", habit);
+    public void handleHabitMessage(HabitEvent event) {
+        log.info("Received habit event: {}", event);
 
     }
-}
\ No newline at end of file
+}
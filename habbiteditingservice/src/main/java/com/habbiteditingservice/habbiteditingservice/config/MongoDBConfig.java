@@ -1,9 +1,31 @@
 package com.habbiteditingservice.habbiteditingservice.config;
 
+import com.habbiteditingservice.habbiteditingservice.model.Habits;
+import com.habbitinfra.mongo.MongoIndexReconciler;
+import com.habbitinfra.outbox.HabitEventOutboxConfig;
+import com.habbitinfra.outbox.OutboxEvent;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
 
 @Configuration
 @EnableMongoAuditing
+@Import(HabitEventOutboxConfig.class)
 public class MongoDBConfig {
+
+    @Bean
+    public MongoTransactionManager transactionManager(MongoDatabaseFactory databaseFactory) {
+        return new MongoTransactionManager(databaseFactory);
+    }
+
+    @Bean
+    public MongoIndexReconciler mongoIndexReconciler(MongoTemplate mongoTemplate) {
+        return new MongoIndexReconciler(mongoTemplate, List.of(Habits.class, OutboxEvent.class));
+    }
 }
@@ -1,45 +1,26 @@
 package com.habbiteditingservice.habbiteditingservice.config;
 
-import org.springframework.amqp.core.Binding;
-import org.springframework.amqp.core.BindingBuilder;
-import org.springframework.amqp.core.DirectExchange;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import com.habbiteventcontract.HabitEventConverter;
+import com.habbiteventcontract.HabitEvents;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+/**
+ * The editing service only publishes habit events; the queues belong to their consumers
+ */
 @Configuration
 public class RabbitMqConfig {
-    @Value("${rabbitmq.queue.name}")
-    private String queueName;
-
-    @Value("${rabbitmq.exchange.name}")
-    private String exchange;
-
-    @Value("${rabbitmq.routing.key}")
-    private String routingKey;
-
-    @Bean
-    public Queue userQueue() {
-        return new Queue(queueName, true);
-    }
 
     @Bean
-    public DirectExchange userExchange() {
-        return new DirectExchange(exchange);
+    public TopicExchange habitEventExchange() {
+        return new TopicExchange(HabitEvents.EXCHANGE);
     }
 
     @Bean
-    public Binding userBinding(Queue userQueue, DirectExchange userExchange) {
-        return BindingBuilder.bind(userQueue).to(userExchange).with(routingKey);
-    }
-
-    @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter habitEventConverter(@Value("${habit-events.content-type:application/cbor}") String contentType) {
+        return new HabitEventConverter(contentType);
     }
 }
-
-
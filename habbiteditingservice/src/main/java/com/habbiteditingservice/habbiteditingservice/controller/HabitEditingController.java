@@ -6,6 +6,7 @@ import com.habbiteditingservice.habbiteditingservice.editingservice.EditHabitSer
 import com.habbiteditingservice.habbiteditingservice.editingservice.UserValidationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -32,6 +33,9 @@ public class HabitEditingController {
         try {
             HabitResponse response = editHabitService.updateHabit(id, userId, request);
             return ResponseEntity.ok(response);
+        } catch (OptimisticLockingFailureException e) {
+            log.warn("Error updating habit: {}", e.getMessage());
+            return ResponseEntity.status(409).build(); // Conflict, concurrent edits kept winning
         } catch (RuntimeException e) {
             log.error("Error updating habit: {}", e.getMessage());
             if (e.getMessage().contains("not allowed")) {
@@ -54,6 +58,9 @@ public class HabitEditingController {
         try {
             editHabitService.deleteHabit(id, userId);
             return ResponseEntity.noContent().build(); // 204 No Content
+        } catch (OptimisticLockingFailureException e) {
+            log.warn("Error deleting habit: {}", e.getMessage());
+            return ResponseEntity.status(409).build(); // Conflict, concurrent edits kept winning
         } catch (RuntimeException e) {
             log.error("Error deleting habit: {}", e.getMessage());
             if (e.getMessage().contains("not allowed")) {
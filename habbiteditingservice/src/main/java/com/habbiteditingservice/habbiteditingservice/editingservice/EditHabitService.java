@@ -4,10 +4,12 @@ import com.habbiteditingservice.habbiteditingservice.dto.HabitResponse;
 import com.habbiteditingservice.habbiteditingservice.dto.RequestHabit;
 import com.habbiteditingservice.habbiteditingservice.model.Habits;
 import com.habbiteditingservice.habbiteditingservice.repository.HabitEditingRepository;
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventType;
+import com.habbitinfra.outbox.HabitEventOutbox;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -18,14 +20,10 @@ import java.time.LocalDateTime;
 public class EditHabitService {
 
     private final HabitEditingRepository habitEditingRepository;
-    private final RabbitTemplate rabbitTemplate;
+    private final HabitEventOutbox habitEventOutbox;
     private final UserValidationService userValidationService;
 
-    @Value("${rabbitmq.exchange.name}")
-    private String exchange;
-
-    @Value("${rabbitmq.routing.key}")
-    private String routingKey;
+    private static final int MAX_UPDATE_ATTEMPTS = 5;
 
     // Update habit
     public HabitResponse updateHabit(String id, String userId, RequestHabit request) {
@@ -35,26 +33,28 @@ public class EditHabitService {
         }
 
         // Find habit by ID and userId (ownership enforced in repository)
-        Habits habit = habitEditingRepository.findByIdAndUserId(id, userId)
-                .orElseThrow(() -> new RuntimeException(
-                        "Habit not found with ID: " + id + " for user: " + userId));
-
-        // Update fields
-        habit.setTitle(request.getTitle());
-        habit.setDescription(request.getDescription());
-        habit.setFrequency(request.getFrequency());
-        habit.setDays(request.getDays());
-        habit.setUpdatedAt(LocalDateTime.now());
-
-        // Save
-        Habits savedHabit = habitEditingRepository.save(habit);
-
-        // Send message via RabbitMQ
-        try {
-            rabbitTemplate.convertAndSend(exchange, routingKey, savedHabit);
-            log.info("Habit update sent to RabbitMQ with ID: {}", savedHabit.getId());
-        } catch (Exception e) {
-            log.error("Error sending habit update to RabbitMQ: {}", e.getMessage(), e);
+        Habits habit = findOwnedHabit(id, userId);
+
+        // Update fields, guarded by the version they were read with; re-read and retry if another edit got there first
+        Habits savedHabit = null;
+        for (int attempt = 1; savedHabit == null; attempt++) {
+            habit.setTitle(request.getTitle());
+            habit.setDescription(request.getDescription());
+            habit.setFrequency(request.getFrequency());
+            habit.setDays(request.getDays());
+            habit.setUpdatedAt(LocalDateTime.now());
+
+            // The message is queued in the outbox only if the guarded update applied
+            Habits edited = habit;
+            savedHabit = habitEventOutbox.writeAndPublish(() -> habitEditingRepository.compareAndSetDetails(edited).orElse(null),
+                    saved -> HabitEvent.of(HabitEventType.UPDATED, saved.getId(), saved.getUserId(), saved.getUpdatedAt()));
+            if (savedHabit == null) {
+                if (attempt == MAX_UPDATE_ATTEMPTS) {
+                    throw new OptimisticLockingFailureException("Habit " + id + " kept changing, update not applied");
+                }
+                log.debug("Habit {} changed since it was read, retrying update (attempt {})", id, attempt);
+                habit = findOwnedHabit(id, userId);
+            }
         }
 
         return mapToResponse(savedHabit);
@@ -68,20 +68,29 @@ public class EditHabitService {
         }
 
         // Find habit by ID and userId (ownership enforced)
-        Habits habit = habitEditingRepository.findByIdAndUserId(id, userId)
+        Habits habit = findOwnedHabit(id, userId);
+
+        // Delete the version that was read, with the RabbitMQ message queued in the outbox in the same
+        // transaction; re-read and retry if an edit got there first, fail as not found if a delete did
+        for (int attempt = 1; ; attempt++) {
+            Habits read = habit;
+            Habits deleted = habitEventOutbox.writeAndPublish(() -> habitEditingRepository.compareAndDelete(read) ? read : null,
+                    saved -> HabitEvent.of(HabitEventType.DELETED, saved.getId(), saved.getUserId(), LocalDateTime.now()));
+            if (deleted != null) {
+                return;
+            }
+            if (attempt == MAX_UPDATE_ATTEMPTS) {
+                throw new OptimisticLockingFailureException("Habit " + id + " kept changing, delete not applied");
+            }
+            log.debug("Habit {} changed since it was read, retrying delete (attempt {})", id, attempt);
+            habit = findOwnedHabit(id, userId);
+        }
+    }
+
+    private Habits findOwnedHabit(String id, String userId) {
+        return habitEditingRepository.findByIdAndUserId(id, userId)
                 .orElseThrow(() -> new RuntimeException(
                         "Habit not found with ID: " + id + " for user: " + userId));
-
-        // Delete
-        habitEditingRepository.deleteById(id);
-
-        // Send message via RabbitMQ
-        try {
-            rabbitTemplate.convertAndSend(exchange, routingKey, habit);
-            log.info("Habit deletion sent to RabbitMQ with ID: {}", habit.getId());
-        } catch (Exception e) {
-            log.error("Error sending habit deletion to RabbitMQ: {}", e.getMessage(), e);
-        }
     }
 
     private HabitResponse mapToResponse(Habits habit) {
@@ -1,6 +1,8 @@
 package com.habbiteditingservice.habbiteditingservice.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -13,6 +15,8 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @Document(collection = "habits")
+// Serves findByUserId and findByUserIdAndTitle; declared identically in the activity and editing services
+@CompoundIndex(name = "userId_title", def = "{'userId': 1, 'title': 1}")
 @AllArgsConstructor
 public class Habits {
     @Id
@@ -26,4 +30,6 @@ public class Habits {
     private LocalDateTime updatedAt;
     private int streak;
     private int longestStreak;
+    @Version
+    private Long version; // Declared identically in the activity and editing services; guards concurrent edits
 }
\ No newline at end of file
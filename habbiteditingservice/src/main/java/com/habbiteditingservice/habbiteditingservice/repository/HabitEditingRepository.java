@@ -8,7 +8,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface HabitEditingRepository extends MongoRepository<Habits, String> {
+public interface HabitEditingRepository extends MongoRepository<Habits, String>, HabitEditingRepositoryCustom {
 
     // Get all habits for a user
     List<Habits> findByUserId(String userId);
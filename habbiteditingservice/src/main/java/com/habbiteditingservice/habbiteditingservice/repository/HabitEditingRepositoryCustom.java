@@ -0,0 +1,26 @@
+package com.habbiteditingservice.habbiteditingservice.repository;
+
+import com.habbiteditingservice.habbiteditingservice.model.Habits;
+
+import java.util.Optional;
+
+/**
+ * Guarded updates on habits that Spring Data cannot derive
+ */
+public interface HabitEditingRepositoryCustom {
+
+    /**
+     * Write the editable fields of the habit, only if it still has the version it was read with.
+     * Habits created before versioning have no version and match a null one.
+     *
+     * @return the updated habit, or empty when it was changed or deleted since it was read
+     */
+    Optional<Habits> compareAndSetDetails(Habits habit);
+
+    /**
+     * Delete the habit, only if it still has the version it was read with
+     *
+     * @return false when it was changed or deleted since it was read
+     */
+    boolean compareAndDelete(Habits habit);
+}
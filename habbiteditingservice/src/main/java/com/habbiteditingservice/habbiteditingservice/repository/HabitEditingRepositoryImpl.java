@@ -0,0 +1,43 @@
+package com.habbiteditingservice.habbiteditingservice.repository;
+
+import com.habbiteditingservice.habbiteditingservice.model.Habits;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Optional;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@RequiredArgsConstructor
+public class HabitEditingRepositoryImpl implements HabitEditingRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Optional<Habits> compareAndSetDetails(Habits habit) {
+        Update update = new Update()
+                .set("title", habit.getTitle())
+                .set("description", habit.getDescription())
+                .set("frequency", habit.getFrequency())
+                .set("days", habit.getDays())
+                .set("updatedAt", habit.getUpdatedAt())
+                .inc("version", 1);
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                query(where("_id").is(habit.getId())
+                        .and("userId").is(habit.getUserId())
+                        .and("version").is(habit.getVersion())),
+                update, FindAndModifyOptions.options().returnNew(true), Habits.class));
+    }
+
+    @Override
+    public boolean compareAndDelete(Habits habit) {
+        return mongoTemplate.remove(
+                query(where("_id").is(habit.getId())
+                        .and("userId").is(habit.getUserId())
+                        .and("version").is(habit.getVersion())),
+                Habits.class).getDeletedCount() > 0;
+    }
+}
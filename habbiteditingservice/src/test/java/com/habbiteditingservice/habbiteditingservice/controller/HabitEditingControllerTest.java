@@ -0,0 +1,55 @@
+package com.habbiteditingservice.habbiteditingservice.controller;
+
+import com.habbiteditingservice.habbiteditingservice.dto.RequestHabit;
+import com.habbiteditingservice.habbiteditingservice.editingservice.EditHabitService;
+import com.habbiteditingservice.habbiteditingservice.editingservice.UserValidationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Status codes for edits and deletes that lost to concurrent writes
+ */
+class HabitEditingControllerTest {
+
+    private final EditHabitService editHabitService = mock(EditHabitService.class);
+    private final UserValidationService userValidation = mock(UserValidationService.class);
+    private final HabitEditingController controller = new HabitEditingController(editHabitService, userValidation);
+
+    @BeforeEach
+    void setUp() {
+        when(userValidation.validateUser("user-1")).thenReturn(true);
+    }
+
+    @Test
+    void editThatKeepsLosingAnswersConflict() {
+        when(editHabitService.updateHabit(any(), any(), any()))
+                .thenThrow(new OptimisticLockingFailureException("Habit habit-1 kept changing, update not applied"));
+
+        assertEquals(409, controller.updateHabit("habit-1", "user-1", new RequestHabit()).getStatusCode().value());
+    }
+
+    @Test
+    void deleteThatKeepsLosingAnswersConflict() {
+        doThrow(new OptimisticLockingFailureException("Habit habit-1 kept changing, delete not applied"))
+                .when(editHabitService).deleteHabit("habit-1", "user-1");
+
+        assertEquals(409, controller.deleteHabit("habit-1", "user-1").getStatusCode().value());
+    }
+
+    @Test
+    void editOrDeleteOfAMissingHabitAnswersNotFound() {
+        RuntimeException notFound = new RuntimeException("Habit not found with ID: habit-1 for user: user-1");
+        when(editHabitService.updateHabit(any(), any(), any())).thenThrow(notFound);
+        doThrow(notFound).when(editHabitService).deleteHabit("habit-1", "user-1");
+
+        assertEquals(404, controller.updateHabit("habit-1", "user-1", new RequestHabit()).getStatusCode().value());
+        assertEquals(404, controller.deleteHabit("habit-1", "user-1").getStatusCode().value());
+    }
+}
@@ -0,0 +1,139 @@
+package com.habbiteditingservice.habbiteditingservice.editingservice;
+
+import com.habbiteditingservice.habbiteditingservice.dto.HabitResponse;
+import com.habbiteditingservice.habbiteditingservice.dto.RequestHabit;
+import com.habbiteditingservice.habbiteditingservice.model.Habits;
+import com.habbiteditingservice.habbiteditingservice.repository.HabitEditingRepository;
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventType;
+import com.habbitinfra.outbox.HabitEventOutbox;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Edits and deletes guarded by the habit's version: a lost guard re-reads and retries, and only
+ * an applied write queues its event
+ */
+class EditHabitServiceTest {
+
+    private final HabitEditingRepository repository = mock(HabitEditingRepository.class);
+    private final HabitEventOutbox outbox = mock(HabitEventOutbox.class);
+    private final UserValidationService userValidation = mock(UserValidationService.class);
+    private final List<HabitEvent> published = new ArrayList<>();
+    private final EditHabitService service = new EditHabitService(repository, outbox, userValidation);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(userValidation.validateUser("user-1")).thenReturn(true);
+        // Like the outbox: an event is queued only for a write that returned something
+        when(outbox.writeAndPublish(any(), any())).thenAnswer(invocation -> {
+            Object written = ((Supplier<Object>) invocation.getArgument(0)).get();
+            if (written != null) {
+                published.add(((Function<Object, HabitEvent>) invocation.getArgument(1)).apply(written));
+            }
+            return written;
+        });
+    }
+
+    @Test
+    void updateRetriesWithTheVersionItReadAgainAfterLosingToAnotherEdit() {
+        when(repository.findByIdAndUserId("habit-1", "user-1"))
+                .thenReturn(Optional.of(habit(3L)), Optional.of(habit(4L)));
+        when(repository.compareAndSetDetails(any())).thenAnswer(invocation -> {
+            Habits habit = invocation.getArgument(0);
+            if (habit.getVersion() == 3L) {
+                return Optional.empty();
+            }
+            habit.setVersion(habit.getVersion() + 1);
+            return Optional.of(habit);
+        });
+
+        HabitResponse response = service.updateHabit("habit-1", "user-1", edit("Read 20 pages"));
+
+        assertEquals("Read 20 pages", response.getTitle());
+        verify(repository, times(2)).compareAndSetDetails(any());
+        assertEquals(List.of(HabitEventType.UPDATED), published.stream().map(HabitEvent::type).toList());
+    }
+
+    @Test
+    void updateThatKeepsLosingFailsAsAConflictWithoutAnEvent() {
+        when(repository.findByIdAndUserId("habit-1", "user-1")).thenAnswer(invocation -> Optional.of(habit(3L)));
+        when(repository.compareAndSetDetails(any())).thenReturn(Optional.empty());
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> service.updateHabit("habit-1", "user-1", edit("Read 20 pages")));
+        verify(repository, times(5)).compareAndSetDetails(any());
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    void deleteIsGuardedByTheVersionItRead() {
+        when(repository.findByIdAndUserId("habit-1", "user-1"))
+                .thenReturn(Optional.of(habit(3L)), Optional.of(habit(4L)));
+        // An edit raised the version between the read and the delete
+        when(repository.compareAndDelete(any())).thenAnswer(invocation -> ((Habits) invocation.getArgument(0)).getVersion() == 4L);
+
+        service.deleteHabit("habit-1", "user-1");
+
+        verify(repository, times(2)).compareAndDelete(any());
+        verify(repository, never()).deleteById(any());
+        assertEquals(List.of(HabitEventType.DELETED), published.stream().map(HabitEvent::type).toList());
+    }
+
+    @Test
+    void deleteOfAHabitDeletedMeanwhileFailsAsNotFoundWithoutASecondEvent() {
+        when(repository.findByIdAndUserId("habit-1", "user-1"))
+                .thenReturn(Optional.of(habit(3L)), Optional.empty());
+        when(repository.compareAndDelete(any())).thenReturn(false);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> service.deleteHabit("habit-1", "user-1"));
+        assertTrue(e.getMessage().contains("not found"));
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    void deleteThatKeepsLosingFailsAsAConflict() {
+        when(repository.findByIdAndUserId("habit-1", "user-1")).thenAnswer(invocation -> Optional.of(habit(3L)));
+        when(repository.compareAndDelete(any())).thenReturn(false);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> service.deleteHabit("habit-1", "user-1"));
+        verify(repository, times(5)).compareAndDelete(any());
+        assertTrue(published.isEmpty());
+    }
+
+    private static Habits habit(Long version) {
+        Habits habit = new Habits();
+        habit.setId("habit-1");
+        habit.setUserId("user-1");
+        habit.setTitle("Read");
+        habit.setCreatedAt(LocalDateTime.of(2026, 1, 1, 8, 0));
+        habit.setVersion(version);
+        return habit;
+    }
+
+    private static RequestHabit edit(String title) {
+        RequestHabit request = new RequestHabit();
+        request.setTitle(title);
+        request.setFrequency("daily");
+        return request;
+    }
+}
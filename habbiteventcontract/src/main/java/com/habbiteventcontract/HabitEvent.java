@@ -0,0 +1,32 @@
+package com.habbiteventcontract;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+
+import java.time.LocalDateTime;
+
+/**
+ * An event about one habit, as exchanged between the services.
+ *
+ * Only identifiers travel with the event; consumers that need the habit's details read them
+ * from the activity service. Fields may be added in later schema versions, and readers ignore
+ * fields they do not know. Messages sent before this contract read as schema version 0.
+ *
+ * @param notes only set on COMPLETED events
+ */
+public record HabitEvent(int schemaVersion,
+                         @JsonAlias("eventType") HabitEventType type,
+                         String habitId,
+                         String userId,
+                         @JsonAlias("timestamp") LocalDateTime occurredAt,
+                         String notes) {
+
+    public static final int SCHEMA_VERSION = 1;
+
+    public static HabitEvent of(HabitEventType type, String habitId, String userId, LocalDateTime occurredAt) {
+        return new HabitEvent(SCHEMA_VERSION, type, habitId, userId, occurredAt, null);
+    }
+
+    public static HabitEvent completed(String habitId, String userId, LocalDateTime occurredAt, String notes) {
+        return new HabitEvent(SCHEMA_VERSION, HabitEventType.COMPLETED, habitId, userId, occurredAt, notes);
+    }
+}
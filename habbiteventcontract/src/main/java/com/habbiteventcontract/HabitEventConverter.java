@@ -0,0 +1,86 @@
+package com.habbiteventcontract;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.io.IOException;
+
+/**
+ * Converts {@link HabitEvent}s to and from AMQP messages.
+ *
+ * Events are written as CBOR by default, or as JSON when constructed with
+ * {@link MessageProperties#CONTENT_TYPE_JSON}, e.g. to read them in the management UI. They are
+ * read in whichever of the two the message's content type names, so producers can switch
+ * without the consumers noticing.
+ */
+public class HabitEventConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE_CBOR = "application/cbor";
+
+    private static final ObjectMapper CBOR = CBORMapper.builder()
+            .addModule(new JavaTimeModule())
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+    private static final ObjectMapper JSON = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private final String contentType;
+
+    public HabitEventConverter() {
+        this(CONTENT_TYPE_CBOR);
+    }
+
+    public HabitEventConverter(String contentType) {
+        mapperFor(contentType);
+        this.contentType = contentType;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (!(object instanceof HabitEvent)) {
+            throw new MessageConversionException("Not a habit event: " + (object == null ? null : object.getClass()));
+        }
+        try {
+            byte[] body = mapperFor(contentType).writeValueAsBytes(object);
+            messageProperties.setContentType(contentType);
+            messageProperties.setContentLength(body.length);
+            messageProperties.setHeader(HabitEvents.USER_HEADER, ((HabitEvent) object).userId());
+            return new Message(body, messageProperties);
+        } catch (IOException e) {
+            throw new MessageConversionException("Could not write habit event", e);
+        }
+    }
+
+    @Override
+    public HabitEvent fromMessage(Message message) {
+        try {
+            return mapperFor(message.getMessageProperties().getContentType()).readValue(message.getBody(), HabitEvent.class);
+        } catch (IOException e) {
+            throw new MessageConversionException("Could not read habit event", e);
+        }
+    }
+
+    private static ObjectMapper mapperFor(String contentType) {
+        if (contentType != null && contentType.startsWith(CONTENT_TYPE_CBOR)) {
+            return CBOR;
+        }
+        if (contentType != null && contentType.contains("json")) {
+            return JSON;
+        }
+        throw new MessageConversionException("Unsupported habit event content type: " + contentType);
+    }
+}
@@ -0,0 +1,18 @@
+package com.habbiteventcontract;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+
+/**
+ * What happened to a habit. The aliases are the event types of the JSON messages sent before
+ * this contract, so events still queued in that form are read.
+ */
+public enum HabitEventType {
+    @JsonAlias("HABIT_CREATED")
+    CREATED,
+    @JsonAlias("HABIT_UPDATED")
+    UPDATED,
+    @JsonAlias("HABIT_DELETED")
+    DELETED,
+    @JsonAlias("HABIT_COMPLETED")
+    COMPLETED
+}
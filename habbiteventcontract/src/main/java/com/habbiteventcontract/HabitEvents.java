@@ -0,0 +1,30 @@
+package com.habbiteventcontract;
+
+import java.util.Locale;
+
+/**
+ * Where habit events are published: one topic exchange, routed by event type. Every event
+ * also carries its user id in the {@link #USER_HEADER} header, for consumers that partition
+ * by user.
+ */
+public final class HabitEvents {
+
+    public static final String EXCHANGE = "habit.events";
+
+    public static final String USER_HEADER = "habit-user-id";
+
+    /**
+     * Binding key for a queue that takes every habit event
+     */
+    public static final String ALL = "habit.#";
+
+    private HabitEvents() {
+    }
+
+    /**
+     * habit.created, habit.updated, habit.deleted or habit.completed
+     */
+    public static String routingKey(HabitEventType type) {
+        return "habit." + type.name().toLowerCase(Locale.ROOT);
+    }
+}
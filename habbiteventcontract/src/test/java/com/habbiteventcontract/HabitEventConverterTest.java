@@ -0,0 +1,74 @@
+package com.habbiteventcontract;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HabitEventConverterTest {
+
+    @Test
+    void eventsRoundTripInEitherEncoding() {
+        HabitEventConverter cbor = new HabitEventConverter();
+        HabitEventConverter json = new HabitEventConverter(MessageProperties.CONTENT_TYPE_JSON);
+
+        Message cborMessage = cbor.toMessage(SamplePayloads.completed(), new MessageProperties());
+        Message jsonMessage = json.toMessage(SamplePayloads.updated(), new MessageProperties());
+
+        assertEquals(HabitEventConverter.CONTENT_TYPE_CBOR, cborMessage.getMessageProperties().getContentType());
+        assertEquals(SamplePayloads.completed().userId(), cborMessage.getMessageProperties().getHeader(HabitEvents.USER_HEADER));
+        // Either converter reads either encoding, going by the content type
+        assertEquals(SamplePayloads.completed(), json.fromMessage(cborMessage));
+        assertEquals(SamplePayloads.updated(), cbor.fromMessage(jsonMessage));
+    }
+
+    @Test
+    void messagesSentBeforeTheContractAreRead() {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setHeader("__TypeId__", "com.example.HabitEventMessage");
+        String legacy = "{\"eventType\":\"HABIT_COMPLETED\",\"habitId\":\"habit-1\",\"userId\":\"user-1\","
+                + "\"timestamp\":\"2025-06-01T08:00:00\",\"notes\":\"done\",\"streak\":3}";
+
+        HabitEvent event = new HabitEventConverter().fromMessage(new Message(legacy.getBytes(StandardCharsets.UTF_8), properties));
+
+        assertEquals(new HabitEvent(0, HabitEventType.COMPLETED, "habit-1", "user-1",
+                LocalDateTime.of(2025, 6, 1, 8, 0), "done"), event);
+    }
+
+    @Test
+    void cborEventIsLessThanHalfTheEntityJson() {
+        int entityJson = new Jackson2JsonMessageConverter().toMessage(SamplePayloads.habitEntity(), new MessageProperties())
+                .getBody().length;
+        int cbor = new HabitEventConverter().toMessage(SamplePayloads.updated(), new MessageProperties()).getBody().length;
+
+        assertTrue(cbor * 2 <= entityJson, cbor + " bytes of CBOR against " + entityJson + " bytes of entity JSON");
+    }
+
+    @Test
+    void onlyHabitEventsAndKnownContentTypesAreConverted() {
+        HabitEventConverter converter = new HabitEventConverter();
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_BYTES);
+
+        assertThrows(MessageConversionException.class, () -> converter.toMessage("not an event", new MessageProperties()));
+        assertThrows(MessageConversionException.class, () -> converter.fromMessage(new Message(new byte[1], properties)));
+        assertThrows(MessageConversionException.class, () -> new HabitEventConverter("application/xml"));
+        assertNull(SamplePayloads.updated().notes());
+    }
+
+    @Test
+    void eventsAreRoutedByType() {
+        assertEquals("habit.completed", HabitEvents.routingKey(HabitEventType.COMPLETED));
+        assertEquals("habit.deleted", HabitEvents.routingKey(HabitEventType.DELETED));
+    }
+}
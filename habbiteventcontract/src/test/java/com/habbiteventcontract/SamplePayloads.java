@@ -0,0 +1,44 @@
+package com.habbiteventcontract;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A habit as the activity and editing services published it before the contract: the whole
+ * entity, as JSON, and the event that replaces it
+ */
+public final class SamplePayloads {
+
+    private static final String HABIT_ID = "6650f1c2a4b3e91d2c7f0a11";
+    private static final String USER_ID = "6650f0e7a4b3e91d2c7f0a02";
+    private static final LocalDateTime AT = LocalDateTime.of(2025, 6, 1, 7, 45, 12, 345_678_000);
+
+    private SamplePayloads() {
+    }
+
+    public static Map<String, Object> habitEntity() {
+        Map<String, Object> habit = new LinkedHashMap<>();
+        habit.put("id", HABIT_ID);
+        habit.put("userId", USER_ID);
+        habit.put("title", "Read 20 pages");
+        habit.put("description", "Before bed, no phone");
+        habit.put("frequency", "daily");
+        habit.put("days", List.of("MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY"));
+        habit.put("createdAt", AT.minusDays(30));
+        habit.put("updatedAt", AT);
+        habit.put("streak", 12);
+        habit.put("longestStreak", 21);
+        habit.put("version", 7L);
+        return habit;
+    }
+
+    public static HabitEvent updated() {
+        return HabitEvent.of(HabitEventType.UPDATED, HABIT_ID, USER_ID, AT);
+    }
+
+    public static HabitEvent completed() {
+        return HabitEvent.completed(HABIT_ID, USER_ID, AT, "Finished chapter 3");
+    }
+}
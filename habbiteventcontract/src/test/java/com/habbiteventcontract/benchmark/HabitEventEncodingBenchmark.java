@@ -0,0 +1,99 @@
+package com.habbiteventcontract.benchmark;
+
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventConverter;
+import com.habbiteventcontract.SamplePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a habit update: the whole entity as JSON, as published before the
+ * contract, against the contract event as JSON and as CBOR. Payload sizes are printed first.
+ *
+ * Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/test-classpath.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *     com.habbiteventcontract.benchmark.HabitEventEncodingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HabitEventEncodingBenchmark {
+
+    private final Jackson2JsonMessageConverter entityConverter = new Jackson2JsonMessageConverter();
+    private final HabitEventConverter jsonConverter = new HabitEventConverter(MessageProperties.CONTENT_TYPE_JSON);
+    private final HabitEventConverter cborConverter = new HabitEventConverter();
+    private Map<String, Object> entity;
+    private HabitEvent event;
+    private Message entityMessage;
+    private Message jsonMessage;
+    private Message cborMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        entity = SamplePayloads.habitEntity();
+        event = SamplePayloads.updated();
+        entityMessage = entityConverter.toMessage(entity, new MessageProperties());
+        jsonMessage = jsonConverter.toMessage(event, new MessageProperties());
+        cborMessage = cborConverter.toMessage(event, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message encodeEntityJson() {
+        return entityConverter.toMessage(entity, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message encodeEventJson() {
+        return jsonConverter.toMessage(event, new MessageProperties());
+    }
+
+    @Benchmark
+    public Message encodeEventCbor() {
+        return cborConverter.toMessage(event, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object decodeEntityJson() {
+        return entityConverter.fromMessage(entityMessage);
+    }
+
+    @Benchmark
+    public HabitEvent decodeEventJson() {
+        return jsonConverter.fromMessage(jsonMessage);
+    }
+
+    @Benchmark
+    public HabitEvent decodeEventCbor() {
+        return cborConverter.fromMessage(cborMessage);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        HabitEventEncodingBenchmark sizes = new HabitEventEncodingBenchmark();
+        sizes.setUp();
+        System.out.printf("Payload bytes: entity JSON %d, event JSON %d, event CBOR %d%n",
+                sizes.entityMessage.getBody().length, sizes.jsonMessage.getBody().length, sizes.cborMessage.getBody().length);
+        new Runner(new OptionsBuilder().include(HabitEventEncodingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,136 @@
+package com.habbitinfra.mongo;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.CreateCollectionOptions;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Brings the indexes of the mapped collections in line with their @CompoundIndex / @Indexed declarations.
+ *
+ * Missing indexes are created; a declared index whose keys changed is dropped and rebuilt.
+ * Indexes that are not declared are reported but left alone, since they may have been
+ * added by hand. Collections whose storage options matter are created before their indexes,
+ * which would otherwise create them with the defaults.
+ *
+ * Each service registers one as a bean with the entities it owns.
+ */
+public class MongoIndexReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexReconciler.class);
+
+    // Denser than the default snappy, for data that is written once and rarely read
+    private static final Document ZSTD = new Document("wiredTiger", new Document("configString", "block_compressor=zstd"));
+
+    private final MongoTemplate mongoTemplate;
+    private final List<Class<?>> indexedEntities;
+    private final List<Class<?>> compressedEntities;
+
+    public MongoIndexReconciler(MongoTemplate mongoTemplate, List<Class<?>> indexedEntities) {
+        this(mongoTemplate, indexedEntities, List.of());
+    }
+
+    /**
+     * @param compressedEntities entities whose collections are created with zstd block compression
+     */
+    public MongoIndexReconciler(MongoTemplate mongoTemplate, List<Class<?>> indexedEntities, List<Class<?>> compressedEntities) {
+        this.mongoTemplate = mongoTemplate;
+        this.indexedEntities = List.copyOf(indexedEntities);
+        this.compressedEntities = List.copyOf(compressedEntities);
+    }
+
+    /**
+     * Reconcile in the background, so startup does not wait for MongoDB
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        CompletableFuture.runAsync(this::reconcile)
+                .exceptionally(e -> {
+                    log.warn("Could not reconcile MongoDB indexes: {}", e.getMessage());
+                    return null;
+                });
+    }
+
+    public void reconcile() {
+        compressedEntities.forEach(this::ensureCompressedCollection);
+        IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+        indexedEntities.forEach(entity -> reconcile(entity, resolver));
+    }
+
+    /**
+     * Create the entity's collection with zstd block compression unless it exists; the block
+     * compressor of a collection cannot be changed after it is created
+     */
+    public void ensureCompressedCollection(Class<?> entity) {
+        String collection = mongoTemplate.getCollectionName(entity);
+        if (mongoTemplate.collectionExists(collection)) {
+            return;
+        }
+        try {
+            mongoTemplate.getDb().createCollection(collection, new CreateCollectionOptions().storageEngineOptions(ZSTD));
+            log.info("Created collection {} with zstd block compression", collection);
+        } catch (MongoCommandException e) {
+            // Another node created it first
+            if (!mongoTemplate.collectionExists(collection)) {
+                throw e;
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation") // createIndex only exists from Spring Data MongoDB 4.5; the activity and editing services run 4.3
+    private void reconcile(Class<?> entity, IndexResolver resolver) {
+        String collection = mongoTemplate.getCollectionName(entity);
+        IndexOperations indexOps = mongoTemplate.indexOps(entity);
+        Map<String, IndexInfo> existing = indexOps.getIndexInfo().stream()
+                .collect(Collectors.toMap(IndexInfo::getName, index -> index));
+
+        Set<String> declared = new HashSet<>();
+        for (IndexDefinition index : resolver.resolveIndexFor(entity)) {
+            String name = (String) index.getIndexOptions().get("name");
+            declared.add(name);
+            IndexInfo current = existing.get(name);
+            if (current == null) {
+                indexOps.ensureIndex(index);
+                log.info("Created index {} on {}", name, collection);
+            } else if (!keysOf(current).equals(new ArrayList<>(index.getIndexKeys().entrySet()))) {
+                indexOps.dropIndex(name);
+                indexOps.ensureIndex(index);
+                log.info("Rebuilt index {} on {} with keys {}", name, collection, index.getIndexKeys());
+            }
+        }
+
+        existing.keySet().stream()
+                .filter(name -> !declared.contains(name) && !name.equals("_id_"))
+                .forEach(name -> log.info("Index {} on {} is not declared, leaving it in place", name, collection));
+    }
+
+    /**
+     * Key fields in index order, in the form IndexDefinition.getIndexKeys() uses
+     */
+    private static List<Map.Entry<String, Object>> keysOf(IndexInfo index) {
+        List<Map.Entry<String, Object>> keys = new ArrayList<>();
+        for (IndexField field : index.getIndexFields()) {
+            Object direction = field.getDirection() == Sort.Direction.DESC ? -1 : 1;
+            keys.add(Map.entry(field.getKey(), direction));
+        }
+        return keys;
+    }
+}
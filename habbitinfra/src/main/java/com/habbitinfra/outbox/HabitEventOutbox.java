@@ -0,0 +1,62 @@
+package com.habbitinfra.outbox;
+
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEvents;
+import org.bson.types.ObjectId;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Writes habit events to the outbox collection in the same MongoDB transaction as the habit
+ * write they describe, so an event exists exactly when its write committed.
+ * {@link OutboxRelay} publishes them; the request never waits on RabbitMQ.
+ */
+public class HabitEventOutbox {
+
+    private final MongoTemplate mongoTemplate;
+    private final MessageConverter messageConverter;
+    private final TransactionTemplate outboxTransactions;
+    private final OutboxRelay outboxRelay;
+
+    public HabitEventOutbox(MongoTemplate mongoTemplate, MessageConverter messageConverter,
+                            TransactionTemplate outboxTransactions, OutboxRelay outboxRelay) {
+        this.mongoTemplate = mongoTemplate;
+        this.messageConverter = messageConverter;
+        this.outboxTransactions = outboxTransactions;
+        this.outboxRelay = outboxRelay;
+    }
+
+    /**
+     * Run the habit write and queue the event built from its result, both or neither. A write
+     * returning null changed nothing and queues no event.
+     */
+    public <T> T writeAndPublish(Supplier<T> write, Function<T, HabitEvent> event) {
+        T result = outboxTransactions.execute(status -> {
+            T written = write.get();
+            if (written != null) {
+                enqueue(event.apply(written));
+            }
+            return written;
+        });
+        outboxRelay.wakeUp();
+        return result;
+    }
+
+    private void enqueue(HabitEvent event) {
+        String id = new ObjectId().toHexString();
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(id);
+        Message message = messageConverter.toMessage(event, properties);
+        mongoTemplate.insert(new OutboxEvent(id, HabitEvents.EXCHANGE, HabitEvents.routingKey(event.type()), message.getBody(),
+                message.getMessageProperties().getContentType(),
+                new HashMap<>(message.getMessageProperties().getHeaders()), LocalDateTime.now(), null));
+    }
+}
@@ -0,0 +1,53 @@
+package com.habbitinfra.outbox;
+
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The habit event outbox, for services that publish habit events. Import it next to a
+ * {@link MongoTransactionManager} and the habit event {@link MessageConverter}, and name the
+ * outbox collection in habit-events.outbox.collection; {@link OutboxEvent} is added to the
+ * service's index reconciler like its own entities.
+ */
+@Configuration(proxyBeanMethods = false)
+public class HabitEventOutboxConfig {
+
+    /**
+     * Transactions around a habit write and its outbox event. They need MongoDB to run as a
+     * replica set; with habit-events.outbox.transactions=false (e.g. a standalone dev server)
+     * the two writes run one after the other, and a crash between them loses the event.
+     */
+    @Bean
+    public TransactionTemplate outboxTransactions(MongoTransactionManager transactionManager,
+                                                  @Value("${habit-events.outbox.transactions:true}") boolean transactions) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(transactions
+                ? TransactionDefinition.PROPAGATION_REQUIRED
+                : TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+        return template;
+    }
+
+    @Bean
+    public OutboxRelay outboxRelay(MongoTemplate mongoTemplate,
+                                   RabbitTemplate rabbitTemplate,
+                                   @Value("${habit-events.outbox.batch-size:100}") int batchSize,
+                                   @Value("${habit-events.outbox.poll-interval-ms:1000}") long pollIntervalMillis,
+                                   @Value("${habit-events.outbox.confirm-timeout-ms:5000}") long confirmTimeoutMillis) {
+        return new OutboxRelay(mongoTemplate, rabbitTemplate, batchSize, pollIntervalMillis, confirmTimeoutMillis);
+    }
+
+    @Bean
+    public HabitEventOutbox habitEventOutbox(MongoTemplate mongoTemplate,
+                                             MessageConverter messageConverter,
+                                             TransactionTemplate outboxTransactions,
+                                             OutboxRelay outboxRelay) {
+        return new HabitEventOutbox(mongoTemplate, messageConverter, outboxTransactions, outboxRelay);
+    }
+}
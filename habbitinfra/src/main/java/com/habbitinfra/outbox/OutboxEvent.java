@@ -0,0 +1,75 @@
+package com.habbitinfra.outbox;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * A habit event waiting in the outbox, stored as the exact AMQP message to publish. The activity
+ * and editing services share a database, so each names its own collection in
+ * habit-events.outbox.collection.
+ */
+@Document(collection = "${habit-events.outbox.collection}")
+// Serves the relay's scan for unsent events, oldest first
+@CompoundIndex(name = "sentAt_createdAt", def = "{'sentAt': 1, 'createdAt': 1}")
+public class OutboxEvent {
+    @Id
+    private final String id; // Also the AMQP message id, so consumers can drop redeliveries
+    private final String exchange;
+    private final String routingKey;
+    private final byte[] body;
+    private final String contentType;
+    private final Map<String, Object> headers;
+    private final LocalDateTime createdAt;
+    // Sent events are kept for a week for troubleshooting; unsent ones have no sentAt and never expire
+    @Indexed(name = "sentAt_ttl", expireAfter = "7d")
+    private final LocalDateTime sentAt;
+
+    public OutboxEvent(String id, String exchange, String routingKey, byte[] body, String contentType,
+                       Map<String, Object> headers, LocalDateTime createdAt, LocalDateTime sentAt) {
+        this.id = id;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.body = body;
+        this.contentType = contentType;
+        this.headers = headers;
+        this.createdAt = createdAt;
+        this.sentAt = sentAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Map<String, Object> getHeaders() {
+        return headers;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+}
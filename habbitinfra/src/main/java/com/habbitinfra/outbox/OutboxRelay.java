@@ -0,0 +1,147 @@
+package com.habbitinfra.outbox;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Publishes queued habit events from the outbox collection to RabbitMQ.
+ *
+ * One background thread reads up to habit-events.outbox.batch-size unsent events, oldest
+ * first, publishes them on one channel and waits for the broker to confirm them all before
+ * marking them sent. It runs right after each write and every habit-events.outbox.poll-interval-ms.
+ * While the broker is down nothing is marked and the events wait in MongoDB. Delivery is at
+ * least once: a batch that was published but not marked is published again, with the same
+ * message ids.
+ */
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final long confirmTimeoutMillis;
+    private final ScheduledExecutorService relay;
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    public OutboxRelay(MongoTemplate mongoTemplate, RabbitTemplate rabbitTemplate,
+                       int batchSize, long pollIntervalMillis, long confirmTimeoutMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.rabbitTemplate = rabbitTemplate;
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.relay = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "habit-event-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRelaying() {
+        relay.scheduleWithFixedDelay(this::relaySafely, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Relay soon rather than at the next poll; wake-ups arriving before the relay ran are merged
+     */
+    public void wakeUp() {
+        if (wakeUpPending.compareAndSet(false, true)) {
+            try {
+                relay.execute(() -> {
+                    wakeUpPending.set(false);
+                    relaySafely();
+                });
+            } catch (RuntimeException e) {
+                // Shutting down; the events stay in the outbox for the next start
+                wakeUpPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Publish unsent events until none are left
+     *
+     * @return number of events published and marked sent
+     */
+    public int relay() {
+        int sent = 0;
+        while (true) {
+            List<OutboxEvent> batch = mongoTemplate.find(query(where("sentAt").is(null))
+                    .with(Sort.by("createdAt", "_id")).limit(batchSize), OutboxEvent.class);
+            if (batch.isEmpty()) {
+                return sent;
+            }
+            publish(batch);
+            mongoTemplate.updateMulti(query(where("_id").in(batch.stream().map(OutboxEvent::getId).toList())),
+                    new Update().set("sentAt", LocalDateTime.now()), OutboxEvent.class);
+            sent += batch.size();
+            if (batch.size() < batchSize) {
+                return sent;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        relay.shutdownNow();
+    }
+
+    private void relaySafely() {
+        try {
+            int sent = relay();
+            if (sent > 0) {
+                log.debug("Relayed {} habit events to RabbitMQ", sent);
+            }
+        } catch (AmqpException e) {
+            log.warn("Could not publish habit events, they stay in the outbox: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Could not relay habit events: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Publish on one channel and wait until the broker confirmed every message, or throw
+     */
+    private void publish(List<OutboxEvent> batch) {
+        rabbitTemplate.invoke(operations -> {
+            for (OutboxEvent event : batch) {
+                operations.send(event.getExchange(), event.getRoutingKey(), toMessage(event));
+            }
+            operations.waitForConfirmsOrDie(confirmTimeoutMillis);
+            return null;
+        });
+    }
+
+    private static Message toMessage(OutboxEvent event) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(event.getId());
+        properties.setContentType(event.getContentType());
+        if (event.getHeaders() != null) {
+            event.getHeaders().forEach(properties::setHeader);
+        }
+        return new Message(event.getBody(), properties);
+    }
+}
@@ -0,0 +1,252 @@
+package com.habbitinfra.outbox;
+
+import com.habbiteventcontract.HabitEvent;
+import com.habbiteventcontract.HabitEventConverter;
+import com.habbiteventcontract.HabitEventType;
+import com.habbiteventcontract.HabitEvents;
+import com.habbitinfra.mongo.MongoIndexReconciler;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The outbox against a MongoDB replica set and a broker: the habit write and its event commit
+ * or roll back together, the relay marks events sent only after the broker confirmed them, a
+ * crash between the confirm and the mark publishes the same message again, and sent events
+ * expire after a week
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class HabitEventOutboxTest {
+
+    @Container
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Container
+    static RabbitMQContainer rabbit = new RabbitMQContainer("rabbitmq:3.13-management");
+
+    private static final String QUEUE = "outbox_test";
+    private static final String HABITS = "habits";
+
+    private static MongoClient client;
+    private static SimpleMongoClientDatabaseFactory databaseFactory;
+    private static MappingMongoConverter converter;
+    private static MongoTemplate mongoTemplate;
+    private static TransactionTemplate outboxTransactions;
+    private static CachingConnectionFactory connectionFactory;
+    private static RabbitTemplate rabbitTemplate;
+    private final List<OutboxRelay> relays = new ArrayList<>();
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(mongo.getReplicaSetUrl());
+        client.getDatabase("admin").runCommand(new Document("setParameter", 1).append("ttlMonitorSleepSecs", 1));
+        databaseFactory = new SimpleMongoClientDatabaseFactory(client, "outbox-test");
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("outbox-test",
+                Map.of("habit-events.outbox.collection", "test_event_outbox")));
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setEnvironment(environment);
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        mongoTemplate = new MongoTemplate(databaseFactory, converter);
+        outboxTransactions = new HabitEventOutboxConfig()
+                .outboxTransactions(new MongoTransactionManager(databaseFactory), true);
+
+        connectionFactory = new CachingConnectionFactory(rabbit.getHost(), rabbit.getAmqpPort());
+        connectionFactory.setUsername(rabbit.getAdminUsername());
+        connectionFactory.setPassword(rabbit.getAdminPassword());
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.SIMPLE);
+        rabbitTemplate = new RabbitTemplate(connectionFactory);
+        RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+        TopicExchange exchange = new TopicExchange(HabitEvents.EXCHANGE);
+        Queue queue = new Queue(QUEUE);
+        admin.declareExchange(exchange);
+        admin.declareQueue(queue);
+        admin.declareBinding(BindingBuilder.bind(queue).to(exchange).with("habit.#"));
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+        client.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(OutboxEvent.class);
+        mongoTemplate.dropCollection(HABITS);
+        mongoTemplate.createCollection(HABITS);
+        new MongoIndexReconciler(mongoTemplate, List.of(OutboxEvent.class)).reconcile();
+        rabbitTemplate.execute(channel -> channel.queuePurge(QUEUE));
+    }
+
+    @AfterEach
+    void stopRelays() {
+        relays.forEach(OutboxRelay::shutdown);
+    }
+
+    @Test
+    void eventIsQueuedOnlyWhenTheWriteCommits() {
+        HabitEventOutbox outbox = outbox();
+
+        String written = outbox.writeAndPublish(() -> insertHabit("habit-1"), this::created);
+        assertEquals("habit-1", written);
+        assertThrows(IllegalStateException.class, () -> outbox.writeAndPublish(() -> insertHabit("habit-2"), habitId -> {
+            throw new IllegalStateException("event could not be built");
+        }));
+        assertNull(outbox.writeAndPublish(() -> null, this::created));
+
+        assertEquals(1, mongoTemplate.getCollection(HABITS).countDocuments());
+        assertNull(mongoTemplate.getCollection(HABITS).find(new Document("_id", "habit-2")).first());
+        List<OutboxEvent> queued = mongoTemplate.findAll(OutboxEvent.class);
+        assertEquals(1, queued.size());
+        assertEquals(HabitEvents.EXCHANGE, queued.get(0).getExchange());
+        assertEquals(HabitEvents.routingKey(HabitEventType.CREATED), queued.get(0).getRoutingKey());
+        assertNull(queued.get(0).getSentAt());
+    }
+
+    @Test
+    void relayMarksEventsSentOnceTheBrokerConfirmedThem() {
+        HabitEventOutbox outbox = outbox();
+        for (int i = 0; i < 5; i++) {
+            String habitId = "habit-" + i;
+            outbox.writeAndPublish(() -> insertHabit(habitId), this::created);
+        }
+        List<String> ids = mongoTemplate.findAll(OutboxEvent.class).stream().map(OutboxEvent::getId).toList();
+
+        // A batch size below the number of events makes the relay go round more than once
+        assertEquals(5, relay(mongoTemplate, 2).relay());
+
+        assertEquals(ids, receivedIds(5));
+        mongoTemplate.findAll(OutboxEvent.class).forEach(event -> assertNotNull(event.getSentAt()));
+        assertEquals(0, relay(mongoTemplate, 2).relay());
+        assertNull(rabbitTemplate.receive(QUEUE, 200));
+    }
+
+    @Test
+    void eventsConfirmedButNotMarkedArePublishedAgainWithTheSameId() {
+        HabitEventOutbox outbox = outbox();
+        outbox.writeAndPublish(() -> insertHabit("habit-1"), this::created);
+        String id = mongoTemplate.findAll(OutboxEvent.class).get(0).getId();
+        AtomicBoolean crash = new AtomicBoolean(true);
+        MongoTemplate crashingTemplate = new MongoTemplate(databaseFactory, converter) {
+            @Override
+            public UpdateResult updateMulti(Query query, UpdateDefinition update, Class<?> entityClass) {
+                if (crash.get()) {
+                    throw new IllegalStateException("crashed after the confirm");
+                }
+                return super.updateMulti(query, update, entityClass);
+            }
+        };
+
+        assertThrows(IllegalStateException.class, () -> relay(crashingTemplate, 10).relay());
+        assertEquals(List.of(id), receivedIds(1));
+        assertNull(mongoTemplate.findAll(OutboxEvent.class).get(0).getSentAt());
+
+        crash.set(false);
+        assertEquals(1, relay(crashingTemplate, 10).relay());
+        assertEquals(List.of(id), receivedIds(1));
+        assertNotNull(mongoTemplate.findAll(OutboxEvent.class).get(0).getSentAt());
+    }
+
+    @Test
+    void sentEventsExpireAfterAWeekAndUnsentOnesStay() throws InterruptedException {
+        IndexInfo ttl = mongoTemplate.indexOps(OutboxEvent.class).getIndexInfo().stream()
+                .filter(index -> index.getName().equals("sentAt_ttl"))
+                .findFirst().orElseThrow();
+        assertEquals(Duration.ofDays(7), ttl.getExpireAfter().orElseThrow());
+
+        LocalDateTime eightDaysAgo = LocalDateTime.now().minusDays(8);
+        mongoTemplate.insert(new OutboxEvent("sent", HabitEvents.EXCHANGE, "habit.created", new byte[0],
+                HabitEventConverter.CONTENT_TYPE_CBOR, Map.of(), eightDaysAgo, eightDaysAgo));
+        mongoTemplate.insert(new OutboxEvent("unsent", HabitEvents.EXCHANGE, "habit.created", new byte[0],
+                HabitEventConverter.CONTENT_TYPE_CBOR, Map.of(), eightDaysAgo, null));
+
+        // The TTL monitor was set to run every second in connect()
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (mongoTemplate.findById("sent", OutboxEvent.class) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(250);
+        }
+        assertNull(mongoTemplate.findById("sent", OutboxEvent.class));
+        assertNotNull(mongoTemplate.findById("unsent", OutboxEvent.class));
+    }
+
+    /**
+     * An outbox whose own relay is shut down, so events are only published when a test relays them
+     */
+    private HabitEventOutbox outbox() {
+        OutboxRelay idle = relay(mongoTemplate, 10);
+        idle.shutdown();
+        return new HabitEventOutbox(mongoTemplate, new HabitEventConverter(), outboxTransactions, idle);
+    }
+
+    private OutboxRelay relay(MongoTemplate template, int batchSize) {
+        OutboxRelay relay = new OutboxRelay(template, rabbitTemplate, batchSize, 60_000, 5_000);
+        relays.add(relay);
+        return relay;
+    }
+
+    private String insertHabit(String habitId) {
+        mongoTemplate.insert(new Document("_id", habitId), HABITS);
+        return habitId;
+    }
+
+    private HabitEvent created(String habitId) {
+        return HabitEvent.of(HabitEventType.CREATED, habitId, "user-1", LocalDateTime.now());
+    }
+
+    private List<String> receivedIds(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Message message = rabbitTemplate.receive(QUEUE, 5_000);
+            assertNotNull(message, "expected " + count + " messages, got " + i);
+            ids.add(message.getMessageProperties().getMessageId());
+        }
+        assertFalse(ids.contains(null));
+        return ids;
+    }
+}